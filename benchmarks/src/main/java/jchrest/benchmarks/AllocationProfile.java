@@ -0,0 +1,261 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.benchmarks;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import jchrest.architecture.Chrest;
+import jchrest.architecture.Node;
+import jchrest.architecture.Perceiver;
+import jchrest.lib.*;
+
+/**
+ * Measures the bytes allocated by fixed learning workloads, and by the call
+ * sites within them which copy patterns or create squares and fixations.
+ * Allocation is read from the JVM's per-thread counter, so only this
+ * thread's allocations are counted, and nothing is sampled.
+ *
+ * Two workloads are run: recogniseAndLearn on random verbal lists, and
+ * learnScene on chess positions.  Each call site is then measured by
+ * repeating its calls on inputs taken from the workload, e.g. 'remove' of
+ * each pattern against the image of the node it sorts to.  Every
+ * measurement is warmed up with the same number of operations first.
+ *
+ * Each measurement is written as a line of CSV: workload, call site,
+ * operations, bytes allocated, bytes per operation, and the number of
+ * collections and time in garbage collection while measuring.
+ *
+ * Usage: AllocationProfile [--operations N] [--seed N] data-file output-file
+ *
+ * @author Peter C. R. Lane
+ */
+public class AllocationProfile {
+  static final String HEADER = "workload,site,operations,bytes,bytes_per_operation,gc_count,gc_seconds";
+
+  /**
+   * One call of the operation being measured, on the i'th input.
+   */
+  abstract static class Operation {
+    abstract Object run (int i);
+  }
+
+  private final com.sun.management.ThreadMXBean _threads;
+  private final int _numOperations;
+  private final long _seed;
+  private final List<String> _results;
+  private Object _sink; // holds results, so calls are not optimised away
+
+  public AllocationProfile (int numOperations, long seed) {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean ();
+    if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+      throw new UnsupportedOperationException ("JVM does not count allocated bytes per thread");
+    }
+    _threads = (com.sun.management.ThreadMXBean)threads;
+    if (!_threads.isThreadAllocatedMemorySupported ()) {
+      throw new UnsupportedOperationException ("JVM does not count allocated bytes per thread");
+    }
+    _threads.setThreadAllocatedMemoryEnabled (true);
+    _numOperations = numOperations;
+    _seed = seed;
+    _results = new ArrayList<String> ();
+  }
+
+  /**
+   * Lines of CSV, one for each measurement made.
+   */
+  public List<String> getResults () {
+    return _results;
+  }
+
+  private long allocatedBytes () {
+    return _threads.getThreadAllocatedBytes (Thread.currentThread().getId ());
+  }
+
+  /**
+   * Warm up, then measure the bytes allocated by the given number of calls
+   * of the operation.
+   */
+  void measure (String workload, String site, int numOperations, Operation operation) {
+    for (int i = 0; i < numOperations; ++i) {
+      _sink = operation.run (i);
+    }
+    long gcCount = TrainingBenchmark.gcCount ();
+    long gcTime = TrainingBenchmark.gcTime ();
+    long start = allocatedBytes ();
+    for (int i = 0; i < numOperations; ++i) {
+      _sink = operation.run (i);
+    }
+    long bytes = allocatedBytes () - start;
+    _results.add (workload + "," + site + "," + numOperations + "," + bytes + "," +
+        ((double)bytes / numOperations) + "," + (TrainingBenchmark.gcCount () - gcCount) + "," +
+        ((TrainingBenchmark.gcTime () - gcTime) / 1000.0));
+  }
+
+  /**
+   * recogniseAndLearn on random verbal lists, as in the verbal learning
+   * experiments, and the list-pattern operations it relies on.
+   */
+  public void profileVerbalLearning () {
+    final String workload = "verbal-learning";
+    final List<ListPattern> patterns = Fixtures.syntheticVerbalPatterns (_numOperations, 6, 26, _seed);
+    final Chrest model = new Chrest ();
+    model.setRandomSeed (_seed);
+
+    measure (workload, "Chrest.recogniseAndLearn", _numOperations, new Operation () {
+      Object run (int i) {
+        return model.recogniseAndLearn (patterns.get (i));
+      }
+    });
+
+    // the image of the node each pattern is sorted to, as used in learning
+    final List<ListPattern> images = new ArrayList<ListPattern> ();
+    for (ListPattern pattern : patterns) {
+      images.add (model.recognise(pattern).getImage ());
+    }
+
+    measure (workload, "Chrest.recognise", _numOperations, new Operation () {
+      Object run (int i) {
+        return model.recognise (patterns.get (i));
+      }
+    });
+    measure (workload, "ListPattern.clone", _numOperations, new Operation () {
+      Object run (int i) {
+        return patterns.get(i).clone ();
+      }
+    });
+    measure (workload, "ListPattern.remove", _numOperations, new Operation () {
+      Object run (int i) {
+        return patterns.get(i).remove (images.get (i));
+      }
+    });
+    measure (workload, "ListPattern.append(ListPattern)", _numOperations, new Operation () {
+      Object run (int i) {
+        return images.get(i).append (patterns.get(i).remove (images.get (i)).getFirstItem ());
+      }
+    });
+    measure (workload, "ListPattern.append(PrimitivePattern)", _numOperations, new Operation () {
+      Object run (int i) {
+        return images.get(i).append (patterns.get(i).getItem (0));
+      }
+    });
+    measure (workload, "ListPattern.getFirstItem", _numOperations, new Operation () {
+      Object run (int i) {
+        return patterns.get(i).getFirstItem ();
+      }
+    });
+  }
+
+  /**
+   * learnScene on chess positions, and the perceiver's operations at each
+   * fixation.
+   */
+  public void profileChessLearning (final Scenes scenes) {
+    final String workload = "chess-learning";
+    final int numScenes = Math.min (_numOperations, scenes.size ());
+    final Chrest model = new Chrest ();
+    model.setDomain (new ChessDomain ());
+    model.setRandomSeed (_seed);
+
+    measure (workload, "Chrest.learnScene", numScenes, new Operation () {
+      Object run (int i) {
+        model.learnScene (scenes.get (i), Fixtures.NUM_FIXATIONS);
+        return model;
+      }
+    });
+
+    // every piece in the scenes, and the patterns seen when fixating it
+    final List<Scene> boards = new ArrayList<Scene> ();
+    final List<Square> squares = new ArrayList<Square> ();
+    final List<ListPattern> patterns = new ArrayList<ListPattern> ();
+    for (int i = 0; i < numScenes; ++i) {
+      Scene scene = scenes.get (i);
+      for (int row = 0; row < scene.getHeight (); ++row) {
+        for (int col = 0; col < scene.getWidth (); ++col) {
+          if (!scene.isEmpty (row, col)) {
+            boards.add (scene);
+            squares.add (new Square (row, col));
+            patterns.add (scene.getItems (col, row, 2));
+          }
+        }
+      }
+    }
+    final ChessDomain domain = new ChessDomain ();
+    final Perceiver perceiver = model.getPerceiver ();
+
+    measure (workload, "Perceiver.scan", numScenes, new Operation () {
+      Object run (int i) {
+        perceiver.setScene (scenes.get (i));
+        perceiver.scan (Fixtures.NUM_FIXATIONS);
+        return perceiver;
+      }
+    });
+    measure (workload, "Scene.getItems", squares.size (), new Operation () {
+      Object run (int i) {
+        return boards.get(i).getItems (squares.get(i).getColumn (), squares.get(i).getRow (), 2);
+      }
+    });
+    measure (workload, "ChessDomain.normalise", patterns.size (), new Operation () {
+      Object run (int i) {
+        return domain.normalise (patterns.get (i));
+      }
+    });
+    measure (workload, "ChessDomain.proposeMovementFixations", squares.size (), new Operation () {
+      Object run (int i) {
+        return domain.proposeMovementFixations (boards.get (i), squares.get (i));
+      }
+    });
+  }
+
+  private static void usage () {
+    System.err.println ("Usage: jchrest.benchmarks.AllocationProfile [--operations N] [--seed N] " +
+        "data-file output-file");
+    System.exit (1);
+  }
+
+  public static void main (String[] args) {
+    int numOperations = 5000;
+    long seed = 0;
+    List<String> files = new ArrayList<String> ();
+
+    try {
+      for (int i = 0; i < args.length; ++i) {
+        if (args[i].equals ("--operations") && i + 1 < args.length) {
+          numOperations = Integer.parseInt (args[++i]);
+        } else if (args[i].equals ("--seed") && i + 1 < args.length) {
+          seed = Long.parseLong (args[++i]);
+        } else if (args[i].startsWith ("--")) {
+          usage ();
+        } else {
+          files.add (args[i]);
+        }
+      }
+    } catch (NumberFormatException nfe) {
+      usage ();
+    }
+    if (files.size () != 2) usage ();
+
+    try {
+      AllocationProfile profile = new AllocationProfile (numOperations, seed);
+      profile.profileVerbalLearning ();
+      profile.profileChessLearning (Fixtures.readScenes (files.get (0)));
+
+      PrintWriter output = new PrintWriter (new FileWriter (files.get (1)));
+      try {
+        output.println (HEADER);
+        for (String line : profile.getResults ()) {
+          output.println (line);
+          System.out.println (line);
+        }
+      } finally {
+        output.close ();
+      }
+    } catch (IOException ioe) {
+      System.err.println ("Error: " + ioe.getMessage ());
+      System.exit (1);
+    }
+  }
+}
@@ -0,0 +1,69 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import jchrest.lib.*;
+
+/**
+ * The chess domain's operations used at every fixation: normalising a
+ * pattern, and proposing the squares a piece could move to.  Neither depends
+ * on the model, so no network is trained.
+ *
+ * @author Peter C. R. Lane
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChessDomainBenchmark {
+  private ChessDomain _domain;
+  private List<ListPattern> _patterns;
+  private List<Scene> _boards;
+  private List<Square> _squares;
+  private int _nextPattern;
+  private int _nextPiece;
+
+  @Setup(Level.Trial)
+  public void setup () throws IOException {
+    _domain = new ChessDomain ();
+    _patterns = new ArrayList<ListPattern> ();
+    _boards = new ArrayList<Scene> ();
+    _squares = new ArrayList<Square> ();
+    for (Scene scene : Fixtures.testScenes ()) {
+      for (int row = 0; row < scene.getHeight (); ++row) {
+        for (int col = 0; col < scene.getWidth (); ++col) {
+          if (!scene.isEmpty (row, col)) {
+            // unnormalised, as passed to normalise by the perceiver
+            _patterns.add (scene.getItems (row, col, 2));
+            _boards.add (scene);
+            _squares.add (new Square (row, col));
+          }
+        }
+      }
+    }
+    _nextPattern = 0;
+    _nextPiece = 0;
+  }
+
+  @Benchmark
+  public ListPattern normalise () {
+    _nextPattern = (_nextPattern + 1) % _patterns.size ();
+    return _domain.normalise (_patterns.get (_nextPattern));
+  }
+
+  @Benchmark
+  public List<Square> proposeMovementFixations () {
+    _nextPiece = (_nextPiece + 1) % _squares.size ();
+    return _domain.proposeMovementFixations (_boards.get (_nextPiece), _squares.get (_nextPiece));
+  }
+}
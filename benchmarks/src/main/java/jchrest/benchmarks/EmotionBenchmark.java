@@ -0,0 +1,85 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import jchrest.architecture.Chrest;
+import jchrest.architecture.Emotion;
+import jchrest.architecture.EmotionAssociator;
+import jchrest.architecture.Node;
+import jchrest.architecture.Stm;
+import jchrest.lib.ListPattern;
+
+/**
+ * Rescorla-Wagner updates of the emotions associated with nodes, as made
+ * when emotion is propagated across STM: each call updates every basic
+ * emotion of each cue, so one call makes 8 * cues updates.  propagate
+ * spreads the emotion of the top of an STM holding the node and the cues
+ * in one batch, and propagateSequentially does so one STM at a time.
+ *
+ * @author Peter C. R. Lane
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmotionBenchmark {
+  @Param({"1", "4", "16"})
+  public int cues;
+
+  private EmotionAssociator _associator;
+  private Emotion _emotion;
+  private Node _node;
+  private List<Node> _cues;
+  private Stm[] _stms;
+  private int _time;
+
+  @Setup(Level.Trial)
+  public void setup () {
+    Chrest model = Fixtures.trainedModel (Fixtures.syntheticPatterns (5000, 10, 20, 1), 1000);
+    _cues = new ArrayList<Node> ();
+    for (ListPattern pattern : Fixtures.syntheticPatterns (5000, 10, 20, 2)) {
+      Node node = model.recognise (pattern);
+      if (node.getReference () != 0 && !_cues.contains (node)) _cues.add (node);
+      if (_cues.size () == cues + 1) break;
+    }
+    _node = _cues.remove (0);
+    _associator = new EmotionAssociator ();
+    _emotion = new Emotion (Emotion.PlutchikBasicEmotion.JOY, 1.0);
+    _emotion.putComponentValue (Emotion.PlutchikBasicEmotion.FEAR, 0.3);
+    Stm stm = new Stm (cues + 1);
+    for (Node cue : _cues) stm.add (cue);
+    stm.add (_node);
+    _stms = new Stm[]{stm};
+    _associator.setRWEmotion (_node, _emotion);
+    _time = 0;
+  }
+
+  @Benchmark
+  public void computeRW () {
+    _associator.computeRW (_emotion, _node, _cues);
+  }
+
+  @Benchmark
+  public Emotion computeVAll () {
+    return _associator.computeVAll (_cues);
+  }
+
+  @Benchmark
+  public void propagate () {
+    _associator.propagateAcrossModalities (_stms, _time++);
+  }
+
+  @Benchmark
+  public void propagateSequentially () {
+    _associator.emoteAndPropagateAcrossModalities (_stms, _time++);
+  }
+}
@@ -0,0 +1,167 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.benchmarks;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import jchrest.architecture.Chrest;
+import jchrest.lib.*;
+
+/**
+ * Data and trained models shared by the benchmarks.  Models are trained
+ * until they reach a requested number of nodes, so each benchmark can be
+ * measured against networks of different sizes.
+ *
+ * Scenes are read from examples/sample-data/chess-positions.dat, relative to
+ * the working directory, unless the property 'chrest.benchmarks.data' names
+ * another file in the 'visual-search' format.  JMH does not pass properties
+ * to forked JVMs, so give it as e.g. -jvmArgsAppend -Dchrest.benchmarks.data=...
+ *
+ * @author Peter C. R. Lane
+ */
+final class Fixtures {
+  static final int NUM_FIXATIONS = 20;
+  static final int NUM_TEST_SCENES = 500;
+
+  private static Scenes _chessPositions = null;
+
+  private Fixtures () {
+  }
+
+  /**
+   * Return the chess positions, reading them on first use.
+   */
+  static synchronized Scenes chessPositions () throws IOException {
+    if (_chessPositions == null) {
+      _chessPositions = readScenes (System.getProperty ("chrest.benchmarks.data",
+            "examples/sample-data/chess-positions.dat"));
+    }
+    return _chessPositions;
+  }
+
+  /**
+   * Read scenes from a data file for the 'visual-search' task.
+   */
+  static Scenes readScenes (String filename) throws IOException {
+    BufferedReader input = new BufferedReader (new FileReader (filename));
+    try {
+      String task = input.readLine ();
+      if (task == null || !task.trim().equals ("visual-search")) {
+        throw new IOException ("Not a visual-search data file: " + filename);
+      }
+      return Scenes.read (input);
+    } finally {
+      input.close ();
+    }
+  }
+
+  /**
+   * Scenes held out from training, used as the inputs to each benchmark.
+   */
+  static List<Scene> testScenes () throws IOException {
+    Scenes scenes = chessPositions ();
+    List<Scene> result = new ArrayList<Scene> ();
+    for (int i = Math.max (0, scenes.size () - NUM_TEST_SCENES); i < scenes.size (); ++i) {
+      result.add (scenes.get (i));
+    }
+    return result;
+  }
+
+  /**
+   * Return a chess model trained on the scenes before the test scenes until
+   * its LTM holds at least the given number of nodes, or it stops growing.
+   */
+  static Chrest chessModel (int numNodes) throws IOException {
+    Scenes scenes = chessPositions ();
+    int numTraining = Math.max (1, scenes.size () - NUM_TEST_SCENES);
+    Chrest model = new Chrest ();
+    model.setDomain (new ChessDomain ());
+    model.setRandomSeed (0);
+
+    int lastSize = -1;
+    while (model.getTotalLtmNodes () < numNodes && model.getTotalLtmNodes () > lastSize) {
+      lastSize = model.getTotalLtmNodes ();
+      for (int i = 0; i < numTraining && model.getTotalLtmNodes () < numNodes; ++i) {
+        model.learnScene (scenes.get (i), NUM_FIXATIONS);
+      }
+    }
+    model.getVisualStm().clear ();
+    return model;
+  }
+
+  /**
+   * Patterns as the perceiver would see them, one for each square holding a
+   * piece in the test scenes.
+   */
+  static List<ListPattern> chessPatterns () throws IOException {
+    DomainSpecifics domain = new ChessDomain ();
+    List<ListPattern> patterns = new ArrayList<ListPattern> ();
+    for (Scene scene : testScenes ()) {
+      for (int row = 0; row < scene.getHeight (); ++row) {
+        for (int col = 0; col < scene.getWidth (); ++col) {
+          if (!scene.isEmpty (row, col)) {
+            patterns.add (domain.normalise (scene.getItems (row, col, 2)));
+          }
+        }
+      }
+    }
+    return patterns;
+  }
+
+  /**
+   * Random visual patterns of numbers, reproducible from the given seed.
+   */
+  static List<ListPattern> syntheticPatterns (int count, int length, int alphabet, long seed) {
+    List<ListPattern> patterns = new ArrayList<ListPattern> ();
+    for (int[] numbers : randomNumbers (count, length, alphabet, seed)) {
+      patterns.add (Pattern.makeVisualList (numbers));
+    }
+    return patterns;
+  }
+
+  /**
+   * Random verbal patterns of numbers, reproducible from the given seed.
+   */
+  static List<ListPattern> syntheticVerbalPatterns (int count, int length, int alphabet, long seed) {
+    List<ListPattern> patterns = new ArrayList<ListPattern> ();
+    for (int[] numbers : randomNumbers (count, length, alphabet, seed)) {
+      patterns.add (Pattern.makeVerbalList (numbers));
+    }
+    return patterns;
+  }
+
+  private static List<int[]> randomNumbers (int count, int length, int alphabet, long seed) {
+    Random random = new Random (seed);
+    List<int[]> result = new ArrayList<int[]> ();
+    for (int i = 0; i < count; ++i) {
+      int[] numbers = new int[length];
+      for (int j = 0; j < length; ++j) {
+        numbers[j] = random.nextInt (alphabet);
+      }
+      result.add (numbers);
+    }
+    return result;
+  }
+
+  /**
+   * Return a model trained on the given patterns, in turn, until its LTM
+   * holds at least the given number of nodes, or it stops growing.
+   */
+  static Chrest trainedModel (List<ListPattern> patterns, int numNodes) {
+    Chrest model = new Chrest ();
+    model.setRandomSeed (0);
+    int lastSize = -1;
+    while (model.getTotalLtmNodes () < numNodes && model.getTotalLtmNodes () > lastSize) {
+      lastSize = model.getTotalLtmNodes ();
+      for (int i = 0; i < patterns.size () && model.getTotalLtmNodes () < numNodes; ++i) {
+        model.recogniseAndLearn (patterns.get (i));
+      }
+    }
+    model.getVisualStm().clear ();
+    return model;
+  }
+}
@@ -0,0 +1,66 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import jchrest.lib.ItemSquarePattern;
+import jchrest.lib.ListPattern;
+
+/**
+ * The list-pattern operations used when sorting through and learning in
+ * LTM, on patterns of different lengths.  'prefix' holds the first half of
+ * 'pattern', as a node's image holds the start of the patterns sorted to it,
+ * and 'shuffled' holds the items of 'pattern' in reverse order.
+ *
+ * @author Peter C. R. Lane
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListPatternBenchmark {
+  @Param({"4", "16", "64"})
+  public int patternLength;
+
+  private ListPattern _pattern;
+  private ListPattern _prefix;
+  private ListPattern _shuffled;
+
+  @Setup(Level.Trial)
+  public void setup () {
+    String[] pieces = {"P", "N", "B", "R", "Q", "K", "p", "n", "b", "r", "q", "k"};
+    _pattern = new ListPattern ();
+    _prefix = new ListPattern ();
+    _shuffled = new ListPattern ();
+    for (int i = 0; i < patternLength; ++i) {
+      _pattern.add (new ItemSquarePattern (pieces[i % pieces.length], 1 + i % 8, 1 + i / 8));
+      if (i < patternLength / 2) {
+        _prefix.add (_pattern.getItem (i));
+      }
+    }
+    for (int i = patternLength - 1; i >= 0; --i) {
+      _shuffled.add (_pattern.getItem (i));
+    }
+  }
+
+  @Benchmark
+  public boolean matches () {
+    return _prefix.matches (_pattern);
+  }
+
+  @Benchmark
+  public ListPattern remove () {
+    return _pattern.remove (_prefix);
+  }
+
+  @Benchmark
+  public boolean isSimilarTo () {
+    return _pattern.isSimilarTo (_shuffled, patternLength);
+  }
+}
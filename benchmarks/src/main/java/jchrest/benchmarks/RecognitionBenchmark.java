@@ -0,0 +1,67 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import jchrest.architecture.Chrest;
+import jchrest.architecture.Node;
+import jchrest.lib.ListPattern;
+
+/**
+ * Sorting patterns through LTM, with and without learning.  Patterns are
+ * either random lists of numbers, or the patterns seen when fixating pieces
+ * in chess positions.  The model learns as recogniseAndLearn is measured, so
+ * its network grows a little beyond networkSize during each trial.
+ *
+ * @author Peter C. R. Lane
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecognitionBenchmark {
+  @Param({"1000", "10000", "40000"})
+  public int networkSize;
+
+  @Param({"synthetic", "chess-positions"})
+  public String patterns;
+
+  private Chrest _model;
+  private List<ListPattern> _patterns;
+  private int _next;
+
+  @Setup(Level.Trial)
+  public void setup () throws IOException {
+    if (patterns.equals ("synthetic")) {
+      _model = Fixtures.trainedModel (Fixtures.syntheticPatterns (50000, 10, 20, 1), networkSize);
+      _patterns = Fixtures.syntheticPatterns (5000, 10, 20, 2);
+    } else {
+      _model = Fixtures.chessModel (networkSize);
+      _patterns = Fixtures.chessPatterns ();
+    }
+    _next = 0;
+  }
+
+  private ListPattern nextPattern () {
+    _next = (_next + 1) % _patterns.size ();
+    return _patterns.get (_next);
+  }
+
+  @Benchmark
+  public Node recognise () {
+    return _model.recognise (nextPattern ());
+  }
+
+  @Benchmark
+  public Node recogniseAndLearn () {
+    return _model.recogniseAndLearn (nextPattern ());
+  }
+}
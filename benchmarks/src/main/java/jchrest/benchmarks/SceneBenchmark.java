@@ -0,0 +1,59 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import jchrest.architecture.Chrest;
+import jchrest.lib.Scene;
+
+/**
+ * Learning and scanning whole chess positions, with 20 fixations each, in
+ * models trained to different sizes.  Scenes are taken from those held out
+ * from training.  The model learns as learnScene is measured, so its network
+ * grows beyond networkSize during each trial.
+ *
+ * @author Peter C. R. Lane
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SceneBenchmark {
+  @Param({"1000", "10000", "40000"})
+  public int networkSize;
+
+  private Chrest _model;
+  private List<Scene> _scenes;
+  private int _next;
+
+  @Setup(Level.Trial)
+  public void setup () throws IOException {
+    _model = Fixtures.chessModel (networkSize);
+    _scenes = Fixtures.testScenes ();
+    _next = 0;
+  }
+
+  private Scene nextScene () {
+    _next = (_next + 1) % _scenes.size ();
+    return _scenes.get (_next);
+  }
+
+  @Benchmark
+  public Chrest learnScene () {
+    _model.learnScene (nextScene (), Fixtures.NUM_FIXATIONS);
+    return _model;
+  }
+
+  @Benchmark
+  public Scene scanScene () {
+    return _model.scanScene (nextScene (), Fixtures.NUM_FIXATIONS);
+  }
+}
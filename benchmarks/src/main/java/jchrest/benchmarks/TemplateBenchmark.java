@@ -0,0 +1,42 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import jchrest.architecture.Chrest;
+
+/**
+ * Constructing templates over the whole visual LTM of chess models trained
+ * to different sizes.  Construction replaces any slots made before, so the
+ * same network can be used for each invocation.
+ *
+ * @author Peter C. R. Lane
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemplateBenchmark {
+  @Param({"1000", "10000", "40000"})
+  public int networkSize;
+
+  private Chrest _model;
+
+  @Setup(Level.Trial)
+  public void setup () throws IOException {
+    _model = Fixtures.chessModel (networkSize);
+  }
+
+  @Benchmark
+  public Chrest constructTemplates () {
+    _model.getVisualLtm().constructTemplates ();
+    return _model;
+  }
+}
@@ -0,0 +1,210 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.benchmarks;
+
+import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+
+import jchrest.architecture.Chrest;
+import jchrest.lib.*;
+
+/**
+ * Macro-benchmark of a complete chess recall experiment.  For each target
+ * size, a new model is trained with learnScene on the chess positions, in
+ * order and repeating them as needed, until its LTM holds the target number
+ * of nodes.  Templates are then constructed, and the held-out positions
+ * recalled with scanScene.
+ *
+ * Each target is written as one line of a CSV file, giving the rates of
+ * learning and recall, the peak heap used and the time spent in garbage
+ * collection.  Random numbers in the model are seeded, so two builds run
+ * with the same seed and data learn the same networks and can be compared
+ * directly.
+ *
+ * Usage: TrainingBenchmark [options] data-file output-file
+ * where options are:
+ * <ul>
+ * <li>--nodes N,N,...  target numbers of nodes (default 10000,50000,100000,500000)</li>
+ * <li>--seed N         seed for random numbers (default 0)</li>
+ * <li>--test-scenes N  number of scenes, from the end, held out for recall (default 500)</li>
+ * <li>--fixations N    number of fixations per scene (default 20)</li>
+ * <li>--max-passes N   stop training after this many passes through the data (default 100)</li>
+ * </ul>
+ *
+ * @author Peter C. R. Lane
+ */
+public class TrainingBenchmark {
+  static final String HEADER = "seed,target_nodes,nodes,templates,training_scenes,training_seconds," +
+    "nodes_per_second,training_scenes_per_second,template_seconds,recall_scenes,recall_seconds," +
+    "recall_scenes_per_second,mean_precision,mean_recall,peak_heap_bytes,gc_count,gc_seconds";
+
+  private final Scenes _scenes;
+  private final long _seed;
+  private final int _numTestScenes;
+  private final int _numFixations;
+  private final int _maxPasses;
+
+  public TrainingBenchmark (Scenes scenes, long seed, int numTestScenes, int numFixations, int maxPasses) {
+    _scenes = scenes;
+    _seed = seed;
+    _numTestScenes = Math.min (numTestScenes, scenes.size () - 1);
+    _numFixations = numFixations;
+    _maxPasses = maxPasses;
+  }
+
+  /**
+   * Train a new model to the given number of nodes, construct templates and
+   * recall the held-out scenes, returning the measurements as a line of CSV.
+   */
+  public String run (int targetNodes) {
+    System.gc (); // start each target from a clean heap
+    resetPeakHeap ();
+    long gcCount = gcCount ();
+    long gcTime = gcTime ();
+
+    Chrest model = new Chrest ();
+    model.setDomain (new ChessDomain ());
+    model.setRandomSeed (_seed);
+
+    // train, in order, through the scenes not held out
+    int numTraining = _scenes.size () - _numTestScenes;
+    int trainingScenes = 0;
+    long start = System.nanoTime ();
+    for (int pass = 0; pass < _maxPasses && model.getTotalLtmNodes () < targetNodes; ++pass) {
+      int nodesBeforePass = model.getTotalLtmNodes ();
+      for (int i = 0; i < numTraining && model.getTotalLtmNodes () < targetNodes; ++i) {
+        model.learnScene (_scenes.get (i), _numFixations);
+        trainingScenes += 1;
+      }
+      if (model.getTotalLtmNodes () == nodesBeforePass) break; // network has stopped growing
+    }
+    double trainingSeconds = seconds (start);
+
+    start = System.nanoTime ();
+    model.constructTemplates ();
+    double templateSeconds = seconds (start);
+
+    RecallStatistics statistics = new RecallStatistics ();
+    start = System.nanoTime ();
+    for (int i = numTraining; i < _scenes.size (); ++i) {
+      Scene scene = _scenes.get (i);
+      statistics.add (scene, model.scanScene (scene, _numFixations));
+    }
+    double recallSeconds = seconds (start);
+
+    return _seed + "," + targetNodes + "," + model.getTotalLtmNodes () + "," +
+      model.countTemplates () + "," + trainingScenes + "," + trainingSeconds + "," +
+      (model.getTotalLtmNodes () / trainingSeconds) + "," + (trainingScenes / trainingSeconds) + "," +
+      templateSeconds + "," + statistics.getCount () + "," + recallSeconds + "," +
+      (statistics.getCount () / recallSeconds) + "," + statistics.getMeanPrecision () + "," +
+      statistics.getMeanRecall () + "," + peakHeap () + "," + (gcCount () - gcCount) + "," +
+      ((gcTime () - gcTime) / 1000.0);
+  }
+
+  private static double seconds (long start) {
+    return (System.nanoTime () - start) / 1e9;
+  }
+
+  private static void resetPeakHeap () {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans ()) {
+      if (pool.getType () == MemoryType.HEAP) pool.resetPeakUsage ();
+    }
+  }
+
+  // sum of the peaks of each heap pool, so an upper bound on the peak heap used
+  private static long peakHeap () {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans ()) {
+      if (pool.getType () == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed ();
+    }
+    return peak;
+  }
+
+  static long gcCount () {
+    long count = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans ()) {
+      count += Math.max (0, gc.getCollectionCount ());
+    }
+    return count;
+  }
+
+  static long gcTime () {
+    long time = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans ()) {
+      time += Math.max (0, gc.getCollectionTime ());
+    }
+    return time;
+  }
+
+  private static void usage () {
+    System.err.println ("Usage: jchrest.benchmarks.TrainingBenchmark [--nodes N,N,...] [--seed N] " +
+        "[--test-scenes N] [--fixations N] [--max-passes N] data-file output-file");
+    System.exit (1);
+  }
+
+  public static void main (String[] args) {
+    List<Integer> targets = new ArrayList<Integer> ();
+    long seed = 0;
+    int numTestScenes = 500;
+    int numFixations = 20;
+    int maxPasses = 100;
+    List<String> files = new ArrayList<String> ();
+
+    try {
+      for (int i = 0; i < args.length; ++i) {
+        if (args[i].equals ("--nodes") && i + 1 < args.length) {
+          for (String target : args[++i].split (",")) {
+            targets.add (Integer.parseInt (target.trim ()));
+          }
+        } else if (args[i].equals ("--seed") && i + 1 < args.length) {
+          seed = Long.parseLong (args[++i]);
+        } else if (args[i].equals ("--test-scenes") && i + 1 < args.length) {
+          numTestScenes = Integer.parseInt (args[++i]);
+        } else if (args[i].equals ("--fixations") && i + 1 < args.length) {
+          numFixations = Integer.parseInt (args[++i]);
+        } else if (args[i].equals ("--max-passes") && i + 1 < args.length) {
+          maxPasses = Integer.parseInt (args[++i]);
+        } else if (args[i].startsWith ("--")) {
+          usage ();
+        } else {
+          files.add (args[i]);
+        }
+      }
+    } catch (NumberFormatException nfe) {
+      usage ();
+    }
+    if (files.size () != 2) usage ();
+    if (targets.isEmpty ()) {
+      targets.add (10000);
+      targets.add (50000);
+      targets.add (100000);
+      targets.add (500000);
+    }
+
+    try {
+      TrainingBenchmark benchmark = new TrainingBenchmark (Fixtures.readScenes (files.get (0)),
+          seed, numTestScenes, numFixations, maxPasses);
+      PrintWriter output = new PrintWriter (new FileWriter (files.get (1)));
+      try {
+        output.println (HEADER);
+        for (int target : targets) {
+          String line = benchmark.run (target);
+          output.println (line);
+          output.flush ();
+          System.out.println (line);
+        }
+      } finally {
+        output.close ();
+      }
+    } catch (IOException ioe) {
+      System.err.println ("Error: " + ioe.getMessage ());
+      System.exit (1);
+    }
+  }
+}
@@ -6,6 +6,10 @@ repositories.remote << 'http://repo1.maven.org/maven2'
 
 JCOMMON = 'jfree:jcommon:jar:1.0.16'
 JFREECHART = 'jfree:jfreechart:jar:1.0.13'
+JMH = ['org.openjdk.jmh:jmh-core:jar:1.37',
+       'org.openjdk.jmh:jmh-generator-annprocess:jar:1.37',
+       'net.sf.jopt-simple:jopt-simple:jar:5.0.4',
+       'org.apache.commons:commons-math3:jar:3.6.1']
 
 define 'chrest' do
   project.version = VERSION
@@ -17,6 +21,38 @@ define 'chrest' do
   )
 
   run.with(JCOMMON, JFREECHART).using :main => "jchrest.gui.Shell"
+
+  # JMH benchmarks, in benchmarks/src/main/java: the annotation processor 
+  # on the compile path generates the benchmark list
+  define 'benchmarks' do
+    compile.with project('chrest'), JMH
+    run.with(project('chrest'), JCOMMON, JFREECHART, JMH).using :main => "org.openjdk.jmh.Main"
+  end
+end
+
+desc 'run the JMH benchmarks: use from the top directory, so the sample data is found'
+task :benchmarks => 'chrest:benchmarks:run'
+
+desc 'train and recall chess positions to fixed network sizes, writing target/training-benchmark.csv'
+task 'training-benchmark' => 'chrest:benchmarks:compile' do
+  Java::Commands.java('jchrest.benchmarks.TrainingBenchmark', '--seed', ENV['SEED'] || '0',
+    'examples/sample-data/chess-positions.dat', 'target/training-benchmark.csv',
+    :classpath => [project('chrest').compile.target, project('chrest:benchmarks').compile.target],
+    :java_args => ['-Xmx4g'])
+end
+
+desc 'measure bytes allocated by the learning workloads, writing target/allocation-profile.csv'
+task 'allocation-profile' => 'chrest:benchmarks:compile' do
+  Java::Commands.java('jchrest.benchmarks.AllocationProfile', '--seed', ENV['SEED'] || '0',
+    'examples/sample-data/chess-positions.dat', 'target/allocation-profile.csv',
+    :classpath => [project('chrest').compile.target, project('chrest:benchmarks').compile.target])
+end
+
+desc 'run a data file without the shell: e.g. buildr batch DATA=examples/sample-data/demo-1.txt ARGS="--runs 4"'
+task :batch => :compile do
+  args = (ENV['ARGS'] || '').split + [ENV['DATA'] || 'examples/sample-data/visual-search.txt']
+  args << ENV['OUTPUT'] if ENV['OUTPUT']
+  Java::Commands.java('jchrest.cli.BatchRunner', *args, :classpath => [project('chrest').compile.target])
 end
 
 desc 'build the user guide'
@@ -58,8 +58,6 @@ for pattern in Patterns
   end
 end
 
-if @@model.ltmVisualSize < 50000 # TODO try to resolve this limit on display size
-  @@view = ChrestView.new(nil, @@model)
-end
+@@view = ChrestView.new(nil, @@model)
 
 puts "Network contains #{@@model.ltmVisualSize} nodes"
@@ -14,6 +14,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * The parent class for an instance of a Chrest model.
@@ -31,6 +33,8 @@ public class Chrest extends Observable {
   private int _familiarisationTime;
   // rho is the probability that a given learning operation will occur
   private float _rho;
+  // source of random numbers for rho, which may be seeded for repeatable runs
+  private final Random _random = new Random ();
   // parameter for construction of semantic link
   private boolean _createSemanticLinks;
   // - determines number of overlapping items in node images
@@ -43,6 +47,8 @@ public class Chrest extends Observable {
   private int _minTemplateOccurrences = 2;
   // long-term-memory holds information within the model permanently
   private int _totalNodes;
+  // every node except the roots, in order of reference
+  private final List<Node> _nodes;
   private Node _visualLtm;
   private Node _verbalLtm;
   private Node _actionLtm;
@@ -54,6 +60,18 @@ public class Chrest extends Observable {
   private final Perceiver _perceiver;
   // Emotions module
   private EmotionAssociator _emotionAssociator;
+  // counts and timings of operations
+  private final ChrestMetrics _metrics = new ChrestMetrics ();
+  // optional record of learning steps, and depth of nesting of current step
+  private LearningJournal _journal = null;
+  private int _journalDepth = 0;
+  // told of each change to long-term memory
+  private final List<LtmListener> _ltmListeners = new CopyOnWriteArrayList<LtmListener> ();
+  // last snapshot of long-term memory, read by other threads
+  private volatile LtmSnapshot _ltmSnapshot = null;
+  // nodes made before the model last forked are shared, and copied when changed
+  private int _generation = 0;
+  private boolean _sharesLtm = false;
 
   public Chrest () {
     _domainSpecifics = new GenericDomain ();
@@ -65,6 +83,7 @@ public class Chrest extends Observable {
 
     _clock = 0;
     _totalNodes = 0;
+    _nodes = new ArrayList<Node> ();
     _visualLtm = new Node (this, 0, Pattern.makeVisualList (new String[]{"Root"}));
     _verbalLtm = new Node (this, 0, Pattern.makeVerbalList (new String[]{"Root"}));
     _actionLtm = new Node (this, 0, Pattern.makeActionList (new String[]{"Root"}));
@@ -79,6 +98,140 @@ public class Chrest extends Observable {
     _perceiver = new Perceiver (this);
   }
 
+  /**
+   * Constructor for a fork of the given model, sharing its LTM.
+   */
+  private Chrest (Chrest model) {
+    _domainSpecifics = model._domainSpecifics;
+    _addLinkTime = model._addLinkTime;
+    _discriminationTime = model._discriminationTime;
+    _familiarisationTime = model._familiarisationTime;
+    _rho = model._rho;
+    _similarityThreshold = model._similarityThreshold;
+    _maximumSemanticDistance = model._maximumSemanticDistance;
+    _createTemplates = model._createTemplates;
+    _createSemanticLinks = model._createSemanticLinks;
+    _minTemplateLevel = model._minTemplateLevel;
+    _minTemplateOccurrences = model._minTemplateOccurrences;
+    _experienced = model._experienced;
+
+    _clock = model._clock;
+    _totalNodes = model._totalNodes;
+    _nodes = new ArrayList<Node> (model._nodes);
+    _visualLtm = model._visualLtm;
+    _verbalLtm = model._verbalLtm;
+    _actionLtm = model._actionLtm;
+    _visualStm = new Stm (model._visualStm);
+    _verbalStm = new Stm (model._verbalStm);
+    _actionStm = new Stm (model._actionStm);
+    _emotionAssociator = new EmotionAssociator ();
+    _perceiver = new Perceiver (this);
+    _ltmSnapshot = model._ltmSnapshot;
+    _sharesLtm = true;
+  }
+
+  /**
+   * Create an independent copy of this model, with the same parameters,
+   * clock, LTM and STM, for comparing how each goes on to learn.  The two
+   * models share their long-term memories: a node is only copied when
+   * first changed or recognised by either model, together with the nodes
+   * on the path down to it, so forking costs little even for a large LTM.
+   * The fork has its own random numbers, so use setRandomSeed for repeatable
+   * runs; it has no journal, observers or emotional traces.  Must be called
+   * between learning steps, on the thread training the model.
+   */
+  public Chrest fork () {
+    Chrest fork = new Chrest (this);
+    _generation += 1;
+    _sharesLtm = true;
+    ownStm ();
+    fork.ownStm ();
+    return fork;
+  }
+
+  int getGeneration () {
+    return _generation;
+  }
+
+  /**
+   * Return this model's current copy of the given node, which may have been
+   * copied since a fork, or null if the node is null.
+   */
+  Node current (Node node) {
+    if (!_sharesLtm || node == null) return node;
+    if (node.getReference () == 0) return getLtmByModality (node.getContents ());
+    Node copy = getNode (node.getReference ());
+    return (copy == null ? node : copy);
+  }
+
+  List<Node> current (List<Node> nodes) {
+    if (!_sharesLtm) return nodes;
+    List<Node> copies = null;
+    for (int i = 0; i < nodes.size (); ++i) {
+      Node copy = current (nodes.get (i));
+      if (copies == null && copy != nodes.get (i)) {
+        copies = new ArrayList<Node> (nodes.subList (0, i));
+      }
+      if (copies != null) copies.add (copy);
+    }
+    return (copies == null ? nodes : copies);
+  }
+
+  /**
+   * Return this model's own copy of the given node, which it may change.
+   * A node shared with a fork is copied, along with any shared nodes above
+   * it, and the copy replaces the node in LTM and STM.
+   */
+  Node writable (Node node) {
+    node = current (node);
+    if (!node.isShared ()) return node;
+
+    Node copy;
+    if (node.getReference () == 0) {
+      copy = new Node (this, node, null);
+      if (node == _visualLtm) {
+        _visualLtm = copy;
+      } else if (node == _verbalLtm) {
+        _verbalLtm = copy;
+      } else {
+        _actionLtm = copy;
+      }
+    } else {
+      Node parent = writable (node.getParent ());
+      copy = new Node (this, node, parent);
+      parent.replaceTestLink (node, copy);
+      _nodes.set (node.getReference () - 1, copy);
+    }
+    _visualStm.replace (node, copy);
+    _verbalStm.replace (node, copy);
+    _actionStm.replace (node, copy);
+    for (LtmListener listener : _ltmListeners) {
+      listener.nodeReplaced (node, copy);
+    }
+    return copy;
+  }
+
+  /**
+   * Take this model's own copies of the nodes in STM, which may be changed.
+   */
+  private void ownStm () {
+    for (Stm stm : new Stm[]{_visualStm, _verbalStm, _actionStm}) {
+      for (int i = 0; i < stm.getCount (); ++i) {
+        writable (stm.getItem (i));
+      }
+    }
+  }
+
+  /**
+   * Make every node below the given one, which must be this model's own,
+   * this model's own too.
+   */
+  private void ownSubtree (Node node) {
+    for (Link link : node.getChildren ()) {
+      ownSubtree (writable (link.getChildNode ()));
+    }
+  }
+
   /**
    * Retrieve the model's current domain specification.
    */
@@ -149,6 +302,15 @@ public class Chrest extends Observable {
     _rho = rho;
   }
 
+  /**
+   * Seed the random numbers used in learning and in moving the eye, so 
+   * that repeating a run with the same seed and data gives the same model.
+   */
+  public void setRandomSeed (long seed) {
+    _random.setSeed (seed);
+    _perceiver.setRandomSeed (seed);
+  }
+
   /**
    * Accessor to retrieve value of similarity threshold, the number of items 
    * which must be shared between two images for a semantic link to be formed.
@@ -261,6 +423,13 @@ public class Chrest extends Observable {
     setChanged ();
   }
 
+  /**
+   * Set the clock, when replaying a journal.
+   */
+  void setClock (int time) {
+    _clock = time;
+  }
+
   /**
    * Retrieve the next available node number.
    * Package access only, as should only be used by Node.java.
@@ -270,6 +439,20 @@ public class Chrest extends Observable {
     return _totalNodes;
   }
 
+  /**
+   * Record a new non-root node, so it can be found by its reference.
+   */
+  void addNode (Node node) {
+    _nodes.add (node);
+  }
+
+  /**
+   * Return the non-root node with the given reference, or null if there is none.
+   */
+  Node getNode (int reference) {
+    return (reference >= 1 && reference <= _nodes.size () ? _nodes.get (reference - 1) : null);
+  }
+
   /**
    * Accessor to retrieve the total number of nodes within LTM.
    */
@@ -291,6 +474,13 @@ public class Chrest extends Observable {
     return _verbalStm;
   }
 
+  /**
+   * Accessor to retrieve the model's action short-term memory.
+   */
+  public Stm getActionStm () {
+    return _actionStm;
+  }
+
   /**
    * Accessor to retrieve visual long-term memory of model.
    */
@@ -298,6 +488,20 @@ public class Chrest extends Observable {
     return _visualLtm;
   }
 
+  /**
+   * Accessor to retrieve verbal long-term memory of model.
+   */
+  public Node getVerbalLtm () {
+    return _verbalLtm;
+  }
+
+  /**
+   * Accessor to retrieve action long-term memory of model.
+   */
+  public Node getActionLtm () {
+    return _actionLtm;
+  }
+
   /** 
    * Return a count of the number of nodes in visual long-term memory.
    */
@@ -355,7 +559,7 @@ public class Chrest extends Observable {
    */
   public boolean isExperienced () {
     if (!_experienced) {
-      if (ltmVisualSize()+ltmVerbalSize()+ltmActionSize() > 2000)
+      if (_totalNodes + 3 > 2000) // every node, with the three roots
         _experienced = true;
     }
     return _experienced;
@@ -370,7 +574,21 @@ public class Chrest extends Observable {
    */
   public void constructTemplates () {
     if (_createTemplates) {
+      LearningEvents.ConstructTemplates event = new LearningEvents.ConstructTemplates ();
+      event.begin ();
+      if (_sharesLtm) ownSubtree (writable (_visualLtm)); // every node may become a template
       _visualLtm.constructTemplates ();
+      event.end ();
+      if (event.shouldCommit ()) {
+        event.nodeReference = _visualLtm.getReference ();
+        event.nodes = ltmVisualSize ();
+        event.templates = countTemplates ();
+        event.clock = _clock;
+        event.commit ();
+      }
+      if (_journal != null) {
+        _journal.recordConstructTemplates (_journalDepth, _clock);
+      }
     }
   }
 
@@ -469,7 +687,8 @@ public class Chrest extends Observable {
    * Add given node to STM.  Check for formation of semantic links by
    * comparing incoming node with the hypothesis, or 'largest', node.
    */
-  private void addToStm (Node node) {
+  void addToStm (Node node) {
+    node = writable (node);
     Stm stm = getStmByModality (node.getImage ());
 
     if (stm.getCount () > 0) {
@@ -477,8 +696,19 @@ public class Chrest extends Observable {
       if (check.getContents().isVisual () && // only add semantic links for visual
           check != node && 
           node.getImage().isSimilarTo (check.getImage (), _similarityThreshold)) {
+        LearningEvents.SemanticLink event = new LearningEvents.SemanticLink ();
+        event.begin ();
+        // only look for an existing link when the event is being recorded
+        boolean linked = event.isEnabled () && !node.getSemanticLinks().contains (check);
         node.addSemanticLink (check); 
         check.addSemanticLink (node); // two-way semantic link
+        if (linked && event.shouldCommit ()) {
+          event.nodeReference = node.getReference ();
+          event.linkedNodeReference = check.getReference ();
+          event.patternSize = node.getImage().size ();
+          event.clock = _clock;
+          event.commit ();
+        }
       }
     }
 
@@ -486,13 +716,84 @@ public class Chrest extends Observable {
     // Idea is that node's filled slots are cleared when put into STM, 
     // are filled whilst in STM, and forgotten when it leaves.
     node.clearFilledSlots (); 
-    stm.add (node);
+    _metrics.recordStmEvictions (stm.add (node));
 
     // inform observers of a change in model's state
     setChanged ();
     if (!_frozen) notifyObservers ();
   }
 
+  /**
+   * Accessor to retrieve the counts and timings of the model's operations.
+   */
+  public ChrestMetrics getMetrics () {
+    return _metrics;
+  }
+
+  /**
+   * Record each learning step in the given journal, or stop recording if null.
+   * The journal is not closed by the model.
+   */
+  public void setJournal (LearningJournal journal) {
+    _journal = journal;
+  }
+
+  public LearningJournal getJournal () {
+    return _journal;
+  }
+
+  /**
+   * Tell the given listener of each change to long-term memory, as it is made.
+   */
+  public void addLtmListener (LtmListener listener) {
+    _ltmListeners.add (listener);
+  }
+
+  public void removeLtmListener (LtmListener listener) {
+    _ltmListeners.remove (listener);
+  }
+
+  void fireNodeAdded (Node parent, Node child) {
+    for (LtmListener listener : _ltmListeners) {
+      listener.nodeAdded (parent, child);
+    }
+  }
+
+  void fireImageChanged (Node node) {
+    for (LtmListener listener : _ltmListeners) {
+      listener.imageChanged (node);
+    }
+  }
+
+  void fireLinkAdded (Node node) {
+    for (LtmListener listener : _ltmListeners) {
+      listener.linkAdded (node);
+    }
+  }
+
+  /**
+   * Take a snapshot of long-term memory, which other threads may then read
+   * while the model continues learning; see {@link LtmSnapshot}.  Only parts
+   * of LTM changed since the last snapshot are copied.  Must be called on the
+   * thread training the model, between learning steps.
+   */
+  public LtmSnapshot takeLtmSnapshot () {
+    _ltmSnapshot = new LtmSnapshot (this, _ltmSnapshot);
+    return _ltmSnapshot;
+  }
+
+  /**
+   * Retrieve the last snapshot of long-term memory, or null if none has been
+   * taken since the model was created or cleared.  Safe to call from any thread.
+   */
+  public LtmSnapshot getLtmSnapshot () {
+    return _ltmSnapshot;
+  }
+
+  int getMaximumSemanticDistance () {
+    return _maximumSemanticDistance;
+  }
+
   /**
    * Accessor to retrieve the model's perceiver object.
    */
@@ -508,14 +809,40 @@ public class Chrest extends Observable {
    * children of the new node.
    */
   public Node recognise (ListPattern pattern) {
+    long start = _metrics.startTiming ();
+    // nodes in STM may be changed, so must be the model's own
+    Node currentNode = writable (sortPattern (pattern));
+
+    // add retrieved node to STM
+    addToStm (currentNode);
+    if (_journal != null) {
+      _journal.recordRecognise (_journalDepth, pattern, currentNode);
+    }
+
+    _metrics.getRecogniseTimes().stopTiming (start);
+    // return retrieved node
+    return currentNode;
+  }
+
+  /**
+   * Sort the given pattern through long-term memory, and return the retrieved node, 
+   * after searching its semantic links.  Unlike recognise, the node is not placed 
+   * into STM, and the model is not changed in any way, so this method may be 
+   * called from several threads at once on a model which is not learning.
+   */
+  Node sortPattern (ListPattern pattern) {
     Node currentNode = getLtmByModality (pattern);
     List<Link> children = currentNode.getChildren ();
     ListPattern sortedPattern = pattern;
     int nextLink = 0;
+    int linkTests = 0;
+    int depth = 0;
 
     while (nextLink < children.size ()) {
       Link link = children.get (nextLink);
+      linkTests += 1;
       if (link.passes (sortedPattern)) { // descend a test link in network
+        depth += 1;
         // reset the current node, list of children and link index
         currentNode = link.getChildNode ();
         children = link.getChildNode ().getChildren ();
@@ -527,14 +854,10 @@ public class Chrest extends Observable {
       }
     }
 
-    // try to retrieve a more informative node in semantic links
-    currentNode = currentNode.searchSemanticLinks (_maximumSemanticDistance);
-
-    // add retrieved node to STM
-    addToStm (currentNode);
+    _metrics.recordSort (linkTests, depth);
 
-    // return retrieved node
-    return currentNode;
+    // try to retrieve a more informative node in semantic links
+    return currentNode.searchSemanticLinks (_maximumSemanticDistance, this);
   }
 
   /** 
@@ -545,25 +868,67 @@ public class Chrest extends Observable {
    * to the image using the pattern.
    */
   public Node recogniseAndLearn (ListPattern pattern, int time) {
-    Node currentNode = recognise (pattern);
-    if (_clock <= time) { // only try to learn if model clock is 'behind' the time of the call
-      if (Math.random () < _rho) { // depending on _rho, may refuse to learn some random times
-        _clock = time; // bring clock up to date
-        if (!currentNode.getImage().equals (pattern)) { // only try any learning if image differs from pattern
-          if (currentNode == getLtmByModality (pattern) || // if is rootnode
-              !currentNode.getImage().matches (pattern) || // or mismatch on image
-              currentNode.getImage().isFinished ()) {      // or image finished
-            currentNode = currentNode.discriminate (pattern); // then discriminate
-          } else  { // else familiarise
-            currentNode = currentNode.familiarise (pattern);
-          }
-          addToStm (currentNode); // add to stm, as node may have changed during learning
+    long start = _metrics.startTiming ();
+    Node currentNode;
+    _journalDepth += 1;
+    try {
+      currentNode = recognise (pattern);
+    } finally {
+      _journalDepth -= 1;
+    }
+    // only try to learn if model clock is 'behind' the time of the call, and
+    // depending on _rho, may refuse to learn some random times
+    boolean learning = (_clock <= time && _random.nextDouble () < _rho);
+    if (learning) {
+      currentNode = learnPattern (currentNode, pattern, time);
+    }
+    if (_journal != null) {
+      _journal.recordRecogniseAndLearn (_journalDepth, pattern, time, learning, currentNode, _clock);
+    }
+    _metrics.getRecogniseAndLearnTimes().stopTiming (start);
+    return currentNode;
+  }
+
+  /**
+   * Learn the given pattern at the node it was recognised as, once
+   * recogniseAndLearn has decided to learn.  Returns the node learnt.
+   */
+  Node learnPattern (Node currentNode, ListPattern pattern, int time) {
+    currentNode = writable (currentNode);
+    _clock = time; // bring clock up to date
+    if (!currentNode.getImage().equals (pattern)) { // only try any learning if image differs from pattern
+      // patterns recognised while learning are recognised again when
+      // this step is replayed, so are not journalled
+      LearningJournal journal = _journal;
+      _journal = null;
+      try {
+        if (currentNode == getLtmByModality (pattern) || // if is rootnode
+            !currentNode.getImage().matches (pattern) || // or mismatch on image
+            currentNode.getImage().isFinished ()) {      // or image finished
+          currentNode = currentNode.discriminate (pattern); // then discriminate
+        } else  { // else familiarise
+          currentNode = currentNode.familiarise (pattern);
         }
+      } finally {
+        _journal = journal;
       }
+      addToStm (currentNode); // add to stm, as node may have changed during learning
     }
     return currentNode;
   }
 
+  /**
+   * Make the given node the hypothesis of visual STM, as the perceiver does
+   * when following a test link.
+   */
+  void replaceVisualHypothesis (Node node) {
+    node = writable (node);
+    _visualStm.replaceHypothesis (node);
+    if (_journal != null) {
+      _journal.recordReplaceHypothesis (_journalDepth, node);
+    }
+  }
+
   /**
    * Used to learn about a new pattern.  Returns the node learnt.
    */
@@ -576,12 +941,22 @@ public class Chrest extends Observable {
    * of the same or different modality.  Returns the node learnt for the first pattern.
    */
   public Node associateAndLearn (ListPattern pattern1, ListPattern pattern2, int time) {
-    if (ListPattern.isSameModality (pattern1, pattern2)) {
-      return learnAndLinkPatterns(pattern1, pattern2, time);
-    } else {
-      // TODO: Handle differing modalities.
-      return null;
+    Node node = null;
+    _journalDepth += 1;
+    try {
+      if (ListPattern.isSameModality (pattern1, pattern2)) {
+        node = learnAndLinkPatterns(pattern1, pattern2, time);
+      } else {
+        // TODO: Handle differing modalities.
+        node = null;
+      }
+    } finally {
+      _journalDepth -= 1;
+    }
+    if (_journal != null) {
+      _journal.recordAssociateAndLearn (_journalDepth, pattern1, pattern2, time, node, _clock);
     }
+    return node;
   }
 
   public Node associateAndLearn (ListPattern pattern1, ListPattern pattern2) {
@@ -698,16 +1073,28 @@ public class Chrest extends Observable {
    * Learn and link a visual and verbal pattern with a naming link.
    */
   public void learnAndNamePatterns (ListPattern pattern1, ListPattern pattern2, int time) {
-    recogniseAndLearn (pattern1, time);
-    recogniseAndLearn (pattern2, time);
+    Node namedNode = null;
+    Node namingNode = null;
+    _journalDepth += 1;
+    try {
+      recogniseAndLearn (pattern1, time);
+      recogniseAndLearn (pattern2, time);
+    } finally {
+      _journalDepth -= 1;
+    }
     if (_clock <= time) {
       if (pattern1.isVisual () && pattern2.isVerbal () && _visualStm.getCount () > 0 && _verbalStm.getCount () > 0) {
-        _visualStm.getItem(0).setNamedBy (_verbalStm.getItem (0));
+        namedNode = _visualStm.getItem (0);
+        namingNode = _verbalStm.getItem (0);
+        namedNode.setNamedBy (namingNode);
         advanceClock (getAddLinkTime ());
       }
       setChanged ();
       if (!_frozen) notifyObservers ();
     }
+    if (_journal != null) {
+      _journal.recordLearnAndNamePatterns (_journalDepth, pattern1, pattern2, time, namedNode, namingNode, _clock);
+    }
   }
 
   public void learnAndNamePatterns (ListPattern pattern1, ListPattern pattern2) {
@@ -715,11 +1102,13 @@ public class Chrest extends Observable {
   }
 
   public void learnScene (Scene scene, int numFixations) {
+    long start = _metrics.startTiming ();
     _perceiver.setScene (scene);
     _perceiver.start (numFixations);
     for (int i = 0; i < numFixations; i++) {
       _perceiver.moveEyeAndLearn ();
     }
+    _metrics.getLearnSceneTimes().stopTiming (start);
   }
 
   /**
@@ -728,19 +1117,31 @@ public class Chrest extends Observable {
    * TODO: think about if there should be limitations on this.
    */
   public void learnSceneAndMove (Scene scene, Move move, int numFixations) {
-    learnScene (scene, numFixations);
-    recogniseAndLearn (move.asListPattern ());
+    _journalDepth += 1;
+    try {
+      learnScene (scene, numFixations);
+      recogniseAndLearn (move.asListPattern ());
+    } finally {
+      _journalDepth -= 1;
+    }
     // attempt to link action with each perceived chunk
+    List<Node> linkedNodes = new ArrayList<Node> ();
+    Node actionNode = null;
     if (_visualStm.getCount () > 0 && _actionStm.getCount () > 0) {
+      actionNode = _actionStm.getItem (0);
       for (Node node : _visualStm) {
-        node.addActionLink (_actionStm.getItem (0));
+        node.addActionLink (actionNode);
+        linkedNodes.add (node);
       }
     }
+    if (_journal != null) {
+      _journal.recordLearnSceneAndMove (_journalDepth, scene, move, numFixations, actionNode, linkedNodes, _clock);
+    }
     setChanged ();
     if (!_frozen) notifyObservers ();
   }
 
-  private boolean sameColour (ListPattern move, String colour) {
+  private static boolean sameColour (ListPattern move, String colour) {
     if (colour == null) return true;
     if ((move.size () == 1) && (move.getItem(0) instanceof ItemSquarePattern)) {
         ItemSquarePattern m = (ItemSquarePattern)move.getItem (0);
@@ -751,56 +1152,39 @@ public class Chrest extends Observable {
   }
 
   /**
-   * Return a map of moves vs frequencies.
+   * Return a map of moves vs frequencies: the number of times each move has 
+   * been linked to the nodes in STM after scanning the scene.
    */
   public Map<ListPattern, Integer> getMovePredictions (Scene scene, int numFixations, String colour) {
     scanScene (scene, numFixations);
     // create a map of moves to their frequency of occurrence in nodes of STM
     Map<ListPattern, Integer> moveFrequencies = new HashMap<ListPattern, Integer> ();
     for (Node node : _visualStm) {
-      for (Node action : node.getActionLinks ()) {
-        if (sameColour(action.getImage(), colour)) {
-          if (moveFrequencies.containsKey(action.getImage ())) {
-            moveFrequencies.put (
-                action.getImage (), 
-                moveFrequencies.get(action.getImage ()) + 1
-                );
-          } else {
-            moveFrequencies.put (action.getImage (), 1);
-          }
-        }
+      List<Node> actions = node.getActionLinks ();
+      for (int i = 0; i < actions.size (); i++) {
+        addMoveFrequency (moveFrequencies, actions.get(i).getImage (), node.getActionLinkCount (i), colour);
       }
     }
     return moveFrequencies;
   }
 
+  // add count to the frequency of the move, returning true if it is of the given colour
+  private static boolean addMoveFrequency (Map<ListPattern, Integer> moveFrequencies, ListPattern move, int count, String colour) {
+    if (sameColour (move, colour)) {
+      Integer frequency = moveFrequencies.get (move);
+      moveFrequencies.put (move, (frequency == null ? count : frequency + count));
+      return true;
+    } else {
+      return false;
+    }
+  }
+
   /**
    * Predict a move using a CHUMP-like mechanism.
    * TODO: Improve the heuristics here.
    */
   public Move predictMove (Scene scene, int numFixations) {
-    Map<ListPattern, Integer> moveFrequencies = getMovePredictions (scene, numFixations, null);
-    // find the most frequent pattern
-    ListPattern best = null;
-    int bestFrequency = 0;
-    for (ListPattern key : moveFrequencies.keySet ()) {
-      if (moveFrequencies.get (key) > bestFrequency) {
-        best = key;
-        bestFrequency = moveFrequencies.get (key);
-      }
-    }
-    // create a move to return
-    if (best == null) {
-      return new Move ("UNKNOWN", 0, 0);
-    } else {
-      // list pattern should be one item long, with the first item being an ItemSquarePattern
-      if ((best.size () == 1) && (best.getItem(0) instanceof ItemSquarePattern)) {
-        ItemSquarePattern move = (ItemSquarePattern)best.getItem (0);
-        return new Move (move.getItem (), move.getRow (), move.getColumn ());
-      } else {
-        return new Move ("UNKNOWN", 0, 0);
-      }
-    }
+    return predictMove (scene, numFixations, null);
   }
 
   /**
@@ -808,28 +1192,57 @@ public class Chrest extends Observable {
    * TODO: Improve the heuristics here.
    */
   public Move predictMove (Scene scene, int numFixations, String colour) {
-    Map<ListPattern, Integer> moveFrequencies = getMovePredictions (scene, numFixations, colour);
+    scanScene (scene, numFixations);
+    Map<ListPattern, Integer> moveFrequencies = getMoveFrequencies (_visualStm, colour);
     // find the most frequent pattern
     ListPattern best = null;
     int bestFrequency = 0;
-    for (ListPattern key : moveFrequencies.keySet ()) {
-      if (moveFrequencies.get (key) > bestFrequency) {
-        best = key;
-        bestFrequency = moveFrequencies.get (key);
+    for (Map.Entry<ListPattern, Integer> entry : moveFrequencies.entrySet ()) {
+      if (entry.getValue () > bestFrequency) {
+        best = entry.getKey ();
+        bestFrequency = entry.getValue ();
       }
     }
-    // create a move to return
-    if (best == null) {
-      return new Move ("UNKNOWN", 0, 0);
-    } else {
-      // list pattern should be one item long, with the first item being an ItemSquarePattern
-      if ((best.size () == 1) && (best.getItem(0) instanceof ItemSquarePattern)) {
-        ItemSquarePattern move = (ItemSquarePattern)best.getItem (0);
-        return new Move (move.getItem (), move.getRow (), move.getColumn ());
-      } else {
-        return new Move ("UNKNOWN", 0, 0);
+    return asMove (best);
+  }
+
+  /**
+   * Return a map of moves vs frequencies for predicting a move from the 
+   * given STM.  Only the strongest action links of each node are merged, 
+   * see Node.getTopActionLinks, unless none of them is a move of the given 
+   * colour.
+   */
+  static Map<ListPattern, Integer> getMoveFrequencies (Stm stm, String colour) {
+    Map<ListPattern, Integer> moveFrequencies = new HashMap<ListPattern, Integer> ();
+    for (Node node : stm) {
+      List<Node> actions = node.getTopActionLinks ();
+      boolean found = false;
+      for (int i = 0; i < actions.size (); i++) {
+        found |= addMoveFrequency (moveFrequencies, actions.get(i).getImage (), node.getTopActionLinkCount (i), colour);
+      }
+      if (!found && node.getActionLinks().size () > actions.size ()) {
+        // the strongest links are of the other colour, so look at them all
+        List<Node> allActions = node.getActionLinks ();
+        for (int i = 0; i < allActions.size (); i++) {
+          addMoveFrequency (moveFrequencies, allActions.get(i).getImage (), node.getActionLinkCount (i), colour);
+        }
       }
     }
+    return moveFrequencies;
+  }
+
+  /**
+   * Convert a predicted move pattern to a move, which is UNKNOWN if there 
+   * is no pattern.
+   */
+  static Move asMove (ListPattern pattern) {
+    // list pattern should be one item long, with the first item being an ItemSquarePattern
+    if (pattern != null && (pattern.size () == 1) && (pattern.getItem(0) instanceof ItemSquarePattern)) {
+      ItemSquarePattern move = (ItemSquarePattern)pattern.getItem (0);
+      return new Move (move.getItem (), move.getRow (), move.getColumn ());
+    } else {
+      return new Move ("UNKNOWN", 0, 0);
+    }
   }
 
   /** 
@@ -844,32 +1257,15 @@ public class Chrest extends Observable {
    * Scan given scene, then return a scene which would be recalled.
    */
   public Scene scanScene (Scene scene, int numFixations, boolean clearStm) {
+    long start = _metrics.startTiming ();
     if (clearStm) { // only clear STM if flag is set
       _visualStm.clear ();
     }
     _perceiver.setScene (scene);
-    _perceiver.start (numFixations);
-    for (int i = 0; i < numFixations; i++) {
-      _perceiver.moveEye ();
-    }
+    _perceiver.scan (numFixations);
     // build up and return recalled scene
-    Scene recalledScene = new Scene ("Recalled scene of " + scene.getName (), 
-        scene.getHeight (), scene.getWidth ());
-    // -- get items from image in STM, and optionally template slots
-    // TODO: use frequency count in recall
-    for (Node node : _visualStm) {
-      ListPattern recalledInformation = node.getImage();
-      if (_createTemplates) { // check if templates needed
-        recalledInformation = recalledInformation.append(node.getFilledSlots ());
-      }
-      for (PrimitivePattern item : recalledInformation) {
-        if (item instanceof ItemSquarePattern) {
-          ItemSquarePattern ios = (ItemSquarePattern)item;
-          recalledScene.setItem (ios.getRow ()-1, ios.getColumn ()-1, ios.getItem ());
-        }
-      }
-    }
-
+    Scene recalledScene = _perceiver.recallScene (scene);
+    _metrics.getScanSceneTimes().stopTiming (start);
     return recalledScene;
   }
 
@@ -885,8 +1281,18 @@ public class Chrest extends Observable {
     _verbalLtm = new Node (this, 0, Pattern.makeVerbalList (new String[]{"Root"}));
     _actionLtm = new Node (this, 0, Pattern.makeActionList (new String[]{"Root"}));
     _totalNodes = 0;
+    _nodes.clear ();
+    _ltmSnapshot = null; // references restart, so nothing can be shared
+    _sharesLtm = false;
+    _emotionAssociator.clear (); // traces are held by node reference
     _visualStm.clear ();
     _verbalStm.clear ();
+    if (_journal != null) {
+      _journal.recordClear (_journalDepth);
+    }
+    for (LtmListener listener : _ltmListeners) {
+      listener.ltmCleared ();
+    }
     setChanged ();
     if (!_frozen) notifyObservers ();
   }
@@ -923,13 +1329,26 @@ public class Chrest extends Observable {
   }
 
   /**
-   * Propagate emotion across all the given STMs.
+   * Propagate emotion across all the given STMs, one STM after another, so
+   * each STM sees the emotions set by those before it.
    */
   public void emoteAndPropagateAcrossModalities (Object stmsobject) {
     Stm[] stms = (Stm[]) stmsobject;
     _emotionAssociator.emoteAndPropagateAcrossModalities (stms, _clock);
   }
 
+  /**
+   * Propagate emotion across all the given STMs, updating all cues together
+   * in one batch from the emotions held before the call, as described in
+   * {@link EmotionAssociator#propagateAcrossModalities}.  Much faster than
+   * emoteAndPropagateAcrossModalities for large STMs, but the results differ
+   * where more than one STM has an emotion to spread.
+   */
+  public void propagateAcrossModalities (Object stmsobject) {
+    Stm[] stms = (Stm[]) stmsobject;
+    _emotionAssociator.propagateAcrossModalities (stms, _clock);
+  }
+
   /**
    * Attach given emotion to top item in STM, if present.
    */
@@ -0,0 +1,347 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.architecture;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counts of the learning and retrieval operations performed by a model,
+ * with histograms of the time taken by its main operations.  Counters are
+ * striped, so threads sharing a model, e.g. in {@link RecallEvaluator}, do
+ * not contend, and histograms have fixed buckets, so recording allocates
+ * nothing.  Recording is on by default and can be turned off with setEnabled.
+ *
+ * The metrics can be published as an MBean using {@link #register}, and
+ * viewed with e.g. jconsole.
+ *
+ * @author Peter C. R. Lane
+ */
+public class ChrestMetrics implements ChrestMetricsMBean {
+  // returned by startTiming when disabled, so the time is not recorded
+  static final long NOT_TIMED = Long.MIN_VALUE;
+
+  private volatile boolean _enabled;
+
+  private final LongAdder _discriminations = new LongAdder ();
+  private final LongAdder _familiarisations = new LongAdder ();
+  private final LongAdder _primitivesLearnt = new LongAdder ();
+  private final LongAdder _sorts = new LongAdder ();
+  private final LongAdder _linkTests = new LongAdder ();
+  private final LongAdder _sortDepth = new LongAdder ();
+  private final LongAdder _semanticLinkHops = new LongAdder ();
+  private final LongAdder _stmEvictions = new LongAdder ();
+  private final LongAdder _slotFillings = new LongAdder ();
+  private final LongAdder _slotsFilled = new LongAdder ();
+
+  private final Histogram _recognise = new Histogram ();
+  private final Histogram _recogniseAndLearn = new Histogram ();
+  private final Histogram _learnScene = new Histogram ();
+  private final Histogram _scanScene = new Histogram ();
+
+  private ObjectName _name = null;
+
+  public ChrestMetrics () {
+    _enabled = true;
+  }
+
+  /**
+   * Publish these metrics as an MBean, with name 'jchrest:type=Chrest,name="..."',
+   * the given name being quoted.  The shell, BatchRunner and QueryServer
+   * register their models' metrics this way.  Throws JMException if the name is invalid or already registered.
+   */
+  public synchronized void register (String name) throws JMException {
+    unregister ();
+    ObjectName objectName = new ObjectName ("jchrest:type=Chrest,name=" + ObjectName.quote (name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean (this, objectName);
+    _name = objectName;
+  }
+
+  /**
+   * Remove these metrics from the MBean server, if registered.
+   */
+  public synchronized void unregister () throws JMException {
+    if (_name != null) {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean (_name);
+      _name = null;
+    }
+  }
+
+  public boolean isEnabled () {
+    return _enabled;
+  }
+
+  public void setEnabled (boolean enabled) {
+    _enabled = enabled;
+  }
+
+  /**
+   * Set all counts and histograms back to zero.
+   */
+  public void reset () {
+    _discriminations.reset ();
+    _familiarisations.reset ();
+    _primitivesLearnt.reset ();
+    _sorts.reset ();
+    _linkTests.reset ();
+    _sortDepth.reset ();
+    _semanticLinkHops.reset ();
+    _stmEvictions.reset ();
+    _slotFillings.reset ();
+    _slotsFilled.reset ();
+    _recognise.reset ();
+    _recogniseAndLearn.reset ();
+    _learnScene.reset ();
+    _scanScene.reset ();
+  }
+
+  // -- recording, called from within the architecture
+
+  void recordDiscrimination () {
+    if (_enabled) _discriminations.increment ();
+  }
+
+  void recordFamiliarisation () {
+    if (_enabled) _familiarisations.increment ();
+  }
+
+  void recordPrimitiveLearnt () {
+    if (_enabled) _primitivesLearnt.increment ();
+  }
+
+  void recordSort (int linkTests, int depth) {
+    if (_enabled) {
+      _sorts.increment ();
+      _linkTests.add (linkTests);
+      _sortDepth.add (depth);
+    }
+  }
+
+  void recordSemanticLinkHops (int hops) {
+    if (_enabled && hops > 0) _semanticLinkHops.add (hops);
+  }
+
+  void recordStmEvictions (int evictions) {
+    if (_enabled && evictions > 0) _stmEvictions.add (evictions);
+  }
+
+  void recordSlotFilling (int slotsFilled) {
+    if (_enabled) {
+      _slotFillings.increment ();
+      _slotsFilled.add (slotsFilled);
+    }
+  }
+
+  long startTiming () {
+    return _enabled ? System.nanoTime () : NOT_TIMED;
+  }
+
+  Histogram getRecogniseTimes () {
+    return _recognise;
+  }
+
+  Histogram getRecogniseAndLearnTimes () {
+    return _recogniseAndLearn;
+  }
+
+  Histogram getLearnSceneTimes () {
+    return _learnScene;
+  }
+
+  Histogram getScanSceneTimes () {
+    return _scanScene;
+  }
+
+  // -- counts
+
+  public long getDiscriminations () {
+    return _discriminations.sum ();
+  }
+
+  public long getFamiliarisations () {
+    return _familiarisations.sum ();
+  }
+
+  public long getPrimitivesLearnt () {
+    return _primitivesLearnt.sum ();
+  }
+
+  /**
+   * Number of patterns sorted through LTM, by recognise or during recall.
+   */
+  public long getSorts () {
+    return _sorts.sum ();
+  }
+
+  /**
+   * Number of test links whose test was compared with a sorted pattern.
+   */
+  public long getLinkTests () {
+    return _linkTests.sum ();
+  }
+
+  public double getMeanLinkTestsPerSort () {
+    return mean (_linkTests.sum (), _sorts.sum ());
+  }
+
+  /**
+   * Mean number of test links followed when sorting a pattern.
+   */
+  public double getMeanSortDepth () {
+    return mean (_sortDepth.sum (), _sorts.sum ());
+  }
+
+  /**
+   * Number of semantic links followed after sorting.
+   */
+  public long getSemanticLinkHops () {
+    return _semanticLinkHops.sum ();
+  }
+
+  /**
+   * Number of nodes which have been pushed out of a STM.
+   */
+  public long getStmEvictions () {
+    return _stmEvictions.sum ();
+  }
+
+  /**
+   * Number of attempts to fill the slots of a template.
+   */
+  public long getSlotFillings () {
+    return _slotFillings.sum ();
+  }
+
+  public double getMeanSlotsFilled () {
+    return mean (_slotsFilled.sum (), _slotFillings.sum ());
+  }
+
+  private static double mean (long total, long count) {
+    return (count == 0 ? 0.0 : (double)total / count);
+  }
+
+  // -- latencies
+
+  public long[] getHistogramBucketBounds () {
+    return Histogram.getBucketBounds ();
+  }
+
+  public long getRecogniseCount () {
+    return _recognise.getCount ();
+  }
+
+  public double getRecogniseMeanMicros () {
+    return _recognise.getMeanMicros ();
+  }
+
+  public long[] getRecogniseHistogram () {
+    return _recognise.getBucketCounts ();
+  }
+
+  public long getRecogniseAndLearnCount () {
+    return _recogniseAndLearn.getCount ();
+  }
+
+  public double getRecogniseAndLearnMeanMicros () {
+    return _recogniseAndLearn.getMeanMicros ();
+  }
+
+  public long[] getRecogniseAndLearnHistogram () {
+    return _recogniseAndLearn.getBucketCounts ();
+  }
+
+  public long getLearnSceneCount () {
+    return _learnScene.getCount ();
+  }
+
+  public double getLearnSceneMeanMicros () {
+    return _learnScene.getMeanMicros ();
+  }
+
+  public long[] getLearnSceneHistogram () {
+    return _learnScene.getBucketCounts ();
+  }
+
+  public long getScanSceneCount () {
+    return _scanScene.getCount ();
+  }
+
+  public double getScanSceneMeanMicros () {
+    return _scanScene.getMeanMicros ();
+  }
+
+  public long[] getScanSceneHistogram () {
+    return _scanScene.getBucketCounts ();
+  }
+
+  /**
+   * Histogram of latencies with power-of-two buckets: bucket 0 holds times
+   * under 1 microsecond, and bucket i, for i &gt; 0, times from 2^(i-1) up
+   * to 2^i microseconds.  The last bucket also holds all longer times.
+   */
+  public static class Histogram {
+    static final int NUM_BUCKETS = 32;
+
+    private final AtomicLongArray _buckets = new AtomicLongArray (NUM_BUCKETS);
+    private final LongAdder _count = new LongAdder ();
+    private final LongAdder _totalNanos = new LongAdder ();
+
+    /**
+     * Record the time since start, as returned by ChrestMetrics#startTiming.
+     */
+    void stopTiming (long start) {
+      if (start != NOT_TIMED) {
+        record (System.nanoTime () - start);
+      }
+    }
+
+    void record (long nanos) {
+      long micros = Math.max (0, nanos) / 1000;
+      int bucket = Math.min (NUM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros (micros));
+      _buckets.incrementAndGet (bucket);
+      _count.increment ();
+      _totalNanos.add (nanos);
+    }
+
+    void reset () {
+      for (int i = 0; i < NUM_BUCKETS; ++i) {
+        _buckets.set (i, 0);
+      }
+      _count.reset ();
+      _totalNanos.reset ();
+    }
+
+    public long getCount () {
+      return _count.sum ();
+    }
+
+    public double getMeanMicros () {
+      long count = _count.sum ();
+      return (count == 0 ? 0.0 : _totalNanos.sum () / 1000.0 / count);
+    }
+
+    public long[] getBucketCounts () {
+      long[] counts = new long[NUM_BUCKETS];
+      for (int i = 0; i < NUM_BUCKETS; ++i) {
+        counts[i] = _buckets.get (i);
+      }
+      return counts;
+    }
+
+    /**
+     * Upper bound, in microseconds, of each bucket; the last bucket has no bound.
+     */
+    public static long[] getBucketBounds () {
+      long[] bounds = new long[NUM_BUCKETS];
+      for (int i = 0; i < NUM_BUCKETS - 1; ++i) {
+        bounds[i] = 1L << i;
+      }
+      bounds[NUM_BUCKETS - 1] = Long.MAX_VALUE;
+      return bounds;
+    }
+  }
+}
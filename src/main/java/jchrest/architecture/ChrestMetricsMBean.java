@@ -0,0 +1,47 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.architecture;
+
+/**
+ * Management interface of {@link ChrestMetrics}.  Latencies are in
+ * microseconds, and histograms hold the count for each bucket given by
+ * getHistogramBucketBounds.
+ *
+ * @author Peter C. R. Lane
+ */
+public interface ChrestMetricsMBean {
+  public boolean isEnabled ();
+  public void setEnabled (boolean enabled);
+  public void reset ();
+
+  public long getDiscriminations ();
+  public long getFamiliarisations ();
+  public long getPrimitivesLearnt ();
+  public long getSorts ();
+  public long getLinkTests ();
+  public double getMeanLinkTestsPerSort ();
+  public double getMeanSortDepth ();
+  public long getSemanticLinkHops ();
+  public long getStmEvictions ();
+  public long getSlotFillings ();
+  public double getMeanSlotsFilled ();
+
+  public long[] getHistogramBucketBounds ();
+
+  public long getRecogniseCount ();
+  public double getRecogniseMeanMicros ();
+  public long[] getRecogniseHistogram ();
+
+  public long getRecogniseAndLearnCount ();
+  public double getRecogniseAndLearnMeanMicros ();
+  public long[] getRecogniseAndLearnHistogram ();
+
+  public long getLearnSceneCount ();
+  public double getLearnSceneMeanMicros ();
+  public long[] getLearnSceneHistogram ();
+
+  public long getScanSceneCount ();
+  public double getScanSceneMeanMicros ();
+  public long[] getScanSceneHistogram ();
+}
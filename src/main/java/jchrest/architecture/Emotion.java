@@ -9,13 +9,15 @@ import java.lang.Math;
 import java.util.*;
 
 /**
- * Represents emotions as vectors of basic emotions
+ * Represents emotions as vectors of basic emotions.  The strength of each
+ * basic emotion of the emotion's theory is held in an array, indexed by the
+ * basic emotion's ordinal, so updates need no boxing or hashing.
  *
  * @author Marvin Schiller
  */
 public class Emotion {
 
-  private Map<BasicEmotion,Double> _components = new HashMap<BasicEmotion,Double>();
+  private double[] _components;
   private EmotionTheory _theory;
 
   /**
@@ -27,6 +29,11 @@ public class Emotion {
      * retrieves the theory that the basic emotion is associated with
      */
     public EmotionTheory getTheory();
+
+    /**
+     * position of the basic emotion within its theory, as given by the enums
+     */
+    public int ordinal();
   }
 
   /**
@@ -82,14 +89,26 @@ public class Emotion {
   }
 
 
+  private static final BasicEmotion[] PLUTCHIK_EMOTIONS = PlutchikBasicEmotion.values();
+  private static final BasicEmotion[] EKMAN_EMOTIONS = EkmanBasicEmotion.values();
+
   /**
-   * list all basic emotions, regardless from which theory
+   * list all basic emotions of the given theory, in order of ordinal;
+   * the array is a new copy, which the caller may change
    */
   public static BasicEmotion[] listEmotions(EmotionTheory theory){
+    return basicEmotions(theory).clone();
+  }
+
+  /**
+   * as listEmotions, but returns the array shared by all callers,
+   * which must not be changed
+   */
+  static BasicEmotion[] basicEmotions(EmotionTheory theory){
     BasicEmotion[] values = null;
     switch(theory){ 
-      case PLUTCHIK: values = PlutchikBasicEmotion.values(); break;
-      case EKMAN:    values = EkmanBasicEmotion.values(); break;
+      case PLUTCHIK: values = PLUTCHIK_EMOTIONS; break;
+      case EKMAN:    values = EKMAN_EMOTIONS; break;
     }
     return values;
   }
@@ -132,13 +151,11 @@ public class Emotion {
     return _theory;
   }
 
-  private Map<BasicEmotion,Double> getComponents(){
-    return _components;
-  }
-
-  private void  setComponents (Map<BasicEmotion,Double> components){
-    _components = components;
-    return;
+  /**
+   * number of basic emotions in the emotion's theory
+   */
+  public int size(){
+    return _components.length;
   }
 
   public void setStrength(){
@@ -148,15 +165,15 @@ public class Emotion {
 
   public Emotion(EmotionTheory theory){
     _theory = theory;
+    _components = new double[basicEmotions(theory).length];
   }
 
   /**
    * construct an emotion based on one singe basic emotion
    */
   public Emotion(BasicEmotion basicemotion, double strength){
-    assert (basicemotion !=null );
-    _theory = basicemotion.getTheory();
-    _components.put(basicemotion, strength);
+    this(basicemotion.getTheory());
+    _components[basicemotion.ordinal()] = strength;
     // _strength = strength;
   }
 
@@ -165,7 +182,7 @@ public class Emotion {
    */
   public static Emotion[] listPureEmotions(EmotionTheory theory, float strength){
     Double strength2 = Double.parseDouble(Float.toString(strength));
-    BasicEmotion[] basic_emotion_list = listEmotions(theory);
+    BasicEmotion[] basic_emotion_list = basicEmotions(theory);
     Emotion[] array = new Emotion[basic_emotion_list.length];
     int i = 0;
     for (BasicEmotion b : basic_emotion_list){
@@ -181,20 +198,31 @@ public class Emotion {
    * indicate the percentage of one basic emotion within an emotion instance
    */
   public double getComponentValue (BasicEmotion basicemotion){
-    double value = 0.0;
-    if (_components.containsKey(basicemotion)){
-      value =  _components.get(basicemotion);
-    }
-    // if (null == value) {value = 0.0;};
-    return value;
-    //if (value == null) {return 0;} else {return value;};
+    if (basicemotion.getTheory() != _theory){ return 0.0; }
+    return _components[basicemotion.ordinal()];
   }
 
+  /**
+   * set the percentage of one basic emotion within an emotion instance;
+   * only basic emotions of the emotion's theory are held, so one of another
+   * theory throws an IllegalArgumentException, where it was once stored
+   */
   public void putComponentValue (BasicEmotion basicemotion, double strength){
-    _components.put(basicemotion,strength);
-    // if (null == value) {value = 0.0;};
-    return;
-    //if (value == null) {return 0;} else {return value;};
+    if (basicemotion.getTheory() != _theory){
+      throw new IllegalArgumentException(basicemotion + " is not a basic emotion of " + _theory);
+    }
+    _components[basicemotion.ordinal()] = strength;
+  }
+
+  /**
+   * value of the basic emotion with the given ordinal
+   */
+  public double getComponentValue (int index){
+    return _components[index];
+  }
+
+  public void putComponentValue (int index, double strength){
+    _components[index] = strength;
   }
 
 
@@ -203,17 +231,12 @@ public class Emotion {
    * returns the object's value for that particular basic emotion
    */
   public Double project(Emotion pureemotion){
-    Map targetcomponents = pureemotion.getComponents();
     // assert that emotions are both from matching theory
     assert (this._theory == pureemotion._theory); 
-    assert (targetcomponents.size()==1.0);
-    Set keys = targetcomponents.keySet();
-    Iterator itr = keys.iterator();
-    Double result =0.0;
-    BasicEmotion targetcomponent = (BasicEmotion) itr.next();
-    result =  _components.get(targetcomponent);
-    if (result == null) {result = 0.0;} ;
-    return result;
+    for (int i = 0; i < pureemotion._components.length; i++){
+      if (pureemotion._components[i] != 0.0){ return _components[i]; }
+    }
+    return 0.0;
   }
 
   public String heartSym(){
@@ -249,13 +272,13 @@ public class Emotion {
   }
 
   public String display(){
-    List<BasicEmotion> sortedemotions = new ArrayList<BasicEmotion>(_components.size()) ;
+    List<BasicEmotion> sortedemotions = new ArrayList<BasicEmotion>(_components.length) ;
     String resultstring = "";
 
     // build ArrayList sorted by percentages
 
-    for (BasicEmotion basicemotion: _components.keySet()) {
-      if (sortedemotions.size() == 0 && _components.get(basicemotion) != 0){ // was >0
+    for (BasicEmotion basicemotion: basicEmotions(_theory)) {
+      if (sortedemotions.size() == 0 && getComponentValue(basicemotion) != 0){ // was >0
         sortedemotions.add(basicemotion);
       }
       else{
@@ -263,15 +286,15 @@ public class Emotion {
         int index = sortedemotions.size();
         for (int i=0; i < sortedemotions.size(); i++){
           BasicEmotion sortedbasicemotion = sortedemotions.get(i);
-          double current_perc = _components.get(basicemotion);
-          double running_perc = _components.get(sortedbasicemotion);
+          double current_perc = getComponentValue(basicemotion);
+          double running_perc = getComponentValue(sortedbasicemotion);
           if (current_perc <= running_perc && done==false){
             index = i;
             done = true;
           } 
         }
 
-        if (_components.get(basicemotion) != 0) // >0
+        if (getComponentValue(basicemotion) != 0) // >0
         { sortedemotions.add(index, basicemotion); }
 
       }          
@@ -315,11 +338,11 @@ public class Emotion {
 
         }
       }
-      // resultstring = symbol + String.valueOf(_components.get(basicemotion)) + " " + resultstring;
+      // resultstring = symbol + String.valueOf(getComponentValue(basicemotion)) + " " + resultstring;
       java.text.DecimalFormat df = new java.text.DecimalFormat(".000");
-      if (_components.get(basicemotion) == 0){}
+      if (getComponentValue(basicemotion) == 0){}
       else{
-        resultstring = symbol + String.valueOf(df.format(_components.get(basicemotion))) + " " + resultstring;
+        resultstring = symbol + String.valueOf(df.format(getComponentValue(basicemotion))) + " " + resultstring;
       }
     }
 
@@ -327,13 +350,13 @@ public class Emotion {
   }
 
   public String displayNONUTF(){
-    List<BasicEmotion> sortedemotions = new ArrayList<BasicEmotion>(_components.size()) ;
+    List<BasicEmotion> sortedemotions = new ArrayList<BasicEmotion>(_components.length) ;
     String resultstring = "";
 
     // build ArrayList sorted by percentages
 
-    for (BasicEmotion basicemotion: _components.keySet()) {
-      if (sortedemotions.size() == 0 && _components.get(basicemotion) != 0){  // was >0
+    for (BasicEmotion basicemotion: basicEmotions(_theory)) {
+      if (sortedemotions.size() == 0 && getComponentValue(basicemotion) != 0){  // was >0
         sortedemotions.add(basicemotion);
       }
       else{
@@ -341,15 +364,15 @@ public class Emotion {
         int index = sortedemotions.size();
         for (int i=0; i < sortedemotions.size(); i++){
           BasicEmotion sortedbasicemotion = sortedemotions.get(i);
-          double current_perc = _components.get(basicemotion);
-          double running_perc = _components.get(sortedbasicemotion);
+          double current_perc = getComponentValue(basicemotion);
+          double running_perc = getComponentValue(sortedbasicemotion);
           if (current_perc <= running_perc && done==false){
             index = i;
             done = true;
           } 
         }
 
-        if (_components.get(basicemotion) != 0) //>0
+        if (getComponentValue(basicemotion) != 0) //>0
         { sortedemotions.add(index, basicemotion); }
 
       }          
@@ -393,11 +416,11 @@ public class Emotion {
 
         }
       }
-      // resultstring = symbol + String.valueOf(_components.get(basicemotion)) + " " + resultstring;
+      // resultstring = symbol + String.valueOf(getComponentValue(basicemotion)) + " " + resultstring;
       java.text.DecimalFormat df = new java.text.DecimalFormat(".000");
-      if (_components.get(basicemotion) == 0){}
+      if (getComponentValue(basicemotion) == 0){}
       else{
-        resultstring = symbol + " " + String.valueOf(df.format(_components.get(basicemotion))) + " " + resultstring;
+        resultstring = symbol + " " + String.valueOf(df.format(getComponentValue(basicemotion))) + " " + resultstring;
       }
     }
 
@@ -406,32 +429,24 @@ public class Emotion {
   }
 
   public static Emotion clone(Emotion original){
-    Map<BasicEmotion,Double> _newcomponents = new HashMap<BasicEmotion,Double>(original._components);
-    EmotionTheory _newtheory = original._theory;
-    Emotion newemotion = new Emotion(_newtheory);
-    newemotion.setComponents(_newcomponents);
+    Emotion newemotion = new Emotion(original._theory);
+    System.arraycopy(original._components, 0, newemotion._components, 0, original._components.length);
     return newemotion;
   }
 
   public void multiply(float factor){
-    for(BasicEmotion basic : _components.keySet()){
-      if (_components.get(basic)!= null)
-      {
-        putComponentValue(basic, factor * _components.get(basic));
-      }
-
+    for (int i = 0; i < _components.length; i++){
+      _components[i] = factor * _components[i];
     }
     return;
   }
 
   public static Emotion add(Emotion e1, Emotion e2){
-    BasicEmotion[] basic_emotion_list = listEmotions(e1.getTheory());
     Emotion newemotion = new Emotion(e1.getTheory());
-    // Object _newcomps = _components.clone();
-    for(BasicEmotion basic : basic_emotion_list){
-      double val1 = e1.getComponentValue(basic);
-      double val2 = e2.getComponentValue(basic);
-      newemotion.putComponentValue(basic,val1 + val2);      
+    // components of a different theory count as zero
+    boolean sametheory = (e1.getTheory() == e2.getTheory());
+    for (int i = 0; i < newemotion._components.length; i++){
+      newemotion._components[i] = e1._components[i] + (sametheory ? e2._components[i] : 0.0);
     }
     return newemotion;
   }
@@ -7,19 +7,133 @@ package jchrest.architecture;
 import java.io.*;
 import java.lang.Math;
 import java.util.*;
+import jchrest.lib.Modality;
 
 /**
- * A mechanism for managing the associations between nodes and emotions
+ * A mechanism for managing the associations between nodes and emotions.
+ * The Rescorla-Wagner updates work directly on the arrays of basic emotions,
+ * and each step can be followed by setting a Tracer, which is off by default.
+ *
+ * Traces are held in a table indexed by node reference, so each lookup is
+ * an array access.  The table is made of pages, created when a node in
+ * their range is first given a trace, so memory follows the tagged nodes.
+ * The root nodes, which all have reference 0, are held by modality.
  *
  * @author Marvin Schiller
  */
 public class EmotionAssociator{
     
-    private Map<Node,EmotionalTrace>  _associations = new HashMap<Node,EmotionalTrace>();
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    
+    private EmotionalTrace[][] _pages = new EmotionalTrace[0][];
+    private EmotionalTrace[] _rootTraces = new EmotionalTrace[Modality.values().length];
+    private int _numTraces = 0;
     private double _default_alpha = 0.2;
+    private int _historyCapacity = EmotionalTrace.DEFAULT_CAPACITY;
+    private int _historyResolution = EmotionalTrace.DEFAULT_RESOLUTION;
+    private Tracer _tracer = null;
+    
+    // work arrays for propagateAcrossModalities, kept between calls: the
+    // cues with the STM each tops, their theories and values; for each STM,
+    // its top cue, emotion and errors (lambda - vAll); and sums by theory
+    private static final int STRIDE = maxSize();
+    private Node[] _batchCues = new Node[0];
+    private int[] _batchOwner = new int[0];
+    private int[] _batchTheories = new int[0];
+    private double[] _batchValues = new double[0];
+    private int[] _batchTop = new int[0];
+    private Emotion[] _batchEmotions = new Emotion[0];
+    private double[] _batchErrors = new double[0];
+    private double[][] _batchTotals = new double[Emotion.EmotionTheory.values().length][STRIDE];
+    private double[][] _batchSumErrors = new double[Emotion.EmotionTheory.values().length][STRIDE];
+    private double[][] _batchTargets = new double[Emotion.EmotionTheory.values().length][STRIDE];
+    
+    /**
+     * Receives each step of the Rescorla-Wagner updates, e.g. for debugging.
+     */
+    public interface Tracer{
+        /**
+         * called once per update, with the summed emotions of all the cues
+         */
+        public void traceVAll(Emotion vAll);
+        
+        /**
+         * called for each basic emotion of each cue, with the new value
+         */
+        public void traceUpdate(Node cue, Emotion.BasicEmotion basic, double lambda, double deltaV, double newV);
+    }
+    
+    /**
+     * A tracer which prints each step to the given stream.
+     */
+    public static Tracer printTracer(final PrintStream out){
+        return new Tracer(){
+            public void traceVAll(Emotion vAll){
+                out.println("vAll: " + vAll.displayNONUTF());
+            }
+            public void traceUpdate(Node cue, Emotion.BasicEmotion basic, double lambda, double deltaV, double newV){
+                out.println("node " + cue.getReference() + ", emotion " + basic +
+                        ": lambda " + lambda + ", deltaV " + deltaV + ", newV " + newV);
+            }
+        };
+    }
+    
+    /**
+     * Set the tracer to follow the updates, or null for no tracing.
+     */
+    public void setTracer(Tracer tracer){
+        _tracer = tracer;
+    }
+    
+    public Tracer getTracer(){
+        return _tracer;
+    }
     
+    /**
+     * Set the trace of the given node, replacing any previous one; a null
+     * trace removes it.
+     */
     public void addEmotionalTrace(Node node, EmotionalTrace trace){
-        _associations.put(node,trace);
+        int reference = node.getReference();
+        EmotionalTrace[] page;
+        int index;
+        if (reference == 0){
+            page = _rootTraces;
+            index = node.getContents().getModality().ordinal();
+        }
+        else{
+            int p = reference >>> PAGE_BITS;
+            if (p >= _pages.length){
+                if (trace == null){ return; }
+                _pages = Arrays.copyOf(_pages, Math.max(p + 1, 2 * _pages.length));
+            }
+            if (_pages[p] == null){
+                if (trace == null){ return; }
+                _pages[p] = new EmotionalTrace[PAGE_SIZE];
+            }
+            page = _pages[p];
+            index = reference & (PAGE_SIZE - 1);
+        }
+        if (page[index] == null && trace != null){ _numTraces += 1; }
+        if (page[index] != null && trace == null){ _numTraces -= 1; }
+        page[index] = trace;
+    }
+    
+    /**
+     * Number of nodes with a trace.
+     */
+    public int getNumTraces(){
+        return _numTraces;
+    }
+    
+    /**
+     * Remove all traces, as when the nodes of the model are cleared.
+     */
+    public void clear(){
+        _pages = new EmotionalTrace[0][];
+        Arrays.fill(_rootTraces, null);
+        _numTraces = 0;
     }
     
     public void setDefaultAlpha(double alpha){
@@ -27,12 +141,41 @@ public class EmotionAssociator{
         return;
     }
     
+    /**
+     * Set the number of entries, and the time steps per entry, of the
+     * emotion history of traces made from now on.
+     */
+    public void setHistoryRetention(int capacity, int resolution){
+        _historyCapacity = Math.max(1, capacity);
+        _historyResolution = Math.max(1, resolution);
+    }
+    
+    public int getHistoryCapacity(){
+        return _historyCapacity;
+    }
+    
+    public int getHistoryResolution(){
+        return _historyResolution;
+    }
+    
     
     public EmotionalTrace getEmotionalTrace(Node node){
-        EmotionalTrace trace = _associations.get(node);
-        // if (trace == null){
-        //    trace = new EmotionalTrace();
-        // }
+        int reference = node.getReference();
+        if (reference == 0){
+            return _rootTraces[node.getContents().getModality().ordinal()];
+        }
+        int p = reference >>> PAGE_BITS;
+        if (p >= _pages.length || _pages[p] == null){ return null; }
+        return _pages[p][reference & (PAGE_SIZE - 1)];
+    }
+    
+    // the trace of the given node, adding an empty one if it has none
+    private EmotionalTrace traceFor(Node node){
+        EmotionalTrace trace = getEmotionalTrace(node);
+        if (trace == null){
+            trace = new EmotionalTrace(_historyCapacity, _historyResolution);
+            addEmotionalTrace(node, trace);
+        }
         return trace;
     }
     
@@ -42,19 +185,11 @@ public class EmotionAssociator{
             return null; 
         }
         assert(trace != null);
-        Emotion emotion = trace.getRescorlaWagnerEmotion();
-        if (emotion == null){
-            System.out.println("getRWEmotion -- produced null emotion!");
-        }
-        return emotion;
+        return trace.getRescorlaWagnerEmotion();
     }
     
     public void setRWEmotion(Node node, Emotion emotion){
-        EmotionalTrace trace = getEmotionalTrace(node);
-        if (trace == null){
-            addEmotionalTrace(node,new EmotionalTrace());}
-        trace = getEmotionalTrace(node);
-        trace.setRescorlaWagnerEmotion(emotion);
+        traceFor(node).setRescorlaWagnerEmotion(emotion);
         return;
     }
     
@@ -68,8 +203,8 @@ public class EmotionAssociator{
         int stm_size = stm.getCount();
         if (stm_size !=0){
           Node topnode = stm.getItem(0);
-          EmotionalTrace trace = _associations.get(topnode);
-          if (trace == null){return;}
+          EmotionalTrace trace = getEmotionalTrace(topnode);
+          if (trace == null){continue;}
           Emotion current_emotion = trace.getRescorlaWagnerEmotion();
           if (!(current_emotion == null)){
             // spread out to all stms
@@ -86,26 +221,144 @@ public class EmotionAssociator{
                 }
               }
             }
+            learnEmotion(current_emotion, topnode,cues,time);  
           }
-
-          learnEmotion(current_emotion, topnode,cues,time);  
         }
       }
       return;
     }
     
+    /**
+     * Propagate the emotion of the top node of each STM to all the other
+     * nodes in the STMs, as emoteAndPropagateAcrossModalities, but as one
+     * batch: the cues and their emotions are read once, all the updates are
+     * computed from those emotions, and then applied together.  The updates
+     * of a cue from each STM so add up, instead of each seeing the result of
+     * the one before; where the STMs hold emotions of different theories, a
+     * cue keeps the theory of the last STM to update it.  The tracer, if
+     * any, sees the vAll of each STM and the summed update of each cue, with
+     * lambda the sum of the targets of the STMs updating it.
+     */
+    public void propagateAcrossModalities(Stm[] stms, int time){
+        // 1. gather the cues, their emotions, and the emotion of each STM
+        int numCues = 0;
+        for (Stm stm : stms){ numCues += stm.getCount(); }
+        ensureBatchSize(numCues, stms.length);
+        int n = 0;
+        int lastSource = -1;       // last STM with an emotion to propagate
+        int previousSource = -1;   // the one before that
+        for (int s = 0; s < stms.length; s++){
+            Stm stm = stms[s];
+            _batchTop[s] = -1;
+            _batchEmotions[s] = null;
+            if (stm.getCount() == 0){ continue; }
+            EmotionalTrace top = getEmotionalTrace(stm.getItem(0));
+            if (top != null && top.getRescorlaWagnerEmotion() != null){
+                _batchEmotions[s] = top.getRescorlaWagnerEmotion();
+                previousSource = lastSource;
+                lastSource = s;
+            }
+            for (int j = 0; j < stm.getCount(); j++){
+                Node node = stm.getItem(j);
+                if (node.getReference() == 0){ continue; } // roots are not cues
+                _batchOwner[n] = (j == 0 ? s : -1);
+                if (j == 0){ _batchTop[s] = n; }
+                _batchCues[n] = node;
+                EmotionalTrace trace = getEmotionalTrace(node);
+                Emotion emotion = (trace == null ? null : trace.getRescorlaWagnerEmotion());
+                _batchTheories[n] = (emotion == null ? -1 : emotion.getTheory().ordinal());
+                for (int i = 0; i < STRIDE; i++){
+                    _batchValues[n * STRIDE + i] = (emotion == null || i >= emotion.size() ? 0.0 : emotion.getComponentValue(i));
+                }
+                n++;
+            }
+        }
+        if (lastSource == -1){ return; }
+        
+        // 2. sum the emotions of all cues by theory; the vAll of each STM is
+        // this sum less its own top node
+        for (double[] total : _batchTotals){ Arrays.fill(total, 0.0); }
+        for (double[] errors : _batchSumErrors){ Arrays.fill(errors, 0.0); }
+        for (double[] target : _batchTargets){ Arrays.fill(target, 0.0); }
+        for (int c = 0; c < n; c++){
+            if (_batchTheories[c] == -1){ continue; }
+            double[] total = _batchTotals[_batchTheories[c]];
+            for (int i = 0; i < STRIDE; i++){ total[i] += _batchValues[c * STRIDE + i]; }
+        }
+        // the summed errors, lambda - vAll, and lambdas of the STMs, by theory
+        for (int s = 0; s < stms.length; s++){
+            Emotion emotion = _batchEmotions[s];
+            if (emotion == null){ continue; }
+            int theory = emotion.getTheory().ordinal();
+            int top = _batchTop[s];
+            Emotion vAll = (_tracer == null ? null : new Emotion(emotion.getTheory()));
+            for (int i = 0; i < emotion.size(); i++){
+                double v = _batchTotals[theory][i];
+                if (top != -1 && _batchTheories[top] == theory){ v -= _batchValues[top * STRIDE + i]; }
+                double lambda = lambda(stms[s].getItem(0), emotion, i);
+                _batchErrors[s * STRIDE + i] = lambda - v;
+                _batchSumErrors[theory][i] += lambda - v;
+                _batchTargets[theory][i] += lambda;
+                if (vAll != null){ vAll.putComponentValue(i, v); }
+            }
+            if (_tracer != null){ _tracer.traceVAll(vAll); }
+        }
+        
+        // 3. apply the updates: each cue is updated by every STM other than
+        // the one it tops, taking the theory of the last of them
+        for (int c = 0; c < n; c++){
+            Node cue = _batchCues[c];
+            int owner = _batchOwner[c];
+            int last = (owner == lastSource ? previousSource : lastSource);
+            if (last == -1){ continue; } // only its own STM has an emotion
+            Emotion emotion = _batchEmotions[last];
+            Emotion.EmotionTheory theory = emotion.getTheory();
+            int t = theory.ordinal();
+            Emotion newemotion = new Emotion(theory);
+            for (int i = 0; i < newemotion.size(); i++){
+                double error = _batchSumErrors[t][i];
+                double lambda = _batchTargets[t][i];
+                if (owner != -1 && _batchEmotions[owner] != null && _batchEmotions[owner].getTheory() == theory){
+                    error -= _batchErrors[owner * STRIDE + i];
+                    lambda -= lambda(stms[owner].getItem(0), _batchEmotions[owner], i);
+                }
+                double deltaV = alpha(cue, i) * error;
+                double V = (_batchTheories[c] == t ? _batchValues[c * STRIDE + i] : 0.0);
+                newemotion.putComponentValue(i, V + deltaV);
+                if (_tracer != null){
+                    _tracer.traceUpdate(cue, Emotion.basicEmotions(theory)[i], lambda, deltaV, V + deltaV);
+                }
+            }
+            EmotionalTrace trace = traceFor(cue);
+            trace.addToHistory(time, emotion);
+            trace.setRescorlaWagnerEmotion(newemotion);
+        }
+        Arrays.fill(_batchCues, 0, n, null);
+        Arrays.fill(_batchEmotions, null);
+    }
+    
+    // make the work arrays of propagateAcrossModalities large enough
+    private void ensureBatchSize(int numCues, int numStms){
+        if (_batchCues.length < numCues){
+            int length = Math.max(numCues, 2 * _batchCues.length);
+            _batchCues = new Node[length];
+            _batchOwner = new int[length];
+            _batchTheories = new int[length];
+            _batchValues = new double[length * STRIDE];
+        }
+        if (_batchTop.length < numStms){
+            _batchTop = new int[numStms];
+            _batchEmotions = new Emotion[numStms];
+            _batchErrors = new double[numStms * STRIDE];
+        }
+    }
+    
     public void learnEmotion(Emotion emotion, Node node, List<Node> cues, int time){
         if (cues==null){return; }
         // for each cue, lern the given emotion and add to history
         for (Node cue: cues){
             // 1. add emotion to history
-            EmotionalTrace trace = getEmotionalTrace(cue);
-            if (trace == null){
-                _associations.put(cue,new EmotionalTrace());
-                trace =  getEmotionalTrace(cue);
-            }    
-            trace.addToHistory(time, emotion);
-            addEmotionalTrace(cue, trace);
+            traceFor(cue).addToHistory(time, emotion);
         }
         // 2. Compute Rescorla Wagner Emotion
         computeRW(emotion, node, cues); // potential to compute vAll beforehand
@@ -113,92 +366,83 @@ public class EmotionAssociator{
     }
     
     public Emotion computeVAll(List<Node> cues){
-        List<Emotion> emotions = new ArrayList<Emotion>();
+        Emotion.EmotionTheory theory = null;
         for(Node cue: cues){
-            EmotionalTrace trace = _associations.get(cue);
-            if (trace !=null){
-                Emotion RWemotion = trace.getRescorlaWagnerEmotion();
-                if (RWemotion !=null){
-                    emotions.add(RWemotion);
-                }
+            EmotionalTrace trace = getEmotionalTrace(cue);
+            if (trace !=null && trace.getRescorlaWagnerEmotion() !=null){
+                theory = trace.getRescorlaWagnerEmotion().getTheory();
+                break;
             }
         }
-        if (emotions.isEmpty()){return null; } 
-        else {
-            // for each basic emotion compute sum
-            Emotion.EmotionTheory theory = emotions.get(0).getTheory();
-            for (Emotion emotion: emotions){
-             assert (theory == emotion.getTheory());
+        if (theory == null){return null; } 
+        Emotion newemotion = new Emotion(theory);
+        sumRW(cues, newemotion);
+        return newemotion;       
+    }
+    
+    /**
+     * Add the Rescorla-Wagner emotion of each cue to the given emotion,
+     * ignoring emotions of other theories.
+     */
+    private void sumRW(List<Node> cues, Emotion sum){
+        for(Node cue: cues){
+            EmotionalTrace trace = getEmotionalTrace(cue);
+            if (trace ==null){ continue; }
+            Emotion RWemotion = trace.getRescorlaWagnerEmotion();
+            if (RWemotion ==null || RWemotion.getTheory() != sum.getTheory()){ continue; }
+            for (int i = 0; i < sum.size(); i++){
+                sum.putComponentValue(i, sum.getComponentValue(i) + RWemotion.getComponentValue(i));
             }
-            Emotion.BasicEmotion[] basicemotions = Emotion.listEmotions(theory);
-            Emotion newemotion = new Emotion(theory);
-            for (Emotion.BasicEmotion basic: basicemotions){
-                // sum up from all cues
-                double strength = 0;
-                for (Emotion emotion: emotions){
-                    strength = strength + emotion.getComponentValue(basic);
-                }
-                newemotion.putComponentValue(basic, strength);
-            }            
-            return newemotion;       
-        }       
+        }
     }
     
     public void computeRW(Emotion emotion, Node node, List<Node> cues){
-        Emotion vAll = computeVAll(cues);
-        if (vAll==null){
-            vAll = new Emotion(emotion.getTheory());
-        }
-        System.out.print("vAll: ");                                            //
-        System.out.println(vAll);                                              //
         Emotion.EmotionTheory theory = emotion.getTheory();
-        Emotion.BasicEmotion[] basicemotions = Emotion.listEmotions(theory);
+        // vAll is computed once, from the emotions before this update
+        Emotion vAll = new Emotion(theory);
+        sumRW(cues, vAll);
+        if (_tracer != null){ _tracer.traceVAll(vAll); }
+        int size = emotion.size();
         for (Node cue : cues){
-            System.out.print("looping with node: ");                            //
-            System.out.println(cue.getReference());                             //
+            EmotionalTrace trace = traceFor(cue);
+            Emotion previous = trace.getRescorlaWagnerEmotion();
+            if (previous != null && previous.getTheory() != theory){ previous = null; }
             Emotion newemotion = new Emotion(theory);
-            EmotionalTrace trace = getEmotionalTrace(cue);
-            if (trace==null){
-                _associations.put(cue, new EmotionalTrace());
-                trace = _associations.get(cue);
-                 System.out.println("added new emotional trace");              //
-            }
-            for(Emotion.BasicEmotion basic : basicemotions){
-                 System.out.print("looping with emotion ");                      //
-                System.out.println(basic);                                       //
-                double vallComponent =  vAll.getComponentValue(basic);
-                  System.out.print("vallComponent: ");                         //
-                 System.out.print("lambda");                                   //
-                System.out.println(lambda(node,emotion,basic));                //
-                double deltaV = alpha(cue,basic) * (lambda(node,emotion,basic) - vallComponent);
-                 System.out.print("deltaV: ");                                  //
-                 System.out.println(deltaV);                                    //
-                double V = 0.0;
-                if (trace.getRescorlaWagnerEmotion() != null){ 
-                    V = trace.getRescorlaWagnerEmotion().getComponentValue(basic); 
+            for (int i = 0; i < size; i++){
+                double lambda = lambda(node, emotion, i);
+                double deltaV = alpha(cue, i) * (lambda - vAll.getComponentValue(i));
+                double V = (previous == null ? 0.0 : previous.getComponentValue(i));
+                newemotion.putComponentValue(i, V + deltaV);
+                if (_tracer != null){
+                    _tracer.traceUpdate(cue, Emotion.basicEmotions(theory)[i], lambda, deltaV, V + deltaV);
                 }
-                double newV = V + deltaV;
-                 System.out.print("newV: ");                                     //
-                System.out.println(newV);                                        //
-                newemotion.putComponentValue(basic,newV);
             }
             trace.setRescorlaWagnerEmotion(newemotion);           
         }
         return;
     }
     
-    private double alpha(Node cue,Emotion.BasicEmotion basic){
+    private static int maxSize(){
+        int size = 0;
+        for (Emotion.EmotionTheory theory : Emotion.EmotionTheory.values()){
+            size = Math.max(size, Emotion.basicEmotions(theory).length);
+        }
+        return size;
+    }
+    
+    // learning rate for the basic emotion with the given ordinal
+    private double alpha(Node cue, int basic){
         return _default_alpha;
     }
     
     
     
-    private static double lambda(Node node, Emotion emotion, Emotion.BasicEmotion basic){
+    private static double lambda(Node node, Emotion emotion, int basic){
         return emotion.getComponentValue(basic);
     }
     
     public void emotionTraceToStdOut(Node node){
-        EmotionalTrace trace = _associations.get(node);
+        EmotionalTrace trace = getEmotionalTrace(node);
         if (trace == null){
             System.out.print("Emotional trace for node ");
             System.out.print(node.getReference());
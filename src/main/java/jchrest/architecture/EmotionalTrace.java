@@ -11,27 +11,186 @@ import java.util.*;
 /**
  * Represents a complex emotional tag
  *
+ * The history of emotions is held in columns: a ring buffer of times, with
+ * the values of the basic emotions at each time in a matrix alongside.  At
+ * most 'capacity' entries are retained, the oldest being dropped first, and
+ * emotions within the same 'resolution' time steps share one entry, the
+ * latest emotion replacing the earlier ones.  Entries are kept in order of
+ * time, so ranges of time are found by binary search.
+ *
  * @author Marvin Schiller
  */
 public class EmotionalTrace {
-    
+
+    public static final int DEFAULT_CAPACITY = 100;
+    public static final int DEFAULT_RESOLUTION = 1;
+    private static final Emotion.EmotionTheory[] THEORIES = Emotion.EmotionTheory.values();
+    // number of values held for each entry, enough for any theory
+    private static final int STRIDE = maxSize();
+
     // private float _strength;
     // private Node source; not needed, is in the association list
-    private Map<Integer,Emotion> _emotionHistory = new HashMap<Integer,Emotion>();
+    private final int _capacity;
+    private final int _resolution;
+    private int[] _times;
+    private byte[] _theories;
+    private double[] _values;
+    private int _start;  // position of the oldest entry in the buffer
+    private int _size;
     private Emotion _RescorlaWagnerEmotion;
-    
+
+    public EmotionalTrace(){
+        this(DEFAULT_CAPACITY, DEFAULT_RESOLUTION);
+    }
+
+    /**
+     * Retain at most capacity entries of history, one per resolution time
+     * steps.
+     */
+    public EmotionalTrace(int capacity, int resolution){
+        _capacity = Math.max(1, capacity);
+        _resolution = Math.max(1, resolution);
+        int length = Math.min(4, _capacity);
+        _times = new int[length];
+        _theories = new byte[length];
+        _values = new double[length * STRIDE];
+        _start = 0;
+        _size = 0;
+    }
+
+    public int getCapacity(){
+        return _capacity;
+    }
+
+    public int getResolution(){
+        return _resolution;
+    }
+
+    /**
+     * Record the emotion at the given time.  The time is rounded down to a
+     * multiple of the resolution; an entry already at that time is replaced.
+     */
     public void addToHistory(int time, Emotion emotion){
-        _emotionHistory.put(time,emotion);
-    } 
-    
+        if (emotion == null){ return; }
+        time -= ((time % _resolution) + _resolution) % _resolution;
+        int index = search(time);
+        if (index < _size && timeAt(index) == time){
+            write(index, time, emotion);
+            return;
+        }
+        if (index == 0 && _size == _capacity){ return; } // older than all retained
+        if (_size == _times.length){
+            if (_times.length < _capacity){
+                grow();
+            }
+            else{ // drop the oldest
+                _start = (_start + 1) % _times.length;
+                _size -= 1;
+                index -= 1;
+            }
+        }
+        // entries are almost always added at the end, so this seldom moves any
+        for (int i = _size; i > index; i--){
+            copy(i - 1, i);
+        }
+        _size += 1;
+        write(index, time, emotion);
+    }
+
+    /**
+     * Number of entries in the history.
+     */
+    public int getHistorySize(){
+        return _size;
+    }
+
+    /**
+     * Time of the i'th entry of the history, the oldest being 0.
+     */
+    public int getHistoryTime(int i){
+        checkIndex(i);
+        return timeAt(i);
+    }
+
+    /**
+     * Emotion of the i'th entry of the history, the oldest being 0.
+     */
+    public Emotion getHistoryEmotion(int i){
+        checkIndex(i);
+        int position = position(i);
+        Emotion emotion = new Emotion(THEORIES[_theories[position]]);
+        for (int j = 0; j < emotion.size(); j++){
+            emotion.putComponentValue(j, _values[position * STRIDE + j]);
+        }
+        return emotion;
+    }
+
+    /**
+     * Value of one basic emotion, by its ordinal, of the i'th entry of the
+     * history, or 0 if the entry's emotion is of another theory.
+     */
+    public double getHistoryValue(int i, Emotion.BasicEmotion basic){
+        checkIndex(i);
+        int position = position(i);
+        if (THEORIES[_theories[position]] != basic.getTheory()){ return 0.0; }
+        return _values[position * STRIDE + basic.ordinal()];
+    }
+
+    /**
+     * Index of the first entry at or after the given time, or the size of
+     * the history if there is none.
+     */
+    public int search(int time){
+        int low = 0;
+        int high = _size;
+        while (low < high){
+            int mid = (low + high) >>> 1;
+            if (timeAt(mid) < time){
+                low = mid + 1;
+            }
+            else{
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The most recent emotion at or before the given time, or null if the
+     * history holds none.
+     */
+    public Emotion getEmotionAt(int time){
+        int index = search(time);
+        if (index < _size && timeAt(index) == time){ return getHistoryEmotion(index); }
+        if (index == 0){ return null; }
+        return getHistoryEmotion(index - 1);
+    }
+
+    /**
+     * The entries with times from 'from' up to, but not including, 'to', in
+     * order of time.
+     */
+    public SortedMap<Integer,Emotion> getHistory(int from, int to){
+        SortedMap<Integer,Emotion> history = new TreeMap<Integer,Emotion>();
+        for (int i = search(from); i < _size && timeAt(i) < to; i++){
+            history.put(timeAt(i), getHistoryEmotion(i));
+        }
+        return history;
+    }
+
+    public void clearHistory(){
+        _start = 0;
+        _size = 0;
+    }
+
     public void setRescorlaWagnerEmotion(Emotion emotion){
         _RescorlaWagnerEmotion = emotion;
     }
-    
+
     public Emotion getRescorlaWagnerEmotion(){
         return _RescorlaWagnerEmotion;
-    } 
-    
+    }
+
     public void printToStdOut(){
         System.out.println("== Emotional Trace ==");
         System.out.println("= RW Emotion =");
@@ -42,16 +201,69 @@ public class EmotionalTrace {
             System.out.println(_RescorlaWagnerEmotion.displayNONUTF());
         }
         System.out.println("= Emotion History =");
-        Set<Integer> timepoints = _emotionHistory.keySet();
-        Set<Integer> sorted_timepoints = new TreeSet<Integer>(timepoints);
-        for (Integer i : sorted_timepoints){
+        for (int i = 0; i < _size; i++){
             System.out.print("t=");
-            System.out.print(i);
+            System.out.print(timeAt(i));
             System.out.print(": ");
-            System.out.println(_emotionHistory.get(i).displayNONUTF());
+            System.out.println(getHistoryEmotion(i).displayNONUTF());
         }
         return;
     }
-    
 
+    private int position(int i){
+        return (_start + i) % _times.length;
+    }
+
+    private int timeAt(int i){
+        return _times[position(i)];
+    }
+
+    private void write(int i, int time, Emotion emotion){
+        int position = position(i);
+        _times[position] = time;
+        _theories[position] = (byte) emotion.getTheory().ordinal();
+        for (int j = 0; j < emotion.size(); j++){
+            _values[position * STRIDE + j] = emotion.getComponentValue(j);
+        }
+    }
+
+    private void copy(int from, int to){
+        int source = position(from);
+        int target = position(to);
+        _times[target] = _times[source];
+        _theories[target] = _theories[source];
+        System.arraycopy(_values, source * STRIDE, _values, target * STRIDE, STRIDE);
+    }
+
+    // enlarge the buffer, placing the oldest entry first
+    private void grow(){
+        int length = Math.min(_capacity, 2 * _times.length);
+        int[] times = new int[length];
+        byte[] theories = new byte[length];
+        double[] values = new double[length * STRIDE];
+        for (int i = 0; i < _size; i++){
+            int position = position(i);
+            times[i] = _times[position];
+            theories[i] = _theories[position];
+            System.arraycopy(_values, position * STRIDE, values, i * STRIDE, STRIDE);
+        }
+        _times = times;
+        _theories = theories;
+        _values = values;
+        _start = 0;
+    }
+
+    private void checkIndex(int i){
+        if (i < 0 || i >= _size){
+            throw new IndexOutOfBoundsException("history index " + i + ", size " + _size);
+        }
+    }
+
+    private static int maxSize(){
+        int size = 0;
+        for (Emotion.EmotionTheory theory : THEORIES){
+            size = Math.max(size, Emotion.basicEmotions(theory).length);
+        }
+        return size;
+    }
 }
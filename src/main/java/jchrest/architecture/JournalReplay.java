@@ -0,0 +1,200 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.architecture;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+
+import jchrest.lib.ListPattern;
+
+/**
+ * Rebuilds a model's long-term memory from a {@link LearningJournal}, by
+ * repeating the changes to LTM and STM which it records, without the work
+ * which decided them: the perceiver's choice of fixations, the random test
+ * of whether to learn, and updates to the model's observers are all skipped.
+ * Recognised nodes are found by reference instead of sorting their patterns
+ * again, and the clock is set from the journal after each step.
+ *
+ * The model must have the same domain and parameters as the model which
+ * made the journal, and start in the same state, normally new; the result
+ * is then the same network, with the same node references and links.  Each
+ * node reached is checked against the journal, and replay stops with an
+ * IOException at the first difference.  Filled template slots, emotions and
+ * links made directly using Stm#learnLateralLinks are not recorded, and so
+ * not replayed.
+ *
+ * @author Peter C. R. Lane
+ */
+public class JournalReplay {
+  private final Chrest _model;
+  // nodes reached within the current top-level step, by reference
+  private final Map<Integer, Node> _reached;
+  private Node _recognised;
+  private long _records;
+
+  public JournalReplay (Chrest model) {
+    _model = model;
+    _reached = new HashMap<Integer, Node> ();
+    _recognised = null;
+    _records = 0;
+  }
+
+  /**
+   * Number of records replayed so far.
+   */
+  public long getRecords () {
+    return _records;
+  }
+
+  /**
+   * Replay the journal in the given file into the model.
+   */
+  public static JournalReplay replay (File file, Chrest model) throws IOException {
+    JournalReplay replay = new JournalReplay (model);
+    LearningJournal.Reader reader = new LearningJournal.Reader (new FileInputStream (file));
+    try {
+      replay.replay (reader);
+    } finally {
+      reader.close ();
+    }
+    return replay;
+  }
+
+  /**
+   * Replay every remaining record from the reader.  Observers of the model
+   * are updated once, at the end.
+   */
+  public void replay (LearningJournal.Reader reader) throws IOException {
+    replay (reader, Long.MAX_VALUE);
+  }
+
+  /**
+   * Replay at most the given number of records from the reader.  Throws
+   * IOException if the journal ends first.
+   */
+  public void replay (LearningJournal.Reader reader, long numRecords) throws IOException {
+    _model.freeze ();
+    try {
+      LearningJournal.Record record;
+      for (long i = 0; i < numRecords; ++i) {
+        record = reader.next ();
+        if (record == null) {
+          if (numRecords == Long.MAX_VALUE) break;
+          throw new IOException ("Journal ends after " + i + " of " + numRecords + " records");
+        }
+        replay (record);
+      }
+    } finally {
+      _model.unfreeze ();
+    }
+  }
+
+  /**
+   * Replay a single record.  Records must be replayed in the order written.
+   */
+  public void replay (LearningJournal.Record record) throws IOException {
+    _records += 1;
+    int[] nodes = record.getNodes ();
+
+    if (record.isRecognise ()) {
+      ListPattern pattern = record.getPatterns().get (0);
+      _recognised = (nodes[0] == 0 ? _model.getLtmByModality (pattern) : _model.getNode (nodes[0]));
+      if (_recognised == null) throw mismatch ("node " + nodes[0] + " does not exist");
+      _recognised = _model.writable (_recognised); // may be shared with a fork
+      _model.addToStm (_recognised);
+      reached (_recognised, nodes[0]);
+    } else if (record.isRecogniseAndLearn ()) {
+      // the pattern was recognised in the record before
+      if (_recognised == null) throw mismatch ("no pattern recognised before learning");
+      Node node = _recognised;
+      if (record.isLearning ()) {
+        node = _model.learnPattern (node, record.getPatterns().get (0), record.getTime ());
+      }
+      reached (node, nodes[0]);
+      _model.setClock (record.getClock ());
+    } else if (record.isReplaceHypothesis ()) {
+      _model.replaceVisualHypothesis (findHypothesisChild (nodes[0]));
+    } else if (record.isAssociateAndLearn ()) {
+      if (nodes[0] != LearningJournal.NO_NODE && nodes[1] != LearningJournal.NO_NODE) {
+        Node node = getReached (nodes[0]);
+        Node associated = node.getAssociatedNode ();
+        if (associated == null || associated.getReference () != nodes[1]) {
+          node.setAssociatedNode (getReached (nodes[1]));
+        }
+      }
+      _model.setClock (record.getClock ());
+    } else if (record.isLearnAndNamePatterns ()) {
+      if (nodes[0] != LearningJournal.NO_NODE) {
+        Node named = getStmHypothesis (_model.getVisualStm (), nodes[0]);
+        named.setNamedBy (getStmHypothesis (_model.getVerbalStm (), nodes[1]));
+      }
+      _model.setClock (record.getClock ());
+    } else if (record.isLearnSceneAndMove ()) {
+      if (nodes[0] != LearningJournal.NO_NODE) {
+        Node actionNode = getStmHypothesis (_model.getActionStm (), nodes[0]);
+        if (_model.getVisualStm().getCount () != nodes.length - 1) {
+          throw mismatch ("visual STM holds " + _model.getVisualStm().getCount () +
+              " nodes, not " + (nodes.length - 1));
+        }
+        int i = 1;
+        for (Node node : _model.getVisualStm ()) {
+          check (node, nodes[i++]);
+          node.addActionLink (actionNode);
+        }
+      }
+      _model.setClock (record.getClock ());
+    } else if (record.isConstructTemplates ()) {
+      _model.constructTemplates ();
+      _model.setClock (record.getClock ());
+    } else if (record.isClear ()) {
+      _model.clear ();
+      _recognised = null;
+    }
+
+    if (record.getDepth () == 0) {
+      _reached.clear ();
+    }
+  }
+
+  private void reached (Node node, int reference) throws IOException {
+    check (node, reference);
+    _reached.put (reference, node);
+  }
+
+  private Node getReached (int reference) throws IOException {
+    Node node = _reached.get (reference);
+    if (node == null) throw mismatch ("node " + reference + " was not reached");
+    return node;
+  }
+
+  private Node getStmHypothesis (Stm stm, int reference) throws IOException {
+    if (stm.getCount () == 0) throw mismatch ("STM is empty, expected node " + reference);
+    Node node = stm.getItem (0);
+    check (node, reference);
+    return node;
+  }
+
+  // the perceiver only replaces the hypothesis with one of its children
+  private Node findHypothesisChild (int reference) throws IOException {
+    if (_model.getVisualStm().getCount () > 0) {
+      for (Link link : _model.getVisualStm().getItem(0).getChildren ()) {
+        if (link.getChildNode().getReference () == reference) {
+          return link.getChildNode ();
+        }
+      }
+    }
+    throw mismatch ("node " + reference + " is not a child of the hypothesis");
+  }
+
+  private void check (Node node, int reference) throws IOException {
+    if (node.getReference () != reference) {
+      throw mismatch ("expected node " + reference + " but found node " + node.getReference ());
+    }
+  }
+
+  private IOException mismatch (String message) {
+    return new IOException ("Journal does not match model at record " + _records + ": " + message);
+  }
+}
@@ -0,0 +1,97 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.architecture;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events for the model's learning operations, so time
+ * spent in a recording can be attributed to what the model was doing.  All
+ * events are in the 'CHREST' category, and are only written when enabled in
+ * the recording settings, e.g. using:
+ *
+ *   java -XX:StartFlightRecording:filename=chrest.jfr,settings=profile ...
+ *
+ * Each event records its duration, the node learning took place at, the
+ * size of the pattern involved, and the model's clock afterwards.
+ *
+ * @author Peter C. R. Lane
+ */
+final class LearningEvents {
+  private LearningEvents () {
+  }
+
+  @Name ("jchrest.Discriminate")
+  @Label ("Discriminate")
+  @Category ({"CHREST", "Learning"})
+  @Description ("Adds a test link below a node")
+  static class Discriminate extends Event {
+    @Label ("Node") int nodeReference;
+    @Label ("New Node") int newNodeReference;
+    @Label ("Pattern Size") int patternSize;
+    @Label ("Clock") int clock;
+  }
+
+  @Name ("jchrest.Familiarise")
+  @Label ("Familiarise")
+  @Category ({"CHREST", "Learning"})
+  @Description ("Extends the image of a node")
+  static class Familiarise extends Event {
+    @Label ("Node") int nodeReference;
+    @Label ("New Node") int newNodeReference;
+    @Label ("Pattern Size") int patternSize;
+    @Label ("Clock") int clock;
+  }
+
+  @Name ("jchrest.LearnPrimitive")
+  @Label ("Learn Primitive")
+  @Category ({"CHREST", "Learning"})
+  @Description ("Adds a primitive below a root node")
+  static class LearnPrimitive extends Event {
+    @Label ("Node") int nodeReference;
+    @Label ("New Node") int newNodeReference;
+    @Label ("Pattern Size") int patternSize;
+    @Label ("Clock") int clock;
+  }
+
+  @Name ("jchrest.SemanticLink")
+  @Label ("Semantic Link")
+  @Category ({"CHREST", "Learning"})
+  @Description ("Creates a two-way semantic link between similar nodes")
+  static class SemanticLink extends Event {
+    @Label ("Node") int nodeReference;
+    @Label ("Linked Node") int linkedNodeReference;
+    @Label ("Pattern Size") int patternSize;
+    @Label ("Clock") int clock;
+  }
+
+  @Name ("jchrest.ConstructTemplates")
+  @Label ("Construct Templates")
+  @Category ({"CHREST", "Learning"})
+  @Description ("Converts nodes of visual LTM into templates")
+  static class ConstructTemplates extends Event {
+    @Label ("Node") int nodeReference;
+    @Label ("Nodes") int nodes;
+    @Label ("Templates") int templates;
+    @Label ("Clock") int clock;
+  }
+
+  @Name ("jchrest.Fixation")
+  @Label ("Fixation")
+  @Category ({"CHREST", "Perception"})
+  @Description ("Moves the eye, recognising or learning the fixated pattern")
+  static class Fixation extends Event {
+    @Label ("Heuristic") String heuristic;
+    @Label ("Learning") boolean learning;
+    @Label ("Column") int x;
+    @Label ("Row") int y;
+    @Label ("Node") int nodeReference;
+    @Label ("Pattern Size") int patternSize;
+    @Label ("Clock") int clock;
+  }
+}
@@ -0,0 +1,771 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.architecture;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jchrest.lib.*;
+
+/**
+ * An append-only record of each learning step made by a model: the inputs to
+ * recogniseAndLearn, associateAndLearn, learnAndNamePatterns and
+ * learnSceneAndMove, with the nodes which resulted and the model's clock.
+ * Each change to STM is also recorded, as semantic and action links depend on
+ * what STM holds, so the journal can be replayed using {@link JournalReplay}.
+ * Attach a journal to a model using {@link Chrest#setJournal}.
+ *
+ * Records are encoded by the training thread into a ring buffer, and a
+ * background thread writes them out, so training does not wait on disk.
+ * Training only waits if the buffer fills faster than it can be written: the
+ * number of such stalls is given by getStalls.  Call close to write out all
+ * records; if writing fails, later records are dropped and close throws the
+ * error.
+ *
+ * Records are written when a step completes, so the steps made within e.g.
+ * learnSceneAndMove come before it in the journal, with a greater depth.
+ * Format (integers are zigzag-encoded varints, unless stated):
+ *
+ * <ul>
+ * <li>header: magic 'CHRJ', version (two big-endian ints)</li>
+ * <li>string: 0, id, length, UTF-8 bytes -- defines a string before first use</li>
+ * <li>recogniseAndLearn: 1, depth, time, 1 if learning was tried else 0, pattern, node, clock</li>
+ * <li>associateAndLearn: 2, depth, time, pattern, pattern, node, associated node, clock</li>
+ * <li>learnAndNamePatterns: 3, depth, time, pattern, pattern, named node, naming node, clock</li>
+ * <li>learnSceneAndMove: 4, depth, fixations, height, width, string id for each
+ *     square row by row, move piece id, row, column, action node, number of
+ *     linked nodes, each linked node, clock</li>
+ * <li>recognise: 5, depth, pattern, node</li>
+ * <li>replace visual STM hypothesis: 6, depth, node</li>
+ * <li>constructTemplates: 7, depth, clock</li>
+ * <li>clear: 8, depth</li>
+ * </ul>
+ *
+ * A pattern is its modality, 1 if finished else 0, its size, then for each
+ * item: 0 and a number, 1 and a string id, or 2, an item string id, column
+ * and row.  Nodes are given by reference, with -1 for no node.
+ *
+ * @author Peter C. R. Lane
+ */
+public class LearningJournal implements Closeable {
+  static final int MAGIC = 0x4348524A; // 'CHRJ'
+  static final int VERSION = 2;
+  static final int DEFAULT_CAPACITY = 1 << 20;
+  // longest time, in ms, a record waits before the writer wakes to write it
+  static final long WRITE_INTERVAL = 100;
+
+  static final int STRING = 0;
+  static final int RECOGNISE_AND_LEARN = 1;
+  static final int ASSOCIATE_AND_LEARN = 2;
+  static final int LEARN_AND_NAME_PATTERNS = 3;
+  static final int LEARN_SCENE_AND_MOVE = 4;
+  static final int RECOGNISE = 5;
+  static final int REPLACE_HYPOTHESIS = 6;
+  static final int CONSTRUCT_TEMPLATES = 7;
+  static final int CLEAR = 8;
+
+  static final int NO_NODE = -1;
+
+  private final OutputStream _output;
+  private final FileOutputStream _file; // null unless writing to a file
+  private final Thread _writer;
+  // ring buffer: bytes from _tail to _head are waiting to be written
+  private byte[] _buffer;
+  private long _head;
+  private long _tail;
+  private boolean _closed;
+  private IOException _error;
+  private long _records;
+  private long _stalls;
+  private long _dropped;
+  private int _waiters; // number of threads waiting for the writer
+
+  private final Map<String, Integer> _strings;
+  private final Encoder _definitions;
+  private final Encoder _record;
+
+  /**
+   * Create a journal writing to the given file, replacing any existing file.
+   */
+  public LearningJournal (File file) throws IOException {
+    this (new FileOutputStream (file), DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Create a journal writing to the given stream, with a ring buffer of at
+   * least the given number of bytes.  The stream is closed with the journal.
+   */
+  public LearningJournal (OutputStream output, int capacity) throws IOException {
+    _output = new BufferedOutputStream (output, 1 << 16);
+    _file = (output instanceof FileOutputStream ? (FileOutputStream)output : null);
+    DataOutputStream header = new DataOutputStream (_output);
+    header.writeInt (MAGIC);
+    header.writeInt (VERSION);
+
+    _buffer = new byte[Integer.highestOneBit (Math.max (1024, capacity - 1)) << 1];
+    _head = 0;
+    _tail = 0;
+    _closed = false;
+    _error = null;
+    _records = 0;
+    _stalls = 0;
+    _dropped = 0;
+    _waiters = 0;
+    _strings = new HashMap<String, Integer> ();
+    _definitions = new Encoder ();
+    _record = new Encoder ();
+
+    _writer = new Thread (new Runnable () {
+      public void run () {
+        writeRecords ();
+      }
+    }, "chrest-journal-writer");
+    _writer.setDaemon (true);
+    _writer.start ();
+  }
+
+  /**
+   * Number of records made, including any not yet written.
+   */
+  public synchronized long getRecords () {
+    return _records;
+  }
+
+  /**
+   * Number of times a record had to wait for space in the ring buffer.
+   */
+  public synchronized long getStalls () {
+    return _stalls;
+  }
+
+  /**
+   * Number of records dropped because writing had failed.
+   */
+  public synchronized long getDropped () {
+    return _dropped;
+  }
+
+  /**
+   * Wait until all records made so far have been written out.
+   * Throws IOException if writing has failed.
+   */
+  public synchronized void flush () throws IOException {
+    while (_tail < _head && _error == null) {
+      waitForWriter ();
+    }
+    if (_error != null) throw _error;
+  }
+
+  /**
+   * Wait until all records made so far have been written out and, if the
+   * journal is writing to a file, forced to disk, so they survive a crash
+   * of the machine.  Throws IOException if writing has failed.
+   */
+  public void sync () throws IOException {
+    flush ();
+    // the writer flushes its stream before marking records written
+    if (_file != null) _file.getFD().sync ();
+  }
+
+  /**
+   * Write out all records, stop the writer and close the stream.
+   * Throws IOException if any record could not be written.
+   */
+  public void close () throws IOException {
+    synchronized (this) {
+      if (_closed) return;
+      _closed = true;
+      notifyAll ();
+    }
+    try {
+      _writer.join ();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt ();
+    }
+    try {
+      _output.close ();
+    } catch (IOException ioe) {
+      if (_error == null) _error = ioe;
+    }
+    if (_error != null) throw _error;
+  }
+
+  // -- making records, called by the model
+
+  synchronized void recordRecognise (int depth, ListPattern pattern, Node node) {
+    startRecord (RECOGNISE, depth);
+    writePattern (pattern);
+    writeNode (node);
+    append ();
+  }
+
+  synchronized void recordReplaceHypothesis (int depth, Node node) {
+    startRecord (REPLACE_HYPOTHESIS, depth);
+    writeNode (node);
+    append ();
+  }
+
+  synchronized void recordConstructTemplates (int depth, int clock) {
+    startRecord (CONSTRUCT_TEMPLATES, depth);
+    _record.writeInt (clock);
+    append ();
+  }
+
+  synchronized void recordClear (int depth) {
+    startRecord (CLEAR, depth);
+    append ();
+  }
+
+  synchronized void recordRecogniseAndLearn (int depth, ListPattern pattern, int time, boolean learning,
+      Node node, int clock) {
+    startRecord (RECOGNISE_AND_LEARN, depth);
+    _record.writeInt (time);
+    _record.writeByte (learning ? 1 : 0);
+    writePattern (pattern);
+    writeNode (node);
+    _record.writeInt (clock);
+    append ();
+  }
+
+  synchronized void recordAssociateAndLearn (int depth, ListPattern pattern1, ListPattern pattern2,
+      int time, Node node, int clock) {
+    startRecord (ASSOCIATE_AND_LEARN, depth);
+    _record.writeInt (time);
+    writePattern (pattern1);
+    writePattern (pattern2);
+    writeNode (node);
+    writeNode (node == null ? null : node.getAssociatedNode ());
+    _record.writeInt (clock);
+    append ();
+  }
+
+  synchronized void recordLearnAndNamePatterns (int depth, ListPattern pattern1, ListPattern pattern2,
+      int time, Node namedNode, Node namingNode, int clock) {
+    startRecord (LEARN_AND_NAME_PATTERNS, depth);
+    _record.writeInt (time);
+    writePattern (pattern1);
+    writePattern (pattern2);
+    writeNode (namedNode);
+    writeNode (namingNode);
+    _record.writeInt (clock);
+    append ();
+  }
+
+  synchronized void recordLearnSceneAndMove (int depth, Scene scene, Move move, int numFixations,
+      Node actionNode, List<Node> linkedNodes, int clock) {
+    startRecord (LEARN_SCENE_AND_MOVE, depth);
+    _record.writeInt (numFixations);
+    _record.writeInt (scene.getHeight ());
+    _record.writeInt (scene.getWidth ());
+    for (int row = 0; row < scene.getHeight (); ++row) {
+      for (int col = 0; col < scene.getWidth (); ++col) {
+        writeString (scene.getItem (row, col));
+      }
+    }
+    writeString (move.getPiece ());
+    _record.writeInt (move.getRow ());
+    _record.writeInt (move.getColumn ());
+    writeNode (actionNode);
+    _record.writeInt (linkedNodes.size ());
+    for (Node node : linkedNodes) {
+      writeNode (node);
+    }
+    _record.writeInt (clock);
+    append ();
+  }
+
+  private void startRecord (int type, int depth) {
+    _definitions.reset ();
+    _record.reset ();
+    _record.writeByte (type);
+    _record.writeInt (depth);
+  }
+
+  private void writeNode (Node node) {
+    _record.writeInt (node == null ? NO_NODE : node.getReference ());
+  }
+
+  private void writePattern (ListPattern pattern) {
+    _record.writeByte (pattern.getModality().ordinal ());
+    _record.writeByte (pattern.isFinished () ? 1 : 0);
+    _record.writeInt (pattern.size ());
+    for (PrimitivePattern item : pattern) {
+      if (item instanceof NumberPattern) {
+        _record.writeByte (0);
+        _record.writeInt (((NumberPattern)item).getNumber ());
+      } else if (item instanceof StringPattern) {
+        _record.writeByte (1);
+        writeString (((StringPattern)item).getString ());
+      } else {
+        ItemSquarePattern isp = (ItemSquarePattern)item;
+        _record.writeByte (2);
+        writeString (isp.getItem ());
+        _record.writeInt (isp.getColumn ());
+        _record.writeInt (isp.getRow ());
+      }
+    }
+  }
+
+  // write string as an id, defining the id on first use
+  private void writeString (String string) {
+    Integer id = _strings.get (string);
+    if (id == null) {
+      id = _strings.size ();
+      _strings.put (string, id);
+      _definitions.writeByte (STRING);
+      _definitions.writeInt (id);
+      _definitions.writeString (string);
+    }
+    _record.writeInt (id);
+  }
+
+  // copy the encoded definitions and record into the ring buffer
+  private void append () {
+    int size = _definitions.size () + _record.size ();
+    if (_error != null || _closed) {
+      _dropped += 1;
+      return;
+    }
+    if (size > _buffer.length) { // grow buffer, once it has been emptied
+      while (_tail < _head && _error == null) waitForWriter ();
+      _buffer = new byte[Integer.highestOneBit (size) << 1];
+      _head = 0;
+      _tail = 0;
+    }
+    if (_buffer.length - (_head - _tail) < size) {
+      _stalls += 1;
+      while (_buffer.length - (_head - _tail) < size && _error == null) waitForWriter ();
+    }
+    if (_error != null) {
+      _dropped += 1;
+      return;
+    }
+    boolean wasEmpty = (_head == _tail);
+    copy (_definitions);
+    copy (_record);
+    _records += 1;
+    // wake the writer for the first record after it has emptied the buffer,
+    // so the record is written within WRITE_INTERVAL, and then only once
+    // there is plenty to write, to save switching threads
+    if (wasEmpty || _head - _tail >= _buffer.length / 4) notifyAll ();
+  }
+
+  private void copy (Encoder encoder) {
+    int position = (int)(_head & (_buffer.length - 1));
+    int first = Math.min (encoder.size (), _buffer.length - position);
+    System.arraycopy (encoder.bytes (), 0, _buffer, position, first);
+    System.arraycopy (encoder.bytes (), first, _buffer, 0, encoder.size () - first);
+    _head += encoder.size ();
+  }
+
+  private void waitForWriter () {
+    _waiters += 1;
+    notifyAll ();
+    try {
+      wait ();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt ();
+      if (_error == null) _error = new InterruptedIOException ("Interrupted waiting for journal writer");
+    } finally {
+      _waiters -= 1;
+    }
+  }
+
+  // -- background writer
+
+  private void writeRecords () {
+    while (true) {
+      byte[] buffer;
+      long start, end;
+      synchronized (this) {
+        // wait until there is plenty to write, a record has waited too long,
+        // or another thread is waiting on the writer
+        long deadline = 0;
+        while (!_closed && _waiters == 0 && _head - _tail < _buffer.length / 4) {
+          try {
+            if (_head == _tail) {
+              deadline = 0;
+              wait ();
+            } else {
+              long now = System.currentTimeMillis ();
+              if (deadline == 0) deadline = now + WRITE_INTERVAL;
+              if (now >= deadline) break;
+              wait (deadline - now);
+            }
+          } catch (InterruptedException ie) {
+            // only stops when closed
+          }
+        }
+        if (_error != null) return;
+        if (_tail == _head) {
+          if (_closed) return; // all written
+          notifyAll (); // nothing to write, so release any waiting threads
+          try {
+            wait ();
+          } catch (InterruptedException ie) {
+            // only stops when closed
+          }
+          continue;
+        }
+        buffer = _buffer;
+        start = _tail;
+        end = _head;
+      }
+      try {
+        int position = (int)(start & (buffer.length - 1));
+        int length = (int)(end - start);
+        int first = Math.min (length, buffer.length - position);
+        _output.write (buffer, position, first);
+        _output.write (buffer, 0, length - first);
+        _output.flush ();
+        synchronized (this) {
+          _tail = end;
+          notifyAll ();
+        }
+      } catch (IOException ioe) {
+        synchronized (this) {
+          _error = ioe;
+          _tail = _head;
+          notifyAll ();
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Growable byte array, with zigzag varint encoding of integers.
+   */
+  static class Encoder {
+    private byte[] _bytes = new byte[256];
+    private int _size = 0;
+
+    void reset () {
+      _size = 0;
+    }
+
+    int size () {
+      return _size;
+    }
+
+    byte[] bytes () {
+      return _bytes;
+    }
+
+    void writeByte (int b) {
+      if (_size == _bytes.length) {
+        byte[] bytes = new byte[_bytes.length * 2];
+        System.arraycopy (_bytes, 0, bytes, 0, _size);
+        _bytes = bytes;
+      }
+      _bytes[_size++] = (byte)b;
+    }
+
+    void writeInt (int value) {
+      int zigzag = (value << 1) ^ (value >> 31);
+      while ((zigzag & ~0x7F) != 0) {
+        writeByte ((zigzag & 0x7F) | 0x80);
+        zigzag >>>= 7;
+      }
+      writeByte (zigzag);
+    }
+
+    void writeString (String string) {
+      try {
+        byte[] utf = string.getBytes ("UTF-8");
+        writeInt (utf.length);
+        for (byte b : utf) writeByte (b);
+      } catch (UnsupportedEncodingException uee) {
+        throw new IllegalStateException (uee); // UTF-8 is always supported
+      }
+    }
+  }
+
+  /**
+   * One record read back from a journal.
+   */
+  public static class Record {
+    private final int _type;
+    private final int _depth;
+    private final int _time;
+    private final boolean _learning;
+    private final List<ListPattern> _patterns;
+    private final Scene _scene;
+    private final Move _move;
+    private final int _numFixations;
+    private final int[] _nodes;
+    private final int _clock;
+
+    Record (int type, int depth, int time, boolean learning, List<ListPattern> patterns, Scene scene,
+        Move move, int numFixations, int[] nodes, int clock) {
+      _type = type;
+      _depth = depth;
+      _time = time;
+      _learning = learning;
+      _patterns = patterns;
+      _scene = scene;
+      _move = move;
+      _numFixations = numFixations;
+      _nodes = nodes;
+      _clock = clock;
+    }
+
+    public boolean isRecogniseAndLearn () { return _type == RECOGNISE_AND_LEARN; }
+    public boolean isAssociateAndLearn () { return _type == ASSOCIATE_AND_LEARN; }
+    public boolean isLearnAndNamePatterns () { return _type == LEARN_AND_NAME_PATTERNS; }
+    public boolean isLearnSceneAndMove () { return _type == LEARN_SCENE_AND_MOVE; }
+    public boolean isRecognise () { return _type == RECOGNISE; }
+    public boolean isReplaceHypothesis () { return _type == REPLACE_HYPOTHESIS; }
+    public boolean isConstructTemplates () { return _type == CONSTRUCT_TEMPLATES; }
+    public boolean isClear () { return _type == CLEAR; }
+
+    /**
+     * Depth of nesting: 0 for a step made directly, else 1 more than the step it was made within.
+     */
+    public int getDepth () { return _depth; }
+
+    /**
+     * Time given for the step; not recorded for learnSceneAndMove.
+     */
+    public int getTime () { return _time; }
+
+    /**
+     * For recogniseAndLearn, true if the model tried to learn, i.e. its clock
+     * was not ahead of the time and the random test against rho passed.
+     */
+    public boolean isLearning () { return _learning; }
+
+    public List<ListPattern> getPatterns () { return _patterns; }
+    public Scene getScene () { return _scene; }
+    public Move getMove () { return _move; }
+    public int getNumFixations () { return _numFixations; }
+
+    /**
+     * References of the nodes resulting from the step, in the order given
+     * in the format.  -1 indicates no node.
+     */
+    public int[] getNodes () { return _nodes; }
+
+    /**
+     * Model's clock after the step; not recorded for recognise, replacing
+     * the hypothesis, or clear.
+     */
+    public int getClock () { return _clock; }
+
+    public String toString () {
+      String result;
+      if (isRecognise ()) {
+        result = "recognise " + _patterns.get (0);
+      } else if (isReplaceHypothesis ()) {
+        result = "replace-hypothesis";
+      } else if (isConstructTemplates ()) {
+        result = "construct-templates";
+      } else if (isClear ()) {
+        result = "clear";
+      } else if (isRecogniseAndLearn ()) {
+        result = "recognise-and-learn " + _time + (_learning ? "" : " (not learning)") + " " + _patterns.get (0);
+      } else if (isAssociateAndLearn ()) {
+        result = "associate-and-learn " + _time + " " + _patterns.get (0) + " " + _patterns.get (1);
+      } else if (isLearnAndNamePatterns ()) {
+        result = "learn-and-name-patterns " + _time + " " + _patterns.get (0) + " " + _patterns.get (1);
+      } else {
+        result = "learn-scene-and-move " + _numFixations + " " + _move;
+      }
+      if (_nodes.length > 0) {
+        result += " ->";
+        for (int node : _nodes) {
+          result += " " + node;
+        }
+      }
+      if (_type != RECOGNISE && _type != REPLACE_HYPOTHESIS && _type != CLEAR) {
+        result += " clock " + _clock;
+      }
+      for (int i = 0; i < _depth; ++i) {
+        result = "  " + result;
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Reads records back from a journal.
+   */
+  public static class Reader implements Closeable {
+    private final DataInputStream _input;
+    private final List<String> _strings;
+    private boolean _truncated;
+
+    /**
+     * Throws IOException if the stream does not start with a journal header.
+     */
+    public Reader (InputStream input) throws IOException {
+      _input = new DataInputStream (new BufferedInputStream (input));
+      _strings = new ArrayList<String> ();
+      _truncated = false;
+      try {
+        if (_input.readInt () != MAGIC) throw new IOException ("Not a learning journal");
+        if (_input.readInt () != VERSION) throw new IOException ("Unsupported version of learning journal");
+      } catch (EOFException eofe) {
+        throw new IOException ("Not a learning journal");
+      }
+    }
+
+    /**
+     * True if the journal ended part-way through a record, e.g. because the
+     * program writing it stopped without closing it.
+     */
+    public boolean isTruncated () {
+      return _truncated;
+    }
+
+    /**
+     * Return the next record, or null at the end of the journal.
+     * Throws IOException if the journal is corrupt.
+     */
+    public Record next () throws IOException {
+      while (true) {
+        int type = _input.read ();
+        if (type == -1) return null;
+        try {
+          if (type == STRING) {
+            int id = readInt ();
+            if (id != _strings.size ()) throw new IOException ("Journal string defined out of order");
+            byte[] utf = new byte[readInt ()];
+            _input.readFully (utf);
+            _strings.add (new String (utf, "UTF-8"));
+          } else {
+            return readRecord (type);
+          }
+        } catch (EOFException eofe) {
+          _truncated = true;
+          return null;
+        }
+      }
+    }
+
+    private Record readRecord (int type) throws IOException {
+      int depth = readInt ();
+      List<ListPattern> patterns = new ArrayList<ListPattern> ();
+      if (type == RECOGNISE) {
+        patterns.add (readPattern ());
+        return new Record (type, depth, 0, false, patterns, null, null, 0, new int[]{readInt ()}, 0);
+      } else if (type == REPLACE_HYPOTHESIS) {
+        return new Record (type, depth, 0, false, patterns, null, null, 0, new int[]{readInt ()}, 0);
+      } else if (type == CONSTRUCT_TEMPLATES) {
+        return new Record (type, depth, 0, false, patterns, null, null, 0, new int[0], readInt ());
+      } else if (type == CLEAR) {
+        return new Record (type, depth, 0, false, patterns, null, null, 0, new int[0], 0);
+      } else if (type == RECOGNISE_AND_LEARN) {
+        int time = readInt ();
+        boolean learning = (_input.readUnsignedByte () == 1);
+        patterns.add (readPattern ());
+        int[] nodes = new int[]{readInt ()};
+        return new Record (type, depth, time, learning, patterns, null, null, 0, nodes, readInt ());
+      } else if (type == ASSOCIATE_AND_LEARN || type == LEARN_AND_NAME_PATTERNS) {
+        int time = readInt ();
+        patterns.add (readPattern ());
+        patterns.add (readPattern ());
+        int[] nodes = new int[]{readInt (), readInt ()};
+        return new Record (type, depth, time, false, patterns, null, null, 0, nodes, readInt ());
+      } else if (type == LEARN_SCENE_AND_MOVE) {
+        int numFixations = readInt ();
+        int height = readInt ();
+        int width = readInt ();
+        Scene scene = new Scene ("Journal scene", height, width);
+        for (int row = 0; row < height; ++row) {
+          for (int col = 0; col < width; ++col) {
+            scene.setItem (row, col, readString ());
+          }
+        }
+        String piece = readString ();
+        int row = readInt ();
+        Move move = new Move (piece, row, readInt ());
+        int actionNode = readInt ();
+        int[] nodes = new int[1 + readInt ()];
+        nodes[0] = actionNode;
+        for (int i = 1; i < nodes.length; ++i) {
+          nodes[i] = readInt ();
+        }
+        return new Record (type, depth, 0, false, patterns, scene, move, numFixations, nodes, readInt ());
+      } else {
+        throw new IOException ("Unknown journal record type: " + type);
+      }
+    }
+
+    private ListPattern readPattern () throws IOException {
+      int modality = _input.readUnsignedByte ();
+      if (modality >= Modality.values().length) throw new IOException ("Unknown modality in journal");
+      ListPattern pattern = new ListPattern (Modality.values()[modality]);
+      boolean finished = (_input.readUnsignedByte () == 1);
+      int size = readInt ();
+      for (int i = 0; i < size; ++i) {
+        int kind = _input.readUnsignedByte ();
+        if (kind == 0) {
+          pattern.add (NumberPattern.create (readInt ()));
+        } else if (kind == 1) {
+          pattern.add (StringPattern.create (readString ()));
+        } else if (kind == 2) {
+          String item = readString ();
+          int column = readInt ();
+          pattern.add (new ItemSquarePattern (item, column, readInt ()));
+        } else {
+          throw new IOException ("Unknown pattern item in journal");
+        }
+      }
+      if (finished) pattern.setFinished ();
+      return pattern;
+    }
+
+    private String readString () throws IOException {
+      int id = readInt ();
+      if (id < 0 || id >= _strings.size ()) throw new IOException ("Undefined string in journal");
+      return _strings.get (id);
+    }
+
+    private int readInt () throws IOException {
+      int zigzag = 0;
+      for (int shift = 0; shift < 35; shift += 7) {
+        int b = _input.readUnsignedByte ();
+        zigzag |= (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+      }
+      throw new IOException ("Malformed integer in journal");
+    }
+
+    public void close () throws IOException {
+      _input.close ();
+    }
+  }
+
+  /**
+   * Print the records of a journal, one per line.
+   * Usage: LearningJournal journal-file
+   */
+  public static void main (String[] args) {
+    if (args.length != 1) {
+      System.err.println ("Usage: jchrest.architecture.LearningJournal journal-file");
+      System.exit (1);
+    }
+    try {
+      Reader reader = new Reader (new FileInputStream (args[0]));
+      try {
+        Record record;
+        while ((record = reader.next ()) != null) {
+          System.out.println (record);
+        }
+        if (reader.isTruncated ()) System.out.println ("(journal ends part-way through a record)");
+      } finally {
+        reader.close ();
+      }
+    } catch (IOException ioe) {
+      System.err.println ("Error reading " + args[0] + ": " + ioe.getMessage ());
+      System.exit (1);
+    }
+  }
+}
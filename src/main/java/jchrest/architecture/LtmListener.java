@@ -0,0 +1,42 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.architecture;
+
+/**
+ * Receives each change to a model's long-term memory, as it is made.  Unlike
+ * the model's observers, which learn only that the model has changed, a
+ * listener is told which nodes changed, so a view of LTM can update just
+ * those nodes.  Methods are called on the thread changing the model, so
+ * should return quickly, e.g. by noting the change for later.
+ *
+ * @author Peter C. R. Lane
+ */
+public interface LtmListener {
+  /**
+   * A new node has been added below the given parent, by a test link.
+   */
+  public void nodeAdded (Node parent, Node child);
+
+  /**
+   * The image of the node has changed.
+   */
+  public void imageChanged (Node node);
+
+  /**
+   * A semantic, associative, naming or action link has been made from the
+   * node.
+   */
+  public void linkAdded (Node node);
+
+  /**
+   * A node shared with a fork of the model has been replaced, in this
+   * model's LTM, by the model's own copy, which is about to be changed.
+   */
+  public void nodeReplaced (Node original, Node copy);
+
+  /**
+   * All of long-term memory has been cleared.
+   */
+  public void ltmCleared ();
+}
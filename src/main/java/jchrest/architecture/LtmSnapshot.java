@@ -0,0 +1,434 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.architecture;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import jchrest.lib.ListPattern;
+import jchrest.lib.Move;
+import jchrest.lib.Scene;
+
+/**
+ * An unchanging copy of a model's long-term memory at one moment, which any
+ * number of threads may read, without locking, while the model carries on
+ * learning.  Snapshots are taken using {@link Chrest#takeLtmSnapshot}.
+ *
+ * Each snapshot shares all it can with the one before: only nodes changed
+ * since then, and the nodes on the path down to them, are copied, so the
+ * cost of a snapshot follows the amount learnt since the last one.  Nodes
+ * are also indexed by reference, in a 32-way tree which is copied in the
+ * same way.
+ *
+ * The nodes of a snapshot are copies of the model's nodes, with images,
+ * test links and template slots, and must only be read.  Semantic, naming,
+ * association and action links may lead to nodes changed since, so are
+ * given by this class: e.g. see getSemanticLinks.
+ *
+ * @author Peter C. R. Lane
+ */
+public class LtmSnapshot {
+  static final int BITS = 5;
+  static final int WIDTH = 1 << BITS;
+  static final int MASK = WIDTH - 1;
+
+  private final Chrest _model;
+  private final int _clock;
+  private final int _totalNodes;
+  private final int _maximumSemanticDistance;
+  private final Entry _visualLtm;
+  private final Entry _verbalLtm;
+  private final Entry _actionLtm;
+  // index of non-root nodes by reference: arrays nested to _shift / BITS levels
+  private final Object[] _index;
+  private final int _shift;
+
+  /**
+   * Take a snapshot of the model's LTM, sharing what has not changed with
+   * the previous snapshot, if not null.
+   */
+  LtmSnapshot (Chrest model, LtmSnapshot previous) {
+    Builder builder = (previous == null ? new Builder () : new Builder (previous));
+    _model = model;
+    _clock = model.getClock ();
+    _totalNodes = model.getTotalLtmNodes ();
+    _maximumSemanticDistance = model.getMaximumSemanticDistance ();
+    _visualLtm = copyRoot (model.getVisualLtm (), previous == null ? null : previous._visualLtm, builder);
+    _verbalLtm = copyRoot (model.getVerbalLtm (), previous == null ? null : previous._verbalLtm, builder);
+    _actionLtm = copyRoot (model.getActionLtm (), previous == null ? null : previous._actionLtm, builder);
+    _index = builder._root;
+    _shift = builder._shift;
+  }
+
+  /**
+   * The model this is a snapshot of.
+   */
+  public Chrest getModel () {
+    return _model;
+  }
+
+  /**
+   * Model's clock when the snapshot was taken.
+   */
+  public int getClock () {
+    return _clock;
+  }
+
+  public int getTotalLtmNodes () {
+    return _totalNodes;
+  }
+
+  public Node getVisualLtm () {
+    return _visualLtm.node;
+  }
+
+  public Node getVerbalLtm () {
+    return _verbalLtm.node;
+  }
+
+  public Node getActionLtm () {
+    return _actionLtm.node;
+  }
+
+  /**
+   * Return the root node which the given pattern would be sorted through.
+   */
+  public Node getLtmByModality (ListPattern pattern) {
+    return getRootEntry(pattern).node;
+  }
+
+  /**
+   * Return the non-root node with the given reference, or null if there is none.
+   */
+  public Node getNode (int reference) {
+    Entry entry = getEntry (reference);
+    return (entry == null ? null : entry.node);
+  }
+
+  /**
+   * Sort the given pattern through the snapshot and return the retrieved
+   * node, after searching its semantic links, as in Chrest#recognise.
+   * Nothing is placed in STM.
+   */
+  public Node sortPattern (ListPattern pattern) {
+    Node currentNode = getLtmByModality (pattern);
+    List<Link> children = currentNode.getChildren ();
+    ListPattern sortedPattern = pattern;
+    int nextLink = 0;
+    int linkTests = 0;
+    int depth = 0;
+
+    while (nextLink < children.size ()) {
+      Link link = children.get (nextLink);
+      linkTests += 1;
+      if (link.passes (sortedPattern)) {
+        depth += 1;
+        currentNode = link.getChildNode ();
+        children = currentNode.getChildren ();
+        nextLink = 0;
+        sortedPattern = sortedPattern.remove (link.getTest ());
+      } else {
+        nextLink += 1;
+      }
+    }
+    _model.getMetrics().recordSort (linkTests, depth);
+
+    return searchSemanticLinks (currentNode, _maximumSemanticDistance);
+  }
+
+  /**
+   * As Node#searchSemanticLinks, but following this snapshot's semantic links.
+   */
+  private Node searchSemanticLinks (Node node, int maximumSemanticDistance) {
+    if (maximumSemanticDistance <= 0) return node;
+    List<Node> links = getSemanticLinks (node);
+    _model.getMetrics().recordSemanticLinkHops (links.size ());
+    Node bestNode = node;
+    for (Node compare : links) {
+      Node bestChild = searchSemanticLinks (compare, maximumSemanticDistance - 1);
+      if (bestChild.information () > bestNode.information ()) {
+        bestNode = bestChild;
+      }
+    }
+    return bestNode;
+  }
+
+  /**
+   * Return the image of the node retrieved for the given pattern.
+   */
+  public ListPattern recallPattern (ListPattern pattern) {
+    return sortPattern(pattern).getImage ();
+  }
+
+  /**
+   * Return the image of the node associated with the node retrieved for the
+   * given pattern, or null if there is none.
+   */
+  public ListPattern associatePattern (ListPattern pattern) {
+    Node node = getAssociatedNode (sortPattern (pattern));
+    return (node == null ? null : node.getImage ());
+  }
+
+  /**
+   * Return the image of the node naming the node retrieved for the given
+   * pattern, or null if there is none.
+   */
+  public ListPattern namePattern (ListPattern pattern) {
+    Node node = getNamedBy (sortPattern (pattern));
+    return (node == null ? null : node.getImage ());
+  }
+
+  public List<Node> getSemanticLinks (Node node) {
+    Entry entry = getEntry (node);
+    return (entry == null ? Collections.<Node>emptyList () : resolve (entry.semanticLinks, _visualLtm));
+  }
+
+  public Node getAssociatedNode (Node node) {
+    Entry entry = getEntry (node);
+    return (entry == null ? null : resolve (entry.associatedNode, getRootEntry (node.getContents ())));
+  }
+
+  public Node getNamedBy (Node node) {
+    Entry entry = getEntry (node);
+    return (entry == null ? null : resolve (entry.namedBy, _verbalLtm));
+  }
+
+  public List<Node> getActionLinks (Node node) {
+    Entry entry = getEntry (node);
+    return (entry == null ? Collections.<Node>emptyList () : resolve (entry.actionLinks, _actionLtm));
+  }
+
+  /**
+   * Number of times the link from the node to the given action node had 
+   * been made, or 0 if there is no such link.
+   */
+  public int getActionLinkCount (Node node, Node action) {
+    Entry entry = getEntry (node);
+    if (entry == null) return 0;
+    for (int i = 0; i < entry.actionLinks.length; ++i) {
+      if (entry.actionLinks[i] == action.getReference ()) return entry.actionCounts[i];
+    }
+    return 0;
+  }
+
+  /**
+   * Predict a move for the scene, as Chrest#predictMove, but scanning with 
+   * a perceiver and visual STM of its own, so any number of threads may 
+   * predict at once.  All the action links of the nodes in STM are counted.
+   */
+  public Move predictMove (Scene scene, int numFixations) {
+    RecallEvaluator.LocalPerceiver perceiver = new RecallEvaluator.LocalPerceiver (_model, this);
+    perceiver.scan (scene, numFixations);
+    Map<ListPattern, Integer> moveFrequencies = new HashMap<ListPattern, Integer> ();
+    ListPattern best = null;
+    int bestFrequency = 0;
+    for (Node node : perceiver.getVisualStm ()) {
+      Entry entry = getEntry (node);
+      if (entry == null) continue;
+      for (int i = 0; i < entry.actionLinks.length; ++i) {
+        ListPattern move = resolve(entry.actionLinks[i], _actionLtm).getImage ();
+        Integer frequency = moveFrequencies.get (move);
+        frequency = (frequency == null ? 0 : frequency) + entry.actionCounts[i];
+        moveFrequencies.put (move, frequency);
+        if (frequency > bestFrequency) {
+          best = move;
+          bestFrequency = frequency;
+        }
+      }
+    }
+    return Chrest.asMove (best);
+  }
+
+  private Entry getRootEntry (ListPattern pattern) {
+    if (pattern.isVisual ()) {
+      return _visualLtm;
+    } else if (pattern.isVerbal ()) {
+      return _verbalLtm;
+    } else {
+      return _actionLtm;
+    }
+  }
+
+  private Entry getEntry (Node node) {
+    if (node.getReference () == 0) {
+      Entry root = getRootEntry (node.getContents ());
+      return (root.node == node ? root : null);
+    } else {
+      Entry entry = getEntry (node.getReference ());
+      return (entry != null && entry.node == node ? entry : null);
+    }
+  }
+
+  private Entry getEntry (int reference) {
+    if (reference < 1 || reference > _totalNodes) return null;
+    return (Entry)lookup (_index, _shift, reference);
+  }
+
+  // resolve a link by reference: links to a root give the reference 0
+  private Node resolve (int reference, Entry root) {
+    if (reference == LearningJournal.NO_NODE) return null;
+    return (reference == 0 ? root.node : getNode (reference));
+  }
+
+  private List<Node> resolve (int[] references, Entry root) {
+    List<Node> nodes = new ArrayList<Node> (references.length);
+    for (int reference : references) {
+      nodes.add (resolve (reference, root));
+    }
+    return nodes;
+  }
+
+  private static Object lookup (Object[] root, int shift, int reference) {
+    if ((reference >>> shift) >= WIDTH) return null;
+    Object[] array = root;
+    for (int level = shift; level > 0; level -= BITS) {
+      array = (Object[])array[(reference >>> level) & MASK];
+      if (array == null) return null;
+    }
+    return array[reference & MASK];
+  }
+
+  // -- taking a snapshot
+
+  private static Entry copyRoot (Node root, Entry previous, Builder builder) {
+    Node copy = copy (root, previous, builder);
+    return (previous != null && previous.node == copy ? previous : new Entry (copy, root));
+  }
+
+  /**
+   * Return the copy of the given node in the new snapshot: its copy in the
+   * previous snapshot, if neither it nor anything below it has changed,
+   * otherwise a new copy.
+   */
+  private static Node copy (Node node, Entry previousEntry, Builder builder) {
+    Node previous = (previousEntry == null ? null : previousEntry.node);
+    if (previous != null && !node.hasSubtreeChangedSinceSnapshot ()) return previous;
+    // nodes shared with a fork of the model never change, nor do the nodes below them
+    if (previous != null && previousEntry.shared && previousEntry.source == node) return previous;
+
+    List<Link> links = node.getChildren ();
+    List<Link> children = new ArrayList<Link> (links.size ());
+    // the old copy can be kept if the node is unchanged, and so are the copies of its children
+    boolean unchanged = (previous != null && !node.hasChangedSinceSnapshot () &&
+        previous.getChildren().size () == links.size ());
+    for (int i = 0; i < links.size (); ++i) {
+      Link link = links.get (i);
+      Node child = copy (link.getChildNode (), builder.get (link.getChildNode().getReference ()), builder);
+      children.add (new Link (link.getTest (), child));
+      if (unchanged && previous.getChildren().get(i).getChildNode () != child) unchanged = false;
+    }
+    // a shared node may be in snapshots of both models, so is left as it is
+    if (!node.isShared ()) node.clearChangesSinceSnapshot ();
+    if (unchanged) return previous;
+
+    Node result = new Node (node, children);
+    if (node.getReference () != 0) {
+      builder.set (node.getReference (), new Entry (result, node));
+    }
+    return result;
+  }
+
+  /**
+   * A node in a snapshot, with its links to other nodes given by reference,
+   * and the node of the model it is a copy of.
+   */
+  static final class Entry {
+    final Node node;
+    final Node source;
+    final boolean shared;
+    final int[] semanticLinks;
+    final int associatedNode;
+    final int namedBy;
+    final int[] actionLinks;
+    final int[] actionCounts;
+
+    Entry (Node copy, Node node) {
+      this.node = copy;
+      source = node;
+      shared = node.isShared ();
+      semanticLinks = references (node.getSemanticLinks ());
+      associatedNode = reference (node.getAssociatedNode ());
+      namedBy = reference (node.getNamedBy ());
+      actionLinks = references (node.getActionLinks ());
+      actionCounts = new int[actionLinks.length];
+      for (int i = 0; i < actionCounts.length; ++i) {
+        actionCounts[i] = node.getActionLinkCount (i);
+      }
+    }
+
+    private static int reference (Node node) {
+      return (node == null ? LearningJournal.NO_NODE : node.getReference ());
+    }
+
+    private static int[] references (List<Node> nodes) {
+      int[] references = new int[nodes.size ()];
+      for (int i = 0; i < references.length; ++i) {
+        references[i] = nodes.get(i).getReference ();
+      }
+      return references;
+    }
+  }
+
+  /**
+   * Builds the index of a new snapshot, copying each array of the previous
+   * index the first time it is changed.
+   */
+  private static final class Builder {
+    private Object[] _root;
+    private int _shift;
+    private final Set<Object[]> _copied;
+
+    Builder () {
+      _copied = Collections.newSetFromMap (new IdentityHashMap<Object[], Boolean> ());
+      _root = newArray ();
+      _shift = 0;
+    }
+
+    Builder (LtmSnapshot previous) {
+      _copied = Collections.newSetFromMap (new IdentityHashMap<Object[], Boolean> ());
+      _root = previous._index;
+      _shift = previous._shift;
+    }
+
+    Entry get (int reference) {
+      return (Entry)lookup (_root, _shift, reference);
+    }
+
+    void set (int reference, Entry entry) {
+      while ((reference >>> _shift) >= WIDTH) { // grow by a level
+        Object[] root = newArray ();
+        root[0] = _root;
+        _root = root;
+        _shift += BITS;
+      }
+      _root = writable (_root);
+      Object[] array = _root;
+      for (int level = _shift; level > 0; level -= BITS) {
+        int i = (reference >>> level) & MASK;
+        Object[] child = (array[i] == null ? newArray () : writable ((Object[])array[i]));
+        array[i] = child;
+        array = child;
+      }
+      array[reference & MASK] = entry;
+    }
+
+    private Object[] newArray () {
+      Object[] array = new Object[WIDTH];
+      _copied.add (array);
+      return array;
+    }
+
+    private Object[] writable (Object[] array) {
+      if (_copied.contains (array)) return array;
+      Object[] copy = array.clone ();
+      _copied.add (copy);
+      return copy;
+    }
+  }
+}
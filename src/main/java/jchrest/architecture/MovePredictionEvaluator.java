@@ -0,0 +1,292 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.architecture;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jchrest.lib.ListPattern;
+import jchrest.lib.Move;
+import jchrest.lib.Scenes;
+
+/**
+ * Evaluate the moves predicted for a set of scenes, each with the move
+ * played by an expert, using several threads at once.  Moves are predicted
+ * as by {@link Chrest#predictMove}, and ranked by frequency: a scene counts
+ * towards top-k accuracy if the expert's move is among the k most frequent.
+ * Accuracy is also given separately for the moves of each colour.
+ *
+ * Each thread has its own perceiver and visual STM, as in a
+ * {@link RecallEvaluator}, and all threads share the model's long-term
+ * memory, which is only read: the model must not learn while an evaluation
+ * is running.  As there, no semantic links are formed while scanning a
+ * scene, so predictions may differ a little from those of predictMove.
+ *
+ * @author Peter C. R. Lane
+ */
+public class MovePredictionEvaluator {
+  private final Chrest _model;
+  private final int _numFixations;
+  private final int _numThreads;
+  private long _seed;
+
+  /**
+   * Constructor uses one thread for each available processor.
+   */
+  public MovePredictionEvaluator (Chrest model, int numFixations) {
+    this (model, numFixations, Runtime.getRuntime().availableProcessors ());
+  }
+
+  public MovePredictionEvaluator (Chrest model, int numFixations, int numThreads) {
+    _model = model;
+    _numFixations = numFixations;
+    _numThreads = Math.max (1, numThreads);
+    _seed = 0;
+  }
+
+  /**
+   * Seed the random numbers used to choose fixations.  Each scene is
+   * scanned with the seed plus its position, so the results do not depend
+   * on the number of threads.
+   */
+  public void setRandomSeed (long seed) {
+    _seed = seed;
+  }
+
+  /**
+   * Predict the move for every scene, and compare it with the scene's move.
+   * Throws IllegalArgumentException if the scenes have no moves, and
+   * InterruptedException if the calling thread is interrupted, in which
+   * case the workers are stopped.
+   */
+  public Results evaluate (final Scenes scenes) throws InterruptedException {
+    if (!scenes.haveMoves ()) {
+      throw new IllegalArgumentException ("Scenes have no moves to predict");
+    }
+    final Results results = new Results (scenes.size ());
+    final AtomicInteger nextScene = new AtomicInteger (0);
+    final AtomicInteger completed = new AtomicInteger (0);
+
+    ExecutorService pool = Executors.newFixedThreadPool (_numThreads);
+    try {
+      List<Future<Void>> workers = new ArrayList<Future<Void>> ();
+      for (int i = 0; i < _numThreads; ++i) {
+        workers.add (pool.submit (new Callable<Void> () {
+          public Void call () {
+            RecallEvaluator.LocalPerceiver perceiver = new RecallEvaluator.LocalPerceiver (_model, null);
+            int index;
+            while ((index = nextScene.getAndIncrement ()) < scenes.size () &&
+                !Thread.currentThread().isInterrupted ()) {
+              perceiver.setRandomSeed (_seed + index);
+              perceiver.scan (scenes.get (index), _numFixations);
+              List<ListPattern> moves = rankMoves (Chrest.getMoveFrequencies (perceiver.getVisualStm (), null));
+              // each worker writes only the entries of its own scenes
+              results.set (index, moves, scenes.getMove (index), getColour (scenes.getMove (index)));
+              progress (completed.incrementAndGet (), scenes.size ());
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> worker : workers) {
+        worker.get ();
+      }
+      return results;
+    } catch (ExecutionException ee) {
+      throw new RuntimeException (ee.getCause ());
+    } finally {
+      pool.shutdownNow ();
+    }
+  }
+
+  /**
+   * Colour of the side making the given move, under which its scene is
+   * counted.  By default, follows the chess convention: upper-case pieces
+   * are white, and lower-case pieces black.
+   */
+  protected String getColour (Move move) {
+    String piece = move.getPiece ();
+    if (piece.isEmpty () || !Character.isLetter (piece.charAt (0))) {
+      return "other";
+    } else if (Character.isUpperCase (piece.charAt (0))) {
+      return "white";
+    } else {
+      return "black";
+    }
+  }
+
+  /**
+   * Called from the worker threads each time a scene has been evaluated.
+   * Override to display progress: by default, does nothing.
+   */
+  protected void progress (int completed, int total) {
+  }
+
+  /**
+   * Order the moves from most to least frequent.  The sort is stable, so
+   * the first move is the one predictMove would choose.
+   */
+  private static List<ListPattern> rankMoves (final Map<ListPattern, Integer> moveFrequencies) {
+    List<ListPattern> moves = new ArrayList<ListPattern> (moveFrequencies.keySet ());
+    Collections.sort (moves, new Comparator<ListPattern> () {
+      public int compare (ListPattern move1, ListPattern move2) {
+        return moveFrequencies.get(move2).compareTo (moveFrequencies.get (move1));
+      }
+    });
+    return moves;
+  }
+
+  private static boolean sameMove (Move move1, Move move2) {
+    return move1.getPiece().equals (move2.getPiece ()) &&
+      move1.getRow () == move2.getRow () &&
+      move1.getColumn () == move2.getColumn ();
+  }
+
+  /**
+   * Holds the outcome of an evaluation.
+   */
+  public static class Results {
+    private final Move[] _predictedMoves;
+    private final int[] _ranks;
+    private final String[] _colours;
+
+    Results (int size) {
+      _predictedMoves = new Move[size];
+      _ranks = new int[size];
+      _colours = new String[size];
+    }
+
+    void set (int index, List<ListPattern> moves, Move move, String colour) {
+      _predictedMoves[index] = Chrest.asMove (moves.isEmpty () ? null : moves.get (0));
+      _ranks[index] = 0;
+      for (int i = 0; i < moves.size (); ++i) {
+        if (sameMove (Chrest.asMove (moves.get (i)), move)) {
+          _ranks[index] = i + 1;
+          break;
+        }
+      }
+      _colours[index] = colour;
+    }
+
+    /**
+     * The most frequent move predicted for each scene, in the same order as
+     * the evaluated scenes.  Entries are null for scenes not evaluated, if
+     * the evaluation was interrupted.
+     */
+    public Move[] getPredictedMoves () {
+      return _predictedMoves;
+    }
+
+    /**
+     * Position of the scene's move among the moves predicted for the i'th
+     * scene, from 1 for the most frequent, or 0 if it was not predicted.
+     */
+    public int getRank (int i) {
+      return _ranks[i];
+    }
+
+    /**
+     * Colours of the moves of the scenes evaluated.
+     */
+    public SortedSet<String> getColours () {
+      SortedSet<String> colours = new TreeSet<String> ();
+      for (String colour : _colours) {
+        if (colour != null) colours.add (colour);
+      }
+      return colours;
+    }
+
+    /**
+     * Number of scenes evaluated.
+     */
+    public int getCount () {
+      return getCount (null);
+    }
+
+    /**
+     * Number of scenes evaluated whose move is of the given colour, or of
+     * any colour if null.
+     */
+    public int getCount (String colour) {
+      int count = 0;
+      for (int i = 0; i < _colours.length; ++i) {
+        if (counts (i, colour)) count += 1;
+      }
+      return count;
+    }
+
+    /**
+     * Number of scenes whose move is among the k most frequent predicted.
+     */
+    public int getCorrect (int k) {
+      return getCorrect (null, k);
+    }
+
+    /**
+     * Number of scenes whose move is of the given colour, or of any colour
+     * if null, and among the k most frequent predicted.
+     */
+    public int getCorrect (String colour, int k) {
+      int correct = 0;
+      for (int i = 0; i < _colours.length; ++i) {
+        if (counts (i, colour) && _ranks[i] > 0 && _ranks[i] <= k) correct += 1;
+      }
+      return correct;
+    }
+
+    /**
+     * Proportion of scenes whose move is among the k most frequent predicted.
+     */
+    public double getAccuracy (int k) {
+      return getAccuracy (null, k);
+    }
+
+    /**
+     * Proportion of scenes with moves of the given colour, or of any colour
+     * if null, whose move is among the k most frequent predicted.
+     */
+    public double getAccuracy (String colour, int k) {
+      int count = getCount (colour);
+      return (count == 0 ? 0.0 : (double)getCorrect (colour, k) / count);
+    }
+
+    /**
+     * Summary of the top-1 and top-k accuracy, over all scenes and for
+     * each colour, one line each.
+     */
+    public String getReport (int k) {
+      StringBuilder report = new StringBuilder ();
+      report.append (reportLine ("all", null, k));
+      for (String colour : getColours ()) {
+        report.append (reportLine (colour, colour, k));
+      }
+      return report.toString ();
+    }
+
+    public String toString () {
+      return getReport (Node.TOP_ACTION_LINKS);
+    }
+
+    private String reportLine (String name, String colour, int k) {
+      return name + ": Scenes: " + getCount (colour) +
+        " Top-1: " + getAccuracy (colour, 1) +
+        " Top-" + k + ": " + getAccuracy (colour, k) + "\n";
+    }
+
+    private boolean counts (int i, String colour) {
+      return _colours[i] != null && (colour == null || colour.equals (_colours[i]));
+    }
+  }
+}
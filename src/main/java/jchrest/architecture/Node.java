@@ -6,6 +6,7 @@ package jchrest.architecture;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,6 +27,12 @@ import jchrest.lib.PrimitivePattern;
  */
 public class Node extends Observable {
 
+  /**
+   * Number of strongest action links indexed by each node.
+   */
+  public static final int TOP_ACTION_LINKS = 5;
+  private static final int[] NO_COUNTS = new int[0];
+
   /**
    * Constructor to construct a new root node for the model.  
    */
@@ -39,6 +46,7 @@ public class Node extends Observable {
    */
   public Node (Chrest model, ListPattern contents, ListPattern image) {
     this (model, model.getNextNodeNumber (), contents, image);
+    model.addNode (this);
   }
 
   /**
@@ -47,6 +55,7 @@ public class Node extends Observable {
    */
   Node (Chrest model, int reference, ListPattern contents, ListPattern image) {
     _model = model;
+    _generation = model.getGeneration ();
     _reference = reference;
     _contents = contents.clone ();
     _image = image;
@@ -55,6 +64,72 @@ public class Node extends Observable {
     _associatedNode = null;
     _namedBy = null;
     _actionLinks = new ArrayList<Node> ();
+    _actionCounts = NO_COUNTS;
+    _actionIndex = null;
+    _topActions = NO_COUNTS;
+    _parent = null;
+    _changedSinceSnapshot = true;
+    _subtreeChangedSinceSnapshot = true;
+  }
+
+  /**
+   * Construct an unchanging copy of the given node for an {@link LtmSnapshot},
+   * with the given test links.  The copy's semantic, naming, association and
+   * action links are left empty, as they are held by the snapshot.
+   */
+  Node (Node node, List<Link> children) {
+    _model = node._model;
+    _generation = -1; // never changed, so always treated as shared
+    _reference = node._reference;
+    _contents = node._contents;
+    _image = node._image;
+    _children = children;
+    _semanticLinks = new ArrayList<Node> (0);
+    _associatedNode = null;
+    _namedBy = null;
+    _actionLinks = new ArrayList<Node> (0);
+    _actionCounts = NO_COUNTS;
+    _actionIndex = null;
+    _topActions = NO_COUNTS;
+    if (node.isTemplate ()) {
+      _itemSlots = new ArrayList<ItemSquarePattern> (node._itemSlots);
+      _positionSlots = new ArrayList<ItemSquarePattern> (node._positionSlots);
+    }
+    _parent = null;
+    _changedSinceSnapshot = false;
+    _subtreeChangedSinceSnapshot = false;
+  }
+
+  /**
+   * Construct the given model's own copy of a node it shares with a fork,
+   * below the given parent; see {@link Chrest#fork}.  Links to other nodes
+   * are kept, and followed to the model's current copies when read.
+   */
+  Node (Chrest model, Node node, Node parent) {
+    _model = model;
+    _generation = model.getGeneration ();
+    _reference = node._reference;
+    _contents = node._contents;
+    _image = node._image;
+    _children = new ArrayList<Link> (node._children);
+    _semanticLinks = new ArrayList<Node> (node._semanticLinks);
+    _associatedNode = node._associatedNode;
+    _namedBy = node._namedBy;
+    _actionLinks = new ArrayList<Node> (node._actionLinks);
+    _actionCounts = node._actionCounts.clone ();
+    _actionIndex = (node._actionIndex == null ? null : new HashMap<Integer, Integer> (node._actionIndex));
+    _topActions = node._topActions.clone ();
+    _itemSlots = copy (node._itemSlots);
+    _positionSlots = copy (node._positionSlots);
+    _filledItemSlots = copy (node._filledItemSlots);
+    _filledPositionSlots = copy (node._filledPositionSlots);
+    _parent = parent;
+    _changedSinceSnapshot = true;
+    _subtreeChangedSinceSnapshot = true;
+  }
+
+  private static List<ItemSquarePattern> copy (List<ItemSquarePattern> slots) {
+    return (slots == null ? null : new ArrayList<ItemSquarePattern> (slots));
   }
 
   /**
@@ -96,6 +171,8 @@ public class Node extends Observable {
    */
   public void setImage (ListPattern image) {
     _image = image;
+    changedSinceSnapshot ();
+    _model.fireImageChanged (this);
     setChanged ();
     notifyObservers ();
   }
@@ -112,6 +189,9 @@ public class Node extends Observable {
    */
   void addTestLink (ListPattern test, Node child) {
     _children.add (0, new Link (test, child));
+    child._parent = this;
+    changedSinceSnapshot ();
+    _model.fireNodeAdded (this, child);
     setChanged ();
     notifyObservers ();
   }
@@ -120,8 +200,10 @@ public class Node extends Observable {
    * Make a semantic link between this node and given node.  Do not add duplicates.
    */
   void addSemanticLink (Node node) {
-    if (!_semanticLinks.contains (node)) {
+    if (!getSemanticLinks().contains (node)) {
       _semanticLinks.add (node);
+      changedSinceSnapshot ();
+      _model.fireLinkAdded (this);
       setChanged ();
       notifyObservers ();
     }
@@ -131,14 +213,14 @@ public class Node extends Observable {
    * Accessor to list of semantic links.
    */
   public List<Node> getSemanticLinks () {
-    return _semanticLinks;
+    return current (_semanticLinks);
   }
 
   /**
    * Accessor to node that is associated with this node.
    */
   public Node getAssociatedNode () {
-    return _associatedNode;
+    return current (_associatedNode);
   }
 
   /**
@@ -146,6 +228,8 @@ public class Node extends Observable {
    */
   public void setAssociatedNode (Node node) {
     _associatedNode = node;
+    changedSinceSnapshot ();
+    _model.fireLinkAdded (this);
     setChanged ();
     notifyObservers ();
   }
@@ -154,7 +238,7 @@ public class Node extends Observable {
    * Accessor to node that names this node.
    */
   public Node getNamedBy () {
-    return _namedBy;
+    return current (_namedBy);
   }
 
   /**
@@ -162,24 +246,99 @@ public class Node extends Observable {
    */
   public void setNamedBy (Node node) {
     _namedBy = node;
+    changedSinceSnapshot ();
+    _model.fireLinkAdded (this);
     setChanged ();
     notifyObservers ();
   }
 
   /**
    * Add a node to the list of action links for this node.
-   * Do not add the node if already present.
+   * If the node is already present, its link is strengthened instead: each 
+   * link counts the number of times it has been made.
    */
   public void addActionLink (Node node) {
-    if (_actionLinks.contains (node)) { 
-      ;
-    } else {
+    if (_actionIndex == null) _actionIndex = new HashMap<Integer, Integer> ();
+    // nodes are found by reference, which a node's copies in forks share
+    Integer index = _actionIndex.get (node.getReference ());
+    if (index == null) {
+      index = _actionLinks.size ();
       _actionLinks.add (node);
+      _actionIndex.put (node.getReference (), index);
+      if (index == _actionCounts.length) {
+        _actionCounts = Arrays.copyOf (_actionCounts, Math.max (2, 2 * index));
+      }
+      _model.fireLinkAdded (this);
     }
+    _actionCounts[index] += 1;
+    promoteAction (index);
+    changedSinceSnapshot (); // snapshots hold the counts
   }
 
   public List<Node> getActionLinks () {
-    return _actionLinks;
+    return current (_actionLinks);
+  }
+
+  /**
+   * Number of times the link to the given action node has been made, or 0 
+   * if there is no such link.
+   */
+  public int getActionLinkCount (Node node) {
+    Integer index = (_actionIndex == null ? null : _actionIndex.get (node.getReference ()));
+    return (index == null ? 0 : _actionCounts[index]);
+  }
+
+  /**
+   * Number of times the i'th link in getActionLinks has been made.
+   */
+  int getActionLinkCount (int i) {
+    return _actionCounts[i];
+  }
+
+  /**
+   * The most often made action links, at most TOP_ACTION_LINKS of them, 
+   * with the strongest first.  Links made equally often are kept in the 
+   * order they were first made.
+   */
+  public List<Node> getTopActionLinks () {
+    List<Node> links = new ArrayList<Node> (_topActions.length);
+    for (int index : _topActions) {
+      links.add (current (_actionLinks.get (index)));
+    }
+    return links;
+  }
+
+  /**
+   * Number of times the i'th link in getTopActionLinks has been made.
+   */
+  int getTopActionLinkCount (int i) {
+    return _actionCounts[_topActions[i]];
+  }
+
+  /**
+   * Keep the index of the strongest action links in order, after the link 
+   * at the given index has been strengthened by one.  Counts only grow by 
+   * one, so the link can pass at most the links with its old count.
+   */
+  private void promoteAction (int index) {
+    int position = -1;
+    for (int i = 0; i < _topActions.length; i++) {
+      if (_topActions[i] == index) position = i;
+    }
+    if (position == -1) {
+      if (_topActions.length < TOP_ACTION_LINKS) {
+        _topActions = Arrays.copyOf (_topActions, _topActions.length + 1);
+      } else if (_actionCounts[index] <= _actionCounts[_topActions[_topActions.length - 1]]) {
+        return;
+      }
+      position = _topActions.length - 1;
+      _topActions[position] = index;
+    }
+    while (position > 0 && _actionCounts[_topActions[position - 1]] < _actionCounts[index]) {
+      _topActions[position] = _topActions[position - 1];
+      position -= 1;
+    }
+    _topActions[position] = index;
   }
 
   /** 
@@ -261,8 +420,72 @@ public class Node extends Observable {
     }
   }
   
+  /**
+   * Note that this node has changed, and so has the network from the root
+   * down to it, since the last {@link LtmSnapshot}.
+   */
+  private void changedSinceSnapshot () {
+    _changedSinceSnapshot = true;
+    // ancestors already marked have had all their ancestors marked
+    for (Node node = this; node != null && !node._subtreeChangedSinceSnapshot; node = node._parent) {
+      node._subtreeChangedSinceSnapshot = true;
+    }
+  }
+
+  /**
+   * True if this node is shared with a fork of its model, and so must not
+   * be changed: the model changes its own copy instead.
+   */
+  boolean isShared () {
+    return _generation != _model.getGeneration ();
+  }
+
+  /**
+   * Return the model's own copy of given node, which this node links to.
+   */
+  private Node current (Node node) {
+    return (isShared () ? node : _model.current (node));
+  }
+
+  private List<Node> current (List<Node> nodes) {
+    return (isShared () ? nodes : _model.current (nodes));
+  }
+
+  Node getParent () {
+    return _parent;
+  }
+
+  /**
+   * Replace the test link to the given child with one to its copy.
+   */
+  void replaceTestLink (Node child, Node copy) {
+    for (int i = 0; i < _children.size (); ++i) {
+      Link link = _children.get (i);
+      if (link.getChildNode () == child) {
+        _children.set (i, new Link (link.getTest (), copy));
+        changedSinceSnapshot ();
+        return;
+      }
+    }
+  }
+
+  boolean hasChangedSinceSnapshot () {
+    return _changedSinceSnapshot;
+  }
+
+  boolean hasSubtreeChangedSinceSnapshot () {
+    return _subtreeChangedSinceSnapshot;
+  }
+
+  void clearChangesSinceSnapshot () {
+    _changedSinceSnapshot = false;
+    _subtreeChangedSinceSnapshot = false;
+  }
+
   // private fields
   private final Chrest _model;
+  // generation of the model this node belongs to, see Chrest#fork
+  private final int _generation;
   private final int _reference;
   private final ListPattern _contents;
   private ListPattern _image;
@@ -271,6 +494,16 @@ public class Node extends Observable {
   private Node _associatedNode;
   private Node _namedBy;
   private List<Node> _actionLinks;
+  // times each action link has been made, the positions of the links by
+  // reference, and the positions of the strongest links, strongest first
+  private int[] _actionCounts;
+  private Map<Integer, Integer> _actionIndex;
+  private int[] _topActions;
+  // node whose test link leads here, and whether this node, or any node
+  // below it, has changed since the last snapshot of LTM
+  private Node _parent;
+  private boolean _changedSinceSnapshot;
+  private boolean _subtreeChangedSinceSnapshot;
 
   /**
    * Compute the total size of images below the current node.
@@ -376,6 +609,7 @@ public class Node extends Observable {
   public void clearTemplate () {
     if (_itemSlots != null) _itemSlots.clear ();
     if (_positionSlots != null) _positionSlots.clear ();
+    changedSinceSnapshot ();
   }
 
   /**
@@ -396,19 +630,33 @@ public class Node extends Observable {
     if (_filledPositionSlots == null) {
       _filledPositionSlots = new ArrayList<ItemSquarePattern> ();
     }
+    fillSlots (pattern, _filledItemSlots, _filledPositionSlots);
+  }
+
+  /**
+   * Attempt to fill some of the slots using the items in the given pattern, 
+   * recording the filled slots in the given lists rather than in this node.
+   * The node itself is not changed, so several threads may fill the slots of 
+   * the same node, each into their own lists.
+   */
+  void fillSlots (ListPattern pattern, List<ItemSquarePattern> filledItemSlots, List<ItemSquarePattern> filledPositionSlots) {
+    if (_itemSlots == null || _positionSlots == null) {
+      return; // no slots to fill
+    }
+    int filledBefore = filledItemSlots.size () + filledPositionSlots.size ();
     for (int index = 0; index < pattern.size (); index++) {
       boolean slotFilled = false;
       if (pattern.getItem(index) instanceof ItemSquarePattern) {
         ItemSquarePattern item = (ItemSquarePattern)(pattern.getItem (index));
         // only try to fill a slot if item is not already in image or slot
         if (!_image.contains (item) && 
-            !_filledItemSlots.contains (item) && 
-            !_filledPositionSlots.contains (item)) { 
+            !filledItemSlots.contains (item) && 
+            !filledPositionSlots.contains (item)) { 
           // 1. check the item slots
           for (ItemSquarePattern slot : _itemSlots) {
             if (!slotFilled) {
               if (slot.getItem().equals(item.getItem ())) {
-                _filledItemSlots.add (item);
+                filledItemSlots.add (item);
                 slotFilled = true;
               }
             }
@@ -419,7 +667,7 @@ public class Node extends Observable {
             if (!slotFilled) {
               if (slot.getRow () == item.getRow () &&
                   slot.getColumn () == item.getColumn ()) {
-                _filledPositionSlots.add (item);
+                filledPositionSlots.add (item);
                 slotFilled = true;
                   }
             }
@@ -427,6 +675,9 @@ public class Node extends Observable {
         }
       }
     }
+    if (isTemplate ()) {
+      _model.getMetrics().recordSlotFilling (filledItemSlots.size () + filledPositionSlots.size () - filledBefore);
+    }
   }
 
   public void clearFilledSlots () {
@@ -443,11 +694,18 @@ public class Node extends Observable {
    * untangled in Chrest#scanScene.
    */
   ListPattern getFilledSlots () {
+    return getFilledSlots (_filledItemSlots, _filledPositionSlots);
+  }
+
+  /**
+   * Combine the given lists of filled slots into a ListPattern.
+   */
+  static ListPattern getFilledSlots (List<ItemSquarePattern> filledItemSlots, List<ItemSquarePattern> filledPositionSlots) {
     ListPattern filledSlots = new ListPattern ();
-    for (ItemSquarePattern filledSlot : _filledItemSlots) {
+    for (ItemSquarePattern filledSlot : filledItemSlots) {
       filledSlots.add (filledSlot);
     }
-    for (ItemSquarePattern filledSlot : _filledPositionSlots) {
+    for (ItemSquarePattern filledSlot : filledPositionSlots) {
       filledSlots.add (filledSlot);
     }
     return filledSlots;
@@ -462,6 +720,7 @@ public class Node extends Observable {
   public void constructTemplates () {
     _itemSlots = new ArrayList<ItemSquarePattern> ();
     _positionSlots = new ArrayList<ItemSquarePattern> ();
+    changedSinceSnapshot ();
 
     if (canFormTemplate ()) {
       // gather images of current node, test links and similar nodes together, 
@@ -471,7 +730,7 @@ public class Node extends Observable {
       for (Link link : _children) {
         patterns.add (link.getChildNode().getImage().remove (_contents));
       }
-      for (Node node : _semanticLinks) {
+      for (Node node : getSemanticLinks ()) {
         patterns.add (node.getImage().remove (_contents));
       }
       // create a hashmap of counts of occurrences of items and of squares
@@ -536,7 +795,7 @@ public class Node extends Observable {
     for (Link link : _children) {
       patterns.add (link.getChildNode().getImage().remove (_contents));
     }
-    for (Node node : _semanticLinks) {
+    for (Node node : getSemanticLinks ()) {
       patterns.add (node.getImage().remove (_contents));
     }
     // create a hashmap of counts of occurrences of items and of squares
@@ -585,12 +844,22 @@ public class Node extends Observable {
    */
   public Node learnPrimitive (ListPattern pattern) {
     assert (pattern.isFinished () && pattern.size () == 1);
+    _model.getMetrics().recordPrimitiveLearnt ();
+    LearningEvents.LearnPrimitive event = new LearningEvents.LearnPrimitive ();
+    event.begin ();
     ListPattern contents = pattern.clone ();
     contents.setNotFinished ();
     Node child = new Node (_model, contents, new ListPattern (pattern.getModality ()));
     addTestLink (contents, child);
     _model.advanceClock (_model.getDiscriminationTime ());
 
+    if (event.shouldCommit ()) {
+      event.nodeReference = _reference;
+      event.newNodeReference = child.getReference ();
+      event.patternSize = pattern.size ();
+      event.clock = _model.getClock ();
+      event.commit ();
+    }
     return child;
   }
 
@@ -635,6 +904,21 @@ public class Node extends Observable {
    * This may be needed later for semantic/template learning.
    */
   Node discriminate (ListPattern pattern) {
+    _model.getMetrics().recordDiscrimination ();
+    LearningEvents.Discriminate event = new LearningEvents.Discriminate ();
+    event.begin ();
+    Node node = discriminateWithPattern (pattern);
+    if (event.shouldCommit ()) {
+      event.nodeReference = _reference;
+      event.newNodeReference = node.getReference ();
+      event.patternSize = pattern.size ();
+      event.clock = _model.getClock ();
+      event.commit ();
+    }
+    return node;
+  }
+
+  private Node discriminateWithPattern (ListPattern pattern) {
     ListPattern newInformation = pattern.remove (_contents);
 
     // cases 1 & 2 if newInformation is empty
@@ -648,7 +932,7 @@ public class Node extends Observable {
       } else {
         // 3. if not, then learn it
         Node child = new Node (_model, newInformation, newInformation);
-        _model.getVisualLtm().addTestLink (newInformation, child);
+        _model.writable(_model.getVisualLtm ()).addTestLink (newInformation, child);
         return child;
       }
     }
@@ -656,7 +940,7 @@ public class Node extends Observable {
     Node retrievedChunk = _model.recognise (newInformation);
     if (retrievedChunk == _model.getLtmByModality (pattern)) {
       // 3. if root node is retrieved, then the primitive must be learnt
-       return _model.getLtmByModality(newInformation).learnPrimitive (newInformation.getFirstItem ());
+       return _model.writable(_model.getLtmByModality (newInformation)).learnPrimitive (newInformation.getFirstItem ());
     } else if (retrievedChunk.getContents().matches (newInformation)) {
       // 5. retrieved chunk can be used as a test
       ListPattern testPattern = retrievedChunk.getContents().clone ();
@@ -675,6 +959,21 @@ public class Node extends Observable {
    * information from the given pattern.
    */
   Node familiarise (ListPattern pattern) {
+    _model.getMetrics().recordFamiliarisation ();
+    LearningEvents.Familiarise event = new LearningEvents.Familiarise ();
+    event.begin ();
+    Node node = familiariseWithPattern (pattern);
+    if (event.shouldCommit ()) {
+      event.nodeReference = _reference;
+      event.newNodeReference = node.getReference ();
+      event.patternSize = pattern.size ();
+      event.clock = _model.getClock ();
+      event.commit ();
+    }
+    return node;
+  }
+
+  private Node familiariseWithPattern (ListPattern pattern) {
     ListPattern newInformation = pattern.remove (_image).getFirstItem ();
     newInformation.setNotFinished ();
     // EXIT if nothing to learn
@@ -689,7 +988,7 @@ public class Node extends Observable {
     Node retrievedChunk = _model.recognise (newInformation);
     if (retrievedChunk == _model.getLtmByModality (pattern)) {
       // primitive not known, so learn it
-      return _model.getLtmByModality(newInformation).learnPrimitive (newInformation);
+      return _model.writable(_model.getLtmByModality (newInformation)).learnPrimitive (newInformation);
     } else {
       // extend image with new item
       return extendImage (newInformation);
@@ -701,10 +1000,22 @@ public class Node extends Observable {
    * found.
    */
   public Node searchSemanticLinks (int maximumSemanticDistance) {
+    return searchSemanticLinks (maximumSemanticDistance, isShared () ? null : _model);
+  }
+
+  /**
+   * As searchSemanticLinks, but following links to their current copies in
+   * the given model, if not null, as this node may be shared with a fork.
+   * Hops are counted in the given model's metrics, not those of the model
+   * which made this node.
+   */
+  Node searchSemanticLinks (int maximumSemanticDistance, Chrest model) {
     if (maximumSemanticDistance <= 0) return this; // reached limit of search
+    List<Node> links = (model == null ? _semanticLinks : model.current (_semanticLinks));
+    (model == null ? _model : model).getMetrics().recordSemanticLinkHops (links.size ());
     Node bestNode = this;
-    for (Node compare : _semanticLinks) {
-      Node bestChild = compare.searchSemanticLinks (maximumSemanticDistance - 1);
+    for (Node compare : links) {
+      Node bestChild = compare.searchSemanticLinks (maximumSemanticDistance - 1, model);
       if (bestChild.information () > bestNode.information ()) {
         bestNode = bestChild;
       }
@@ -0,0 +1,199 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.architecture;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import jchrest.lib.*;
+
+/**
+ * Streams patterns from a task file into a model, for inputs too large to
+ * hold in memory.  A parser thread reads the patterns with a
+ * {@link PatternScanner} and passes them, in batches, through a bounded
+ * queue to the calling thread, which learns them; parsing so overlaps with
+ * learning, and only the patterns in the queue are held at once.
+ *
+ * The tasks of the shell which learn patterns are supported, each pattern
+ * or pair being learnt once, in order:
+ * <ul>
+ * <li>recognise-and-learn: recogniseAndLearn on each pattern</li>
+ * <li>serial-anticipation: associateAndLearn on each pattern and the next</li>
+ * <li>paired-associate: associateAndLearn on each pair</li>
+ * <li>categorisation: learnAndNamePatterns on each pair</li>
+ * </ul>
+ * Observers of the model are updated once, at the end.
+ *
+ * @author Peter C. R. Lane
+ */
+public class PatternIngestion {
+  static final int BATCH_SIZE = 256;
+  static final int DEFAULT_CAPACITY = 64;
+  // marks the end of the input in the queue
+  private static final ListPattern[] END = new ListPattern[0];
+  // how the patterns are learnt
+  private static final int RECOGNISE = 0;
+  private static final int ANTICIPATE = 1;
+  private static final int ASSOCIATE = 2;
+  private static final int NAME = 3;
+
+  private final Chrest _model;
+  private final int _capacity;
+  private long _patterns;
+  private long _stalls;
+
+  /**
+   * Constructor uses a queue of 64 batches of patterns.
+   */
+  public PatternIngestion (Chrest model) {
+    this (model, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * The queue holds at most the given number of batches, of 256 patterns.
+   */
+  public PatternIngestion (Chrest model, int capacity) {
+    _model = model;
+    _capacity = Math.max (1, capacity);
+    _patterns = 0;
+    _stalls = 0;
+  }
+
+  /**
+   * Number of patterns learnt so far, counting each pattern of a pair.
+   */
+  public long getPatterns () {
+    return _patterns;
+  }
+
+  /**
+   * Number of times learning waited for the parser, as the queue was empty.
+   */
+  public long getStalls () {
+    return _stalls;
+  }
+
+  /**
+   * Learn the patterns of the given task file, whose first line names the task.
+   * Returns the number of patterns learnt.
+   */
+  public long learn (File file) throws IOException, InterruptedException {
+    BufferedReader input = new BufferedReader (new FileReader (file));
+    try {
+      String task = input.readLine ();
+      if (task == null) throw new IOException ("Missing task definition");
+      return learn (task.trim (), input);
+    } finally {
+      input.close ();
+    }
+  }
+
+  /**
+   * Learn the patterns read from the input, which holds the data of the
+   * named task, following its first line.  Returns the number of patterns
+   * learnt.  Throws IOException if the input cannot be read or parsed, or the
+   * task does not learn patterns, and InterruptedException if the calling
+   * thread is interrupted; in either case, the patterns before the error
+   * have been learnt.
+   */
+  public long learn (String task, Reader input) throws IOException, InterruptedException {
+    if (task.equals (TaskFile.RECOGNISE_AND_LEARN)) {
+      return ingest (input, Modality.VISUAL, null, RECOGNISE);
+    } else if (task.equals (TaskFile.SERIAL_ANTICIPATION)) {
+      return ingest (input, Modality.VERBAL, null, ANTICIPATE);
+    } else if (task.equals (TaskFile.PAIRED_ASSOCIATE)) {
+      return ingest (input, Modality.VERBAL, Modality.VERBAL, ASSOCIATE);
+    } else if (task.equals (TaskFile.CATEGORISATION)) {
+      return ingest (input, Modality.VISUAL, Modality.VERBAL, NAME);
+    } else {
+      throw new IOException ("Task does not learn patterns: " + task);
+    }
+  }
+
+  /**
+   * Parse patterns on a new thread, and learn them on this one.  Pairs are
+   * passed as consecutive patterns of a batch.
+   */
+  private long ingest (Reader input, final Modality first, final Modality second, int mode)
+    throws IOException, InterruptedException {
+    final BlockingQueue<ListPattern[]> queue = new ArrayBlockingQueue<ListPattern[]> (_capacity);
+    final PatternScanner scanner = new PatternScanner (input);
+    final IOException[] error = new IOException[1];
+
+    Thread parser = new Thread (new Runnable () {
+      public void run () {
+        ListPattern[] batch = new ListPattern[BATCH_SIZE];
+        int size = 0;
+        try {
+          while (true) {
+            if (second == null) {
+              ListPattern pattern = scanner.nextPattern (first);
+              if (pattern == null) break;
+              batch[size++] = pattern;
+            } else {
+              PairedPattern pair = scanner.nextPair (first, second);
+              if (pair == null) break;
+              batch[size++] = pair.getFirst ();
+              batch[size++] = pair.getSecond ();
+            }
+            if (size == BATCH_SIZE) {
+              queue.put (batch);
+              batch = new ListPattern[BATCH_SIZE];
+              size = 0;
+            }
+          }
+          if (size > 0) queue.put (Arrays.copyOf (batch, size));
+        } catch (IOException ioe) {
+          error[0] = ioe; // the queue passes the error safely to the learning thread
+        } catch (InterruptedException ie) {
+          return; // learning has stopped
+        }
+        try {
+          queue.put (END);
+        } catch (InterruptedException ie) {
+          ; // learning has stopped
+        }
+      }
+    }, "chrest-pattern-parser");
+    parser.setDaemon (true);
+
+    long patterns = 0;
+    ListPattern previous = null;
+    _model.freeze ();
+    parser.start ();
+    try {
+      while (true) {
+        ListPattern[] batch = queue.poll ();
+        if (batch == null) {
+          _stalls += 1;
+          batch = queue.take ();
+        }
+        if (batch == END) break;
+        for (int i = 0; i < batch.length; ++i) {
+          if (mode == RECOGNISE) {
+            _model.recogniseAndLearn (batch[i]);
+          } else if (mode == ANTICIPATE) {
+            if (previous != null) _model.associateAndLearn (previous, batch[i]);
+            previous = batch[i];
+          } else if (mode == ASSOCIATE) {
+            _model.associateAndLearn (batch[i], batch[i + 1]);
+            i += 1;
+          } else { // NAME
+            _model.learnAndNamePatterns (batch[i], batch[i + 1]);
+            i += 1;
+          }
+        }
+        patterns += batch.length;
+        _patterns += batch.length;
+      }
+      if (error[0] != null) throw error[0];
+      return patterns;
+    } finally {
+      parser.interrupt (); // stops the parser if learning stopped first
+      _model.unfreeze ();
+    }
+  }
+}
@@ -18,6 +18,7 @@ import jchrest.lib.ItemSquarePattern;
 import jchrest.lib.ListPattern;
 import jchrest.lib.Modality;
 import jchrest.lib.Pattern;
+import jchrest.lib.PrimitivePattern;
 import jchrest.lib.Scene;
 import jchrest.lib.Square;
 
@@ -30,7 +31,7 @@ import java.util.Set;
  * scene.
  */
 public class Perceiver {
-  private final static java.util.Random _random = new java.util.Random ();
+  private final java.util.Random _random = new java.util.Random ();
 
   private final Chrest _model;
   private int _fixationX, _fixationY, _fieldOfView;
@@ -48,6 +49,13 @@ public class Perceiver {
     _recognisedNodes = new ArrayList<Node> ();
   }
 
+  /**
+   * Seed the random numbers used to choose fixations.
+   */
+  public void setRandomSeed (long seed) {
+    _random.setSeed (seed);
+  }
+
   public int getFieldOfView () {
     return _fieldOfView;
   }
@@ -79,7 +87,7 @@ public class Perceiver {
     if (squares.isEmpty ()) {
       return false;
     } else {
-      Square square = (new ArrayList<Square>(squares)).get ((new java.util.Random()).nextInt (squares.size ()));
+      Square square = (new ArrayList<Square>(squares)).get (_random.nextInt (squares.size ()));
       addFixation (new Fixation (FixationType.salient, square.getColumn (), square.getRow ()));
       return true;
     }
@@ -100,8 +108,8 @@ public class Perceiver {
    *            be tried.)
    */
   private boolean ltmHeuristic () {
-    if (_model.getVisualStm().getCount () >= 1) {
-      List<Link> hypothesisChildren = _model.getVisualStm().getItem(0).getChildren ();
+    if (getVisualStm().getCount () >= 1) {
+      List<Link> hypothesisChildren = getVisualStm().getItem(0).getChildren ();
       if (hypothesisChildren.isEmpty ()) return false;
       //        System.out.println ("Checking LTM heuristic");
       for (int i = 0; i < hypothesisChildren.size () && i < 1; ++i) { // *** i == 0 only
@@ -135,7 +143,7 @@ public class Perceiver {
                   if (testIos.getColumn () - 1 == _fixationX && 
                       testIos.getRow () - 1 == _fixationY &&
                       testIos.getItem().equals (_currentScene.getItem (_fixationY, _fixationX))) {
-                    _model.getVisualStm().replaceHypothesis (link.getChildNode ());
+                    replaceHypothesis (link.getChildNode ());
                       }
                 }
               }
@@ -205,7 +213,7 @@ public class Perceiver {
    * heuristics.
    */
   private void moveEyeUsingHeuristics () {
-    double r = Math.random ();
+    double r = _random.nextDouble ();
     boolean fixationDone = false;
     if (r < 0.3333) { // try movement fixation
       List<Square> pieceMoves = _model.getDomainSpecifics().proposeMovementFixations (
@@ -213,7 +221,7 @@ public class Perceiver {
           new Square (_fixationY, _fixationX)
           );
       if (pieceMoves.size () > 0) { 
-        int move = (new java.util.Random ()).nextInt (pieceMoves.size ());
+        int move = _random.nextInt (pieceMoves.size ());
         _fixationX = pieceMoves.get(move).getColumn ();
         _fixationY = pieceMoves.get(move).getRow ();
         _lastHeuristic = FixationType.proposedMove;
@@ -241,6 +249,8 @@ public class Perceiver {
    * heuristics, and then learn from the new pattern.
    */
   public void moveEyeAndLearn () {
+    LearningEvents.Fixation event = new LearningEvents.Fixation ();
+    event.begin ();
     boolean fixationDone = false;
     if (doingInitialFixations ()) {
       fixationDone = doInitialFixation ();
@@ -255,6 +265,9 @@ public class Perceiver {
     if (shouldLearnFixations ()) {
       learnFixatedPattern ();
     }
+    if (event.shouldCommit ()) {
+      commitFixationEvent (event, true, (getVisualStm().getCount () >= 1 ? getVisualStm().getItem (0) : null));
+    }
 
     // simplified version of learning, learns pattern at current point
 //    _model.recogniseAndLearn (_model.getDomainSpecifics().normalise (_currentScene.getItems (_fixationX, _fixationY, 2)));
@@ -268,30 +281,120 @@ public class Perceiver {
    * heuristics, and simply move the eye to that point.
    */
   public void moveEye () {
+    LearningEvents.Fixation event = new LearningEvents.Fixation ();
+    event.begin ();
     Node node = _model.getVisualLtm ();
     boolean fixationDone = false;
     if (doingInitialFixations ()) {
       fixationDone = doInitialFixation ();
       if (fixationDone) {
-        node = _model.recognise (_model.getDomainSpecifics().normalise (_currentScene.getItems (_fixationX, _fixationY, 2)));
+        node = recognise (_model.getDomainSpecifics().normalise (_currentScene.getItems (_fixationX, _fixationY, 2)));
       }
     }
     if (!fixationDone) {
       fixationDone = ltmHeuristic ();
-      if (fixationDone && _model.getVisualStm().getCount () >= 1) {
-        node = _model.getVisualStm().getItem(0);
+      if (fixationDone && getVisualStm().getCount () >= 1) {
+        node = getVisualStm().getItem(0);
       }
     }
     if (!fixationDone) {
       moveEyeUsingHeuristics ();
-      node = _model.recognise (_model.getDomainSpecifics().normalise (_currentScene.getItems (_fixationX, _fixationY, 2)));
+      node = recognise (_model.getDomainSpecifics().normalise (_currentScene.getItems (_fixationX, _fixationY, 2)));
     }
     _recognisedNodes.add (node);
     // Attempt to fill out the slots on the top-node of visual STM with the currently 
     // fixated items
-    if (_model.getVisualStm().getCount () >= 1) {
-      _model.getVisualStm().getItem(0).fillSlots (_currentScene.getItems (_fixationX, _fixationY, 2));
+    if (getVisualStm().getCount () >= 1) {
+      fillSlots (getVisualStm().getItem(0), _currentScene.getItems (_fixationX, _fixationY, 2));
+    }
+    if (event.shouldCommit ()) {
+      commitFixationEvent (event, false, node);
+    }
+  }
+
+  private void commitFixationEvent (LearningEvents.Fixation event, boolean learning, Node node) {
+    if (!_fixations.isEmpty ()) {
+      Fixation fixation = _fixations.get (_fixations.size () - 1);
+      event.heuristic = fixation.getHeuristicDescription ();
+      event.x = fixation.getX ();
+      event.y = fixation.getY ();
+    }
+    event.learning = learning;
+    event.nodeReference = (node == null ? 0 : node.getReference ());
+    event.patternSize = _currentScene.getItems(_fixationX, _fixationY, 2).size ();
+    event.clock = _model.getClock ();
+    event.commit ();
+  }
+
+  /**
+   * Scan the current scene, starting from its centre and making the given 
+   * number of fixations, without learning.
+   */
+  public void scan (int numFixations) {
+    start (numFixations);
+    for (int i = 0; i < numFixations; i++) {
+      moveEye ();
+    }
+  }
+
+  /** 
+   * Build up the scene which would be recalled from the nodes in visual STM, 
+   * using their images and, if templates are used, their filled slots.
+   */
+  public Scene recallScene (Scene scene) {
+    Scene recalledScene = new Scene ("Recalled scene of " + scene.getName (), 
+        scene.getHeight (), scene.getWidth ());
+    // -- get items from image in STM, and optionally template slots
+    // TODO: use frequency count in recall
+    for (Node node : getVisualStm ()) {
+      ListPattern recalledInformation = node.getImage();
+      if (_model.getCreateTemplates ()) { // check if templates needed
+        recalledInformation = recalledInformation.append(getFilledSlots (node));
+      }
+      for (PrimitivePattern item : recalledInformation) {
+        if (item instanceof ItemSquarePattern) {
+          ItemSquarePattern ios = (ItemSquarePattern)item;
+          recalledScene.setItem (ios.getRow ()-1, ios.getColumn ()-1, ios.getItem ());
+        }
+      }
     }
+
+    return recalledScene;
+  }
+
+  /**
+   * The visual STM into which recognised nodes are placed.
+   */
+  protected Stm getVisualStm () {
+    return _model.getVisualStm ();
+  }
+
+  /**
+   * Retrieve the node for the given pattern, placing it into visual STM.
+   */
+  protected Node recognise (ListPattern pattern) {
+    return _model.recognise (pattern);
+  }
+
+  /**
+   * Make the given node the hypothesis of visual STM.
+   */
+  protected void replaceHypothesis (Node node) {
+    _model.replaceVisualHypothesis (node);
+  }
+
+  /**
+   * Fill the slots of given node, which is in visual STM, from the given items.
+   */
+  protected void fillSlots (Node node, ListPattern items) {
+    node.fillSlots (items);
+  }
+
+  /**
+   * Retrieve the items filling the slots of given node, which is in visual STM.
+   */
+  protected ListPattern getFilledSlots (Node node) {
+    return node.getFilledSlots ();
   }
 
   List<Fixation> _fixations = new ArrayList<Fixation> ();
@@ -0,0 +1,287 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.architecture;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jchrest.lib.ItemSquarePattern;
+import jchrest.lib.ListPattern;
+import jchrest.lib.RecallStatistics;
+import jchrest.lib.Scene;
+import jchrest.lib.Scenes;
+
+/**
+ * Evaluate recall of a set of scenes using several threads at once.
+ * Each thread has its own perceiver, visual STM and filled template slots,
+ * and all threads share the model's long-term memory, which is only read.
+ * The model must not learn while an evaluation is running, unless the
+ * evaluator is given an {@link LtmSnapshot} of the model, which is read
+ * in place of its long-term memory.
+ *
+ * Scanning a scene here differs from {@link Chrest#scanScene} in that no
+ * semantic links are formed between nodes entering STM, as that would
+ * change the shared LTM.
+ *
+ * @author Peter C. R. Lane
+ */
+public class RecallEvaluator {
+  private final Chrest _model;
+  private final LtmSnapshot _snapshot;
+  private final int _numFixations;
+  private final int _numThreads;
+  private long _seed;
+
+  /**
+   * Constructor uses one thread for each available processor.
+   */
+  public RecallEvaluator (Chrest model, int numFixations) {
+    this (model, numFixations, Runtime.getRuntime().availableProcessors ());
+  }
+
+  public RecallEvaluator (Chrest model, int numFixations, int numThreads) {
+    this (model, null, numFixations, numThreads);
+  }
+
+  /**
+   * Evaluate using the given snapshot of the model's LTM, if not null, so
+   * the model may carry on learning during the evaluation.
+   */
+  public RecallEvaluator (Chrest model, LtmSnapshot snapshot, int numFixations, int numThreads) {
+    _model = model;
+    _snapshot = snapshot;
+    _numFixations = numFixations;
+    _numThreads = Math.max (1, numThreads);
+    _seed = 0;
+  }
+
+  /**
+   * Seed the random numbers used to choose fixations.  Each scene is
+   * scanned with the seed plus its position, so the results do not depend
+   * on the number of threads.
+   */
+  public void setRandomSeed (long seed) {
+    _seed = seed;
+  }
+
+  /**
+   * Scan every scene, returning the recalled scenes, the statistics of
+   * recall and the frequencies with which nodes were used.  Throws InterruptedException if the calling
+   * thread is interrupted, in which case the workers are stopped.
+   */
+  public Results evaluate (final Scenes scenes) throws InterruptedException {
+    final Scene[] recalled = new Scene[scenes.size ()];
+    final AtomicInteger nextScene = new AtomicInteger (0);
+    final AtomicInteger completed = new AtomicInteger (0);
+
+    ExecutorService pool = Executors.newFixedThreadPool (_numThreads);
+    try {
+      List<Future<Results>> workers = new ArrayList<Future<Results>> ();
+      for (int i = 0; i < _numThreads; ++i) {
+        workers.add (pool.submit (new Callable<Results> () {
+          public Results call () {
+            LocalPerceiver perceiver = new LocalPerceiver (_model, _snapshot);
+            Results results = new Results (recalled);
+            int index;
+            while ((index = nextScene.getAndIncrement ()) < scenes.size () &&
+                !Thread.currentThread().isInterrupted ()) {
+              Scene scene = scenes.get (index);
+              perceiver.setRandomSeed (_seed + index);
+              recalled[index] = perceiver.scanScene (scene, _numFixations);
+              results.addComparison (scene, recalled[index]);
+              results.addRecognisedNodes (perceiver.getRecognisedNodes ());
+              results.addStmNodes (perceiver.getVisualStm ());
+              progress (completed.incrementAndGet (), scenes.size ());
+            }
+            return results;
+          }
+        }));
+      }
+      // combine the results of each worker
+      Results results = new Results (recalled);
+      for (Future<Results> worker : workers) {
+        results.add (worker.get ());
+      }
+      return results;
+    } catch (ExecutionException ee) {
+      throw new RuntimeException (ee.getCause ());
+    } finally {
+      pool.shutdownNow ();
+    }
+  }
+
+  /**
+   * Called from the worker threads each time a scene has been scanned.
+   * Override to display progress: by default, does nothing.
+   */
+  protected void progress (int completed, int total) {
+  }
+
+  /**
+   * Holds the outcome of an evaluation.
+   */
+  public static class Results {
+    private final Scene[] _recalledScenes;
+    private final RecallStatistics _statistics;
+    private final Map<Integer, Integer> _recognisedNodeFrequencies;
+    private final Map<Integer, Integer> _stmNodeFrequencies;
+
+    Results (Scene[] recalledScenes) {
+      _recalledScenes = recalledScenes;
+      _statistics = new RecallStatistics ();
+      _recognisedNodeFrequencies = new HashMap<Integer, Integer> ();
+      _stmNodeFrequencies = new HashMap<Integer, Integer> ();
+    }
+
+    /**
+     * The scene recalled for each scene, in the same order as the evaluated scenes.
+     * Entries are null for scenes not scanned, if the evaluation was interrupted.
+     */
+    public Scene[] getRecalledScenes () {
+      return _recalledScenes;
+    }
+
+    /**
+     * Precision, recall and errors of each recalled scene against its
+     * original, averaged over the scenes scanned.
+     */
+    public RecallStatistics getStatistics () {
+      return _statistics;
+    }
+
+    /**
+     * Map from node reference to the number of times the node was recognised
+     * at a fixation, as displayed in the 'Analyse' tab of the visual search pane.
+     */
+    public Map<Integer, Integer> getRecognisedNodeFrequencies () {
+      return _recognisedNodeFrequencies;
+    }
+
+    /**
+     * Map from node reference to the number of scenes in which the node was
+     * in visual STM at the end of the scan, and so used in recall.
+     */
+    public Map<Integer, Integer> getStmNodeFrequencies () {
+      return _stmNodeFrequencies;
+    }
+
+    void addComparison (Scene scene, Scene recalledScene) {
+      _statistics.add (scene, recalledScene);
+    }
+
+    void addRecognisedNodes (List<Node> nodes) {
+      for (Node node : nodes) {
+        increment (_recognisedNodeFrequencies, node.getReference (), 1);
+      }
+    }
+
+    void addStmNodes (Stm stm) {
+      for (Node node : stm) {
+        increment (_stmNodeFrequencies, node.getReference (), 1);
+      }
+    }
+
+    void add (Results results) {
+      _statistics.add (results._statistics);
+      for (Integer key : results._recognisedNodeFrequencies.keySet ()) {
+        increment (_recognisedNodeFrequencies, key, results._recognisedNodeFrequencies.get (key));
+      }
+      for (Integer key : results._stmNodeFrequencies.keySet ()) {
+        increment (_stmNodeFrequencies, key, results._stmNodeFrequencies.get (key));
+      }
+    }
+
+    private static void increment (Map<Integer, Integer> frequencies, int key, int count) {
+      if (frequencies.containsKey (key)) {
+        frequencies.put (key, frequencies.get (key) + count);
+      } else {
+        frequencies.put (key, count);
+      }
+    }
+  }
+
+  /**
+   * A perceiver with its own visual STM and filled template slots, which
+   * recognises patterns without changing the model, sorting them through the
+   * given snapshot of LTM if not null.
+   */
+  static class LocalPerceiver extends Perceiver {
+    private final Chrest _model;
+    private final LtmSnapshot _snapshot;
+    private final Stm _visualStm;
+    private final Map<Node, List<ItemSquarePattern>> _filledItemSlots;
+    private final Map<Node, List<ItemSquarePattern>> _filledPositionSlots;
+
+    LocalPerceiver (Chrest model, LtmSnapshot snapshot) {
+      super (model);
+      _model = model;
+      _snapshot = snapshot;
+      _visualStm = new Stm (model.getVisualStmSize ());
+      _filledItemSlots = new IdentityHashMap<Node, List<ItemSquarePattern>> ();
+      _filledPositionSlots = new IdentityHashMap<Node, List<ItemSquarePattern>> ();
+    }
+
+    /**
+     * Scan given scene with a cleared STM, and return the recalled scene.
+     */
+    Scene scanScene (Scene scene, int numFixations) {
+      scan (scene, numFixations);
+      return recallScene (scene);
+    }
+
+    /**
+     * Scan given scene with a cleared STM, leaving the nodes recognised in STM.
+     */
+    void scan (Scene scene, int numFixations) {
+      _visualStm.clear ();
+      _filledItemSlots.clear ();
+      _filledPositionSlots.clear ();
+      setScene (scene);
+      scan (numFixations);
+    }
+
+    protected Stm getVisualStm () {
+      return _visualStm;
+    }
+
+    protected Node recognise (ListPattern pattern) {
+      Node node = (_snapshot == null ? _model.sortPattern (pattern) : _snapshot.sortPattern (pattern));
+      // as in Chrest#addToStm, slots are cleared when a node enters STM
+      _filledItemSlots.remove (node);
+      _filledPositionSlots.remove (node);
+      _visualStm.add (node);
+      return node;
+    }
+
+    protected void replaceHypothesis (Node node) {
+      _visualStm.replaceHypothesis (node);
+    }
+
+    protected void fillSlots (Node node, ListPattern items) {
+      node.fillSlots (items, slots (_filledItemSlots, node), slots (_filledPositionSlots, node));
+    }
+
+    protected ListPattern getFilledSlots (Node node) {
+      return Node.getFilledSlots (slots (_filledItemSlots, node), slots (_filledPositionSlots, node));
+    }
+
+    private List<ItemSquarePattern> slots (Map<Node, List<ItemSquarePattern>> filledSlots, Node node) {
+      List<ItemSquarePattern> slots = filledSlots.get (node);
+      if (slots == null) {
+        slots = new ArrayList<ItemSquarePattern> ();
+        filledSlots.put (node, slots);
+      }
+      return slots;
+    }
+  }
+}
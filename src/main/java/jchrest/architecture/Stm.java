@@ -23,6 +23,14 @@ public class Stm implements Iterable<Node> {
     _items = new ArrayList<Node> ();
   }
 
+  /**
+   * Constructor for a copy of the given STM, holding the same nodes.
+   */
+  Stm (Stm stm) {
+    _size = stm._size;
+    _items = new ArrayList<Node> (stm._items);
+  }
+
   /**
    * Accessor for the maximum capacity.
    */
@@ -59,8 +67,10 @@ public class Stm implements Iterable<Node> {
    * with the queue cut at the bottom to keep STM to the fixed size constraints.
    * However, the most informative node is maintained in the list, by re-adding 
    * it to STM, if lost.
+   * Returns the number of nodes which have left STM.
    */
-  public void add (Node node) {
+  public int add (Node node) {
+    int evicted = 0;
     // find the most informative node which also matches this node's contents
     Node hypothesis = node;
     for (Node check : _items) {
@@ -76,12 +86,16 @@ public class Stm implements Iterable<Node> {
     // truncate STM to be of at most _size elements
     while (_items.size () > _size) {
       _items.remove (_items.size () - 1);
+      evicted += 1;
     }
-    // if most informative node not in STM, then add it back in to top
+    // if most informative node not in STM, then add it back in to top;
+    // it was counted when cut, so the bottom item lost in its place
+    // leaves the number evicted unchanged
     if (!_items.contains (hypothesis)) {
       _items.remove (_items.size () - 1); // losing bottom item
       _items.add (0, hypothesis);
     }
+    return evicted;
   }
 
   /**
@@ -99,6 +113,14 @@ public class Stm implements Iterable<Node> {
     _items.add (0, node);
   }
 
+  /**
+   * Replace the given node, if present, with the given copy of it.
+   */
+  void replace (Node node, Node copy) {
+    int index = _items.indexOf (node);
+    if (index >= 0) _items.set (index, copy);
+  }
+
   /**
    * Remove all items from STM.
    */
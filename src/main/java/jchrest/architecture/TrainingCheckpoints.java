@@ -0,0 +1,200 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.architecture;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Checkpoints a model during a long training loop, so training can resume
+ * from the last checkpoint after a crash.  The model's learning is written
+ * to a {@link LearningJournal} in the checkpoint directory as it happens;
+ * a checkpoint only waits for the journal to reach the disk, then records
+ * how many of its records, and how far through training, the model had got,
+ * so training is never paused to copy the model.
+ *
+ * On resuming, the journal is replayed up to the last checkpoint using
+ * {@link JournalReplay}, and a new journal segment started, as the old one
+ * may end with learning after the checkpoint.  The model must be new, and
+ * have the same domain and parameters as the one being trained before.
+ *
+ * Typical use, where 'position' counts scenes learnt:
+ *
+ * <pre>
+ *   TrainingCheckpoints checkpoints = new TrainingCheckpoints (directory, 1000, 60000);
+ *   long position = checkpoints.resume (model);
+ *   for (; position &lt; scenes.size (); ++position) {
+ *     model.learnScene (scenes.get ((int)position), numFixations);
+ *     checkpoints.update (position + 1);
+ *   }
+ *   checkpoints.close ();
+ * </pre>
+ *
+ * @author Peter C. R. Lane
+ */
+public class TrainingCheckpoints implements Closeable {
+  static final String STATE_FILE = "checkpoint.properties";
+
+  private final File _directory;
+  private final long _sceneInterval;
+  private final long _timeInterval;
+  // records to replay from each earlier journal segment
+  private final List<Long> _segmentRecords;
+  private Chrest _model;
+  private LearningJournal _journal;
+  private long _lastPosition;
+  private long _lastTime;
+  private long _checkpoints;
+
+  /**
+   * Checkpoint into the given directory, which is created if needed, whenever
+   * the position has moved on by sceneInterval or timeInterval milliseconds
+   * have passed since the last checkpoint.
+   */
+  public TrainingCheckpoints (File directory, long sceneInterval, long timeInterval) {
+    _directory = directory;
+    _sceneInterval = sceneInterval;
+    _timeInterval = timeInterval;
+    _segmentRecords = new ArrayList<Long> ();
+    _model = null;
+    _journal = null;
+    _lastPosition = 0;
+    _lastTime = 0;
+    _checkpoints = 0;
+  }
+
+  /**
+   * True if the directory holds a checkpoint to resume from.
+   */
+  public boolean hasCheckpoint () {
+    return new File (_directory, STATE_FILE).exists ();
+  }
+
+  /**
+   * Number of checkpoints taken since resuming.
+   */
+  public long getCheckpoints () {
+    return _checkpoints;
+  }
+
+  /**
+   * Restore the model from the last checkpoint, if any, and start recording
+   * its learning.  Returns the position given at the last checkpoint, or 0
+   * if there is none.  Throws IOException if the checkpoint cannot be read,
+   * or does not match the model.
+   */
+  public long resume (Chrest model) throws IOException {
+    if (_model != null) throw new IllegalStateException ("Checkpoints already in use");
+    if (!_directory.isDirectory () && !_directory.mkdirs ()) {
+      throw new IOException ("Cannot create checkpoint directory " + _directory);
+    }
+    long position = 0;
+    if (hasCheckpoint ()) {
+      Properties state = new Properties ();
+      InputStream input = new FileInputStream (new File (_directory, STATE_FILE));
+      try {
+        state.load (input);
+      } finally {
+        input.close ();
+      }
+      try {
+        position = Long.parseLong (state.getProperty ("position"));
+        int segments = Integer.parseInt (state.getProperty ("segments"));
+        JournalReplay replay = new JournalReplay (model);
+        for (int i = 0; i < segments; ++i) {
+          long records = Long.parseLong (state.getProperty ("records." + i));
+          LearningJournal.Reader reader = new LearningJournal.Reader (new FileInputStream (getSegment (i)));
+          try {
+            replay.replay (reader, records);
+          } finally {
+            reader.close ();
+          }
+          _segmentRecords.add (records);
+        }
+        if (model.getTotalLtmNodes () != Integer.parseInt (state.getProperty ("nodes")) ||
+            model.getClock () != Integer.parseInt (state.getProperty ("clock"))) {
+          throw new IOException ("Model restored from " + _directory + " does not match checkpoint");
+        }
+      } catch (NumberFormatException nfe) { // includes missing properties
+        throw new IOException ("Checkpoint state is corrupt in " + _directory);
+      }
+    }
+    _model = model;
+    _journal = new LearningJournal (getSegment (_segmentRecords.size ()));
+    _model.setJournal (_journal);
+    _lastPosition = position;
+    _lastTime = System.currentTimeMillis ();
+    return position;
+  }
+
+  /**
+   * Take a checkpoint if one is due.  Call after each step of training,
+   * e.g. each scene, with the position reached.  Returns true if a
+   * checkpoint was taken.
+   */
+  public boolean update (long position) throws IOException {
+    if (position - _lastPosition >= _sceneInterval ||
+        System.currentTimeMillis () - _lastTime >= _timeInterval) {
+      checkpoint (position);
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  /**
+   * Take a checkpoint now, at the given position.
+   */
+  public void checkpoint (long position) throws IOException {
+    if (_journal == null) throw new IllegalStateException ("Checkpoints not resumed");
+    // the records must be on disk before the state which counts them
+    _journal.sync ();
+
+    Properties state = new Properties ();
+    state.setProperty ("position", "" + position);
+    state.setProperty ("clock", "" + _model.getClock ());
+    state.setProperty ("nodes", "" + _model.getTotalLtmNodes ());
+    state.setProperty ("segments", "" + (_segmentRecords.size () + 1));
+    for (int i = 0; i < _segmentRecords.size (); ++i) {
+      state.setProperty ("records." + i, "" + _segmentRecords.get (i));
+    }
+    state.setProperty ("records." + _segmentRecords.size (), "" + _journal.getRecords ());
+
+    // replace the state in one step, so a crash leaves the old or new checkpoint
+    File temporary = new File (_directory, STATE_FILE + ".tmp");
+    FileOutputStream output = new FileOutputStream (temporary);
+    try {
+      state.store (output, "CHREST training checkpoint");
+      output.getFD().sync ();
+    } finally {
+      output.close ();
+    }
+    Files.move (temporary.toPath (), new File (_directory, STATE_FILE).toPath (),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    _lastPosition = position;
+    _lastTime = System.currentTimeMillis ();
+    _checkpoints += 1;
+  }
+
+  /**
+   * Stop recording the model's learning, and close the journal.  Does not
+   * take a checkpoint.
+   */
+  public void close () throws IOException {
+    if (_journal != null) {
+      if (_model.getJournal () == _journal) _model.setJournal (null);
+      _journal.close ();
+      _journal = null;
+    }
+  }
+
+  private File getSegment (int index) {
+    return new File (_directory, "segment-" + index + ".journal");
+  }
+}
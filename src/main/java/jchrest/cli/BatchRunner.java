@@ -0,0 +1,545 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.cli;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.management.JMException;
+
+import jchrest.architecture.Chrest;
+import jchrest.architecture.MovePredictionEvaluator;
+import jchrest.architecture.RecallEvaluator;
+import jchrest.lib.*;
+
+/**
+ * Runs the experiments of the shell on any of its data files, without a
+ * display, and writes the results as CSV or JSON.  Each run trains a new
+ * model, with its random numbers seeded from the given seed plus the number
+ * of the run, so results can be repeated.  Runs are independent, and are
+ * shared between threads, one for each processor by default; when there are
+ * fewer runs than threads, recall of scenes is spread across the remaining
+ * threads using a {@link RecallEvaluator}.
+ *
+ * The experiments follow the shell's panels:
+ * <ul>
+ * <li>recognise-and-learn: each trial learns every pattern once, and counts
+ *     the patterns then recalled exactly</li>
+ * <li>serial-anticipation, paired-associate: each trial collects the
+ *     response to every stimulus, then learns every pair</li>
+ * <li>categorisation: as paired-associate, naming each pattern</li>
+ * <li>visual-search: learns the training scenes for a number of cycles or
+ *     until LTM reaches the maximum size, constructs templates, then
+ *     recalls the test scenes</li>
+ * <li>visual-search-with-move: as visual-search, also learning each move,
+ *     and predicting the move for each test scene</li>
+ * </ul>
+ *
+ * Usage: BatchRunner [options] data-file [output-file]
+ * where results are written to standard output if there is no output file,
+ * and options are:
+ * <ul>
+ * <li>--runs N            number of models to train (default 1)</li>
+ * <li>--seed N            seed for random numbers of the first run (default 0)</li>
+ * <li>--threads N         number of threads (default one per processor)</li>
+ * <li>--format csv|json   format of results (default from output file's extension, else csv)</li>
+ * <li>--trials N          trials of the pattern tasks (default 10)</li>
+ * <li>--random-order      present items in a random order in each trial</li>
+ * <li>--inter-item-time N time between items of paired-associate tasks, in ms (default 2000)</li>
+ * <li>--end-trial-time N  time at end of trial of paired-associate tasks, in ms (default 2000)</li>
+ * <li>--domain generic|chess  domain of the visual-search tasks (default generic)</li>
+ * <li>--fixations N       fixations per scene (default 20)</li>
+ * <li>--cycles N          passes through the training scenes (default 5)</li>
+ * <li>--max-nodes N       stop training when LTM holds this many nodes (default 100000)</li>
+ * <li>--test-scenes N     scenes, from the end, held out for testing; 0 tests on the
+ *                         training scenes (default 0)</li>
+ * <li>--metrics           publish the metrics of each run's model as an MBean,
+ *                         named 'jchrest:type=Chrest,name="BatchRunner run N"'</li>
+ * </ul>
+ *
+ * @author Peter C. R. Lane
+ */
+public class BatchRunner {
+  private final TaskFile _data;
+  private int _numRuns;
+  private long _seed;
+  private int _numThreads;
+  private int _numTrials;
+  private boolean _randomOrder;
+  private int _interItemTime;
+  private int _endTrialTime;
+  private boolean _chessDomain;
+  private int _numFixations;
+  private int _numCycles;
+  private int _maxNodes;
+  private int _numTestScenes;
+  private boolean _publishMetrics;
+
+  public BatchRunner (TaskFile data) {
+    _data = data;
+    _numRuns = 1;
+    _seed = 0;
+    _numThreads = Runtime.getRuntime().availableProcessors ();
+    _numTrials = 10;
+    _randomOrder = false;
+    _interItemTime = 2000;
+    _endTrialTime = 2000;
+    _chessDomain = false;
+    _numFixations = 20;
+    _numCycles = 5;
+    _maxNodes = 100000;
+    _numTestScenes = 0;
+    _publishMetrics = false;
+  }
+
+  public void setRuns (int runs) { _numRuns = Math.max (1, runs); }
+  public void setSeed (long seed) { _seed = seed; }
+  public void setThreads (int threads) { _numThreads = Math.max (1, threads); }
+  public void setTrials (int trials) { _numTrials = trials; }
+  public void setRandomOrder (boolean randomOrder) { _randomOrder = randomOrder; }
+  public void setInterItemTime (int time) { _interItemTime = time; }
+  public void setEndTrialTime (int time) { _endTrialTime = time; }
+  public void setChessDomain (boolean chessDomain) { _chessDomain = chessDomain; }
+  public void setFixations (int fixations) { _numFixations = fixations; }
+  public void setCycles (int cycles) { _numCycles = cycles; }
+  public void setMaxNodes (int maxNodes) { _maxNodes = maxNodes; }
+  public void setTestScenes (int testScenes) { _numTestScenes = Math.max (0, testScenes); }
+  public void setPublishMetrics (boolean publishMetrics) { _publishMetrics = publishMetrics; }
+
+  /**
+   * Run every run of the experiment, returning the results in order of run.
+   * Throws InterruptedException if the calling thread is interrupted, in
+   * which case the runs are stopped.
+   */
+  public Results run () throws InterruptedException {
+    final String task = _data.getTask ();
+    final Results results = new Results (getColumns (task));
+    int poolSize = Math.min (_numRuns, _numThreads);
+    // threads not needed for runs are left for recall within each run
+    final int threadsPerRun = Math.max (1, _numThreads / poolSize);
+
+    ExecutorService pool = Executors.newFixedThreadPool (poolSize);
+    try {
+      List<Future<List<Object[]>>> runs = new ArrayList<Future<List<Object[]>>> ();
+      for (int i = 0; i < _numRuns; ++i) {
+        final int run = i + 1;
+        runs.add (pool.submit (new Callable<List<Object[]>> () {
+          public List<Object[]> call () throws InterruptedException {
+            return runTask (task, run, _seed + run - 1, threadsPerRun);
+          }
+        }));
+      }
+      for (Future<List<Object[]>> run : runs) {
+        for (Object[] row : run.get ()) {
+          results.add (row);
+        }
+      }
+      return results;
+    } catch (ExecutionException ee) {
+      throw new RuntimeException (ee.getCause ());
+    } finally {
+      pool.shutdownNow ();
+    }
+  }
+
+  private static String[] getColumns (String task) {
+    if (task.equals (TaskFile.RECOGNISE_AND_LEARN)) {
+      return new String[]{"task", "run", "seed", "trial", "patterns", "recalled", "nodes", "clock"};
+    } else if (task.equals (TaskFile.VISUAL_SEARCH)) {
+      return new String[]{"task", "run", "seed", "training_scenes", "nodes", "templates",
+        "training_seconds", "test_scenes", "mean_precision", "mean_recall",
+        "mean_omission", "mean_commission", "recall_seconds"};
+    } else if (task.equals (TaskFile.VISUAL_SEARCH_WITH_MOVE)) {
+      return new String[]{"task", "run", "seed", "training_scenes", "nodes", "templates",
+        "training_seconds", "test_scenes", "mean_precision", "mean_recall",
+        "mean_omission", "mean_commission", "recall_seconds", "moves_correct", "move_accuracy"};
+    } else { // the paired-associate tasks
+      return new String[]{"task", "run", "seed", "trial", "pairs", "errors", "nodes", "clock"};
+    }
+  }
+
+  private Chrest newModel (int run, long seed) {
+    Chrest model = new Chrest ();
+    model.setRandomSeed (seed);
+    if (_publishMetrics) {
+      // left registered after the run, so its final counts can be read
+      try {
+        model.getMetrics().register ("BatchRunner run " + run);
+      } catch (JMException jme) {
+        System.err.println ("Cannot publish metrics of run " + run + ": " + jme.getMessage ());
+      }
+    }
+    return model;
+  }
+
+  private List<Object[]> runTask (String task, int run, long seed, int numThreads) throws InterruptedException {
+    if (task.equals (TaskFile.RECOGNISE_AND_LEARN)) {
+      return runRecogniseAndLearn (task, run, seed);
+    } else if (task.equals (TaskFile.VISUAL_SEARCH) || task.equals (TaskFile.VISUAL_SEARCH_WITH_MOVE)) {
+      return runVisualSearch (task, run, seed, numThreads);
+    } else {
+      return runPairedAssociate (task, run, seed);
+    }
+  }
+
+  private List<Object[]> runRecogniseAndLearn (String task, int run, long seed) {
+    Chrest model = newModel (run, seed);
+    // as in RecogniseAndLearnDemo
+    model.setRho (1.0f);
+    model.setCreateSemanticLinks (false);
+    model.setCreateTemplates (false);
+    Random random = new Random (seed);
+
+    List<Object[]> rows = new ArrayList<Object[]> ();
+    List<ListPattern> patterns = _data.getItems ();
+    for (int trial = 1; trial <= _numTrials; ++trial) {
+      for (ListPattern pattern : order (patterns, random)) {
+        model.recogniseAndLearn (pattern);
+      }
+      int recalled = 0;
+      for (ListPattern pattern : patterns) {
+        if (matches (model.recallPattern (pattern), pattern)) recalled += 1;
+      }
+      rows.add (new Object[]{task, run, seed, trial, patterns.size (), recalled,
+        model.getTotalLtmNodes (), model.getClock ()});
+    }
+    return rows;
+  }
+
+  private List<Object[]> runPairedAssociate (String task, int run, long seed) {
+    Chrest model = newModel (run, seed);
+    boolean categorisation = task.equals (TaskFile.CATEGORISATION);
+    Random random = new Random (seed);
+    int exptClock = 0;
+
+    List<Object[]> rows = new ArrayList<Object[]> ();
+    List<PairedPattern> pairs = _data.getPairs ();
+    for (int trial = 1; trial <= _numTrials; ++trial) {
+      // responses are collected before each trial, as in the shell's protocol
+      int errors = 0;
+      for (PairedPattern pair : pairs) {
+        ListPattern response;
+        if (categorisation) {
+          response = model.namePattern (pair.getFirst ());
+        } else {
+          response = model.associatePattern (pair.getFirst ());
+        }
+        if (response == null || !matches (response, pair.getSecond ())) errors += 1;
+      }
+      for (PairedPattern pair : order (pairs, random)) {
+        if (categorisation) {
+          model.learnAndNamePatterns (pair.getFirst (), pair.getSecond ());
+        } else {
+          model.associateAndLearn (pair.getFirst (), pair.getSecond (), exptClock);
+          exptClock += _interItemTime;
+        }
+      }
+      exptClock += _endTrialTime;
+      rows.add (new Object[]{task, run, seed, trial, pairs.size (), errors,
+        model.getTotalLtmNodes (), model.getClock ()});
+    }
+    return rows;
+  }
+
+  private List<Object[]> runVisualSearch (String task, int run, long seed, int numThreads) throws InterruptedException {
+    Chrest model = newModel (run, seed);
+    model.setDomain (_chessDomain ? new ChessDomain () : new GenericDomain ());
+    boolean withMoves = task.equals (TaskFile.VISUAL_SEARCH_WITH_MOVE);
+    Scenes scenes = _data.getScenes ();
+    int numTraining = Math.max (1, scenes.size () - _numTestScenes);
+
+    // train, in order, as in the shell's visual search pane
+    int trainingScenes = 0;
+    long start = System.nanoTime ();
+    for (int cycle = 0; cycle < _numCycles && model.getTotalLtmNodes () < _maxNodes; ++cycle) {
+      for (int i = 0; i < numTraining && model.getTotalLtmNodes () < _maxNodes; ++i) {
+        if (Thread.currentThread().isInterrupted ()) throw new InterruptedException ();
+        if (withMoves) {
+          model.learnSceneAndMove (scenes.get (i), scenes.getMove (i), _numFixations);
+        } else {
+          model.learnScene (scenes.get (i), _numFixations);
+        }
+        trainingScenes += 1;
+      }
+    }
+    model.constructTemplates ();
+    double trainingSeconds = seconds (start);
+
+    int[] positions;
+    if (numTraining == scenes.size ()) {
+      positions = new int[scenes.size ()];
+      for (int i = 0; i < positions.length; ++i) positions[i] = i;
+    } else {
+      positions = new int[scenes.size () - numTraining];
+      for (int i = 0; i < positions.length; ++i) positions[i] = numTraining + i;
+    }
+    Scenes testScenes = scenes.select (positions);
+
+    start = System.nanoTime ();
+    RecallEvaluator recallEvaluator = new RecallEvaluator (model, _numFixations, numThreads);
+    recallEvaluator.setRandomSeed (seed);
+    RecallStatistics statistics = recallEvaluator.evaluate(testScenes).getStatistics ();
+    double recallSeconds = seconds (start);
+
+    List<Object[]> rows = new ArrayList<Object[]> ();
+    if (withMoves) {
+      MovePredictionEvaluator evaluator = new MovePredictionEvaluator (model, _numFixations, numThreads);
+      evaluator.setRandomSeed (seed);
+      int correct = evaluator.evaluate(testScenes).getCorrect (1);
+      rows.add (new Object[]{task, run, seed, trainingScenes, model.getTotalLtmNodes (),
+        model.countTemplates (), trainingSeconds, statistics.getCount (),
+        statistics.getMeanPrecision (), statistics.getMeanRecall (),
+        statistics.getMeanErrorsOfOmission (), statistics.getMeanErrorsOfCommission (),
+        recallSeconds, correct, (double)correct / testScenes.size ()});
+    } else {
+      rows.add (new Object[]{task, run, seed, trainingScenes, model.getTotalLtmNodes (),
+        model.countTemplates (), trainingSeconds, statistics.getCount (),
+        statistics.getMeanPrecision (), statistics.getMeanRecall (),
+        statistics.getMeanErrorsOfOmission (), statistics.getMeanErrorsOfCommission (),
+        recallSeconds});
+    }
+    return rows;
+  }
+
+  // the items in the order of a trial: as given, or random if requested
+  private <T> List<T> order (List<T> items, Random random) {
+    List<T> ordered = new ArrayList<T> ();
+    for (T item : items) {
+      if (_randomOrder) {
+        ordered.add (random.nextInt (ordered.size () + 1), item);
+      } else {
+        ordered.add (item);
+      }
+    }
+    return ordered;
+  }
+
+  // compare patterns ignoring whether they are finished, as in the shell's protocol
+  private static boolean matches (ListPattern response, ListPattern target) {
+    ListPattern first = response.clone ();
+    ListPattern second = target.clone ();
+    first.setNotFinished ();
+    second.setNotFinished ();
+    return first.equals (second);
+  }
+
+  private static double seconds (long start) {
+    return (System.nanoTime () - start) / 1e9;
+  }
+
+  /**
+   * A table of results, one row per trial or run.
+   */
+  public static class Results {
+    private final String[] _columns;
+    private final List<Object[]> _rows;
+
+    Results (String[] columns) {
+      _columns = columns;
+      _rows = new ArrayList<Object[]> ();
+    }
+
+    void add (Object[] row) {
+      _rows.add (row);
+    }
+
+    public String[] getColumns () {
+      return _columns;
+    }
+
+    public List<Object[]> getRows () {
+      return _rows;
+    }
+
+    /**
+     * Write a header line naming the columns, then one line per row.
+     */
+    public void writeCsv (PrintWriter output) {
+      for (int i = 0; i < _columns.length; ++i) {
+        if (i > 0) output.print (",");
+        output.print (_columns[i]);
+      }
+      output.println ();
+      for (Object[] row : _rows) {
+        for (int i = 0; i < row.length; ++i) {
+          if (i > 0) output.print (",");
+          output.print (csvValue (row[i]));
+        }
+        output.println ();
+      }
+      output.flush ();
+    }
+
+    /**
+     * Write an array with one object per row, keyed by the column names.
+     */
+    public void writeJson (PrintWriter output) {
+      output.println ("[");
+      for (int r = 0; r < _rows.size (); ++r) {
+        Object[] row = _rows.get (r);
+        output.print ("  {");
+        for (int i = 0; i < row.length; ++i) {
+          if (i > 0) output.print (", ");
+          output.print (jsonString (_columns[i]) + ": " + jsonValue (row[i]));
+        }
+        output.println (r + 1 < _rows.size () ? "}," : "}");
+      }
+      output.println ("]");
+      output.flush ();
+    }
+
+    private static String csvValue (Object value) {
+      String text = value.toString ();
+      if (text.indexOf (',') >= 0 || text.indexOf ('"') >= 0) {
+        return "\"" + text.replace ("\"", "\"\"") + "\"";
+      }
+      return text;
+    }
+
+    private static String jsonValue (Object value) {
+      if (value instanceof Double && (((Double)value).isNaN () || ((Double)value).isInfinite ())) {
+        return "null";
+      } else if (value instanceof Number) {
+        return value.toString ();
+      } else {
+        return jsonString (value.toString ());
+      }
+    }
+
+    private static String jsonString (String text) {
+      StringBuilder result = new StringBuilder ("\"");
+      for (int i = 0; i < text.length (); ++i) {
+        char c = text.charAt (i);
+        if (c == '"' || c == '\\') {
+          result.append ('\\').append (c);
+        } else if (c < ' ') {
+          result.append (String.format ("\\u%04x", (int)c));
+        } else {
+          result.append (c);
+        }
+      }
+      return result.append ('"').toString ();
+    }
+  }
+
+  private static void usage () {
+    System.err.println ("Usage: jchrest.cli.BatchRunner [--runs N] [--seed N] [--threads N] " +
+        "[--format csv|json] [--trials N] [--random-order] [--inter-item-time N] " +
+        "[--end-trial-time N] [--domain generic|chess] [--fixations N] [--cycles N] " +
+        "[--max-nodes N] [--test-scenes N] [--metrics] data-file [output-file]");
+    System.exit (1);
+  }
+
+  public static void main (String[] args) {
+    List<String> files = new ArrayList<String> ();
+    String format = null;
+    int runs = 1;
+    long seed = 0;
+    int threads = Runtime.getRuntime().availableProcessors ();
+    int trials = 10;
+    boolean randomOrder = false;
+    int interItemTime = 2000;
+    int endTrialTime = 2000;
+    boolean chessDomain = false;
+    int fixations = 20;
+    int cycles = 5;
+    int maxNodes = 100000;
+    int testScenes = 0;
+    boolean publishMetrics = false;
+
+    try {
+      for (int i = 0; i < args.length; ++i) {
+        if (args[i].equals ("--runs") && i + 1 < args.length) {
+          runs = Integer.parseInt (args[++i]);
+        } else if (args[i].equals ("--seed") && i + 1 < args.length) {
+          seed = Long.parseLong (args[++i]);
+        } else if (args[i].equals ("--threads") && i + 1 < args.length) {
+          threads = Integer.parseInt (args[++i]);
+        } else if (args[i].equals ("--format") && i + 1 < args.length) {
+          format = args[++i];
+          if (!format.equals ("csv") && !format.equals ("json")) usage ();
+        } else if (args[i].equals ("--trials") && i + 1 < args.length) {
+          trials = Integer.parseInt (args[++i]);
+        } else if (args[i].equals ("--random-order")) {
+          randomOrder = true;
+        } else if (args[i].equals ("--inter-item-time") && i + 1 < args.length) {
+          interItemTime = Integer.parseInt (args[++i]);
+        } else if (args[i].equals ("--end-trial-time") && i + 1 < args.length) {
+          endTrialTime = Integer.parseInt (args[++i]);
+        } else if (args[i].equals ("--domain") && i + 1 < args.length) {
+          String domain = args[++i];
+          if (!domain.equals ("generic") && !domain.equals ("chess")) usage ();
+          chessDomain = domain.equals ("chess");
+        } else if (args[i].equals ("--fixations") && i + 1 < args.length) {
+          fixations = Integer.parseInt (args[++i]);
+        } else if (args[i].equals ("--cycles") && i + 1 < args.length) {
+          cycles = Integer.parseInt (args[++i]);
+        } else if (args[i].equals ("--max-nodes") && i + 1 < args.length) {
+          maxNodes = Integer.parseInt (args[++i]);
+        } else if (args[i].equals ("--test-scenes") && i + 1 < args.length) {
+          testScenes = Integer.parseInt (args[++i]);
+        } else if (args[i].equals ("--metrics")) {
+          publishMetrics = true;
+        } else if (args[i].startsWith ("--")) {
+          usage ();
+        } else {
+          files.add (args[i]);
+        }
+      }
+    } catch (NumberFormatException nfe) {
+      usage ();
+    }
+    if (files.size () < 1 || files.size () > 2) usage ();
+    if (format == null) {
+      format = (files.size () == 2 && files.get(1).endsWith (".json") ? "json" : "csv");
+    }
+
+    try {
+      BatchRunner runner = new BatchRunner (TaskFile.read (new File (files.get (0))));
+      runner.setRuns (runs);
+      runner.setSeed (seed);
+      runner.setThreads (threads);
+      runner.setTrials (trials);
+      runner.setRandomOrder (randomOrder);
+      runner.setInterItemTime (interItemTime);
+      runner.setEndTrialTime (endTrialTime);
+      runner.setChessDomain (chessDomain);
+      runner.setFixations (fixations);
+      runner.setCycles (cycles);
+      runner.setMaxNodes (maxNodes);
+      runner.setTestScenes (testScenes);
+      runner.setPublishMetrics (publishMetrics);
+      Results results = runner.run ();
+
+      PrintWriter output;
+      if (files.size () == 2) {
+        output = new PrintWriter (new FileWriter (files.get (1)));
+      } else {
+        output = new PrintWriter (new OutputStreamWriter (System.out));
+      }
+      try {
+        if (format.equals ("json")) {
+          results.writeJson (output);
+        } else {
+          results.writeCsv (output);
+        }
+      } finally {
+        if (files.size () == 2) output.close ();
+      }
+      if (output.checkError ()) throw new IOException ("Cannot write results");
+    } catch (IOException ioe) {
+      System.err.println ("Error: " + ioe.getMessage ());
+      System.exit (1);
+    } catch (InterruptedException ie) {
+      System.err.println ("Error: interrupted");
+      System.exit (1);
+    }
+  }
+}
@@ -0,0 +1,99 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.cli;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Sends requests to a {@link QueryServer} on the local machine, and reads
+ * its answers.  A client holds one connection, and must not be shared
+ * between threads; open one client per thread to query at the same time.
+ *
+ * Usage: QueryClient [port]
+ * sends each line of standard input as a request, and writes each answer
+ * to standard output.
+ *
+ * @author Peter C. R. Lane
+ */
+public class QueryClient implements Closeable {
+  private final Socket _socket;
+  private final BufferedReader _input;
+  private final Writer _output;
+
+  public QueryClient (int port) throws IOException {
+    _socket = new Socket (InetAddress.getByName (null), port);
+    _input = new BufferedReader (new InputStreamReader (_socket.getInputStream (), "UTF-8"));
+    _output = new BufferedWriter (new OutputStreamWriter (_socket.getOutputStream (), "UTF-8"));
+  }
+
+  /**
+   * Send one request, and return the server's answer.  Throws IOException
+   * if the connection is closed before an answer arrives.
+   */
+  public String query (String request) throws IOException {
+    send (request);
+    return receive ();
+  }
+
+  /**
+   * Send a request without waiting for its answer, so many requests may be
+   * sent before reading their answers, in order, with receive.
+   */
+  public void send (String request) throws IOException {
+    _output.write (request);
+    _output.write ('\n');
+  }
+
+  /**
+   * Return the answer to the earliest request not yet answered.
+   */
+  public String receive () throws IOException {
+    _output.flush ();
+    String answer = _input.readLine ();
+    if (answer == null) throw new EOFException ("Connection closed by server");
+    return answer;
+  }
+
+  public void close () throws IOException {
+    try {
+      send ("quit");
+      _output.flush ();
+    } finally {
+      _socket.close ();
+    }
+  }
+
+  public static void main (String[] args) {
+    int port = QueryServer.DEFAULT_PORT;
+    try {
+      if (args.length == 1) {
+        port = Integer.parseInt (args[0]);
+      } else if (args.length > 1) {
+        throw new NumberFormatException ();
+      }
+    } catch (NumberFormatException nfe) {
+      System.err.println ("Usage: jchrest.cli.QueryClient [port]");
+      System.exit (1);
+    }
+
+    try {
+      QueryClient client = new QueryClient (port);
+      try {
+        BufferedReader requests = new BufferedReader (new InputStreamReader (System.in));
+        String request;
+        while ((request = requests.readLine ()) != null) {
+          if (request.trim().isEmpty ()) continue;
+          System.out.println (client.query (request));
+        }
+      } finally {
+        client.close ();
+      }
+    } catch (IOException ioe) {
+      System.err.println ("Error: " + ioe.getMessage ());
+      System.exit (1);
+    }
+  }
+}
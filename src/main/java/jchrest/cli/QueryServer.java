@@ -0,0 +1,331 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.cli;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.management.JMException;
+
+import jchrest.architecture.Chrest;
+import jchrest.architecture.JournalReplay;
+import jchrest.architecture.LtmSnapshot;
+import jchrest.lib.*;
+
+/**
+ * Answers queries of a trained model over a socket on the local machine, so
+ * the model is loaded once for any number of queries.  The model is rebuilt
+ * from the {@link jchrest.architecture.LearningJournal} written while it was
+ * trained, and queries are answered from an {@link LtmSnapshot} of it, which
+ * is only read: each connection is served by its own thread, so connections
+ * are answered at the same time.
+ *
+ * Each request is one line, answered by one line.  A pattern is written as
+ * in the answers: items are separated by spaces, an item on a square is
+ * written e.g. [P 5 5], and a pattern read from a data file, which is
+ * finished, ends with $.  A modality is one of visual, verbal or action:
+ * <ul>
+ * <li>recall modality items   image of the node retrieved for the pattern</li>
+ * <li>name modality items     image of the node naming that node</li>
+ * <li>associate modality items  image of the node associated with that node</li>
+ * <li>predict rows            move predicted for the scene, whose rows are
+ *                             separated by '/', with '.' for an empty square,
+ *                             e.g. predict rnbqkbnr/pppppppp/......../...</li>
+ * <li>quit                    close the connection</li>
+ * </ul>
+ * The answer is "OK" followed by the pattern, as in "OK &lt; A B $ &gt;" or
+ * "OK &lt; [P 5 5] [p 4 4] &gt;", or the move, as in "OK P 4 4"; "NONE" if
+ * there is no naming or associated node; or "ERROR" followed by a message
+ * if the request is not understood.
+ *
+ * Usage: QueryServer [options] journal-file
+ * where options are:
+ * <ul>
+ * <li>--port N            port to listen on, 0 for any free port (default 7171)</li>
+ * <li>--domain generic|chess  domain of the model (default generic)</li>
+ * <li>--fixations N       fixations per scene when predicting moves (default 20)</li>
+ * </ul>
+ * The model's metrics, which count the sorts and semantic links followed in
+ * answering queries, are published as an MBean named
+ * 'jchrest:type=Chrest,name="QueryServer"'.
+ *
+ * @author Peter C. R. Lane
+ */
+public class QueryServer implements Closeable {
+  public static final int DEFAULT_PORT = 7171;
+
+  private final LtmSnapshot _snapshot;
+  private final int _numFixations;
+  private final ExecutorService _pool;
+  private final Set<Socket> _connections;
+  private ServerSocket _server;
+
+  /**
+   * Answer queries from the given snapshot, scanning scenes with the given
+   * number of fixations.
+   */
+  public QueryServer (LtmSnapshot snapshot, int numFixations) {
+    _snapshot = snapshot;
+    _numFixations = numFixations;
+    _pool = Executors.newCachedThreadPool ();
+    _connections = Collections.synchronizedSet (
+        Collections.newSetFromMap (new IdentityHashMap<Socket, Boolean> ()));
+    _server = null;
+  }
+
+  /**
+   * Listen on the given port of the local machine, or any free port if 0,
+   * and start accepting connections.
+   */
+  public void start (int port) throws IOException {
+    if (_server != null) throw new IllegalStateException ("Server already started");
+    _server = new ServerSocket (port, 50, InetAddress.getByName (null));
+    _pool.execute (new Runnable () {
+      public void run () {
+        acceptConnections ();
+      }
+    });
+  }
+
+  /**
+   * The port being listened on.
+   */
+  public int getPort () {
+    return _server.getLocalPort ();
+  }
+
+  /**
+   * Stop listening, and close every open connection.
+   */
+  public void close () throws IOException {
+    if (_server != null) _server.close ();
+    synchronized (_connections) {
+      for (Socket connection : _connections) {
+        connection.close ();
+      }
+    }
+    _pool.shutdownNow ();
+  }
+
+  private void acceptConnections () {
+    try {
+      while (true) {
+        final Socket connection = _server.accept ();
+        _connections.add (connection);
+        _pool.execute (new Runnable () {
+          public void run () {
+            serve (connection);
+          }
+        });
+      }
+    } catch (IOException ioe) {
+      ; // server socket closed
+    }
+  }
+
+  private void serve (Socket connection) {
+    try {
+      BufferedReader input = new BufferedReader (new InputStreamReader (connection.getInputStream (), "UTF-8"));
+      Writer output = new BufferedWriter (new OutputStreamWriter (connection.getOutputStream (), "UTF-8"));
+      String line;
+      while ((line = input.readLine ()) != null && !line.trim().equals ("quit")) {
+        String reply;
+        try {
+          reply = answer (line);
+        } catch (RuntimeException re) { // keep the connection open after a failed request
+          reply = "ERROR " + (re.getMessage () == null ? re.toString () : re.getMessage ());
+        }
+        output.write (reply);
+        output.write ('\n');
+        // answer at once, unless more requests are already waiting
+        if (!input.ready ()) output.flush ();
+      }
+      output.flush ();
+    } catch (IOException ioe) {
+      ; // connection closed by client or server
+    } finally {
+      _connections.remove (connection);
+      try {
+        connection.close ();
+      } catch (IOException ioe) {
+        ;
+      }
+    }
+  }
+
+  /**
+   * Return the answer to a single request.
+   */
+  String answer (String request) {
+    String[] words = request.trim().split ("\\s+");
+    String query = words[0];
+    try {
+      if (query.equals ("predict")) {
+        if (words.length != 2) return "ERROR predict needs the rows of a scene";
+        return "OK " + _snapshot.predictMove (readScene (words[1]), _numFixations);
+      } else if (query.equals ("recall") || query.equals ("name") || query.equals ("associate")) {
+        if (words.length < 3) return "ERROR " + query + " needs a modality and a pattern";
+        ListPattern pattern = makePattern (words);
+        ListPattern result;
+        if (query.equals ("recall")) {
+          result = _snapshot.recallPattern (pattern);
+        } else if (query.equals ("name")) {
+          result = _snapshot.namePattern (pattern);
+        } else {
+          result = _snapshot.associatePattern (pattern);
+        }
+        return (result == null ? "NONE" : "OK " + result);
+      } else {
+        return "ERROR unknown request " + query;
+      }
+    } catch (IllegalArgumentException iae) {
+      return "ERROR " + iae.getMessage ();
+    }
+  }
+
+  private boolean isChessDomain () {
+    return _snapshot.getModel().getDomainSpecifics () instanceof ChessDomain;
+  }
+
+  // make a pattern from the items after the query and modality, written as
+  // the server prints patterns: an item such as [P 5 5] is an item on a
+  // square, any other item a string, and a final $ marks the pattern as
+  // finished; the pattern may be enclosed in < and >.  Throws
+  // IllegalArgumentException if the pattern is not valid for the domain
+  private ListPattern makePattern (String[] words) {
+    ListPattern pattern;
+    if (words[1].equals ("visual")) {
+      pattern = new ListPattern (Modality.VISUAL);
+    } else if (words[1].equals ("verbal")) {
+      pattern = new ListPattern (Modality.VERBAL);
+    } else if (words[1].equals ("action")) {
+      pattern = new ListPattern (Modality.ACTION);
+    } else {
+      throw new IllegalArgumentException ("unknown modality " + words[1]);
+    }
+    // chess visual patterns hold only pieces on squares
+    boolean chessPieces = isChessDomain () && pattern.isVisual ();
+    int start = 2;
+    int end = words.length;
+    if (end - start >= 2 && words[start].equals ("<") && words[end - 1].equals (">")) {
+      start += 1;
+      end -= 1;
+    }
+    boolean finished = (end > start && words[end - 1].equals ("$"));
+    if (finished) end -= 1;
+    for (int i = start; i < end; ++i) {
+      if (words[i].startsWith ("[")) {
+        if (words[i].length () == 1 || i + 2 >= end || !words[i + 2].endsWith ("]")) {
+          throw new IllegalArgumentException ("item on a square must be [item column row]");
+        }
+        String item = words[i].substring (1);
+        String row = words[i + 2].substring (0, words[i + 2].length () - 1);
+        if (chessPieces && !ChessDomain.isPiece (item)) {
+          throw new IllegalArgumentException (item + " is not a chess piece");
+        }
+        try {
+          pattern.add (new ItemSquarePattern (item, Integer.parseInt (words[i + 1]), Integer.parseInt (row)));
+        } catch (NumberFormatException nfe) {
+          throw new IllegalArgumentException ("column and row of " + words[i] + " must be numbers");
+        }
+        i += 2;
+      } else if (chessPieces) {
+        throw new IllegalArgumentException ("chess items must be pieces on squares, as [P 5 5]");
+      } else {
+        pattern.add (Pattern.makeString (words[i]));
+      }
+    }
+    if (finished) pattern.setFinished ();
+    return pattern;
+  }
+
+  // make a scene from its rows, separated by '/'.  Throws
+  // IllegalArgumentException if the rows are empty or of different lengths,
+  // or, in the chess domain, are not a board of pieces
+  private Scene readScene (String text) {
+    String[] rows = text.split ("/", -1);
+    for (String row : rows) {
+      if (row.isEmpty ()) throw new IllegalArgumentException ("rows of scene must not be empty");
+      if (row.length () != rows[0].length ()) {
+        throw new IllegalArgumentException ("rows of scene must all be the same length");
+      }
+    }
+    if (isChessDomain ()) {
+      if (rows.length != 8 || rows[0].length () != 8) {
+        throw new IllegalArgumentException ("chess scene must have 8 rows of 8 squares");
+      }
+      for (String row : rows) {
+        for (char item : row.toCharArray ()) {
+          if (item != '.' && !ChessDomain.isPiece (item + "")) {
+            throw new IllegalArgumentException (item + " is not a chess piece");
+          }
+        }
+      }
+    }
+    Scene scene = new Scene ("Query", rows.length, rows[0].length ());
+    for (int i = 0; i < rows.length; ++i) {
+      scene.addRow (i, rows[i].toCharArray ());
+    }
+    return scene;
+  }
+
+  private static void usage () {
+    System.err.println ("Usage: jchrest.cli.QueryServer [--port N] [--domain generic|chess] " +
+        "[--fixations N] journal-file");
+    System.exit (1);
+  }
+
+  public static void main (String[] args) {
+    List<String> files = new ArrayList<String> ();
+    int port = DEFAULT_PORT;
+    boolean chessDomain = false;
+    int fixations = 20;
+
+    try {
+      for (int i = 0; i < args.length; ++i) {
+        if (args[i].equals ("--port") && i + 1 < args.length) {
+          port = Integer.parseInt (args[++i]);
+        } else if (args[i].equals ("--domain") && i + 1 < args.length) {
+          String domain = args[++i];
+          if (!domain.equals ("generic") && !domain.equals ("chess")) usage ();
+          chessDomain = domain.equals ("chess");
+        } else if (args[i].equals ("--fixations") && i + 1 < args.length) {
+          fixations = Integer.parseInt (args[++i]);
+        } else if (args[i].startsWith ("--")) {
+          usage ();
+        } else {
+          files.add (args[i]);
+        }
+      }
+    } catch (NumberFormatException nfe) {
+      usage ();
+    }
+    if (files.size () != 1) usage ();
+
+    try {
+      Chrest model = new Chrest ();
+      model.setDomain (chessDomain ? new ChessDomain () : new GenericDomain ());
+      JournalReplay.replay (new File (files.get (0)), model);
+      try {
+        model.getMetrics().register ("QueryServer");
+      } catch (JMException jme) {
+        System.err.println ("Cannot publish metrics: " + jme.getMessage ());
+      }
+      QueryServer server = new QueryServer (model.takeLtmSnapshot (), fixations);
+      server.start (port);
+      System.err.println ("Serving " + model.getTotalLtmNodes () + " nodes on port " + server.getPort ());
+    } catch (IOException ioe) {
+      System.err.println ("Error: " + ioe.getMessage ());
+      System.exit (1);
+    }
+  }
+}
@@ -14,7 +14,12 @@ import java.awt.geom.Rectangle2D;
 import java.awt.image.*;
 import java.io.*;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.imageio.*;
 import javax.swing.*;
 import javax.swing.border.*;
@@ -22,10 +27,27 @@ import javax.swing.border.*;
 /**
  * This panel displays the model long-term memory within a tree view, 
  * supporting some interactions to alter the display.
+ *
+ * The view is built lazily, so networks of any size can be shown: a node's
+ * children are only fetched from the model when the node is expanded, by
+ * clicking on it, and only the nodes within the visible part of the view
+ * are drawn.  Networks of up to EXPAND_ALL_LIMIT nodes begin fully
+ * expanded; larger ones begin with just the children of the roots shown.
+ *
+ * The view listens to the model's changes to LTM, noting each changed
+ * node, and at most once per frame of the display updates the shown nodes
+ * among them, laying out again only those nodes and the nodes above them.
  */
 public class ChrestLtmView extends JPanel {
+  static final int EXPAND_ALL_LIMIT = 5000;
+
   private Chrest _model;
   private TreeViewPane _ltmView;
+  // nodes changed since the last refresh, by their key in the view
+  private final ConcurrentHashMap<Integer, Node> _changed;
+  private volatile boolean _cleared;
+  private final LtmListener _listener;
+  private final FrameRefresh _refresh;
 
   public ChrestLtmView (Chrest model) {
     super ();
@@ -35,47 +57,86 @@ public class ChrestLtmView extends JPanel {
     setLayout (new BorderLayout ());
 
     // -- the treeview pane
-    if (_model.getTotalLtmNodes () > 5000) {
-      _ltmView = null;
-      add (new JLabel ("Sorry - LTM too large to display"));
-    } else {
-      _ltmView = new TreeViewPane (new TreeViewNode (new NodeDisplay (null)));
-      _constructingTreeThread = new ConstructTreeThread ();
-      _constructingTreeThread.execute ();
-      add (new JScrollPane (_ltmView));
-    }
+    _ltmView = new TreeViewPane (constructTree ());
+    _ltmView.setExpandedByDefault (_model.getTotalLtmNodes () <= EXPAND_ALL_LIMIT);
+    add (new JScrollPane (_ltmView));
 
     add (createToolBar (), BorderLayout.SOUTH);
+
+    // -- follow changes to the model
+    _changed = new ConcurrentHashMap<Integer, Node> ();
+    _cleared = false;
+    _refresh = new FrameRefresh (new Runnable () {
+      public void run () {
+        applyChanges ();
+      }
+    });
+    _listener = new LtmChanges ();
+    _model.addLtmListener (_listener);
   }
 
-  private ConstructTreeThread _constructingTreeThread;
+  /**
+   * Notes the changed nodes, from the thread changing the model, and asks
+   * for a refresh of the view.
+   */
+  private class LtmChanges implements LtmListener {
+    public void nodeAdded (Node parent, Node child) {
+      changed (parent); // the child is shown once the parent is updated
+    }
 
-  private class ConstructTreeThread extends SwingWorker<Void, Void> {
-    LtmTreeViewNode _newTree;
-    
-    @Override
-      public Void doInBackground () {
-        _newTree = constructTree ();
-        return null;
-      }
+    public void imageChanged (Node node) {
+      changed (node);
+    }
 
-    @Override
-      protected void done () {
-        _ltmView.changeRoot (new TreeViewNode (_newTree));
-        _constructingTreeThread = null;
-      }
+    public void linkAdded (Node node) {
+      changed (node);
+    }
+
+    public void nodeReplaced (Node original, Node copy) {
+      changed (copy);
+    }
+
+    public void ltmCleared () {
+      _cleared = true;
+      _refresh.request ();
+    }
+
+    private void changed (Node node) {
+      _changed.put (TreeViewPane.getKey (node), node);
+      _refresh.request ();
+    }
   }
 
-  public void update () {
-    if (_ltmView != null) {
-      if (_model.getTotalLtmNodes () > 5000) {
-        // TODO : change display if number of nodes is too large
-        //        this.add (new JLabel ("Sorry - LTM too large to display"));
-      } else {
-        _constructingTreeThread = new ConstructTreeThread ();
-        _constructingTreeThread.execute ();
-      }
+  // update the shown nodes which have changed, on the event dispatch thread
+  private void applyChanges () {
+    if (_cleared) {
+      _cleared = false;
+      _changed.clear ();
+      _ltmView.setExpandedByDefault (_model.getTotalLtmNodes () <= EXPAND_ALL_LIMIT);
+      _ltmView.changeRoot (constructTree ());
+      return;
+    }
+    if (_changed.isEmpty ()) return;
+    for (Integer key : _changed.keySet ()) {
+      Node node = _changed.remove (key); // a later change is kept for the next refresh
+      if (node != null) _ltmView.nodeChanged (key, node);
     }
+    _ltmView.relayout ();
+  }
+
+  /**
+   * Changes to LTM reach the view as they are made, so this only asks for
+   * any outstanding changes to be shown.
+   */
+  public void update () {
+    _refresh.request ();
+  }
+
+  /**
+   * Stop following changes to the model, when the view is closed.
+   */
+  public void close () {
+    _model.removeLtmListener (_listener);
   }
 
   private JComboBox createOrientationBox () {
@@ -116,24 +177,22 @@ public class ChrestLtmView extends JPanel {
 		tools.addSeparator();
 		tools.add (new JLabel ("Size: "));
 		tools.add (createSizeBox ());
+		tools.addSeparator();
+		tools.add (new JLabel ("Click a node to show or hide its children"));
 
 		return tools;
 	}
 
 	public void setStandardDisplay () {
-    if (_ltmView != null) {
-      updateOrientation (Orientation.HORIZONTAL);
-      updateSize (Size.getValues().get (1));
-    }
+    updateOrientation (Orientation.HORIZONTAL);
+    updateSize (Size.getValues().get (1));
 	}
 
   /**
    * Relayout and draw the treeview nodes.
    */
 	public void drawTreeView () {
-    if (_ltmView != null) {
-      _ltmView.relayout();
-    }
+    _ltmView.relayout();
 	}
 
   /**
@@ -170,27 +229,14 @@ public class ChrestLtmView extends JPanel {
 
   /**
    * Wrap the model's LTM as a set of LtmTreeVewNode objects,
-   * joining the three types of LTM into a single tree.
+   * joining the three types of LTM into a single tree.  The wrappers
+   * fetch their children from the model when first needed.
    */
   private LtmTreeViewNode constructTree () {
     LtmTreeViewNode baseTreeViewNode = new NodeDisplay (null);
-    baseTreeViewNode.add (constructTree (_model.getLtmByModality(Pattern.makeVisualList (new String[]{}))));
-    baseTreeViewNode.add (constructTree (_model.getLtmByModality(Pattern.makeVerbalList (new String[]{}))));
-    baseTreeViewNode.add (constructTree (_model.getLtmByModality(Pattern.makeActionList (new String[]{}))));
-    return baseTreeViewNode;
-  }
-
-  /** 
-   * Wrap the model's LTM as a set of LtmTreeViewNode objects.
-   */
-  private LtmTreeViewNode constructTree (Node baseNode) {
-    LtmTreeViewNode baseTreeViewNode = new NodeDisplay (baseNode);
-    for (Link link : baseNode.getChildren ()) {
-      LtmTreeViewNode linkNode = new LinkDisplay (link);
-      linkNode.add (constructTree (link.getChildNode ()));
-      baseTreeViewNode.add (linkNode);
-    }
-
+    baseTreeViewNode.add (new NodeDisplay (_model.getLtmByModality(Pattern.makeVisualList (new String[]{}))));
+    baseTreeViewNode.add (new NodeDisplay (_model.getLtmByModality(Pattern.makeVerbalList (new String[]{}))));
+    baseTreeViewNode.add (new NodeDisplay (_model.getLtmByModality(Pattern.makeActionList (new String[]{}))));
     return baseTreeViewNode;
   }
 }
@@ -203,14 +249,18 @@ enum Orientation { HORIZONTAL, VERTICAL }
  */
 class LinkDisplay implements LtmTreeViewNode {
   private Link _link;
-  private List<LtmTreeViewNode> _children;
+  private List<LtmTreeViewNode> _children; // null until first needed
 
   public LinkDisplay (Link link) {
     _link = link;
-    _children = new ArrayList<LtmTreeViewNode> ();
+    _children = null;
   }
 
   public List<LtmTreeViewNode> getChildren () {
+    if (_children == null) {
+      _children = new ArrayList<LtmTreeViewNode> ();
+      _children.add (new NodeDisplay (_link.getChildNode ()));
+    }
     return _children;
   }
 
@@ -250,7 +300,7 @@ class LinkDisplay implements LtmTreeViewNode {
   }
 
   public void add (LtmTreeViewNode node) {
-    _children.add (node);
+    getChildren().add (node);
   }
 
   private void drawSmallNode (Graphics2D g, int x, int y, int w, int h) {
@@ -267,7 +317,13 @@ class LinkDisplay implements LtmTreeViewNode {
   }
 }
 
-/** Display a given TreeViewNode with a JPanel.  */
+/** Display a given TreeViewNode with a JPanel.  
+ * Only the parts of the tree within the clip of the graphics are drawn, 
+ * and the pane records which nodes the user has expanded or collapsed, 
+ * so the choices survive the tree being rebuilt.  The shown nodes are 
+ * indexed by key, so a change to a node of the model need only update 
+ * that node, and the layout of the nodes above it.
+ */
 class TreeViewPane extends JPanel {
 	private final static long serialVersionUID = 2;
 	
@@ -276,326 +332,524 @@ class TreeViewPane extends JPanel {
 	private TreeViewNode _rootnode;
 	private Orientation _orientation;
 	private Size _size;
-
-	public TreeViewPane (TreeViewNode rootNode) {
+	private boolean _needsLayout;
+	// keys of nodes expanded or collapsed by the user, see getKey
+	private Set<Integer> _expanded;
+	private Set<Integer> _collapsed;
+	private boolean _expandedByDefault;
+	// the shown nodes, by key
+	private Map<Integer, TreeViewNode> _shown;
+
+	public TreeViewPane (LtmTreeViewNode rootNode) {
 		super();
 		
 		setBackground(Color.white);
 
-		_rootnode = rootNode;
 		_orientation = Orientation.HORIZONTAL;
 		_size = Size.getValues().get (1);
+		_expanded = new HashSet<Integer> ();
+		_collapsed = new HashSet<Integer> ();
+		_expandedByDefault = true;
+		_shown = new HashMap<Integer, TreeViewNode> ();
+		_rootnode = new TreeViewNode (rootNode, null, this);
+		_needsLayout = true;
 
 		// give some preferred size to get us started
 		_maxX = 100;
 		_maxY = 100;
 		setPreferredSize (new Dimension (_maxX, _maxY));
+
+		addMouseListener (new MouseAdapter () {
+			public void mouseClicked (MouseEvent e) {
+				if (_needsLayout) return;
+				TreeViewNode node = _rootnode.nodeAt (e.getX (), e.getY (), _orientation, 0, 0);
+				if (node != null && toggle (node._object)) {
+					node.clearChildren ();
+					relayout ();
+				}
+			}
+		});
 	}
 
 	public void setOrientation (Orientation newOrientation) {
 		_orientation = newOrientation;
+		_rootnode.invalidateAll ();
 		relayout();
 	}
 
 	public void setSize (Size newSize) {
 		_size = newSize;
+		_rootnode.invalidateAll ();
 		relayout();
 	}
 	
-	public void changeRoot (TreeViewNode newRoot) {
-		_rootnode = newRoot;
+	public void changeRoot (LtmTreeViewNode newRoot) {
+		_shown.clear ();
+		_rootnode = new TreeViewNode (newRoot, null, this);
 		relayout();
 	}
 
+	/**
+	 * Whether nodes not expanded or collapsed by the user are shown expanded.
+	 */
+	public void setExpandedByDefault (boolean expanded) {
+		_expandedByDefault = expanded;
+	}
+
+	/**
+	 * Links, and the roots of the model and display, are expanded unless
+	 * the user collapses them; other nodes follow the default.
+	 */
+	boolean isExpanded (LtmTreeViewNode object) {
+		Integer key = getKey (object);
+		if (key == null) return true;
+		if (_expanded.contains (key)) return true;
+		if (_collapsed.contains (key)) return false;
+		return _expandedByDefault || key < 0;
+	}
+
+	// expand a collapsed node, or collapse an expanded one, returning 
+	// false if the object has no children to show or hide
+	private boolean toggle (LtmTreeViewNode object) {
+		Integer key = getKey (object);
+		if (key == null || object.getChildren().isEmpty ()) return false;
+		if (isExpanded (object)) {
+			_expanded.remove (key);
+			_collapsed.add (key);
+		} else {
+			_collapsed.remove (key);
+			_expanded.add (key);
+		}
+		return true;
+	}
+
+	/**
+	 * Nodes are known by reference, and the roots of each modality, which
+	 * all have reference 0, by negative keys.
+	 */
+	static Integer getKey (Node node) {
+		if (node.getReference () == 0) return -1 - node.getContents().getModality().ordinal ();
+		return node.getReference ();
+	}
+
+	// links and the root of the display cannot be collapsed, so have no key
+	static Integer getKey (LtmTreeViewNode object) {
+		if (!(object instanceof NodeDisplay)) return null;
+		Node node = ((NodeDisplay)object).getNode ();
+		if (node == null) return null;
+		return getKey (node);
+	}
+
+	void shown (Integer key, TreeViewNode node) {
+		_shown.put (key, node);
+	}
+
+	void hidden (Integer key, TreeViewNode node) {
+		if (_shown.get (key) == node) _shown.remove (key);
+	}
+
+	/**
+	 * Update the shown node with the given key, if any, to show the given
+	 * node of the model, as it now is.  Call relayout when all changes are
+	 * made.
+	 */
+	void nodeChanged (Integer key, Node node) {
+		TreeViewNode shown = _shown.get (key);
+		if (shown != null) shown.changed (node);
+	}
+
+	/**
+	 * Lay out the nodes changed since the last layout, when the pane can 
+	 * next be drawn.
+	 */
 	public void relayout () {
-		_rootnode.layoutNode (getGraphics (), 10, 10, _orientation, _size);
-		_maxX = 20 + _rootnode.getExtentWidth (getGraphics (), _orientation, _size);
-		_maxY = 20 + _rootnode.getExtentHeight (getGraphics (), _orientation, _size);
-		setPreferredSize (new Dimension (_maxX, _maxY));
-		// notify parent container (which is probably a JScrollPane) to update itself
-		if (getParent () != null) ((JComponent)getParent ()).updateUI ();
+		_needsLayout = true;
+		Graphics g = getGraphics ();
+		if (g != null) layout (g);
 		repaint ();
 	}
 
+	private void layout (Graphics g) {
+		_rootnode._dx = 10;
+		_rootnode._dy = 10;
+		_rootnode.layoutNode (g, _orientation, _size);
+		_needsLayout = false;
+		if (_maxX != 20 + _rootnode._extentWidth || _maxY != 20 + _rootnode._extentHeight) {
+			_maxX = 20 + _rootnode._extentWidth;
+			_maxY = 20 + _rootnode._extentHeight;
+			setPreferredSize (new Dimension (_maxX, _maxY));
+			// notify parent container (which is probably a JScrollPane) to update itself
+			revalidate ();
+		}
+	}
+
   public void paint(Graphics g) {
     ((Graphics2D)g).setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    if (_needsLayout) layout (g);
     super.paint (g); // make sure the background of the JPanel is drawn
 		Graphics2D g2 = (Graphics2D)g;
 
+		Rectangle clip = g2.getClipBounds ();
 		g2.setBackground (Color.WHITE);
-		g2.clearRect (0, 0, this.getExtentWidth (), this.getExtentHeight ());
-		_rootnode.drawNode (g, _size, _orientation);
+		if (clip == null) {
+			g2.clearRect (0, 0, _maxX, _maxY);
+		} else {
+			g2.clearRect (clip.x, clip.y, clip.width, clip.height);
+		}
+		_rootnode.drawNode (g, _size, _orientation, clip, 0, 0);
 	}
 
   int getExtentWidth () {
-    return 20 + _rootnode.getExtentWidth (getGraphics (), _orientation, _size);
+    if (_needsLayout && getGraphics () != null) layout (getGraphics ());
+    return _maxX;
   }
 
   int getExtentHeight () {
-    return 20 + _rootnode.getExtentHeight (getGraphics (), _orientation, _size);
+    if (_needsLayout && getGraphics () != null) layout (getGraphics ());
+    return _maxY;
   }
 }
 
 /** The TreeViewNode is a wrapper around a Node, 
  * managing the layout and display of the node and its children.
+ * The children are only wrapped once the node is laid out expanded.
+ *
+ * Positions are relative, so a subtree moves without visiting its nodes:
+ * the extent of a node, the space taken by itself and its children, has
+ * its top-left corner at (_dx, _dy) from the corner of its parent's extent,
+ * and the node itself is at (_bx, _by) from the corner of its own extent.
+ * Only nodes whose layout is no longer valid are laid out again.
  */
 class TreeViewNode {
-	int _x;  // x position on the canvas
-	int _y;  // y position 
+	int _dx;
+	int _dy;
+	int _bx;
+	int _by;
 	int _w;  // the width
 	int _h;  // the height
-	// the extent of a node is the amount of space taken up by itself
-	// and its children
 	int _extentWidth;
 	int _extentHeight;
 	// hold a pointer to the object being displayed
 	LtmTreeViewNode _object;
+	// the children shown, or null until needed; empty if collapsed
 	ArrayList<TreeViewNode> _children;
+	private TreeViewNode _parent;
+	private TreeViewPane _pane;
+	private Size _measuredSize; // size at which _w and _h were measured
+	private boolean _layoutValid;
 	
-	public TreeViewNode (LtmTreeViewNode object) {
+	public TreeViewNode (LtmTreeViewNode object, TreeViewNode parent, TreeViewPane pane) {
 		_object = object;
-		_children = new ArrayList<TreeViewNode> ();
-		// work through any children of node, turning them into TreeViewNodes
-		for (LtmTreeViewNode child : _object.getChildren ()) {
-			_children.add (new TreeViewNode (child));
-		}
+		_parent = parent;
+		_pane = pane;
+		_children = null;
+		_measuredSize = null;
+		_layoutValid = false;
+		Integer key = TreeViewPane.getKey (object);
+		if (key != null) _pane.shown (key, this);
 		
 		setDefaults();
 	}
 
 	private void setDefaults () {
 		// the position and size of the node will be created during layout
-		_x = 0;
-		_y = 0;
+		_dx = 0;
+		_dy = 0;
+		_bx = 0;
+		_by = 0;
   	_w = 0; 
 		_h = 0;
 		_extentWidth = 0;
 		_extentHeight = 0;
 	}
 
-	// return true/false depending if this node has children
-	private boolean hasChildren () { return (!(_children.isEmpty ())); }
-
-	/** Return the visible extent of this node as a Rectangle */
-	public Rectangle getVisibleExtent () {
-		return new Rectangle(_x, _y, _w, _h);
+	// the children shown, wrapping those of the object if it is expanded
+	private ArrayList<TreeViewNode> children () {
+		if (_children == null) {
+			_children = new ArrayList<TreeViewNode> ();
+			if (_pane.isExpanded (_object)) {
+				for (LtmTreeViewNode child : _object.getChildren ()) {
+					_children.add (new TreeViewNode (child, this, _pane));
+				}
+			}
+		}
+		return _children;
 	}
 
-	/** Compute the extent in width of a TreeViewNode.  Different routines compute width
-	  * depending on direction of layout.
-	  */
-	public int getExtentWidth (Graphics g, Orientation orientation, Size size) {
-		// return cached value, if present
-		if (_extentWidth != 0) return _extentWidth;
-
-		if (orientation == Orientation.HORIZONTAL) {
-			_extentWidth = getExtentWidthHorizontalLayout (g, orientation, size);
-		} else {
-			_extentWidth = getExtentWidthVerticalLayout (g, orientation, size);
+	/** Forget the children shown, after the node is expanded or collapsed. */
+	void clearChildren () {
+		if (_children != null) {
+			for (TreeViewNode child : _children) child.hide ();
 		}
-		return _extentWidth;
+		_children = null;
+		invalidate ();
 	}
 
-	/** Compute the extent in height of a TreeViewNode.  Different routines compute height 
-	  * depending on direction of layout.
-	  */
-	public int getExtentHeight (Graphics g, Orientation orientation, Size size) {
-		// return a cached value, if present
-		if (_extentHeight != 0) return _extentHeight;
-
-		if (orientation == Orientation.HORIZONTAL) {
-			_extentHeight = getExtentHeightHorizontalLayout (g, orientation, size);
-		} else {
-			_extentHeight = getExtentHeightVerticalLayout (g, orientation, size);
+	// remove this node and those below from the pane's index
+	private void hide () {
+		Integer key = TreeViewPane.getKey (_object);
+		if (key != null) _pane.hidden (key, this);
+		if (_children != null) {
+			for (TreeViewNode child : _children) child.hide ();
 		}
-		return _extentHeight;
 	}
 
-	// for horizontal layout, extent is width of widest child
-	private int getExtentWidthHorizontalLayout (Graphics g, Orientation orientation, Size size) {
-		int width = _object.getWidth ((Graphics2D)g, size);
-		if (hasChildren ()) {
-			int maxChildWidth = 0;
-
-			for (TreeViewNode child : _children) {
-				if (maxChildWidth < child.getExtentWidth (g, orientation, size)) {
-					maxChildWidth = child.getExtentWidth (g, orientation, size);
-				}
-			}
-
-			width += size.getHorizontalSeparator (orientation) + maxChildWidth;
+	/**
+	 * Show the node as it now is in the model, which may be a new copy of 
+	 * the node.  Children already shown are kept, with new children added 
+	 * in their place.
+	 */
+	void changed (Node node) {
+		((NodeDisplay)_object).reset (node);
+		_measuredSize = null;
+		invalidate ();
+		if (_children == null) return;
+		if (!_pane.isExpanded (_object)) return;
+		// the children of a node are links, each with the child node
+		Map<Integer, TreeViewNode> previous = new HashMap<Integer, TreeViewNode> ();
+		for (TreeViewNode link : _children) {
+			previous.put (TreeViewPane.getKey (link._object.getChildren().get (0)), link);
 		}
-
-		return width;
+		ArrayList<TreeViewNode> children = new ArrayList<TreeViewNode> ();
+		for (LtmTreeViewNode link : _object.getChildren ()) {
+			TreeViewNode child = previous.remove (TreeViewPane.getKey (link.getChildren().get (0)));
+			children.add (child == null ? new TreeViewNode (link, this, _pane) : child);
+		}
+		for (TreeViewNode child : previous.values ()) child.hide ();
+		_children = children;
 	}
 
-	// for vertical layout, add all the widths of the children and gaps to get extent
-	private int getExtentWidthVerticalLayout (Graphics g, Orientation orientation, Size size) {
-		int totalChildWidth = 0;
-		if (hasChildren ()) {
-			for (TreeViewNode child : _children) {
-				totalChildWidth += child.getExtentWidth (g, orientation, size);
-			}
-			// add n-1 gaps
-			totalChildWidth += size.getHorizontalSeparator (orientation) *
-					(_children.size () - 1);
+	/** Mark the layout of this node, and so of those above it, as changed. */
+	void invalidate () {
+		// nodes already invalid have all their ancestors invalid
+		for (TreeViewNode node = this; node != null && node._layoutValid; node = node._parent) {
+			node._layoutValid = false;
 		}
-		return Math.max (totalChildWidth, _object.getWidth ((Graphics2D)g, size));
 	}
 
-	// for horizontal layout, add all the heights of the children and gaps to get extent
-	private int getExtentHeightHorizontalLayout (Graphics g, Orientation orientation, Size size) {
-		int totalChildHeight = 0;
-		if (hasChildren ()) {
-			for (TreeViewNode child : _children) {
-				totalChildHeight += child.getExtentHeight (g, orientation, size);
-			}
-			// add n-1 gaps
-			totalChildHeight += size.getVerticalSeparator (orientation) *
-				(_children.size () - 1);
+	/** Mark the layout of this node and all shown below it as changed. */
+	void invalidateAll () {
+		_layoutValid = false;
+		if (_children != null) {
+			for (TreeViewNode child : _children) child.invalidateAll ();
 		}
-		return Math.max (totalChildHeight, _object.getHeight ((Graphics2D)g, size));
 	}
 
-	// for horizontal layout, extent is height of tallest child
-	private int getExtentHeightVerticalLayout (Graphics g, Orientation orientation, Size size) {
-		int height = _object.getHeight((Graphics2D)g, size);
-		if (hasChildren ()) {
-			int maxChildHeight = 0;
+	// return true/false depending if this node has children
+	private boolean hasChildren () { return (!(children().isEmpty ())); }
 
-			for (TreeViewNode child : _children) {
-				if (maxChildHeight < child.getExtentHeight (g, orientation, size)) {
-					maxChildHeight = child.getExtentHeight (g, orientation, size);
-				}
-			}	
+	// true if the node has children which are not shown
+	private boolean isCollapsed () {
+		return !hasChildren () && !_object.getChildren().isEmpty ();
+	}
 
-			height += size.getVerticalSeparator (orientation) + maxChildHeight; 
+	// measure the node, unless already measured at this size
+	private void measure (Graphics g, Size size) {
+		if (_measuredSize != size) {
+			_w = _object.getWidth((Graphics2D)g, size);
+			_h = _object.getHeight((Graphics2D)g, size);
+			_measuredSize = size;
 		}
-
-		return height;
 	}
 
-	// layoutNode assigns new x and y values to the node, respecting new orientation and size
-	public void layoutNode (Graphics g, int x, int y, Orientation orientation, Size size) {
-		_x = x;
-		_y = y;
-		_w = _object.getWidth((Graphics2D)g, size);
-		_h = _object.getHeight((Graphics2D)g, size);
-
-		// clear cached values, to force recomputation
-		_extentWidth = 0;
-		_extentHeight = 0;
+	/** Lay out this node and its children, unless their layout is still 
+	 * valid, placing the children relative to this node, and computing the 
+	 * extent.  Where a node's children are placed depends on the direction 
+	 * of layout.
+	 */
+	public void layoutNode (Graphics g, Orientation orientation, Size size) {
+		if (_layoutValid) return;
+		measure (g, size);
+		_bx = 0;
+		_by = 0;
+		if (hasChildren ()) {
+			for (TreeViewNode child : _children) {
+				child.layoutNode (g, orientation, size);
+			}
+		}
 		if (orientation == Orientation.HORIZONTAL) {
-			layoutChildrenHorizontally (g, orientation, size);
+			layoutChildrenHorizontally (size);
 		} else {
-			layoutChildrenVertically (g, orientation, size);
+			layoutChildrenVertically (size);
 		}
+		_layoutValid = true;
 	}
 
-	// horizontal layout means children displayed vertically
-	private void layoutChildrenHorizontally (Graphics g, Orientation orientation, Size size) {
+	// horizontal layout means children displayed vertically:
+	// the extent's width is the node's plus that of the widest child, and
+	// its height the sum of the children's heights and gaps
+	private void layoutChildrenHorizontally (Size size) {
+		Orientation orientation = Orientation.HORIZONTAL;
+		_extentWidth = _w;
+		_extentHeight = _h;
 		if (!hasChildren ()) return ; // nothing to do, if no children
-		int nextY = _y;
 		// each child's x position is to the right of this node
-		int thisX = _x + size.getHorizontalSeparator(orientation) + _w;
+		int thisX = _w + size.getHorizontalSeparator (orientation);
+		int nextY = 0;
+		int maxChildWidth = 0;
 		// nextY is incremented by child's height + verticalSeparator
 		//       to get the vertical position of the next child
-		//       to get the vertical position of the next child
 		for (TreeViewNode child : _children) {
-			child.layoutNode(g, thisX, nextY, orientation, size);
-			nextY += size.getVerticalSeparator (orientation);
-			nextY += child.getExtentHeight(g, orientation, size);
+			child._dx = thisX;
+			child._dy = nextY;
+			nextY += child._extentHeight + size.getVerticalSeparator (orientation);
+			maxChildWidth = Math.max (maxChildWidth, child._extentWidth);
 		}
+		_extentWidth = thisX + maxChildWidth;
+		_extentHeight = Math.max (nextY - size.getVerticalSeparator (orientation), _h);
 		// move the node DOWN to center it
-		_y += 0.5*(getExtentHeight(g, orientation, size) - _h);
+		_by = (int)(0.5 * (_extentHeight - _h));
 	}
 
-	// vertical layout means children displayed horizontally
-	private void layoutChildrenVertically (Graphics g, Orientation orientation, Size size) {
+	// vertical layout means children displayed horizontally:
+	// the extent's height is the node's plus that of the tallest child, and
+	// its width the sum of the children's widths and gaps
+	private void layoutChildrenVertically (Size size) {
+		Orientation orientation = Orientation.VERTICAL;
+		_extentWidth = _w;
+		_extentHeight = _h;
 		if (!hasChildren ()) return; // nothing to do, if no children
-		int thisY = _y + size.getVerticalSeparator(orientation) + _h;
-		int nextX = _x;
+		int thisY = _h + size.getVerticalSeparator (orientation);
+		int nextX = 0;
+		int maxChildHeight = 0;
 		// nextX is incremented by child's width + horizontalSeparator
 		//       to get horizontal position of the next child
 		for (TreeViewNode child : _children) {
-			child.layoutNode(g, nextX, thisY, orientation, size);
-			nextX += size.getHorizontalSeparator(orientation);
-			nextX += child.getExtentWidth(g, orientation, size);
+			child._dx = nextX;
+			child._dy = thisY;
+			nextX += child._extentWidth + size.getHorizontalSeparator (orientation);
+			maxChildHeight = Math.max (maxChildHeight, child._extentHeight);
 		}
+		_extentWidth = Math.max (nextX - size.getHorizontalSeparator (orientation), _w);
+		_extentHeight = thisY + maxChildHeight;
 		// move the node RIGHT to center it
-		_x += 0.5 * (getExtentWidth(g, orientation, size) - _w);
+		_bx = (int)(0.5 * (_extentWidth - _w));
+	}
+
+	// index of the first child whose extent ends at or after the given 
+	// position, relative to this node's extent, along the axis on which 
+	// the children are placed 
+	private int firstChildFrom (int position, Orientation orientation) {
+		int low = 0;
+		int high = _children.size ();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			TreeViewNode child = _children.get (mid);
+			int end = (orientation == Orientation.HORIZONTAL ?
+					child._dy + child._extentHeight :
+					child._dx + child._extentWidth);
+			if (end < position) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	// true if the child's extent begins after the given position, relative 
+	// to this node's extent
+	private static boolean isAfter (TreeViewNode child, int position, Orientation orientation) {
+		return (orientation == Orientation.HORIZONTAL ? child._dy : child._dx) > position;
+	}
+
+	/** Return the node drawn at the given point, or null if there is none.
+	 * (px, py) is the corner of the parent's extent.
+	 */
+	public TreeViewNode nodeAt (int x, int y, Orientation orientation, int px, int py) {
+		int ox = px + _dx;
+		int oy = py + _dy;
+		if (x < ox || x > ox + _extentWidth || y < oy || y > oy + _extentHeight) return null;
+		if (x >= ox + _bx && x <= ox + _bx + _w && y >= oy + _by && y <= oy + _by + _h) return this;
+		if (!hasChildren ()) return null;
+		int position = (orientation == Orientation.HORIZONTAL ? y - oy : x - ox);
+		for (int i = firstChildFrom (position, orientation); i < _children.size (); ++i) {
+			TreeViewNode child = _children.get (i);
+			if (isAfter (child, position, orientation)) break;
+			TreeViewNode found = child.nodeAt (x, y, orientation, ox, oy);
+			if (found != null) return found;
+		}
+		return null;
 	}
 
-	public int getLeftX () { return _x; }
-	public int getMidX () { return _x + (Math.round (_w / 2)); }
-	public int getRightX () { return _x + _w; }
-	public int getTopY () { return _y; }
-	public int getMidY () { return _y + (Math.round (_h / 2)); }
-	public int getBottomY () { return _y + _h; }
-
 	/** A TreeViewNode draws itself by requesting its object to draw 
 	  * itself within the specified area, on the given context.
+	  * Nothing is drawn outside the clip, if one is given.
+	  * (px, py) is the corner of the parent's extent.
 	  */
-	public void drawNode (Graphics g, Size size, Orientation orientation) {
+	public void drawNode (Graphics g, Size size, Orientation orientation, Rectangle clip, int px, int py) {
+		int ox = px + _dx;
+		int oy = py + _dy;
+		if (clip != null && !clip.intersects (ox, oy, _extentWidth + 1, _extentHeight + 1)) return;
 		Graphics2D g2 = (Graphics2D)g;
-		drawLinks (g2, orientation); // draw the links first, so objects overwrite them
-		drawNodeBorder (g2);
-		_object.draw (g2, _x, _y, _w, _h, size);
-		drawChildren (g, size, orientation);
+		int x = ox + _bx;
+		int y = oy + _by;
+		drawLinks (g2, orientation, clip, ox, oy); // draw the links first, so objects overwrite them
+		if (clip == null || clip.intersects (x, y, _w + 1, _h + 1)) {
+			drawNodeBorder (g2, x, y);
+			_object.draw (g2, x, y, _w, _h, size);
+			if (isCollapsed ()) drawCollapsedBorder (g2, x, y);
+		}
+		drawChildren (g, size, orientation, clip, ox, oy);
 	}
 
-	private void drawNodeBorder (Graphics2D g2) {
+	private void drawNodeBorder (Graphics2D g2, int x, int y) {
 		if (_object.isRoot ()) return; // allow rootnode to be drawn differently
-		g2.clearRect (_x, _y, _w, _h);
+		g2.clearRect (x, y, _w, _h);
 		g2.setColor (Color.BLACK);
-    g2.drawRect (_x, _y, _w, _h);
+    g2.drawRect (x, y, _w, _h);
 	}
 
-	private void drawChildren (Graphics g, Size size, Orientation orientation) {
-		if (hasChildren ()) {
+	// a red border marks a node whose children are hidden
+	private void drawCollapsedBorder (Graphics2D g2, int x, int y) {
+		g2.setColor (Color.RED);
+		g2.drawRect (x, y, _w, _h);
+	}
+
+	private void drawChildren (Graphics g, Size size, Orientation orientation, Rectangle clip, int ox, int oy) {
+		if (!hasChildren ()) return;
+		if (clip == null) {
 			for (TreeViewNode child : _children) {
-				child.drawNode (g, size, orientation);
+				child.drawNode (g, size, orientation, clip, ox, oy);
+			}
+		} else {
+			// only the children overlapping the clip need be visited
+			int from = (orientation == Orientation.HORIZONTAL ? clip.y - oy : clip.x - ox);
+			int to = from + (orientation == Orientation.HORIZONTAL ? clip.height : clip.width);
+			for (int i = firstChildFrom (from, orientation); i < _children.size (); ++i) {
+				TreeViewNode child = _children.get (i);
+				if (isAfter (child, to, orientation)) break;
+				child.drawNode (g, size, orientation, clip, ox, oy);
 			}
 		}
 	}
 
-	private void drawLinks (Graphics2D g2, Orientation orientation) {
+	private void drawLinks (Graphics2D g2, Orientation orientation, Rectangle clip, int ox, int oy) {
 		if (!hasChildren ()) return; // nothing to do if no children
 		g2.setColor(Color.black);
 		
-		if (orientation == Orientation.HORIZONTAL) {
-			drawHorizontalLinks (g2, getFromX (orientation), getFromY (orientation));
-		} else {
-			drawVerticalLinks (g2, getFromX (orientation), getFromY (orientation));
-		}
-	}
-
-	private int getFromX (Orientation orientation) {
-		if (_object.isRoot () || orientation == Orientation.VERTICAL) {
-			return getMidX ();
-		} else {
-			return getRightX ();
-		}
-	}
-
-	private int getFromY (Orientation orientation) {
-		if (_object.isRoot () || orientation == Orientation.HORIZONTAL) {
-			return getMidY ();
-		} else {
-			return getBottomY ();
-		}
-	}
-	
-	private void drawHorizontalLinks (Graphics2D g2, int from_x, int from_y) {
+		// links leave the node from the middle of its right or bottom side, 
+		// or its centre, if the root
+		int fromX = ox + _bx + ((_object.isRoot () || orientation == Orientation.VERTICAL) ? Math.round (_w / 2) : _w);
+		int fromY = oy + _by + ((_object.isRoot () || orientation == Orientation.HORIZONTAL) ? Math.round (_h / 2) : _h);
 		for (TreeViewNode child : _children) {
-			g2.drawLine (from_x, from_y, child.getLeftX (), child.getMidY ());
+			int x = ox + child._dx + child._bx;
+			int y = oy + child._dy + child._by;
+			if (orientation == Orientation.HORIZONTAL) {
+				// to the middle of the child's left side
+				drawLink (g2, fromX, fromY, x, y + Math.round (child._h / 2), clip);
+			} else {
+				// to the middle of the child's top side
+				drawLink (g2, fromX, fromY, x + Math.round (child._w / 2), y, clip);
+			}
 		}
 	}
 
-	private void drawVerticalLinks (Graphics2D g2, int from_x, int from_y) {
-		for (TreeViewNode child : _children) {
-			g2.drawLine (from_x, from_y, child.getMidX (), child.getTopY ());
+	// draw the line, unless its bounding box misses the clip
+	private static void drawLink (Graphics2D g2, int x1, int y1, int x2, int y2, Rectangle clip) {
+		if (clip == null || clip.intersects (Math.min (x1, x2), Math.min (y1, y2),
+					Math.abs (x2 - x1) + 1, Math.abs (y2 - y1) + 1)) {
+			g2.drawLine (x1, y1, x2, y2);
 		}
 	}
 }
-
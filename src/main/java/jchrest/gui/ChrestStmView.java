@@ -63,17 +63,36 @@ public class ChrestStmView extends JPanel {
   }
 
   public void update () {
-    _visualStmView.clear ();
-    for (Node node : _model.getVisualStm ()) {
-      _visualStmView.addElement (node);
-    }
+    update (snapshot (_model.getVisualStm ()), snapshot (_model.getVerbalStm ()));
+  }
+
+  /**
+   * Display the given contents of visual and verbal STM, as taken by 
+   * snapshot.
+   */
+  public void update (Node[] visualStm, Node[] verbalStm) {
+    show (_visualStmView, visualStm);
     _visualStmList.setModel (_visualStmView);
+    show (_verbalStmView, verbalStm);
+    _verbalStmList.setModel (_verbalStmView);
+  }
 
-    _verbalStmView.clear ();
-    for (Node node : _model.getVerbalStm ()) {
-      _verbalStmView.addElement (node);
+  /**
+   * Copy the current contents of the given STM, so they can be displayed 
+   * later, from another thread.
+   */
+  public static Node[] snapshot (Stm stm) {
+    Node[] nodes = new Node[stm.getCount ()];
+    for (int i = 0; i < nodes.length; i++) {
+      nodes[i] = stm.getItem (i);
     }
-    _verbalStmList.setModel (_verbalStmView);
+    return nodes;
   }
-}
 
+  private void show (DefaultListModel view, Node[] nodes) {
+    view.clear ();
+    for (Node node : nodes) {
+      view.addElement (node);
+    }
+  }
+}
@@ -29,6 +29,13 @@ public class ChrestTimeView extends JPanel {
   }
 
   public void update () {
-    _display.setText ("Time (ms): " + _model.getClock ());
+    update (_model.getClock ());
+  }
+
+  /**
+   * Display the given clock time.
+   */
+  public void update (int time) {
+    _display.setText ("Time (ms): " + time);
   }
 }
@@ -4,6 +4,7 @@
 package jchrest.gui;
 
 import jchrest.architecture.Chrest;
+import jchrest.architecture.Node;
 import jchrest.lib.FileUtilities;
 
 import java.awt.*;
@@ -19,6 +20,10 @@ public class ChrestView extends JFrame implements Observer {
   private ChrestLtmView _ltmView;
   private ChrestStmView _stmView;
   private ChrestTimeView _timeView;
+  // latest state of the model, shown at the next frame
+  private Node[] _visualStm, _verbalStm;
+  private int _clock;
+  private final FrameRefresh _refresh;
 
   public ChrestView (Chrest model) {
     this (new Shell (), model);
@@ -28,10 +33,23 @@ public class ChrestView extends JFrame implements Observer {
     super ("CHREST Model View");
     _shell = shell;
     _model = model;
-    _model.addObserver (this);
     _timeView = new ChrestTimeView (_model);
     _ltmView = new ChrestLtmView (_model);
     _stmView = new ChrestStmView (_model);
+    _refresh = new FrameRefresh (new Runnable () {
+      public void run () {
+        Node[] visualStm, verbalStm;
+        int clock;
+        synchronized (_refresh) {
+          visualStm = _visualStm;
+          verbalStm = _verbalStm;
+          clock = _clock;
+        }
+        _stmView.update (visualStm, verbalStm);
+        _timeView.update (clock);
+      }
+    });
+    _model.addObserver (this);
 
     // catch close-window event
     addWindowListener(new WindowAdapter() {
@@ -112,12 +130,18 @@ public class ChrestView extends JFrame implements Observer {
 
   /** 
    * Implement the observable interface, and update the view whenever 
-   * the underlying model has changed.
+   * the underlying model has changed.  The model may change many times 
+   * a frame, so the STMs and clock are copied here, on the model's 
+   * thread, and only the latest copy is displayed, once a frame.
    */
   public void update(Observable o, Object arg) {
     _ltmView.update ();
-    _stmView.update ();
-    _timeView.update ();
+    synchronized (_refresh) {
+      _visualStm = ChrestStmView.snapshot (_model.getVisualStm ());
+      _verbalStm = ChrestStmView.snapshot (_model.getVerbalStm ());
+      _clock = _model.getClock ();
+    }
+    _refresh.request ();
   }
 
   /**
@@ -125,6 +149,7 @@ public class ChrestView extends JFrame implements Observer {
    */
   private void closeView () {
       _model.deleteObserver (this);
+      _ltmView.close ();
       setVisible (false);
       dispose ();
     }
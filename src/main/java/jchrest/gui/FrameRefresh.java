@@ -0,0 +1,67 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.gui;
+
+import java.awt.GraphicsEnvironment;
+import java.awt.HeadlessException;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.Timer;
+
+/**
+ * Runs an action on the event dispatch thread at most once per frame of the
+ * display, however often it is requested.  Requests may come from any
+ * thread; those made before a pending run starts are served by that run.
+ *
+ * @author Peter C. R. Lane
+ */
+class FrameRefresh {
+  private final Runnable _action;
+  private final int _frameMillis;
+  private final AtomicBoolean _pending;
+  private volatile long _lastRun;
+
+  FrameRefresh (Runnable action) {
+    _action = action;
+    _frameMillis = getFrameMillis ();
+    _pending = new AtomicBoolean (false);
+    _lastRun = 0;
+  }
+
+  /**
+   * Ask for the action to be run, in the next frame.
+   */
+  void request () {
+    if (_pending.compareAndSet (false, true)) {
+      long wait = _frameMillis - (System.currentTimeMillis () - _lastRun);
+      Timer timer = new Timer ((int)Math.max (0, wait), new ActionListener () {
+        public void actionPerformed (ActionEvent e) {
+          _lastRun = System.currentTimeMillis ();
+          _pending.set (false); // later requests need another run
+          _action.run ();
+        }
+      });
+      timer.setRepeats (false);
+      timer.start ();
+    }
+  }
+
+  /**
+   * Milliseconds per frame of the default screen, or of 60 frames a second
+   * if its refresh rate is not known.
+   */
+  static int getFrameMillis () {
+    try {
+      if (!GraphicsEnvironment.isHeadless ()) {
+        int rate = GraphicsEnvironment.getLocalGraphicsEnvironment ()
+          .getDefaultScreenDevice().getDisplayMode().getRefreshRate ();
+        if (rate > 0) return 1000 / rate;
+      }
+    } catch (HeadlessException e) {
+      ; // use the default
+    }
+    return 1000 / 60;
+  }
+}
@@ -11,31 +11,63 @@ import java.util.List;
 import javax.swing.*;
 
 /**
- * Display a node of the discrimination network.
+ * Display a node of the discrimination network.  The children, and the
+ * text shown, are only fetched from the node when first needed, so large
+ * networks can be wrapped without visiting nodes which are never shown.
  *
  * @author Peter C. R. Lane
  */
 class NodeDisplay implements LtmTreeViewNode {
   private Node _node;
-  private List<LtmTreeViewNode> _children;
+  private List<LtmTreeViewNode> _children; // null until first needed
+  private String _display;                 // null until first needed
 
   public NodeDisplay (Node node) {
     _node = node;
-    _children = new ArrayList<LtmTreeViewNode> ();
+    _children = null;
+    _display = null;
   }
 
   private final int ROOTNODE_SIZE = 11;
 
+  /**
+   * The displayed node, or null for the root of the display.
+   */
+  public Node getNode () {
+    return _node;
+  }
+
+  /**
+   * Display the given node, which may be a new copy of the current one,
+   * fetching its children and text again when next needed.
+   */
+  public void reset (Node node) {
+    _node = node;
+    _children = null;
+    _display = null;
+  }
+
   public List<LtmTreeViewNode> getChildren () {
+    if (_children == null) {
+      _children = new ArrayList<LtmTreeViewNode> ();
+      if (_node != null) {
+        for (Link link : _node.getChildren ()) {
+          _children.add (new LinkDisplay (link));
+        }
+      }
+    }
     return _children;
   }
 
   private String toDisplay () {
-    if (_node.getReference () == 0) {
-      return _node.getImage().getModalityString ();
-    } else {
-      return _node.getImage().toString ();
+    if (_display == null) {
+      if (_node.getReference () == 0) {
+        _display = _node.getImage().getModalityString ();
+      } else {
+        _display = _node.getImage().toString ();
+      }
     }
+    return _display;
   }
 
   public int getWidth (Graphics2D g, Size size) {
@@ -100,7 +132,7 @@ class NodeDisplay implements LtmTreeViewNode {
   }
 
   public void add (LtmTreeViewNode node) {
-    _children.add (node);
+    getChildren().add (node);
   }
 
   private void drawRootNode (Graphics2D g, int x, int y, Size size) {
@@ -7,6 +7,7 @@ import jchrest.architecture.Chrest;
 import jchrest.lib.ListPattern;
 import jchrest.lib.PairedPattern;
 import jchrest.lib.Pattern;
+import jchrest.lib.TaskFile;
 
 import java.awt.*;
 import java.awt.event.*;
@@ -44,12 +45,7 @@ public class PairedAssociateExperiment extends JPanel {
    * Convert a list of ListPatterns into a list of stimulus-response pairs.
    */
   public static List<PairedPattern> makePairs (List<ListPattern> patterns) {
-    List<PairedPattern> pairs = new ArrayList<PairedPattern> ();
-    for (int i = 1; i < patterns.size (); ++i) {
-      pairs.add (new PairedPattern (patterns.get(i-1), patterns.get(i)));
-    }
-
-    return pairs;
+    return TaskFile.makePairs (patterns);
   }
 
   private JPanel createListView () {
@@ -5,21 +5,18 @@ package jchrest.gui;
 
 import jchrest.architecture.Chrest;
 import jchrest.lib.FileUtilities;
-import jchrest.lib.ListPattern;
-import jchrest.lib.PairedPattern;
+import jchrest.lib.MappedScenes;
 import jchrest.lib.ParsingErrorException;
-import jchrest.lib.Pattern;
-import jchrest.lib.Scenes;
+import jchrest.lib.TaskFile;
 
 import java.awt.BorderLayout;
 import java.awt.GridLayout;
 import java.awt.event.*;
 import java.io.*;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import javax.management.JMException;
 import javax.swing.*;
 
 import org.jfree.chart.*;
@@ -28,7 +25,8 @@ import org.jfree.data.*;
 import org.jfree.data.statistics.*;
 
 /**
- * The main frame for the Chrest shell.
+ * The main frame for the Chrest shell.  The model's metrics are published
+ * as an MBean named 'jchrest:type=Chrest,name="Shell"'.
  *
  * @author Peter C. R. Lane
  */
@@ -39,6 +37,11 @@ public class Shell extends JFrame {
     super ("CHREST 4");
 
     _model = new Chrest ();
+    try {
+      _model.getMetrics().register ("Shell");
+    } catch (JMException jme) {
+      ; // metrics are optional, and the shell runs without them
+    }
 
     setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
     createMenuBar ();
@@ -140,18 +143,12 @@ public class Shell extends JFrame {
    */
   private class LoadDataThread extends SwingWorker<Void, Void> {
     private Shell _parent;
-    private String _task;
-    private List<ListPattern> _items;
-    private List<PairedPattern> _pairs;
-    private Scenes _scenes;
+    private TaskFile _data;
     private Status _status = Status.OK;
 
     LoadDataThread (Shell parent) {
       _parent = parent;
-      _task = "";
-      _items = null;
-      _pairs = null;
-      _scenes = null;
+      _data = null;
     }
 
     @Override
@@ -162,36 +159,25 @@ public class Shell extends JFrame {
         } else {
           try {
             _status = Status.OK; // assume all will be fine
-            _task = "";
-            // add a monitor to the input stream, to show a message if input is taking a while
-            InputStream inputStream = new ProgressMonitorInputStream(
-                _parent, 
-                "Reading the input file", 
-                new FileInputStream (file));
-            BufferedReader input = new BufferedReader (new InputStreamReader (inputStream));
-
-            String line = input.readLine ();
-            if (line != null) {
-              _task = line.trim ();
-            }
-
-            if (_task.equals ("recognise-and-learn")) {
-              _items = readItems (input, false);
-            } else if (_task.equals ("serial-anticipation")) {
-              _items = readItems (input, true);
-            } else if (_task.equals ("paired-associate")) {
-              _pairs = readPairedItems (input, false);
-            } else if (_task.equals ("categorisation")) {
-              _pairs = readPairedItems (input, true);
-            } else if (_task.equals ("visual-search")) {
-              _scenes = Scenes.read (input); // throws IOException if any problem
-            } else if (_task.equals ("visual-search-with-move")){
-              _scenes = Scenes.readWithMove (input); // throws IOException if any problem
+            if (MappedScenes.isBinary (file)) {
+              _data = TaskFile.read (file);
+            } else {
+              // add a monitor to the input stream, to show a message if input is taking a while
+              InputStream inputStream = new ProgressMonitorInputStream(
+                  _parent, 
+                  "Reading the input file", 
+                  new FileInputStream (file));
+              BufferedReader input = new BufferedReader (new InputStreamReader (inputStream));
+              try {
+                _data = TaskFile.read (input); // throws IOException if any problem
+              } finally {
+                input.close ();
+              }
             }
           } catch (InterruptedIOException ioe) {
             _status = Status.CANCELLED_RUNNING; // flag cancelled error
           } catch (IOException ioe) {
-            _status = Status.ERROR; // flag an IO error
+            _status = Status.ERROR; // flag an IO error, including an invalid task
           }
         }
         return null;
@@ -215,70 +201,20 @@ public class Shell extends JFrame {
                 JOptionPane.WARNING_MESSAGE);
             break;
           case OK:
-            if (_task.equals ("recognise-and-learn") && _items != null) {
-              _parent.setContentPane (new RecogniseAndLearnDemo (_model, _items));
-            } else if (_task.equals ("serial-anticipation") && _items != null) {
-              _parent.setContentPane (new PairedAssociateExperiment (_model, PairedAssociateExperiment.makePairs(_items)));
-            } else if (_task.equals ("paired-associate") && _pairs != null) {
-              _parent.setContentPane (new PairedAssociateExperiment (_model, _pairs));
-            } else if (_task.equals ("categorisation") && _pairs != null) {
-              _parent.setContentPane (new CategorisationExperiment (_model, _pairs));
-            } else if (_task.equals ("visual-search") && _scenes != null) {
-              _parent.setContentPane (new VisualSearchPane (_model, _scenes));
-            } else {
-              JOptionPane.showMessageDialog (_parent,
-                  "Invalid task on first line of file",
-                  "File error",
-                  JOptionPane.ERROR_MESSAGE);
+            String task = _data.getTask ();
+            if (task.equals (TaskFile.RECOGNISE_AND_LEARN)) {
+              _parent.setContentPane (new RecogniseAndLearnDemo (_model, _data.getItems ()));
+            } else if (task.equals (TaskFile.SERIAL_ANTICIPATION) || task.equals (TaskFile.PAIRED_ASSOCIATE)) {
+              _parent.setContentPane (new PairedAssociateExperiment (_model, _data.getPairs ()));
+            } else if (task.equals (TaskFile.CATEGORISATION)) {
+              _parent.setContentPane (new CategorisationExperiment (_model, _data.getPairs ()));
+            } else { // visual-search, with or without moves
+              _parent.setContentPane (new VisualSearchPane (_model, _data.getScenes ()));
             }
             _parent.validate ();
             break;
         }
       }
-
-    private List<ListPattern> readItems (BufferedReader input, boolean verbal) throws IOException {
-      List<ListPattern> items = new ArrayList<ListPattern> ();
-      String line = input.readLine ();
-
-      while (line != null) {
-        ListPattern pattern;
-        if (verbal) {
-          pattern = Pattern.makeVerbalList (line.trim().split("[, ]"));
-        } else {
-          pattern = Pattern.makeVisualList (line.trim().split("[, ]"));
-        }
-        pattern.setFinished ();
-        items.add (pattern);
-        line = input.readLine ();
-      } 
-
-      return items;
-    }
-
-    // categorisation = false => make both verbal
-    // categorisation = true  => make first visual, second verbal
-    private List<PairedPattern> readPairedItems (BufferedReader input, boolean categorisation) throws IOException {
-      List<PairedPattern> items = new ArrayList<PairedPattern> ();
-      String line = input.readLine ();
-      while (line != null) {
-        String[] pair = line.split (":");
-        if (pair.length != 2) throw new IOException (); // malformed pair
-        ListPattern pat1;
-        if (categorisation) {
-          pat1 = Pattern.makeVisualList (pair[0].trim().split("[, ]"));
-        } else {
-          pat1 = Pattern.makeVerbalList (pair[0].trim().split("[, ]"));
-        }
-        pat1.setFinished ();
-        ListPattern pat2 = Pattern.makeVerbalList (pair[1].trim().split("[, ]"));
-        pat2.setFinished ();
-        items.add (new PairedPattern (pat1, pat2));
-
-        line = input.readLine ();
-      }
-
-      return items;
-    }
   }
 
   /**
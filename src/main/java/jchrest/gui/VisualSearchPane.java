@@ -5,6 +5,9 @@ package jchrest.gui;
 
 import jchrest.architecture.Chrest;
 import jchrest.architecture.Node;
+import jchrest.architecture.LtmSnapshot;
+import jchrest.architecture.RecallEvaluator;
+import jchrest.architecture.TrainingCheckpoints;
 import jchrest.lib.*;
 
 import java.awt.*;
@@ -88,11 +91,14 @@ public class VisualSearchPane extends JPanel {
   private JSpinner _maxTrainingCycles;
   private JSpinner _numFixations;
   private JSpinner _maxNetworkSize;
+  private JTextField _checkpointDirectory;
 
   private JPanel constructTrainingOptions () {
     _maxTrainingCycles = new JSpinner (new SpinnerNumberModel (5, 1, 1000, 1));
     _numFixations = new JSpinner (new SpinnerNumberModel (20, 1, 1000, 1));
     _maxNetworkSize = new JSpinner (new SpinnerNumberModel (100000, 1, 10000000, 1));
+    _checkpointDirectory = new JTextField (20);
+    _checkpointDirectory.setToolTipText ("If given, training is checkpointed here, and resumes from the last checkpoint");
 
     JPanel panel = new JPanel ();
     panel.setLayout (new SpringLayout ());
@@ -101,8 +107,9 @@ public class VisualSearchPane extends JPanel {
     Utilities.addLabel (panel, "Maximum training cycles:", _maxTrainingCycles);
     Utilities.addLabel (panel, "Number of fixations per scene:", _numFixations);
     Utilities.addLabel (panel, "Maximum network size:", _maxNetworkSize);
+    Utilities.addLabel (panel, "Checkpoint directory (optional):", _checkpointDirectory);
 
-    Utilities.makeCompactGrid (panel, 5, 2, 3, 3, 10, 5);
+    Utilities.makeCompactGrid (panel, 6, 2, 3, 3, 10, 5);
     panel.setMaximumSize (panel.getPreferredSize ());
 
     JPanel ePanel = new JPanel ();
@@ -146,6 +153,26 @@ public class VisualSearchPane extends JPanel {
   }
 
   private XYSeries _trainingTimes;
+  // points published by training, waiting for the next frame of the chart
+  private List<Pair> _pendingTimes = new ArrayList<Pair> ();
+  private FrameRefresh _chartRefresh = new FrameRefresh (new Runnable () {
+    public void run () {
+      flushTrainingTimes ();
+    }
+  });
+
+  /**
+   * Add the pending points to the chart, redrawing it once for all of them.
+   * Called on the event dispatch thread.
+   */
+  private void flushTrainingTimes () {
+    if (_pendingTimes.isEmpty ()) return;
+    for (Pair pair : _pendingTimes) {
+      _trainingTimes.add (pair.getFirst (), pair.getSecond (), false);
+    }
+    _pendingTimes.clear ();
+    _trainingTimes.fireSeriesChanged ();
+  }
 
   private ChartPanel createPanel () {
     XYSeriesCollection dataset = new XYSeriesCollection ();
@@ -195,17 +222,30 @@ public class VisualSearchPane extends JPanel {
     }
   }
 
+  // checkpoint training every so many scenes, or milliseconds
+  private static final int CHECKPOINT_SCENES = 1000;
+  private static final long CHECKPOINT_TIME = 60000;
+
   private class TrainingThread extends SwingWorker<List<Pair>, Pair> {
     private Chrest _model;
     private Scenes _scenes;
     private int _maxCycles, _maxSize, _numFixations;
-
-    TrainingThread (Chrest model, Scenes scenes, int maxCycles, int maxSize, int numFixations) {
+    private File _checkpointDirectory;
+    private IOException _checkpointError;
+
+    /**
+     * If checkpointDirectory is not null, training resumes from the last
+     * checkpoint in it, and is checkpointed there as it goes.
+     */
+    TrainingThread (Chrest model, Scenes scenes, int maxCycles, int maxSize, int numFixations,
+        File checkpointDirectory) {
       _model = model;
       _scenes = scenes;
       _maxCycles = maxCycles;
       _maxSize = maxSize;
       _numFixations = numFixations;
+      _checkpointDirectory = checkpointDirectory;
+      _checkpointError = null;
     }
 
     @Override
@@ -219,47 +259,80 @@ public class VisualSearchPane extends JPanel {
 
         int stepSize = (_maxCycles * _scenes.size ()) / 100;
 
-        int cycle = 0;
-        int positionsSeen = 0;
-        while (
-            (cycle < _maxCycles) && 
-            (_model.getTotalLtmNodes () < _maxSize) &&
-            !isCancelled ()) {
-          for (int i = 0, lastSceneIndex = _scenes.size (); 
-              i < lastSceneIndex && (_model.getTotalLtmNodes () < _maxSize) && !isCancelled (); 
-              i++) {
-            _model.learnScene (_scenes.get (i), _numFixations);
-            positionsSeen += 1;
-            if (positionsSeen % stepSize == 0) {
+        TrainingCheckpoints checkpoints = null;
+        try {
+          int positionsSeen = 0;
+          if (_checkpointDirectory != null) {
+            checkpoints = new TrainingCheckpoints (_checkpointDirectory, CHECKPOINT_SCENES, CHECKPOINT_TIME);
+            positionsSeen = (int)checkpoints.resume (_model);
+            if (positionsSeen > 0) {
               result = new Pair (positionsSeen, _model.getTotalLtmNodes ());
               publish (result);
-              setProgress (100 * _model.getTotalLtmNodes () / _maxSize);
               results.add (result);
             }
           }
-          cycle += 1;
+
+          _model.takeLtmSnapshot ();
+          int cycle = positionsSeen / _scenes.size ();
+          while (
+              (cycle < _maxCycles) && 
+              (_model.getTotalLtmNodes () < _maxSize) &&
+              !isCancelled ()) {
+            for (int i = positionsSeen % _scenes.size (), lastSceneIndex = _scenes.size (); 
+                i < lastSceneIndex && (_model.getTotalLtmNodes () < _maxSize) && !isCancelled (); 
+                i++) {
+              _model.learnScene (_scenes.get (i), _numFixations);
+              positionsSeen += 1;
+              if (checkpoints != null) checkpoints.update (positionsSeen);
+              if (positionsSeen % stepSize == 0) {
+                _model.takeLtmSnapshot (); // for analysis while training
+                result = new Pair (positionsSeen, _model.getTotalLtmNodes ());
+                publish (result);
+                setProgress (100 * _model.getTotalLtmNodes () / _maxSize);
+                results.add (result);
+              }
             }
-        _model.constructTemplates ();
-        
-        result = new Pair (positionsSeen, _model.getTotalLtmNodes ());
-        results.add (result);
-        publish (result);
+            cycle += 1;
+              }
+          _model.constructTemplates ();
+          if (checkpoints != null) checkpoints.checkpoint (positionsSeen);
+
+          result = new Pair (positionsSeen, _model.getTotalLtmNodes ());
+          results.add (result);
+          publish (result);
+        } catch (IOException ioe) {
+          _checkpointError = ioe;
+        } finally {
+          if (checkpoints != null) {
+            try {
+              checkpoints.close ();
+            } catch (IOException ioe) {
+              if (_checkpointError == null) _checkpointError = ioe;
+            }
+          }
+        }
 
         return results;
       }
 
     @Override
       protected void process (List<Pair> results) {
-        for (Pair pair : results) {
-          _trainingTimes.add (pair.getFirst (), pair.getSecond ());
-        }
+        _pendingTimes.addAll (results);
+        _chartRefresh.request ();
       }
 
     protected void done () {
+      flushTrainingTimes ();
       _feedback.setValue (100);
       _stopAction.setEnabled (false);
       _trainAction.setEnabled (true);
       _model.unfreeze ();
+      if (_checkpointError != null) {
+        JOptionPane.showMessageDialog (VisualSearchPane.this,
+            "Training stopped: " + _checkpointError.getMessage (),
+            "Checkpoint failed",
+            JOptionPane.ERROR_MESSAGE);
+      }
     }
   }
 
@@ -281,8 +354,14 @@ public class VisualSearchPane extends JPanel {
       return ((SpinnerNumberModel)(_maxNetworkSize.getModel())).getNumber().intValue ();
     }
 
+    private File getCheckpointDirectory () {
+      String directory = _checkpointDirectory.getText().trim ();
+      return (directory.isEmpty () ? null : new File (directory));
+    }
+
     public void actionPerformed (ActionEvent e) {
-      _task = new TrainingThread (_model, _scenes, getMaxCycles (), getMaxNetworkSize (), getNumFixations ());
+      _task = new TrainingThread (_model, _scenes, getMaxCycles (), getMaxNetworkSize (), getNumFixations (),
+          getCheckpointDirectory ());
       _task.addPropertyChangeListener(
           new java.beans.PropertyChangeListener() {
             public  void propertyChange(java.beans.PropertyChangeEvent evt) {
@@ -292,6 +371,7 @@ public class VisualSearchPane extends JPanel {
             }
           });
 
+      _pendingTimes.clear ();
       _trainingTimes.clear (); // make sure we start graph afresh
 
       _feedback.setValue (0);
@@ -446,19 +526,20 @@ public class VisualSearchPane extends JPanel {
       public Void doInBackground () {
         _recallFrequencies = new HashMap<Integer, Integer> ();
 
-        // loop through each scene, doing recall
-        for (int i = 0; i < _scenes.size () && !isCancelled (); i++) {
-          Scene scene = _scenes.get (i);
-          _model.scanScene (scene, ((SpinnerNumberModel)(_numFixations.getModel())).getNumber().intValue ());
-          for (Node node : _model.getPerceiver().getRecognisedNodes ()) {
-            int id = node.getReference ();
-            if (_recallFrequencies.containsKey (id)) {
-              _recallFrequencies.put (id, _recallFrequencies.get(id) + 1);
-            } else {
-              _recallFrequencies.put (id, 1);
-            }
+        // scan every scene, doing recall on all available processors;
+        // while training, recall uses the last snapshot of LTM
+        int numFixations = ((SpinnerNumberModel)(_numFixations.getModel())).getNumber().intValue ();
+        int numThreads = Runtime.getRuntime().availableProcessors ();
+        LtmSnapshot snapshot = (_task != null && !_task.isDone () ? _model.getLtmSnapshot () : null);
+        RecallEvaluator evaluator = new RecallEvaluator (_model, snapshot, numFixations, numThreads) {
+          protected void progress (int completed, int total) {
+            setProgress (100 * completed / total);
           }
-          setProgress (100 * i / _scenes.size ());
+        };
+        try {
+          _recallFrequencies = evaluator.evaluate (_scenes).getRecognisedNodeFrequencies ();
+        } catch (InterruptedException ie) {
+          ; // analysis was cancelled
         }
         return null;
       }
@@ -489,10 +570,11 @@ public class VisualSearchPane extends JPanel {
       Scene recalledScene = _model.scanScene (scene, ((SpinnerNumberModel)(_numFixations.getModel())).getNumber().intValue ());
       _recallSceneLabel.setText (recalledScene.getName ());
       _recalledSceneDisplay.updateScene (recalledScene);
-      _precision.setText ("" + scene.computePrecision (recalledScene));
-      _recall.setText ("" + scene.computeRecall (recalledScene));
-      _omission.setText ("" + scene.computeErrorsOfOmission (recalledScene));
-      _commission.setText ("" + scene.computeErrorsOfCommission (recalledScene));
+      SceneComparison comparison = scene.compare (recalledScene);
+      _precision.setText ("" + comparison.getPrecision ());
+      _recall.setText ("" + comparison.getRecall ());
+      _omission.setText ("" + comparison.getErrorsOfOmission ());
+      _commission.setText ("" + comparison.getErrorsOfCommission ());
       _sceneDisplay.setFixations (_model.getPerceiver().getFixations ());
       // log results
       addLog ("\n" + recalledScene.getName ());
@@ -517,10 +599,10 @@ public class VisualSearchPane extends JPanel {
         }
       }
       addLog ("Performance: ");
-      addLog ("   Precision: " + scene.computePrecision (recalledScene));
-      addLog ("   Recall: " + scene.computeRecall (recalledScene));
-      addLog ("   Errors of Omission: " + scene.computeErrorsOfOmission (recalledScene));
-      addLog ("   Errors of Commission: " + scene.computeErrorsOfCommission (recalledScene));
+      addLog ("   Precision: " + comparison.getPrecision ());
+      addLog ("   Recall: " + comparison.getRecall ());
+      addLog ("   Errors of Omission: " + comparison.getErrorsOfOmission ());
+      addLog ("   Errors of Commission: " + comparison.getErrorsOfCommission ());
     }
   }
 
@@ -36,6 +36,13 @@ public class ChessDomain implements DomainSpecifics {
     pieceOrder.put("r", 11);
   }
 
+  /**
+   * True if the given item is one of the chess pieces, as written in scenes.
+   */
+  public static boolean isPiece (String item) {
+    return pieceOrder.containsKey (item);
+  }
+
   /**
    * Sort given list pattern into a canonical order of chess pieces, as 
    * defined in deGroot and Gobet (1996).
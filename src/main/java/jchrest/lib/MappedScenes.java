@@ -0,0 +1,305 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.lib;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * MappedScenes holds a list of scenes stored in a binary file of fixed-size
+ * records, which is memory-mapped rather than read.  Each call to get returns
+ * a read-only view onto the mapped record, so no parsing is done, and any
+ * scene can be retrieved in constant time.  This makes shuffling or splitting
+ * large data sets cheap: see {@link #select}.
+ *
+ * The binary file is created from the text formats used for 'visual-search'
+ * and 'visual-search-with-move' using {@link #convert}.  Format is (big-endian):
+ *
+ * <ul>
+ * <li>header: magic 'CHRS', version, height, width, number of scenes,
+ *     1 if moves present else 0 (six ints)</li>
+ * <li>records: height*width bytes, one item per square, row by row,
+ *     followed, if moves present, by the move's piece (one byte), row and
+ *     column (two ints)</li>
+ * </ul>
+ *
+ * @author Peter C. R. Lane
+ */
+public class MappedScenes extends Scenes {
+  private static final int MAGIC = 0x43485253; // 'CHRS'
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 24;
+  private static final int MOVE_SIZE = 9;
+
+  // shared single-character strings, so retrieving an item does not allocate
+  private static final String[] ITEMS = new String[256];
+  static {
+    for (int i = 0; i < ITEMS.length; ++i) {
+      ITEMS[i] = String.valueOf ((char)i).intern ();
+    }
+  }
+
+  /**
+   * Read a data file in the text format, whose first line names the task as
+   * 'visual-search' or 'visual-search-with-move', and write the scenes in
+   * the binary format to the given file.
+   *
+   * Throws IOException if the task is not a visual-search task, or the
+   * scenes cannot be read or written.
+   */
+  public static void convert (BufferedReader input, File output) throws IOException {
+    String task = input.readLine ();
+    if (task == null) throw new IOException ("Missing task definition");
+    task = task.trim ();
+
+    Scenes scenes;
+    if (task.equals ("visual-search")) {
+      scenes = Scenes.read (input);
+    } else if (task.equals ("visual-search-with-move")) {
+      scenes = Scenes.readWithMove (input);
+    } else {
+      throw new IOException ("Task is not a visual-search task: " + task);
+    }
+    write (scenes, output);
+  }
+
+  /**
+   * Write the given scenes to a file in the binary format.
+   */
+  public static void write (Scenes scenes, File output) throws IOException {
+    DataOutputStream out = new DataOutputStream (new BufferedOutputStream (new FileOutputStream (output)));
+    try {
+      out.writeInt (MAGIC);
+      out.writeInt (VERSION);
+      out.writeInt (scenes.getHeight ());
+      out.writeInt (scenes.getWidth ());
+      out.writeInt (scenes.size ());
+      out.writeInt (scenes.haveMoves () ? 1 : 0);
+
+      for (int i = 0; i < scenes.size (); ++i) {
+        Scene scene = scenes.get (i);
+        for (int row = 0; row < scenes.getHeight (); ++row) {
+          for (int col = 0; col < scenes.getWidth (); ++col) {
+            out.writeByte (encodeItem (scene.getItem (row, col)));
+          }
+        }
+        if (scenes.haveMoves ()) {
+          Move move = scenes.getMove (i);
+          out.writeByte (encodeItem (move.getPiece ()));
+          out.writeInt (move.getRow ());
+          out.writeInt (move.getColumn ());
+        }
+      }
+    } finally {
+      out.close ();
+    }
+  }
+
+  // items must be single characters to fit within a fixed-size record
+  private static int encodeItem (String item) throws IOException {
+    if (item.length () != 1 || item.charAt (0) >= ITEMS.length) {
+      throw new IOException ("Item cannot be stored in binary format: " + item);
+    }
+    return item.charAt (0);
+  }
+
+  /**
+   * True if the given file starts as a binary file of scenes.
+   */
+  public static boolean isBinary (File file) throws IOException {
+    DataInputStream input = new DataInputStream (new FileInputStream (file));
+    try {
+      return input.readInt () == MAGIC;
+    } catch (EOFException eofe) {
+      return false;
+    } finally {
+      input.close ();
+    }
+  }
+
+  /**
+   * Memory-map the given binary file of scenes.
+   * Throws IOException if the file is not in the binary format.
+   */
+  public static MappedScenes open (File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile (file, "r");
+    try {
+      FileChannel channel = raf.getChannel ();
+      ByteBuffer header = channel.map (FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+      if (header.getInt () != MAGIC) throw new IOException ("Not a binary scenes file");
+      if (header.getInt () != VERSION) throw new IOException ("Unsupported version of binary scenes file");
+      int height = header.getInt ();
+      int width = header.getInt ();
+      int count = header.getInt ();
+      boolean haveMoves = (header.getInt () == 1);
+
+      int recordSize = height * width + (haveMoves ? MOVE_SIZE : 0);
+      if (channel.size () != HEADER_SIZE + (long)recordSize * count) {
+        throw new IOException ("Binary scenes file is the wrong size");
+      }
+      // a single mapping is limited to 2GB, so split large files into regions
+      int recordsPerRegion = Math.max (1, Integer.MAX_VALUE / Math.max (1, recordSize));
+      int numRegions = (count + recordsPerRegion - 1) / recordsPerRegion;
+      ByteBuffer[] regions = new ByteBuffer[numRegions];
+      for (int i = 0; i < numRegions; ++i) {
+        int records = Math.min (recordsPerRegion, count - i * recordsPerRegion);
+        regions[i] = channel.map (FileChannel.MapMode.READ_ONLY,
+            HEADER_SIZE + (long)i * recordsPerRegion * recordSize,
+            (long)records * recordSize);
+      }
+
+      return new MappedScenes (height, width, haveMoves, recordSize, recordsPerRegion, regions, identity (count));
+    } finally {
+      raf.close (); // mappings remain valid after the channel is closed
+    }
+  }
+
+  private static int[] identity (int count) {
+    int[] indices = new int[count];
+    for (int i = 0; i < count; ++i) {
+      indices[i] = i;
+    }
+    return indices;
+  }
+
+  /**
+   * Convert a text data file to the binary format.
+   * Usage: MappedScenes input-file output-file
+   */
+  public static void main (String[] args) {
+    if (args.length != 2) {
+      System.err.println ("Usage: jchrest.lib.MappedScenes input-file output-file");
+      System.exit (1);
+    }
+    try {
+      BufferedReader input = new BufferedReader (new FileReader (args[0]));
+      try {
+        convert (input, new File (args[1]));
+      } finally {
+        input.close ();
+      }
+    } catch (IOException ioe) {
+      System.err.println ("Error converting " + args[0] + ": " + ioe.getMessage ());
+      System.exit (1);
+    }
+  }
+
+  private final boolean _haveMoves;
+  private final int _recordSize;
+  private final int _recordsPerRegion;
+  private final ByteBuffer[] _regions;
+  private final int[] _indices; // maps position in this list to record in the file
+
+  private MappedScenes (int height, int width, boolean haveMoves, int recordSize,
+      int recordsPerRegion, ByteBuffer[] regions, int[] indices) {
+    super (height, width);
+    _haveMoves = haveMoves;
+    _recordSize = recordSize;
+    _recordsPerRegion = recordsPerRegion;
+    _regions = regions;
+    _indices = indices;
+  }
+
+  /**
+   * Return a new list of scenes holding the records at the given positions
+   * of this list, in the given order.  The mapped file is shared, so this is
+   * a cheap way to shuffle the scenes or split them into train/test sets.
+   */
+  public MappedScenes select (int[] positions) {
+    int[] indices = new int[positions.length];
+    for (int i = 0; i < positions.length; ++i) {
+      indices[i] = _indices[positions[i]];
+    }
+    return new MappedScenes (getHeight (), getWidth (), _haveMoves, _recordSize,
+        _recordsPerRegion, _regions, indices);
+  }
+
+  /**
+   * Return the records from position 'from' (inclusive) to 'to' (exclusive).
+   */
+  public MappedScenes select (int from, int to) {
+    int[] positions = new int[to - from];
+    for (int i = from; i < to; ++i) {
+      positions[i - from] = i;
+    }
+    return select (positions);
+  }
+
+  public Scene get (int i) {
+    int record = _indices[i];
+    return new MappedScene ("Scene " + (record + 1), getHeight (), getWidth (),
+        region (record), offset (record));
+  }
+
+  public boolean haveMoves () {
+    return _haveMoves && _indices.length > 0;
+  }
+
+  public Move getMove (int i) {
+    if (haveMoves () && i < _indices.length) {
+      int record = _indices[i];
+      ByteBuffer buffer = region (record);
+      int offset = offset (record) + getHeight () * getWidth ();
+      return new Move (
+          ITEMS[buffer.get (offset) & 0xff],
+          buffer.getInt (offset + 1),
+          buffer.getInt (offset + 5));
+    } else {
+      return new Move ("None", 0, 0);
+    }
+  }
+
+  public int size () {
+    return _indices.length;
+  }
+
+  private ByteBuffer region (int record) {
+    return _regions[record / _recordsPerRegion];
+  }
+
+  private int offset (int record) {
+    return (record % _recordsPerRegion) * _recordSize;
+  }
+
+  /**
+   * A read-only view of one scene within a mapped file.  Only absolute
+   * reads are made on the shared buffer, so views may be used from
+   * different threads.
+   */
+  private static class MappedScene extends Scene {
+    private final ByteBuffer _buffer;
+    private final int _offset;
+
+    MappedScene (String name, int height, int width, ByteBuffer buffer, int offset) {
+      super (name, height, width, null);
+      _buffer = buffer;
+      _offset = offset;
+    }
+
+    protected String itemAt (int row, int column) {
+      return ITEMS[_buffer.get (_offset + row * getWidth () + column) & 0xff];
+    }
+
+    public boolean isEmpty (int row, int column) {
+      if (row >= 0 && row < getHeight () && column >= 0 && column < getWidth ()) {
+        return _buffer.get (_offset + row * getWidth () + column) == '.';
+      } else {
+        return true; // no item off scene
+      }
+    }
+
+    public void setItem (int row, int column, String item) {
+      throw new UnsupportedOperationException ("Mapped scenes are read-only");
+    }
+
+    protected char[] getEncoding () {
+      char[] encoding = new char[getHeight () * getWidth ()];
+      for (int i = 0; i < encoding.length; ++i) {
+        encoding[i] = (char)(_buffer.get (_offset + i) & 0xff);
+      }
+      return encoding;
+    }
+  }
+}
@@ -3,8 +3,8 @@
 
 package jchrest.lib;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * The NumberPattern is a type of PrimitivePattern used to hold 
@@ -21,10 +21,12 @@ public class NumberPattern extends PrimitivePattern {
    */
   public static NumberPattern create (int num) {
     Integer number = new Integer (num);
-    if (!_cache.containsKey (number)) {
-      _cache.put (number, new NumberPattern (num));
+    NumberPattern pattern = _cache.get (number);
+    if (pattern == null) {
+      _cache.putIfAbsent (number, new NumberPattern (num));
+      pattern = _cache.get (number);
     }
-    return _cache.get (number);
+    return pattern;
   }
 
   /** 
@@ -72,6 +74,6 @@ public class NumberPattern extends PrimitivePattern {
 
   // private fields
   private final int _number;
-  private static final Map<Integer, NumberPattern> _cache = new HashMap<Integer, NumberPattern> ();
+  private static final ConcurrentMap<Integer, NumberPattern> _cache = new ConcurrentHashMap<Integer, NumberPattern> ();
 }
 
@@ -0,0 +1,184 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.lib;
+
+import java.io.*;
+
+/**
+ * Reads patterns, one per line, from the data of a task file, as used for
+ * the 'recognise-and-learn' and 'paired-associate' tasks.  Items within a
+ * pattern are separated by any run of spaces, tabs or commas, and the two
+ * patterns of a pair by a ':'.  Blank lines are skipped.
+ *
+ * Characters are read through a buffer and scanned by hand, and each item
+ * is looked up in a table of the items seen so far, so no strings are made
+ * for items already seen.  Items are StringPatterns, so are shared with all
+ * other patterns.
+ *
+ * @author Peter C. R. Lane
+ */
+public class PatternScanner implements Closeable {
+  private final Reader _input;
+  private final char[] _buffer;
+  private int _position;
+  private int _limit;
+  private long _line;
+  // characters of the current item
+  private char[] _item;
+  private int _itemLength;
+  // open-addressed table of items seen, by hash of their characters
+  private StringPattern[] _items;
+  private int _numItems;
+
+  public PatternScanner (Reader input) {
+    _input = input;
+    _buffer = new char[8192];
+    _position = 0;
+    _limit = 0;
+    _line = 0;
+    _item = new char[64];
+    _itemLength = 0;
+    _items = new StringPattern[1024];
+    _numItems = 0;
+  }
+
+  /**
+   * Number of lines read so far.
+   */
+  public long getLine () {
+    return _line;
+  }
+
+  /**
+   * Read the pattern on the next line which is not blank, and mark it as
+   * finished.  Returns null at the end of the input.
+   */
+  public ListPattern nextPattern (Modality modality) throws IOException {
+    ListPattern pattern = new ListPattern (modality);
+    while (pattern.isEmpty ()) {
+      if (!scanLine (pattern, null)) return null;
+    }
+    pattern.setFinished ();
+    return pattern;
+  }
+
+  /**
+   * Read the pair of patterns on the next line which is not blank, marking
+   * both as finished.  Returns null at the end of the input, and throws
+   * IOException if the line does not hold two patterns separated by a ':'.
+   */
+  public PairedPattern nextPair (Modality first, Modality second) throws IOException {
+    ListPattern pattern1 = new ListPattern (first);
+    ListPattern pattern2 = new ListPattern (second);
+    while (pattern1.isEmpty ()) {
+      if (!scanLine (pattern1, pattern2)) return null;
+      if (pattern1.isEmpty () && pattern2.isEmpty ()) continue; // blank line
+      if (pattern1.isEmpty () || pattern2.isEmpty ()) {
+        throw new IOException ("Malformed pair on line " + _line);
+      }
+    }
+    pattern1.setFinished ();
+    pattern2.setFinished ();
+    return new PairedPattern (pattern1, pattern2);
+  }
+
+  public void close () throws IOException {
+    _input.close ();
+  }
+
+  /**
+   * Add the items of the next line to the given pattern, or, if a second
+   * pattern is given, the items before a ':' to the first pattern and those
+   * after to the second.  Returns false at the end of the input.
+   */
+  private boolean scanLine (ListPattern first, ListPattern second) throws IOException {
+    if (_position == _limit && !fill ()) return false;
+    _line += 1;
+    ListPattern pattern = first;
+    boolean separated = false;
+    _itemLength = 0;
+    while (_position < _limit || fill ()) {
+      char c = _buffer[_position++];
+      if (c == '\n') {
+        break;
+      } else if (c == ' ' || c == ',' || c == '\t' || c == '\r') {
+        endItem (pattern);
+      } else if (c == ':' && second != null) {
+        if (separated) throw new IOException ("Malformed pair on line " + _line);
+        endItem (pattern);
+        pattern = second;
+        separated = true;
+      } else {
+        if (_itemLength == _item.length) {
+          char[] item = new char[2 * _item.length];
+          System.arraycopy (_item, 0, item, 0, _itemLength);
+          _item = item;
+        }
+        _item[_itemLength++] = c;
+      }
+    }
+    endItem (pattern);
+    if (second != null && !separated && !first.isEmpty ()) {
+      throw new IOException ("Malformed pair on line " + _line);
+    }
+    return true;
+  }
+
+  private boolean fill () throws IOException {
+    int count = _input.read (_buffer, 0, _buffer.length);
+    _position = 0;
+    _limit = Math.max (0, count);
+    return count > 0;
+  }
+
+  private void endItem (ListPattern pattern) {
+    if (_itemLength > 0) {
+      pattern.add (getItem ());
+      _itemLength = 0;
+    }
+  }
+
+  // the pattern for the current item, from the table if seen before
+  private StringPattern getItem () {
+    int hash = 0;
+    for (int i = 0; i < _itemLength; ++i) {
+      hash = 31 * hash + _item[i];
+    }
+    int mask = _items.length - 1;
+    int slot = spread (hash) & mask;
+    while (_items[slot] != null) {
+      if (sameItem (_items[slot].getString ())) return _items[slot];
+      slot = (slot + 1) & mask;
+    }
+    StringPattern item = StringPattern.create (new String (_item, 0, _itemLength));
+    _items[slot] = item;
+    _numItems += 1;
+    if (2 * _numItems > _items.length) grow ();
+    return item;
+  }
+
+  private boolean sameItem (String name) {
+    if (name.length () != _itemLength) return false;
+    for (int i = 0; i < _itemLength; ++i) {
+      if (name.charAt (i) != _item[i]) return false;
+    }
+    return true;
+  }
+
+  private void grow () {
+    StringPattern[] items = new StringPattern[2 * _items.length];
+    int mask = items.length - 1;
+    for (StringPattern item : _items) {
+      if (item == null) continue;
+      int slot = spread (item.getString().hashCode ()) & mask;
+      while (items[slot] != null) slot = (slot + 1) & mask;
+      items[slot] = item;
+    }
+    _items = items;
+  }
+
+  private static int spread (int hash) {
+    return hash ^ (hash >>> 16);
+  }
+}
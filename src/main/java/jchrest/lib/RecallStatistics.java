@@ -0,0 +1,150 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.lib;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Accumulates the comparisons of recalled scenes against their originals,
+ * one pair at a time, so the scenes themselves need not be kept.  Averages
+ * are taken over the scenes, as in the recall experiments of the examples.
+ * Instances are not thread-safe: give each thread its own instance, and
+ * combine them with {@link #add(RecallStatistics)}.
+ *
+ * @author Peter C. R. Lane
+ */
+public class RecallStatistics {
+  private int _count;
+  private double _totalPrecision;
+  private double _totalRecall;
+  private long _totalOmission;
+  private long _totalCommission;
+
+  public RecallStatistics () {
+    _count = 0;
+    _totalPrecision = 0.0;
+    _totalRecall = 0.0;
+    _totalOmission = 0;
+    _totalCommission = 0;
+  }
+
+  /**
+   * Compare the recalled scene against its original, and add the result.
+   */
+  public void add (Scene original, Scene recalled) {
+    add (original.compare (recalled));
+  }
+
+  /**
+   * Add the result of one comparison.
+   */
+  public void add (SceneComparison comparison) {
+    _count += 1;
+    _totalPrecision += comparison.getPrecision ();
+    _totalRecall += comparison.getRecall ();
+    _totalOmission += comparison.getErrorsOfOmission ();
+    _totalCommission += comparison.getErrorsOfCommission ();
+  }
+
+  /**
+   * Add all the comparisons accumulated in given statistics to these.
+   */
+  public void add (RecallStatistics statistics) {
+    _count += statistics._count;
+    _totalPrecision += statistics._totalPrecision;
+    _totalRecall += statistics._totalRecall;
+    _totalOmission += statistics._totalOmission;
+    _totalCommission += statistics._totalCommission;
+  }
+
+  /**
+   * Number of pairs of scenes compared.
+   */
+  public int getCount () {
+    return _count;
+  }
+
+  public double getMeanPrecision () {
+    return mean (_totalPrecision);
+  }
+
+  public double getMeanRecall () {
+    return mean (_totalRecall);
+  }
+
+  public double getMeanErrorsOfOmission () {
+    return mean (_totalOmission);
+  }
+
+  public double getMeanErrorsOfCommission () {
+    return mean (_totalCommission);
+  }
+
+  private double mean (double total) {
+    if (_count == 0) {
+      return 0.0;
+    } else {
+      return total / _count;
+    }
+  }
+
+  public String toString () {
+    return "Scenes: " + _count +
+      " Precision: " + getMeanPrecision () +
+      " Recall: " + getMeanRecall () +
+      " Omission: " + getMeanErrorsOfOmission () +
+      " Commission: " + getMeanErrorsOfCommission ();
+  }
+
+  /**
+   * Compare each recalled scene against the original at the same position,
+   * splitting the work across the given number of threads.
+   * Throws InterruptedException if the calling thread is interrupted.
+   */
+  public static RecallStatistics compute (final List<Scene> originals, final List<Scene> recalled,
+      int numThreads) throws InterruptedException {
+    assert (originals.size () == recalled.size ());
+    final int numChunks = Math.max (1, Math.min (numThreads, originals.size ()));
+    ExecutorService pool = Executors.newFixedThreadPool (numChunks);
+    try {
+      List<Future<RecallStatistics>> chunks = new ArrayList<Future<RecallStatistics>> ();
+      for (int i = 0; i < numChunks; ++i) {
+        final int from = (int)((long)originals.size () * i / numChunks);
+        final int to = (int)((long)originals.size () * (i + 1) / numChunks);
+        chunks.add (pool.submit (new Callable<RecallStatistics> () {
+          public RecallStatistics call () {
+            RecallStatistics statistics = new RecallStatistics ();
+            for (int j = from; j < to; ++j) {
+              statistics.add (originals.get (j), recalled.get (j));
+            }
+            return statistics;
+          }
+        }));
+      }
+      RecallStatistics statistics = new RecallStatistics ();
+      for (Future<RecallStatistics> chunk : chunks) {
+        statistics.add (chunk.get ());
+      }
+      return statistics;
+    } catch (ExecutionException ee) {
+      throw new RuntimeException (ee.getCause ());
+    } finally {
+      pool.shutdownNow ();
+    }
+  }
+
+  /**
+   * Compare each recalled scene against its original, using one thread for
+   * each available processor.
+   */
+  public static RecallStatistics compute (List<Scene> originals, List<Scene> recalled) throws InterruptedException {
+    return compute (originals, recalled, Runtime.getRuntime().availableProcessors ());
+  }
+}
@@ -9,6 +9,8 @@ public class Scene {
   private int _height;
   private int _width;
   private String[][] _scene;
+  // compact copy of the items, one char per square, built when first compared
+  private volatile char[] _encoding;
 
   public Scene (String name, int height, int width) {
     _name = name;
@@ -23,6 +25,18 @@ public class Scene {
     }
   }
 
+  /**
+   * Constructor taking the array used to hold the items; the array is not copied.
+   * Subclasses which provide their own storage, such as a read-only view onto 
+   * a file, pass null and must override itemAt, isEmpty and setItem.
+   */
+  protected Scene (String name, int height, int width, String[][] items) {
+    _name = name;
+    _height = height;
+    _width = width;
+    _scene = items;
+  }
+
   public String getName () {
     return _name;
   }
@@ -37,13 +51,20 @@ public class Scene {
 
   public void addRow (int row, char [] items) {
     for (int i = 0; i < items.length; ++i) {
-      _scene[row][i] = items[i] + "";
+      setItem (row, i, items[i] + "");
     }
   }
 
+  /**
+   * Retrieve the item at given row and column, without checking bounds.
+   */
+  protected String itemAt (int row, int column) {
+    return _scene[row][column];
+  }
+
   public String getItem (int row, int column) {
     if (row >= 0 && row < _height && column >= 0 && column < _width) {
-      return _scene[row][column];
+      return itemAt (row, column);
     } else {
       return "";
     }
@@ -52,6 +73,7 @@ public class Scene {
   public void setItem (int row, int column, String item) {
     assert (row >= 0 && row < _height && column >= 0 && column < _width);
     _scene[row][column] = item;
+    _encoding = null;
   }
 
   public boolean isEmpty (int row, int column) {
@@ -73,8 +95,8 @@ public class Scene {
       if (col >= 0 && col < _width) {
         for (int row = startRow - size; row <= startRow + size; ++row) {
           if (row >= 0 && row < _height) {
-            if (!_scene[row][col].equals(".")) {
-              items.add (new ItemSquarePattern (_scene[row][col], col+1, row+1));
+            if (!isEmpty (row, col)) {
+              items.add (new ItemSquarePattern (itemAt (row, col), col+1, row+1));
 
             }
           }
@@ -108,7 +130,7 @@ public class Scene {
       for (int col = 0; col < _width; col++) {
         if (isEmpty (row, col)) {
           ;
-        } else if (_scene[row][col].equals (scene.getItem (row, col))) {
+        } else if (itemAt (row, col).equals (scene.getItem (row, col))) {
           items += 1;
         } else {
           ;
@@ -118,16 +140,66 @@ public class Scene {
     return items;
   }         
 
+  /**
+   * Compare given scene, usually recalled from this one, against this scene, 
+   * computing the counts needed for precision, recall and the errors of 
+   * omission and commission in a single pass.
+   */
+  public SceneComparison compare (Scene scene) {
+    char[] original = getEncoding ();
+    char[] recalled = scene.getEncoding ();
+    if (original == null || recalled == null || 
+        _height != scene.getHeight () || _width != scene.getWidth ()) {
+      // fall back to comparing the items as strings
+      return new SceneComparison (countItems (), scene.countItems (), countOverlappingPieces (scene),
+          countErrorsOfOmission (scene), countErrorsOfCommission (scene));
+    }
+
+    int originalItems = 0;
+    int recalledItems = 0;
+    int overlap = 0;
+    for (int i = 0; i < original.length; ++i) {
+      char item = original[i];
+      char recalledItem = recalled[i];
+      if (item != '.') {
+        originalItems += 1;
+        if (item == recalledItem) overlap += 1;
+      }
+      if (recalledItem != '.') {
+        recalledItems += 1;
+      }
+    }
+    // an item not matched is an error: omission if in this scene, commission if in given one
+    return new SceneComparison (originalItems, recalledItems, overlap, 
+        originalItems - overlap, recalledItems - overlap);
+  }
+
+  /**
+   * Return the items of this scene, row by row, with one char per square, or 
+   * null if some item is not a single character.  The array must not be modified.
+   */
+  protected char[] getEncoding () {
+    char[] encoding = _encoding;
+    if (encoding == null) {
+      encoding = new char[_height * _width];
+      for (int row = 0; row < _height; row++) {
+        for (int col = 0; col < _width; col++) {
+          String item = itemAt (row, col);
+          if (item.length () != 1) return null;
+          encoding[row * _width + col] = item.charAt (0);
+        }
+      }
+      _encoding = encoding;
+    }
+    return encoding;
+  }
+
   /**
    * Compute precision of given scene against this one.
    * Precision is the proportion of pieces in given scene which are correct.
    */
   public float computePrecision (Scene scene) {
-    if (scene.countItems() == 0) {
-      return 0.0f;
-    } else {
-      return (float)countOverlappingPieces(scene) / (float)scene.countItems();
-    }
+    return compare(scene).getPrecision ();
   }
 
   /**
@@ -135,11 +207,7 @@ public class Scene {
    * Recall is the proportion of pieces in this scene which have been correctly recalled.
    */
   public float computeRecall (Scene scene) {
-    if (this.countItems() == 0) {
-      return 0.0f;
-    } else {
-      return (float)countOverlappingPieces(scene) / (float)this.countItems();
-    }
+    return compare(scene).getRecall ();
   }
   
   /**
@@ -147,12 +215,24 @@ public class Scene {
    * Omission is the number of pieces which are in this scene but not in the given one.
    */
   public int computeErrorsOfOmission (Scene scene) {
+    return compare(scene).getErrorsOfOmission ();
+  }
+
+  /**
+   * Compute errors of commission of given scene against this one.
+   * Commission is the number of pieces which are in the given scene but not in this one.
+   */
+  public int computeErrorsOfCommission (Scene scene) {
+    return compare(scene).getErrorsOfCommission ();
+  }
+
+  private int countErrorsOfOmission (Scene scene) {
     int errors = 0;
     for (int row = 0; row < _height; row++) {
       for (int col = 0; col < _width; col++) {
         if (isEmpty(row, col)) {
           ; // do nothing for empty squares
-        } else if (_scene[row][col].equals (scene.getItem (row, col))) {
+        } else if (itemAt (row, col).equals (scene.getItem (row, col))) {
           ; // no error if this and given scene have the same item
         } else { // an item in this scene is not in given scene
           errors += 1;
@@ -162,17 +242,13 @@ public class Scene {
     return errors;
   }
 
-  /**
-   * Compute errors of commission of given scene against this one.
-   * Commission is the number of pieces which are in the given scene but not in this one.
-   */
-  public int computeErrorsOfCommission (Scene scene) {
+  private int countErrorsOfCommission (Scene scene) {
     int errors = 0;
     for (int row = 0; row < _height; row++) {
       for (int col = 0; col < _width; col++) {
         if (scene.isEmpty (row, col)) {
           ; // do nothing for empty squares in given scene
-        } else if (scene.getItem(row, col).equals (_scene[row][col])) {
+        } else if (scene.getItem(row, col).equals (itemAt (row, col))) {
           ; // no error if given and this scene have the same item
         } else { // an item in given scene is not in this scene
           errors += 1;
@@ -0,0 +1,84 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.lib;
+
+/**
+ * Holds the result of comparing a recalled scene against its original, 
+ * as computed by {@link Scene#compare}.  Instances of this class are immutable.
+ *
+ * @author Peter C. R. Lane
+ */
+public class SceneComparison {
+  private final int _originalItems;
+  private final int _recalledItems;
+  private final int _overlap;
+  private final int _errorsOfOmission;
+  private final int _errorsOfCommission;
+
+  public SceneComparison (int originalItems, int recalledItems, int overlap, 
+      int errorsOfOmission, int errorsOfCommission) {
+    _originalItems = originalItems;
+    _recalledItems = recalledItems;
+    _overlap = overlap;
+    _errorsOfOmission = errorsOfOmission;
+    _errorsOfCommission = errorsOfCommission;
+  }
+
+  /**
+   * Number of items in the original scene.
+   */
+  public int getOriginalItems () {
+    return _originalItems;
+  }
+
+  /**
+   * Number of items in the recalled scene.
+   */
+  public int getRecalledItems () {
+    return _recalledItems;
+  }
+
+  /**
+   * Number of items of the original scene which were correctly recalled.
+   */
+  public int getOverlap () {
+    return _overlap;
+  }
+
+  /**
+   * Precision is the proportion of items in the recalled scene which are correct.
+   */
+  public float getPrecision () {
+    if (_recalledItems == 0) {
+      return 0.0f;
+    } else {
+      return (float)_overlap / (float)_recalledItems;
+    }
+  }
+
+  /**
+   * Recall is the proportion of items in the original scene which have been correctly recalled.
+   */
+  public float getRecall () {
+    if (_originalItems == 0) {
+      return 0.0f;
+    } else {
+      return (float)_overlap / (float)_originalItems;
+    }
+  }
+
+  /**
+   * Number of items in the original scene but not in the recalled one.
+   */
+  public int getErrorsOfOmission () {
+    return _errorsOfOmission;
+  }
+
+  /**
+   * Number of items in the recalled scene but not in the original one.
+   */
+  public int getErrorsOfCommission () {
+    return _errorsOfCommission;
+  }
+}
@@ -136,7 +136,11 @@ public class Scenes {
   private List<Scene> scenes;
   private List<Move> moves;
 
-  private Scenes (int height, int width) {
+  /**
+   * Constructor is only available to the readers and to subclasses which 
+   * provide their own storage of scenes.
+   */
+  protected Scenes (int height, int width) {
     this.height = height;
     this.width = width;
     this.scenes = new ArrayList<Scene> ();
@@ -152,10 +156,24 @@ public class Scenes {
     moves.add (move);
   }
 
+  /**
+   * Accessor for the height of every scene in this collection.
+   */
+  public int getHeight () {
+    return height;
+  }
+
+  /**
+   * Accessor for the width of every scene in this collection.
+   */
+  public int getWidth () {
+    return width;
+  }
+
   public String [] getSceneNames () {
-    String [] names = new String[scenes.size ()];
-    for (int i = 0; i < scenes.size (); ++i) {
-      names[i] = scenes.get(i).getName ();
+    String [] names = new String[size ()];
+    for (int i = 0; i < size (); ++i) {
+      names[i] = get(i).getName ();
     }
     return names;
   }
@@ -179,5 +197,21 @@ public class Scenes {
   public int size () {
     return scenes.size ();
   }
+
+  /**
+   * Return a new list holding the scenes, and their moves, at the given
+   * positions of this list, in the given order.
+   */
+  public Scenes select (int[] positions) {
+    Scenes result = new Scenes (getHeight (), getWidth ());
+    for (int position : positions) {
+      if (haveMoves ()) {
+        result.add (get (position), getMove (position));
+      } else {
+        result.add (get (position));
+      }
+    }
+    return result;
+  }
 }
 
@@ -34,6 +34,19 @@ public class Square {
     return _row;
   }
 
+  /**
+   * Squares are equal if they have the same row and column.
+   */
+  public boolean equals (Object other) {
+    if (!(other instanceof Square)) return false;
+    Square square = (Square)other;
+    return _row == square._row && _column == square._column;
+  }
+
+  public int hashCode () {
+    return 31 * _row + _column;
+  }
+
   public String toString () {
     return "(" + _row + ", " + _column + ")";
   }
@@ -3,8 +3,8 @@
 
 package jchrest.lib;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * The StringPattern is a type of PrimitivePattern used to hold 
@@ -21,10 +21,13 @@ public class StringPattern extends PrimitivePattern {
    * else creates and returns a new instance of StringPattern.
    */
   public static StringPattern create (String name) {
-    if (!_cache.containsKey (name)) {
-      _cache.put (name, new StringPattern (name));
+    StringPattern pattern = _cache.get (name);
+    if (pattern == null) {
+      // patterns may be made on several threads, e.g. by a PatternScanner
+      _cache.putIfAbsent (name, new StringPattern (name));
+      pattern = _cache.get (name);
     }
-    return _cache.get (name);
+    return pattern;
   }
 
   /** 
@@ -73,6 +76,6 @@ public class StringPattern extends PrimitivePattern {
 
   // private fields
   private final String _name;
-  private static final Map<String, StringPattern> _cache = new HashMap<String, StringPattern> ();
+  private static final ConcurrentMap<String, StringPattern> _cache = new ConcurrentHashMap<String, StringPattern> ();
 }
 
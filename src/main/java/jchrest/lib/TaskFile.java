@@ -0,0 +1,155 @@
+// Copyright (c) 2012, Peter C. R. Lane
+// Released under Open Works License, http://owl.apotheon.org/
+
+package jchrest.lib;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The contents of a data file for one of the tasks run by the shell.  The
+ * first line names the task, and the rest of the file holds its data:
+ * <ul>
+ * <li>'recognise-and-learn', 'serial-anticipation': one pattern per line,
+ *     visual and verbal respectively</li>
+ * <li>'paired-associate', 'categorisation': one pair of patterns per line,
+ *     separated by ':', both verbal or visual then verbal respectively</li>
+ * <li>'visual-search', 'visual-search-with-move': scenes, as read by
+ *     Scenes</li>
+ * </ul>
+ * Patterns are read using a PatternScanner.  A scenes file
+ * in the binary format of MappedScenes may also be read, as the
+ * visual-search task it was converted from.
+ *
+ * @author Peter C. R. Lane
+ */
+public class TaskFile {
+  public static final String RECOGNISE_AND_LEARN = "recognise-and-learn";
+  public static final String SERIAL_ANTICIPATION = "serial-anticipation";
+  public static final String PAIRED_ASSOCIATE = "paired-associate";
+  public static final String CATEGORISATION = "categorisation";
+  public static final String VISUAL_SEARCH = "visual-search";
+  public static final String VISUAL_SEARCH_WITH_MOVE = "visual-search-with-move";
+
+  private final String _task;
+  private final List<ListPattern> _items;
+  private final List<PairedPattern> _pairs;
+  private final Scenes _scenes;
+
+  private TaskFile (String task, List<ListPattern> items, List<PairedPattern> pairs, Scenes scenes) {
+    _task = task;
+    _items = items;
+    _pairs = pairs;
+    _scenes = scenes;
+  }
+
+  /**
+   * Read a task file in either the text or binary format.
+   * Throws IOException if the file cannot be read, or the task is not known.
+   */
+  public static TaskFile read (File file) throws IOException {
+    if (MappedScenes.isBinary (file)) {
+      Scenes scenes = MappedScenes.open (file);
+      return new TaskFile (scenes.haveMoves () ? VISUAL_SEARCH_WITH_MOVE : VISUAL_SEARCH, null, null, scenes);
+    }
+    BufferedReader input = new BufferedReader (new FileReader (file));
+    try {
+      return read (input);
+    } finally {
+      input.close ();
+    }
+  }
+
+  /**
+   * Read a task file in the text format from the given input.
+   * Throws IOException if the input cannot be read, or the task is not known.
+   */
+  public static TaskFile read (BufferedReader input) throws IOException {
+    String task = input.readLine ();
+    if (task == null) throw new IOException ("Missing task definition");
+    task = task.trim ();
+
+    if (task.equals (RECOGNISE_AND_LEARN)) {
+      return new TaskFile (task, readItems (input, false), null, null);
+    } else if (task.equals (SERIAL_ANTICIPATION)) {
+      List<ListPattern> items = readItems (input, true);
+      return new TaskFile (task, items, makePairs (items), null);
+    } else if (task.equals (PAIRED_ASSOCIATE)) {
+      return new TaskFile (task, null, readPairedItems (input, false), null);
+    } else if (task.equals (CATEGORISATION)) {
+      return new TaskFile (task, null, readPairedItems (input, true), null);
+    } else if (task.equals (VISUAL_SEARCH)) {
+      return new TaskFile (task, null, null, Scenes.read (input));
+    } else if (task.equals (VISUAL_SEARCH_WITH_MOVE)) {
+      return new TaskFile (task, null, null, Scenes.readWithMove (input));
+    } else {
+      throw new IOException ("Invalid task on first line of file: " + task);
+    }
+  }
+
+  /**
+   * Convert a list of ListPatterns into a list of stimulus-response pairs,
+   * each pattern being the stimulus for the next.
+   */
+  public static List<PairedPattern> makePairs (List<ListPattern> patterns) {
+    List<PairedPattern> pairs = new ArrayList<PairedPattern> ();
+    for (int i = 1; i < patterns.size (); ++i) {
+      pairs.add (new PairedPattern (patterns.get(i-1), patterns.get(i)));
+    }
+
+    return pairs;
+  }
+
+  public String getTask () {
+    return _task;
+  }
+
+  /**
+   * Patterns of a recognise-and-learn or serial-anticipation task, else null.
+   */
+  public List<ListPattern> getItems () {
+    return _items;
+  }
+
+  /**
+   * Pairs of a paired-associate or categorisation task, or the successive
+   * pairs of a serial-anticipation task, else null.
+   */
+  public List<PairedPattern> getPairs () {
+    return _pairs;
+  }
+
+  /**
+   * Scenes of a visual-search task, else null.
+   */
+  public Scenes getScenes () {
+    return _scenes;
+  }
+
+  private static List<ListPattern> readItems (BufferedReader input, boolean verbal) throws IOException {
+    List<ListPattern> items = new ArrayList<ListPattern> ();
+    PatternScanner scanner = new PatternScanner (input);
+    Modality modality = (verbal ? Modality.VERBAL : Modality.VISUAL);
+    ListPattern pattern;
+    while ((pattern = scanner.nextPattern (modality)) != null) {
+      items.add (pattern);
+    }
+
+    return items;
+  }
+
+  // categorisation = false => make both verbal
+  // categorisation = true  => make first visual, second verbal
+  private static List<PairedPattern> readPairedItems (BufferedReader input, boolean categorisation) throws IOException {
+    List<PairedPattern> items = new ArrayList<PairedPattern> ();
+    PatternScanner scanner = new PatternScanner (input);
+    Modality first = (categorisation ? Modality.VISUAL : Modality.VERBAL);
+    PairedPattern pair;
+    while ((pair = scanner.nextPair (first, Modality.VERBAL)) != null) {
+      items.add (pair);
+    }
+
+    return items;
+  }
+}
@@ -8,7 +8,7 @@ include TestFramework
 
 # Import all required classes
 [
-  "Chrest", "Node"
+  "Chrest", "Emotion", "EmotionAssociator", "EmotionalTrace", "JournalReplay", "LearningJournal", "LtmSnapshot", "MovePredictionEvaluator", "Node", "PatternIngestion", "RecallEvaluator", "Stm", "TrainingCheckpoints"
 ].each do |klass|
   import "jchrest.architecture.#{klass}"
 end
@@ -16,14 +16,24 @@ end
   "ChessDomain",
   "ItemSquarePattern",
   "ListPattern",
+  "MappedScenes",
+  "Modality",
   "NumberPattern",
   "Pattern",
+  "PatternScanner",
   "Scene",
+  "Scenes",
   "Square",
-  "StringPattern"
+  "StringPattern",
+  "TaskFile"
 ].each do |klass|
   import "jchrest.lib.#{klass}"
 end
+[
+  "QueryClient", "QueryServer"
+].each do |klass|
+  import "jchrest.cli.#{klass}"
+end
 
 # Pick up all ruby test files except this one
 Dir.glob(File.dirname(__FILE__) + "/*.rb") do |file|
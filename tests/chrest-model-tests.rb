@@ -30,6 +30,345 @@ process_test "timings" do
   assert_equal(36000, model.getClock)
 end
 
+process_test "metrics" do
+  model = Chrest.new
+  patternA = Pattern.makeVisualList(["B", "I", "F"].to_java(:String))
+  7.times { model.recogniseAndLearn patternA }
+  metrics = model.getMetrics
+  # six learning operations, learning three primitives, then pattern fully learnt
+  assert_equal(1, metrics.getDiscriminations)
+  assert_equal(5, metrics.getFamiliarisations)
+  assert_equal(3, metrics.getPrimitivesLearnt)
+  assert_equal(7, metrics.getRecogniseAndLearnCount)
+  assert_equal(metrics.getSorts, metrics.getRecogniseCount)
+  assert_equal(7, metrics.getRecogniseAndLearnHistogram.inject(0) {|sum, count| sum + count})
+  # nothing is recorded when disabled, and reset clears the counts
+  metrics.setEnabled false
+  model.recogniseAndLearn patternA
+  assert_equal(7, metrics.getRecogniseAndLearnCount)
+  metrics.reset
+  assert_equal(0, metrics.getFamiliarisations)
+  assert_equal(0, metrics.getRecogniseCount)
+end
+
+process_test "journal replay" do
+  model = Chrest.new
+  model.setRho 0.5
+  output = java.io.ByteArrayOutputStream.new
+  journal = LearningJournal.new(output, 1024)
+  model.setJournal journal
+  patterns = [["B", "I", "F"], ["X", "A", "Q"], ["B", "I", "G"]].collect do |items|
+    Pattern.makeVisualList(items.to_java(:String))
+  end
+  20.times { |i| model.recogniseAndLearn patterns[i % 3] }
+  model.learnAndNamePatterns(patterns[0], Pattern.makeVerbalList(["bif"].to_java(:String)))
+  journal.close
+  # replay rebuilds the same network, without the random choices of rho
+  replayed = Chrest.new
+  replay = JournalReplay.new replayed
+  replay.replay LearningJournal::Reader.new(java.io.ByteArrayInputStream.new(output.toByteArray))
+  assert_equal(journal.getRecords, replay.getRecords)
+  assert_equal(model.getTotalLtmNodes, replayed.getTotalLtmNodes)
+  assert_equal(model.getClock, replayed.getClock)
+  patterns.each do |pattern|
+    assert_equal(model.recognise(pattern).getReference, replayed.recognise(pattern).getReference)
+    assert_true(model.recallPattern(pattern).equals(replayed.recallPattern(pattern)))
+  end
+  assert_equal(model.namePattern(patterns[0]).to_s, replayed.namePattern(patterns[0]).to_s)
+end
+
+process_test "journal written without flush" do
+  file = java.io.File.createTempFile("learning", ".journal")
+  file.deleteOnExit
+  model = Chrest.new
+  journal = LearningJournal.new file
+  model.setJournal journal
+  pattern = Pattern.makeVisualList(["A", "B"].to_java(:String))
+  sleep 0.3 # let the writer go idle
+  model.recogniseAndLearn pattern
+  # the first record after an idle period reaches the file within the write interval
+  sleep 0.5
+  replayed = Chrest.new
+  replay = JournalReplay.new replayed
+  replay.replay LearningJournal::Reader.new(java.io.FileInputStream.new(file))
+  assert_equal(journal.getRecords, replay.getRecords)
+  assert_equal(model.getTotalLtmNodes, replayed.getTotalLtmNodes)
+  length = file.length
+  sleep 0.3
+  model.recogniseAndLearn pattern
+  sleep 0.5
+  assert_true(file.length > length)
+  journal.close
+end
+
+process_test "training checkpoints" do
+  directory = java.nio.file.Files.createTempDirectory("checkpoints").toFile
+  patterns = [["B", "I", "F"], ["X", "A", "Q"], ["B", "I", "G"]].collect do |items|
+    Pattern.makeVisualList(items.to_java(:String))
+  end
+  model = Chrest.new
+  checkpoints = TrainingCheckpoints.new(directory, 10, 60000)
+  assert_false checkpoints.hasCheckpoint
+  assert_equal(0, checkpoints.resume(model))
+  20.times do |i|
+    model.recogniseAndLearn patterns[i % 3]
+    checkpoints.update(i + 1)
+  end
+  assert_equal(2, checkpoints.getCheckpoints)
+  nodes = model.getTotalLtmNodes
+  clock = model.getClock
+  # learning after the last checkpoint is lost on resuming
+  5.times { model.recogniseAndLearn Pattern.makeVisualList(["Z", "Y", "W"].to_java(:String)) }
+  assert_true(model.getTotalLtmNodes > nodes)
+  checkpoints.close
+  resumed = Chrest.new
+  checkpoints = TrainingCheckpoints.new(directory, 10, 60000)
+  assert_true checkpoints.hasCheckpoint
+  assert_equal(20, checkpoints.resume(resumed))
+  assert_equal(nodes, resumed.getTotalLtmNodes)
+  assert_equal(clock, resumed.getClock)
+  # training continues into a new segment, replayed after the first
+  (20...30).each do |i|
+    resumed.recogniseAndLearn patterns[i % 3]
+    checkpoints.update(i + 1)
+  end
+  checkpoints.close
+  again = Chrest.new
+  checkpoints = TrainingCheckpoints.new(directory, 10, 60000)
+  assert_equal(30, checkpoints.resume(again))
+  assert_equal(resumed.getTotalLtmNodes, again.getTotalLtmNodes)
+  assert_equal(resumed.getClock, again.getClock)
+  checkpoints.close
+  directory.listFiles.each { |file| file.delete }
+  directory.delete
+end
+
+process_test "ltm snapshot" do
+  model = Chrest.new
+  patterns = [["B", "I", "F"], ["X", "A", "Q"], ["B", "I", "G"]].collect do |items|
+    Pattern.makeVisualList(items.to_java(:String))
+  end
+  6.times { |i| model.recogniseAndLearn patterns[i % 3] }
+  snapshot = model.takeLtmSnapshot
+  recalled = patterns.collect { |pattern| snapshot.recallPattern(pattern).to_s }
+  nodes = snapshot.getTotalLtmNodes
+  assert_true(snapshot == model.getLtmSnapshot)
+  patterns.each_with_index do |pattern, i|
+    assert_equal(model.recallPattern(pattern).to_s, recalled[i])
+  end
+  # further learning leaves the snapshot unchanged
+  20.times { |i| model.recogniseAndLearn patterns[i % 3] }
+  model.learnAndNamePatterns(patterns[0], Pattern.makeVerbalList(["bif"].to_java(:String)))
+  assert_true(model.getTotalLtmNodes > nodes)
+  assert_equal(nodes, snapshot.getTotalLtmNodes)
+  patterns.each_with_index do |pattern, i|
+    assert_equal(recalled[i], snapshot.recallPattern(pattern).to_s)
+  end
+  assert_true(snapshot.namePattern(patterns[0]).nil?)
+  later = model.takeLtmSnapshot
+  patterns.each do |pattern|
+    assert_equal(model.recallPattern(pattern).to_s, later.recallPattern(pattern).to_s)
+  end
+  assert_equal(model.namePattern(patterns[0]).to_s, later.namePattern(patterns[0]).to_s)
+end
+
+process_test "fork" do
+  model = Chrest.new
+  patterns = [["B", "I", "F"], ["X", "A", "Q"], ["B", "I", "G"]].collect do |items|
+    Pattern.makeVisualList(items.to_java(:String))
+  end
+  9.times { |i| model.recogniseAndLearn patterns[i % 3] }
+  nodes = model.getTotalLtmNodes
+  recalled = patterns.collect { |pattern| model.recallPattern(pattern).to_s }
+  fork = model.fork
+  assert_equal(nodes, fork.getTotalLtmNodes)
+  assert_equal(model.getClock, fork.getClock)
+  patterns.each_with_index do |pattern, i|
+    assert_equal(recalled[i], fork.recallPattern(pattern).to_s)
+  end
+  # learning in the fork leaves the original unchanged, and vice versa
+  20.times { |i| fork.recogniseAndLearn patterns[i % 3] }
+  4.times { fork.learnAndNamePatterns(patterns[0], Pattern.makeVerbalList(["bif"].to_java(:String))) }
+  assert_true(fork.getTotalLtmNodes > nodes)
+  assert_equal(nodes, model.getTotalLtmNodes)
+  patterns.each_with_index do |pattern, i|
+    assert_equal(recalled[i], model.recallPattern(pattern).to_s)
+  end
+  assert_true(model.namePattern(patterns[0]).nil?)
+  assert_equal("< bif >", fork.namePattern(patterns[0]).to_s)
+  forkNodes = fork.getTotalLtmNodes
+  model.recogniseAndLearn(Pattern.makeVisualList(["C", "D"].to_java(:String)))
+  assert_equal(nodes + 1, model.getTotalLtmNodes)
+  assert_equal(forkNodes, fork.getTotalLtmNodes)
+end
+
+process_test "fork metrics" do
+  data = File.join(File.dirname(__FILE__), "..", "examples", "sample-data", "chess-positions.dat")
+  input = java.io.BufferedReader.new(java.io.FileReader.new(data))
+  input.readLine # task definition
+  scenes = Scenes.read(input)
+  model = Chrest.new
+  model.setDomain ChessDomain.new
+  200.times { |i| model.learnScene(scenes.get(i), 20) }
+  counts = lambda do |metrics|
+    [metrics.getSemanticLinkHops, metrics.getSorts, metrics.getStmEvictions,
+      metrics.getDiscriminations, metrics.getFamiliarisations, metrics.getSlotFillings]
+  end
+  before = counts.call(model.getMetrics)
+  # the fork follows semantic links in nodes it shares with the original
+  fork = model.fork
+  (200...300).each { |i| fork.scanScene(scenes.get(i), 20) }
+  (300...320).each { |i| fork.learnScene(scenes.get(i), 20) }
+  assert_equal(before, counts.call(model.getMetrics))
+  assert_true(fork.getMetrics.getSemanticLinkHops > 0)
+  assert_true(fork.getMetrics.getSorts > 0)
+end
+
+process_test "pattern ingestion" do
+  data = "B I F\nX A Q\nB I G\n" * 10
+  model = Chrest.new
+  ingestion = PatternIngestion.new(model, 1)
+  assert_equal(30, ingestion.learn("recognise-and-learn", java.io.StringReader.new(data)))
+  # the same as learning each pattern in turn
+  other = Chrest.new
+  data.split("\n").each do |line|
+    pattern = Pattern.makeVisualList(line.split.to_java(:String))
+    pattern.setFinished
+    other.recogniseAndLearn pattern
+  end
+  assert_equal(other.getTotalLtmNodes, model.getTotalLtmNodes)
+  assert_equal(other.getClock, model.getClock)
+end
+
+process_test "emotion components" do
+  emotion = Emotion.new(Emotion::PlutchikBasicEmotion::JOY, 1.0)
+  emotion.putComponentValue(Emotion::PlutchikBasicEmotion::FEAR, 0.3)
+  assert_equal(0.3, emotion.getComponentValue(Emotion::PlutchikBasicEmotion::FEAR))
+  assert_equal(0.3, emotion.getComponentValue(Emotion::PlutchikBasicEmotion::FEAR.ordinal))
+  # basic emotions of another theory read as zero, and cannot be stored
+  assert_equal(0.0, emotion.getComponentValue(Emotion::EkmanBasicEmotion::FEAR))
+  error = false
+  begin
+    emotion.putComponentValue(Emotion::EkmanBasicEmotion::FEAR, 0.5)
+  rescue java.lang.IllegalArgumentException
+    error = true
+  end
+  assert_true error
+  assert_equal(0.3, emotion.getComponentValue(Emotion::PlutchikBasicEmotion::FEAR))
+  # each list of basic emotions is a new copy
+  emotions = Emotion.listEmotions(Emotion::EmotionTheory::PLUTCHIK)
+  assert_equal(8, emotions.length)
+  emotions[0] = Emotion::PlutchikBasicEmotion::ANGER
+  assert_equal(Emotion::PlutchikBasicEmotion::JOY, Emotion.listEmotions(Emotion::EmotionTheory::PLUTCHIK)[0])
+end
+
+process_test "emotion rescorla-wagner" do
+  model = Chrest.new
+  patterns = [["B", "I", "F"], ["X", "A", "Q"]].collect do |items|
+    Pattern.makeVisualList(items.to_java(:String))
+  end
+  6.times { |i| model.recogniseAndLearn patterns[i % 2] }
+  cue = model.recognise patterns[0]
+  node = model.recognise patterns[1]
+  emotion = Emotion.new(Emotion::PlutchikBasicEmotion::JOY, 1.0)
+  associator = EmotionAssociator.new
+  associator.setDefaultAlpha 0.5
+  associator.computeRW(emotion, node, [cue])
+  assert_equal(0.5, associator.getRWEmotion(cue).getComponentValue(Emotion::PlutchikBasicEmotion::JOY))
+  # a second update moves half of the remaining distance to lambda
+  associator.computeRW(emotion, node, [cue])
+  assert_equal(0.75, associator.getRWEmotion(cue).getComponentValue(Emotion::PlutchikBasicEmotion::JOY))
+  assert_equal(0.0, associator.getRWEmotion(cue).getComponentValue(Emotion::PlutchikBasicEmotion::FEAR))
+  assert_true associator.getTracer.nil?
+end
+
+process_test "emotion trace table" do
+  model = Chrest.new
+  pattern = Pattern.makeVisualList(["B", "I", "F"].to_java(:String))
+  3.times { model.recogniseAndLearn pattern }
+  node = model.recognise pattern
+  associator = model.getEmotionAssociator
+  joy = Emotion.new(Emotion::PlutchikBasicEmotion::JOY, 1.0)
+  fear = Emotion.new(Emotion::PlutchikBasicEmotion::FEAR, 1.0)
+  associator.setRWEmotion(node, joy)
+  # the roots share reference 0, but keep separate traces
+  associator.setRWEmotion(model.getVisualLtm, fear)
+  assert_true associator.getRWEmotion(model.getVerbalLtm).nil?
+  assert_equal(1.0, associator.getRWEmotion(model.getVisualLtm).getComponentValue(Emotion::PlutchikBasicEmotion::FEAR))
+  assert_equal(1.0, associator.getRWEmotion(node).getComponentValue(Emotion::PlutchikBasicEmotion::JOY))
+  assert_equal(2, associator.getNumTraces)
+  # traces do not pass to the new nodes made after clearing the model
+  model.clear
+  3.times { model.recogniseAndLearn pattern }
+  assert_true associator.getRWEmotion(model.recognise(pattern)).nil?
+  assert_equal(0, associator.getNumTraces)
+end
+
+process_test "emotion history" do
+  joy = Emotion::PlutchikBasicEmotion::JOY
+  # keep 5 entries, one per 10 time steps
+  trace = EmotionalTrace.new(5, 10)
+  0.step(99, 3) { |time| trace.addToHistory(time, Emotion.new(joy, time)) }
+  assert_equal(5, trace.getHistorySize)
+  assert_equal(50, trace.getHistoryTime(0))
+  # the latest emotion in each 10 time steps is kept
+  assert_equal(57.0, trace.getHistoryValue(0, joy))
+  assert_equal(99.0, trace.getHistoryValue(4, joy))
+  assert_equal([60, 70, 80], trace.getHistory(60, 90).keySet.to_a)
+  assert_equal(78.0, trace.getEmotionAt(75).getComponentValue(joy))
+  assert_true trace.getEmotionAt(10).nil?
+end
+
+process_test "emotion propagation across stms" do
+  joy = Emotion::PlutchikBasicEmotion::JOY
+  make_model = lambda do
+    model = Chrest.new
+    [[1, 2], [3, 4]].each do |items|
+      pattern = Pattern.makeVisualList(items.to_java(:int))
+      pattern.setFinished
+      3.times { model.recogniseAndLearn pattern }
+    end
+    pattern = Pattern.makeVerbalList(["w"].to_java(:String))
+    pattern.setFinished
+    3.times { model.recogniseAndLearn pattern }
+    model
+  end
+  # only the top of visual STM has an emotion: in one batch, it spreads to the other cues
+  model = make_model.call
+  associator = model.getEmotionAssociator
+  visual = model.getVisualStm
+  verbal = model.getVerbalStm
+  associator.setRWEmotion(visual.getItem(0), Emotion.new(joy, 1.0))
+  model.propagateAcrossModalities([visual, verbal].to_java(Stm))
+  assert_equal(1.0, associator.getRWEmotion(visual.getItem(0)).getComponentValue(joy))
+  assert_equal(0.2, associator.getRWEmotion(verbal.getItem(0)).getComponentValue(joy))
+  visual.each do |node|
+    next if node.getReference == 0 or node == visual.getItem(0)
+    assert_equal(0.2, associator.getRWEmotion(node).getComponentValue(joy))
+  end
+  # one STM at a time, verbal STM then spreads the emotion it was just given
+  model = make_model.call
+  associator = model.getEmotionAssociator
+  visual = model.getVisualStm
+  verbal = model.getVerbalStm
+  associator.setRWEmotion(visual.getItem(0), Emotion.new(joy, 1.0))
+  model.emoteAndPropagateAcrossModalities([visual, verbal].to_java(Stm))
+  assert_equal(0.2, associator.getRWEmotion(verbal.getItem(0)).getComponentValue(joy))
+  assert_true((associator.getRWEmotion(visual.getItem(0)).getComponentValue(joy) - 0.76).abs < 0.0001)
+  visual.each do |node|
+    next if node.getReference == 0 or node == visual.getItem(0)
+    assert_true((associator.getRWEmotion(node).getComponentValue(joy) + 0.04).abs < 0.0001)
+  end
+  # an STM whose top has no emotion does not stop propagation from the others
+  model = make_model.call
+  associator = model.getEmotionAssociator
+  visual = model.getVisualStm
+  verbal = model.getVerbalStm
+  associator.setRWEmotion(visual.getItem(0), Emotion.new(joy, 1.0))
+  associator.emoteAndPropagateAcrossModalities([verbal, visual].to_java(Stm), 0)
+  assert_equal(0.2, associator.getRWEmotion(verbal.getItem(0)).getComponentValue(joy))
+end
+
 process_test "base case" do
   model = Chrest.new
   emptyList = Pattern.makeVisualList([].to_java(:int))
@@ -165,3 +504,125 @@ process_test "full learning" do
   assert_true list1.equals(model.recallPattern(list1))
   assert_true list2.equals(model.recallPattern(list2))
 end
+
+process_test "move prediction evaluation" do
+  model = Chrest.new
+  model.setDomain ChessDomain.new
+  text = "8 8\n\n" +
+    "rnbqkbnr\npppppppp\n........\n........\n........\n........\n........\n........\np 3 4\n\n" +
+    "........\n........\n........\n........\n........\n........\nPPPPPPPP\nRNBQKBNR\nP 4 4\n\n"
+  scenes = Scenes.readWithMove(java.io.BufferedReader.new(java.io.StringReader.new(text)))
+  20.times do
+    model.learnSceneAndMove(scenes.get(0), scenes.getMove(0), 20)
+    model.learnSceneAndMove(scenes.get(1), scenes.getMove(1), 20)
+  end
+  results = MovePredictionEvaluator.new(model, 20, 2).evaluate(scenes)
+  assert_equal(2, results.getCount)
+  assert_equal(1, results.getCount("white"))
+  assert_equal(1, results.getCount("black"))
+  assert_equal(1, results.getRank(0))
+  assert_equal("p", results.getPredictedMoves[0].getPiece)
+  assert_equal(1.0, results.getAccuracy(1))
+end
+
+process_test "query server" do
+  model = Chrest.new
+  model.setDomain ChessDomain.new
+  text = "8 8\n\n" +
+    "rnbqkbnr\npppppppp\n........\n........\n........\n........\n........\n........\np 3 4\n\n" +
+    "........\n........\n........\n........\n........\n........\nPPPPPPPP\nRNBQKBNR\nP 4 4\n\n"
+  scenes = Scenes.readWithMove(java.io.BufferedReader.new(java.io.StringReader.new(text)))
+  20.times do
+    model.learnSceneAndMove(scenes.get(0), scenes.getMove(0), 20)
+    model.learnSceneAndMove(scenes.get(1), scenes.getMove(1), 20)
+  end
+  pawns = ListPattern.new
+  (1..3).each { |column| pawns.add ItemSquarePattern.new("P", column, 7) }
+  10.times { model.learnAndNamePatterns(pawns, Pattern.makeVerbalList(["pawns"].to_java(:String))) }
+  server = QueryServer.new(model.takeLtmSnapshot, 20)
+  server.start 0
+  client = QueryClient.new server.getPort
+  # items on squares are read as the server prints them
+  assert_equal("OK " + model.recallPattern(pawns).to_s, client.query("recall visual [P 1 7] [P 2 7] [P 3 7]"))
+  assert_equal("OK " + model.recallPattern(pawns).to_s, client.query("recall visual " + pawns.to_s))
+  assert_equal("OK < pawns >", client.query("name visual [P 1 7] [P 2 7] [P 3 7]"))
+  assert_equal("OK P 4 4", client.query("predict " + "......../" * 6 + "PPPPPPPP/RNBQKBNR"))
+  assert_equal("OK p 3 4", client.query("predict rnbqkbnr/pppppppp" + "/........" * 6))
+  assert_equal("ERROR unknown request learn", client.query("learn visual A"))
+  assert_equal("ERROR unknown modality smell", client.query("recall smell A"))
+  assert_true client.query("recall visual [P 1").start_with?("ERROR")
+  assert_true client.query("predict ../...").start_with?("ERROR")
+  # requests not valid for the chess domain are refused, and the connection kept
+  assert_equal("ERROR rows of scene must not be empty", client.query("predict /"))
+  assert_equal("ERROR chess scene must have 8 rows of 8 squares", client.query("predict ........"))
+  assert_equal("ERROR x is not a chess piece", client.query("predict xxxxxxxx" + "/........" * 7))
+  assert_equal("ERROR X is not a chess piece", client.query("recall visual [X 1 1]"))
+  assert_true client.query("recall visual A B").start_with?("ERROR")
+  assert_equal("OK P 4 4", client.query("predict " + "......../" * 6 + "PPPPPPPP/RNBQKBNR"))
+  client.close
+  server.close
+  # a finished pattern, as read from a data file, ends with $
+  model = Chrest.new
+  pattern = Pattern.makeVisualList(["A", "B", "C"].to_java(:String))
+  pattern.setFinished
+  name = Pattern.makeVerbalList(["abc"].to_java(:String))
+  name.setFinished
+  10.times { model.learnAndNamePatterns(pattern, name) }
+  server = QueryServer.new(model.takeLtmSnapshot, 20)
+  server.start 0
+  client = QueryClient.new server.getPort
+  assert_equal("OK " + model.recallPattern(pattern).to_s, client.query("recall visual A B C $"))
+  assert_equal("OK " + model.namePattern(pattern).to_s, client.query("name visual A B C $"))
+  assert_equal("NONE", client.query("name visual X Y"))
+  client.close
+  server.close
+end
+
+process_test "ltm snapshot action links" do
+  model = Chrest.new
+  pattern = Pattern.makeVisualList(["B", "I", "F"].to_java(:String))
+  move = Pattern.makeActionList(["M"].to_java(:String))
+  4.times do
+    model.recogniseAndLearn pattern
+    model.recogniseAndLearn move
+  end
+  node = model.recognise pattern
+  action = model.recognise move
+  2.times { node.addActionLink action }
+  snapshot = model.takeLtmSnapshot
+  copy = snapshot.getNode(node.getReference)
+  assert_equal(2, snapshot.getActionLinkCount(copy, action))
+  # strengthening the link is seen in later snapshots only
+  node.addActionLink action
+  assert_equal(2, snapshot.getActionLinkCount(copy, action))
+  later = model.takeLtmSnapshot
+  assert_equal(3, later.getActionLinkCount(later.getNode(node.getReference), action))
+end
+
+process_test "recall evaluator" do
+  data = File.join(File.dirname(__FILE__), "..", "examples", "sample-data", "chess-positions.dat")
+  input = java.io.BufferedReader.new(java.io.FileReader.new(data))
+  input.readLine # task definition
+  scenes = Scenes.read(input)
+  model = Chrest.new
+  model.setDomain ChessDomain.new
+  200.times { |i| model.learnScene(scenes.get(i), 20) }
+  test = scenes.select((300...310).to_a.to_java(:int))
+  stm = model.getVisualStm.collect { |node| node }
+  evaluator = RecallEvaluator.new(model, 20, 1)
+  evaluator.setRandomSeed 7
+  results = evaluator.evaluate(test)
+  # the model's own STM is left alone
+  assert_equal(stm, model.getVisualStm.collect { |node| node })
+  # with the same seeds, the model recalls the same scenes
+  assert_equal(test.size, results.getStatistics.getCount)
+  test.size.times do |i|
+    model.getPerceiver.setRandomSeed(7 + i)
+    recalled = model.scanScene(test.get(i), 20)
+    8.times do |row|
+      8.times do |column|
+        assert_equal(recalled.getItem(row, column), results.getRecalledScenes[i].getItem(row, column))
+      end
+    end
+  end
+end
@@ -24,3 +24,31 @@ process_test "node information 3" do
   assert_equal(2, node.information) 
 end
 
+
+process_test "action link weights" do
+  model = Chrest.new
+  node = Node.new(model, 
+                  Pattern.makeVisualList(["A"].to_java(:String)), 
+                  Pattern.makeVisualList(["A"].to_java(:String)))
+  actions = (1..7).collect do |i|
+    Node.new(model, 
+             Pattern.makeActionList(["M#{i}"].to_java(:String)), 
+             Pattern.makeActionList(["M#{i}"].to_java(:String)))
+  end
+  actions.each_with_index do |action, i|
+    (i+1).times { node.addActionLink action }
+  end
+  node.addActionLink actions[0]
+  assert_equal(7, node.actionLinks.size) # each linked node once
+  assert_equal(2, node.getActionLinkCount(actions[0]))
+  assert_equal(7, node.getActionLinkCount(actions[6]))
+  assert_equal(0, node.getActionLinkCount(node))
+  top = node.topActionLinks
+  assert_equal(Node::TOP_ACTION_LINKS, top.size)
+  assert_equal(actions[6], top.get(0))
+  assert_equal(actions[2], top.get(4))
+  # strengthening a weak link moves it into the top links
+  3.times { node.addActionLink actions[1] }
+  assert_equal(actions[1], node.topActionLinks.get(3))
+  assert_equal(actions[3], node.topActionLinks.get(4))
+end
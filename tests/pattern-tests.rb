@@ -138,3 +138,139 @@ process_test "list pattern remove" do
   assert_true pattern.remove(lp3).isEmpty
   assert_true pattern.remove(lp3).isFinished
 end
+
+process_test "task file" do
+  data = TaskFile.read(java.io.BufferedReader.new(java.io.StringReader.new("paired-associate\nB A J : J I D\nC I G : K O L\n")))
+  assert_equal("paired-associate", data.getTask)
+  assert_equal(2, data.getPairs.size)
+  assert_true data.getPairs.get(0).getFirst.isVerbal
+  assert_true data.getPairs.get(0).getSecond.isFinished
+  assert_true data.getScenes.nil?
+
+  data = TaskFile.read(java.io.BufferedReader.new(java.io.StringReader.new("serial-anticipation\nD A G\nB I F\nG X J\n")))
+  assert_equal(3, data.getItems.size)
+  assert_equal(2, data.getPairs.size)
+  assert_true data.getPairs.get(1).getFirst.equals(data.getItems.get(1))
+end
+
+process_test "pattern scanner" do
+  scanner = PatternScanner.new(java.io.StringReader.new("a, b  c\n\n\td e\r\nf : g h\nx"))
+  pattern = scanner.nextPattern(Modality::VERBAL)
+  expected = Pattern.makeVerbalList(["a", "b", "c"].to_java(:String))
+  expected.setFinished
+  assert_true pattern.equals(expected)
+  assert_equal(2, scanner.nextPattern(Modality::VERBAL).size)
+  pair = scanner.nextPair(Modality::VISUAL, Modality::VERBAL)
+  assert_true pair.getFirst.isVisual
+  assert_equal(2, pair.getSecond.size)
+  error = false
+  begin
+    scanner.nextPair(Modality::VISUAL, Modality::VERBAL)
+  rescue java.io.IOException
+    error = true
+  end
+  assert_true error
+  assert_true scanner.nextPattern(Modality::VERBAL).nil?
+end
+
+process_test "mapped scenes round trip" do
+  data = File.join(File.dirname(__FILE__), "..", "examples", "sample-data", "chess-positions.dat")
+  file = java.io.File.createTempFile("chess-positions", ".scenes")
+  file.deleteOnExit
+  MappedScenes.convert(java.io.BufferedReader.new(java.io.FileReader.new(data)), file)
+  assert_true MappedScenes.isBinary(file)
+  input = java.io.BufferedReader.new(java.io.FileReader.new(data))
+  input.readLine # task definition
+  scenes = Scenes.read(input)
+  mapped = MappedScenes.open(file)
+  assert_equal(scenes.size, mapped.size)
+  assert_equal(scenes.getHeight, mapped.getHeight)
+  assert_equal(scenes.getWidth, mapped.getWidth)
+  mismatches = 0
+  scenes.size.times do |i|
+    scenes.getHeight.times do |row|
+      scenes.getWidth.times do |column|
+        mismatches += 1 unless scenes.get(i).getItem(row, column) == mapped.get(i).getItem(row, column)
+      end
+    end
+  end
+  assert_equal(0, mismatches)
+end
+
+process_test "mapped scenes select and moves" do
+  text = "visual-search-with-move\n8 8\n\n" +
+    "rnbqkbnr\npppppppp\n........\n........\n........\n........\n........\n........\np 3 4\n\n" +
+    "........\n........\n........\n........\n........\n........\nPPPPPPPP\nRNBQKBNR\nP 4 4\n\n"
+  file = java.io.File.createTempFile("moves", ".scenes")
+  file.deleteOnExit
+  MappedScenes.convert(java.io.BufferedReader.new(java.io.StringReader.new(text)), file)
+  mapped = MappedScenes.open(file)
+  assert_true mapped.haveMoves
+  assert_equal("P", mapped.getMove(1).getPiece)
+  assert_equal(4, mapped.getMove(1).getRow)
+  # select picks records in the given order, sharing the mapped file
+  swapped = mapped.select([1, 0].to_java(:int))
+  assert_equal(2, swapped.size)
+  assert_equal("p", swapped.getMove(1).getPiece)
+  assert_equal("R", swapped.get(0).getItem(7, 0))
+  assert_equal("r", swapped.get(1).getItem(0, 0))
+  assert_equal(1, mapped.select(1, 2).size)
+  assert_equal("P", mapped.select(1, 2).getMove(0).getPiece)
+  # mapped scenes are read-only
+  error = false
+  begin
+    mapped.get(0).setItem(0, 0, "Q")
+  rescue java.lang.UnsupportedOperationException
+    error = true
+  end
+  assert_true error
+  assert_equal("r", mapped.get(0).getItem(0, 0))
+end
+
+process_test "scene comparison" do
+  make_scene = lambda do |name, rows|
+    scene = Scene.new(name, rows.size, rows[0].size)
+    rows.each_with_index do |row, i|
+      row.each_char.with_index { |item, j| scene.setItem(i, j, item) }
+    end
+    scene
+  end
+  original = make_scene.call("original", ["ab.c", "d..e", "...."])
+  recalled = make_scene.call("recalled", ["ax.c", "...e", "...."])
+  # a, c and e recalled; b and d omitted; x committed
+  comparison = original.compare(recalled)
+  assert_equal(5, comparison.getOriginalItems)
+  assert_equal(4, comparison.getRecalledItems)
+  assert_equal(3, comparison.getOverlap)
+  assert_equal(2, comparison.getErrorsOfOmission)
+  assert_equal(1, comparison.getErrorsOfCommission)
+  assert_true((comparison.getPrecision - 0.75).abs < 0.0001)
+  assert_true((comparison.getRecall - 0.6).abs < 0.0001)
+  assert_true((original.computePrecision(recalled) - 0.75).abs < 0.0001)
+  assert_true((original.computeRecall(recalled) - 0.6).abs < 0.0001)
+  assert_equal(2, original.computeErrorsOfOmission(recalled))
+  assert_equal(1, original.computeErrorsOfCommission(recalled))
+  # swapping the scenes swaps precision with recall, and omission with commission
+  reverse = recalled.compare(original)
+  assert_true((reverse.getPrecision - 0.6).abs < 0.0001)
+  assert_true((reverse.getRecall - 0.75).abs < 0.0001)
+  assert_equal(1, reverse.getErrorsOfOmission)
+  assert_equal(2, reverse.getErrorsOfCommission)
+  # items longer than one character are compared as strings, with the same results
+  original.setItem(2, 3, "Qx")
+  recalled.setItem(2, 3, "Qx")
+  recalled.setItem(2, 0, "Qy")
+  comparison = original.compare(recalled)
+  assert_equal(6, comparison.getOriginalItems)
+  assert_equal(6, comparison.getRecalledItems)
+  assert_equal(4, comparison.getOverlap)
+  assert_equal(2, comparison.getErrorsOfOmission)
+  assert_equal(2, comparison.getErrorsOfCommission)
+  assert_true((comparison.getRecall - 4.0/6).abs < 0.0001)
+  # an empty recalled scene has no precision, and omits every item
+  empty = Scene.new("empty", 3, 4)
+  assert_equal(0.0, original.computePrecision(empty))
+  assert_equal(0.0, original.computeRecall(empty))
+  assert_equal(6, original.computeErrorsOfOmission(empty))
+  assert_equal(0, original.computeErrorsOfCommission(empty))
+end
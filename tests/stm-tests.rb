@@ -72,3 +72,20 @@ process_test "stm test: repeated item" do
   end
   assert_equal(1, count)
 end
+
+# ensure nodes lost to keep the hypothesis in STM are counted as evicted
+process_test "stm test: evictions" do
+  model = Chrest.new
+  hypothesis = Node.new(model, Pattern.makeVisualList(["A", "B"].to_java(:String)), Pattern.makeVisualList(["A", "B"].to_java(:String)))
+  other = Node.new(model, Pattern.makeVisualList(["C"].to_java(:String)), Pattern.makeVisualList(["C"].to_java(:String)))
+  node = Node.new(model, Pattern.makeVisualList(["A"].to_java(:String)), Pattern.makeVisualList(["A"].to_java(:String)))
+  stm = Stm.new 2
+  assert_equal(0, stm.add(hypothesis))
+  assert_equal(0, stm.add(other))
+  # hypothesis is cut from the bottom, then re-added in place of other,
+  # so only other has left STM
+  assert_equal(1, stm.add(node))
+  assert_equal(2, stm.getCount)
+  assert_equal(hypothesis, stm.getItem(0))
+  assert_equal(node, stm.getItem(1))
+end